@@ -0,0 +1,226 @@
+package za.ac.sun.cs.green;
+
+import za.ac.sun.cs.green.store.Store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The shared context of a batch of requests issued through
+ * {@link Green#handleRequests(String, java.util.List)}.
+ * <p>
+ * A batch is processed in two passes. During the first pass the service tree
+ * is walked without solving anything: services with sub-services are asked to
+ * process their instances, and {@link Prefetchable} leaf services report the
+ * store key they would look up. The sub-instances produced on the way down are
+ * kept with their instances and handed to the task manager in the second
+ * pass, so no service processes the same instance twice. The distinct keys of
+ * the whole batch are then fetched from the {@link Store} with one bulk
+ * lookup. During the second pass the requests are processed as usual,
+ * except that the leaf services consult the batch instead of the store.
+ * Results computed during the second pass are recorded in the batch as well,
+ * so identical canonical sub-instances are solved only once per batch, even
+ * when the requests are processed concurrently.
+ */
+public class Batch {
+
+	/**
+	 * A service whose results are kept in the store under a key that can be
+	 * computed without solving the instance.
+	 */
+	public interface Prefetchable {
+
+		/**
+		 * Returns the key under which the result for the given instance is
+		 * stored.
+		 *
+		 * @param instance the instance
+		 * @return the store key for the instance
+		 */
+		String getStoreKey(Instance instance);
+
+	}
+
+	/**
+	 * Marker for keys that were looked up but not found in the store.
+	 */
+	private static final Object MISSING = new Object();
+
+	/**
+	 * The slot that holds the sub-instances produced by {@link #collectKeys},
+	 * by plan node, until the second pass takes them.
+	 */
+	private static final int PREPARED_SLOT = Instance.registerSlot(new Object());
+
+	/**
+	 * The keys collected during the first pass.
+	 */
+	private final Set<String> keys = new HashSet<String>();
+
+	/**
+	 * Results known for this batch, or {@link #MISSING} for keys that must be
+	 * solved.
+	 */
+	private final Map<String, Object> results = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Number of keys (including duplicates) collected during the first pass.
+	 */
+	private int keyCount = 0;
+
+	/**
+	 * Walks the service tree for the given instance and records the store
+	 * keys of all {@link Prefetchable} services that the instance (or its
+	 * sub-instances) will reach.
+	 *
+	 * @param parent   the plan node whose children are applied to the instance
+	 * @param instance the instance
+	 */
+	void collect(ExecutionPlan.Node parent, Instance instance) {
+		List<String> found = new ArrayList<String>();
+		collectKeys(parent, instance, found);
+		keys.addAll(found);
+		keyCount += found.size();
+	}
+
+	/**
+	 * Walks the plan below the given node for the instance and adds the store
+	 * keys of all {@link Prefetchable} services that the instance (or its
+	 * sub-instances) will reach to the collection. Intermediate services are
+	 * asked to process their instances on the way down; the sub-instances
+	 * they produce are kept with the instance, and
+	 * {@link ExecutionPlan.Node#processRequest(Instance)} returns them
+	 * instead of asking the service again.
+	 *
+	 * @param parent   the plan node whose children are applied to the instance
+	 * @param instance the instance
+	 * @param keys     the collection that receives the keys
+	 */
+	public static void collectKeys(ExecutionPlan.Node parent, Instance instance, Collection<String> keys) {
+		for (int i = 0, n = parent.getChildCount(); i < n; i++) {
+			ExecutionPlan.Node node = parent.getChild(i);
+			Service service = node.getService();
+			if (service instanceof Prefetchable) {
+				keys.add(((Prefetchable) service).getStoreKey(instance));
+				continue;
+			}
+			if (node.hasChildren()) {
+				Set<Instance> subinstances = node.processRequest(instance);
+				prepare(node, instance, subinstances);
+				if (subinstances != null) {
+					for (Instance subinstance : subinstances) {
+						collectKeys(node, subinstance, keys);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps the sub-instances that a node produced for an instance, so that
+	 * the node does not process the instance again.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void prepare(ExecutionPlan.Node node, Instance instance, Set<Instance> subinstances) {
+		Map<ExecutionPlan.Node, Set<Instance>> prepared = (Map<ExecutionPlan.Node, Set<Instance>>) instance.getSlotData(PREPARED_SLOT);
+		if (prepared == null) {
+			prepared = new ConcurrentHashMap<ExecutionPlan.Node, Set<Instance>>(4);
+			instance.setSlotData(PREPARED_SLOT, prepared);
+		}
+		prepared.put(node, (subinstances == null) ? Collections.<Instance>emptySet() : subinstances);
+	}
+
+	/**
+	 * Returns (once) the sub-instances that {@link #collectKeys} obtained
+	 * from the node for the instance, or {@code null} if there are none.
+	 *
+	 * @param node     the plan node
+	 * @param instance the instance
+	 * @return the sub-instances or {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	static Set<Instance> takePrepared(ExecutionPlan.Node node, Instance instance) {
+		Map<ExecutionPlan.Node, Set<Instance>> prepared = (Map<ExecutionPlan.Node, Set<Instance>>) instance.getSlotData(PREPARED_SLOT);
+		return (prepared == null) ? null : prepared.remove(node);
+	}
+
+	/**
+	 * Looks up all collected keys in the given store at once.
+	 *
+	 * @param store the store
+	 */
+	void prefetch(Store store) {
+		Map<String, Object> found = store.getAll(keys);
+		for (String key : keys) {
+			Object value = found.get(key);
+			results.put(key, (value == null) ? MISSING : value);
+		}
+	}
+
+	/**
+	 * Returns the result associated with the key. Keys that were not collected
+	 * during the first pass are looked up in the store.
+	 *
+	 * @param key   the store key
+	 * @param store the store to consult for keys unknown to the batch
+	 * @return the associated result or {@code null} if the key must be solved
+	 */
+	public Object get(String key, Store store) {
+		Object value = results.get(key);
+		if (value == null) {
+			value = store.get(key);
+		}
+		return (value == MISSING) ? null : value;
+	}
+
+	/**
+	 * Returns the result that is known for the key, without consulting the
+	 * store. Services call this before they solve a key, since another
+	 * request of the batch may have solved it after it was looked up.
+	 *
+	 * @param key the store key
+	 * @return the known result or {@code null}
+	 */
+	public Object getKnown(String key) {
+		Object value = results.get(key);
+		return (value == MISSING) ? null : value;
+	}
+
+	/**
+	 * Records a result that was computed during the second pass.
+	 *
+	 * @param key   the store key
+	 * @param value the result
+	 */
+	public void put(String key, Object value) {
+		if (value != null) {
+			results.put(key, value);
+		}
+	}
+
+	/**
+	 * Returns the number of keys (including duplicates) collected during the
+	 * first pass.
+	 *
+	 * @return the number of keys collected
+	 */
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Returns the distinct keys collected during the first pass.
+	 *
+	 * @return the distinct keys
+	 */
+	public Collection<String> getKeys() {
+		return keys;
+	}
+
+}
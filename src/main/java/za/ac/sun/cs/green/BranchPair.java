@@ -0,0 +1,318 @@
+package za.ac.sun.cs.green;
+
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntegerConstant;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.expr.Visitor;
+import za.ac.sun.cs.green.expr.VisitorException;
+
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * The verdicts for the two branches of a condition: the conjunction of a
+ * prefix and the condition, and the conjunction of the prefix and its
+ * negation. Branch pairs are computed by
+ * {@link Green#handleBranches(String, Instance, Expression)}.
+ * <p>
+ * Both branches extend the same prefix instance, so the incremental analysis
+ * of the prefix (see {@link Instance#extend(Expression)}) is done once. Before
+ * a solver is called, the following is tried, in order:
+ * <ul>
+ * <li>If the prefix is known to be unsatisfiable, so are both branches.</li>
+ * <li>If a model of the prefix is known, the condition is evaluated in it;
+ * the branch that it satisfies is satisfiable with the same model.</li>
+ * <li>If the prefix is known to be satisfiable and the service answers that
+ * one branch is unsatisfiable, the other branch is satisfiable.</li>
+ * </ul>
+ * Only when none of these applies are both branches sent to the solver, as
+ * one batch so that the store lookups for the shared part of the prefix are
+ * made once. The verdict and model of each branch are kept in its instance,
+ * so that the next branch pair along the path starts from them.
+ * <p>
+ * The response of the service decides a branch as follows: a {@link Boolean}
+ * is the verdict, a non-empty {@link Map} is a model (and the branch is
+ * satisfiable), and an empty map means unsatisfiable. A {@code null}
+ * response, which is all that a failed request yields, and an
+ * {@link Unknown} response leave the branch undecided; so does a model
+ * service that reports an unsatisfiable branch as {@code null}.
+ */
+public final class BranchPair {
+
+	/**
+	 * The satellite data slot for the verdict of an instance.
+	 */
+	private static final int VERDICT_SLOT = Instance.registerSlot(BranchPair.class);
+
+	/**
+	 * The satellite data slot for the model of an instance.
+	 */
+	private static final int MODEL_SLOT = Instance.registerSlot(new Object());
+
+	private final Instance[] instances = new Instance[2];
+
+	private final Boolean[] verdicts = new Boolean[2];
+
+	private final Object[] responses = new Object[2];
+
+	private int solverRequestCount = 0;
+
+	private boolean modelReused = false;
+
+	private BranchPair(Instance prefix, Expression condition) {
+		instances[1] = prefix.extend(condition);
+		instances[0] = prefix.extend(negate(condition));
+		Deadline deadline = prefix.getDeadline();
+		instances[1].setDeadline(deadline);
+		instances[0].setDeadline(deadline);
+	}
+
+	/**
+	 * Returns the negation of a condition. Comparisons are negated by
+	 * flipping the operator, so that the services downstream see the same
+	 * kinds of propositions on both branches.
+	 *
+	 * @param condition the condition
+	 * @return the negated condition
+	 */
+	static Expression negate(Expression condition) {
+		if (condition instanceof Operation) {
+			Operation operation = (Operation) condition;
+			Operation.Operator negated = null;
+			switch (operation.getOperator()) {
+				case EQ: negated = Operation.Operator.NE; break;
+				case NE: negated = Operation.Operator.EQ; break;
+				case LT: negated = Operation.Operator.GE; break;
+				case LE: negated = Operation.Operator.GT; break;
+				case GT: negated = Operation.Operator.LE; break;
+				case GE: negated = Operation.Operator.LT; break;
+				case NOT: return operation.getOperand(0);
+				default: break;
+			}
+			if (negated != null) {
+				return new Operation(negated, operation.getOperand(0), operation.getOperand(1));
+			}
+		}
+		return new Operation(Operation.Operator.NOT, condition);
+	}
+
+	static BranchPair decide(Green solver, String serviceName, Instance prefix, Expression condition) {
+		BranchPair pair = new BranchPair(prefix, condition);
+		Boolean prefixVerdict = getVerdict(prefix);
+		Map<Variable, Object> prefixModel = getModel(prefix);
+		if (Boolean.FALSE.equals(prefixVerdict)) {
+			pair.set(true, false, null);
+			pair.set(false, false, null);
+			return pair;
+		}
+		if (prefixModel != null) {
+			Boolean value = evaluate(condition, prefixModel);
+			if (value != null) {
+				pair.set(value, true, prefixModel);
+				pair.modelReused = true;
+				pair.solve(solver, serviceName, !value);
+				return pair;
+			}
+		}
+		if (Boolean.TRUE.equals(prefixVerdict)) {
+			pair.solve(solver, serviceName, true);
+			if (Boolean.FALSE.equals(pair.verdicts[1])) {
+				pair.set(false, true, null);
+			} else {
+				pair.solve(solver, serviceName, false);
+			}
+			return pair;
+		}
+		List<Instance> both = new ArrayList<Instance>(2);
+		both.add(pair.instances[1]);
+		both.add(pair.instances[0]);
+		List<Object> responses = solver.handleRequests(serviceName, both);
+		pair.solverRequestCount += 2;
+		pair.accept(true, responses.get(0));
+		pair.accept(false, responses.get(1));
+		return pair;
+	}
+
+	private void solve(Green solver, String serviceName, boolean branch) {
+		Instance instance = instances[branch ? 1 : 0];
+		solverRequestCount++;
+		accept(branch, instance.request(serviceName));
+	}
+
+	private void accept(boolean branch, Object response) {
+		responses[branch ? 1 : 0] = response;
+		if (response instanceof Boolean) {
+			set(branch, (Boolean) response, null);
+		} else if (response instanceof Map) {
+			@SuppressWarnings("unchecked")
+			Map<Variable, Object> model = (Map<Variable, Object>) response;
+			set(branch, !model.isEmpty(), model.isEmpty() ? null : model);
+		}
+	}
+
+	private void set(boolean branch, boolean verdict, Map<Variable, Object> model) {
+		Instance instance = instances[branch ? 1 : 0];
+		verdicts[branch ? 1 : 0] = verdict;
+		instance.setSlotData(VERDICT_SLOT, verdict);
+		instance.setSlotData(MODEL_SLOT, model);
+	}
+
+	/**
+	 * Returns the instance for a branch. Its verdict and model are kept in
+	 * the instance, so it can be the prefix of the next branch pair.
+	 *
+	 * @param branch {@code true} for the branch of the condition, and
+	 *               {@code false} for the branch of its negation
+	 * @return the instance for the branch
+	 */
+	public Instance getInstance(boolean branch) {
+		return instances[branch ? 1 : 0];
+	}
+
+	/**
+	 * Returns whether a branch is satisfiable.
+	 *
+	 * @param branch {@code true} for the branch of the condition, and
+	 *               {@code false} for the branch of its negation
+	 * @return the verdict, or {@code null} if the branch was not decided
+	 */
+	public Boolean isSatisfiable(boolean branch) {
+		return verdicts[branch ? 1 : 0];
+	}
+
+	/**
+	 * Returns a model of a branch.
+	 *
+	 * @param branch {@code true} for the branch of the condition, and
+	 *               {@code false} for the branch of its negation
+	 * @return a model, or {@code null} if none is known
+	 */
+	public Map<Variable, Object> getModel(boolean branch) {
+		return getModel(instances[branch ? 1 : 0]);
+	}
+
+	/**
+	 * Returns the response of the service for a branch, or {@code null} if the
+	 * service was not asked. The response is an {@link Unknown} if the branch
+	 * could not be decided.
+	 *
+	 * @param branch {@code true} for the branch of the condition, and
+	 *               {@code false} for the branch of its negation
+	 * @return the response of the service or {@code null}
+	 */
+	public Object getResponse(boolean branch) {
+		return responses[branch ? 1 : 0];
+	}
+
+	/**
+	 * Returns the number of branches that were sent to the service.
+	 *
+	 * @return 0, 1 or 2
+	 */
+	public int getSolverRequestCount() {
+		return solverRequestCount;
+	}
+
+	/**
+	 * Returns whether a branch was decided by the model of the prefix.
+	 *
+	 * @return {@code true} if and only if the model of the prefix was reused
+	 */
+	public boolean isModelReused() {
+		return modelReused;
+	}
+
+	private static Boolean getVerdict(Instance instance) {
+		return (Boolean) instance.getSlotData(VERDICT_SLOT);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<Variable, Object> getModel(Instance instance) {
+		return (Map<Variable, Object>) instance.getSlotData(MODEL_SLOT);
+	}
+
+	/**
+	 * Evaluates a condition in a model. Only integer arithmetic and the
+	 * logical connectives are supported.
+	 *
+	 * @param expression the condition
+	 * @param model      the values of the variables
+	 * @return the value of the condition, or {@code null} if it cannot be
+	 * evaluated, for example because a variable has no value in the model
+	 */
+	static Boolean evaluate(Expression expression, final Map<Variable, Object> model) {
+		final Stack<Object> stack = new Stack<Object>();
+		try {
+			expression.accept(new Visitor() {
+				@Override
+				public void postVisit(IntConstant constant) {
+					stack.push((long) constant.getValue());
+				}
+
+				@Override
+				public void postVisit(IntegerConstant constant) {
+					stack.push(constant.getValue());
+				}
+
+				@Override
+				public void postVisit(Variable variable) throws VisitorException {
+					Object value = model.get(variable);
+					if (value instanceof IntConstant) {
+						stack.push((long) ((IntConstant) value).getValue());
+					} else if (value instanceof IntegerConstant) {
+						stack.push(((IntegerConstant) value).getValue());
+					} else {
+						throw new VisitorException("no integer value for " + variable);
+					}
+				}
+
+				@Override
+				public void postVisit(Operation operation) throws VisitorException {
+					Operation.Operator op = operation.getOperator();
+					Object r = (op.getArity() == 2) ? stack.pop() : null;
+					Object l = stack.pop();
+					switch (op) {
+						case EQ: stack.push(l.equals(r)); break;
+						case NE: stack.push(!l.equals(r)); break;
+						case LT: stack.push(integer(l) < integer(r)); break;
+						case LE: stack.push(integer(l) <= integer(r)); break;
+						case GT: stack.push(integer(l) > integer(r)); break;
+						case GE: stack.push(integer(l) >= integer(r)); break;
+						case AND: stack.push(bool(l) && bool(r)); break;
+						case OR: stack.push(bool(l) || bool(r)); break;
+						case IMPLIES: stack.push(!bool(l) || bool(r)); break;
+						case NOT: stack.push(!bool(l)); break;
+						case ADD: stack.push(integer(l) + integer(r)); break;
+						case SUB: stack.push(integer(l) - integer(r)); break;
+						case MUL: stack.push(integer(l) * integer(r)); break;
+						case NEG: stack.push(-integer(l)); break;
+						default:
+							throw new VisitorException("unsupported operator " + op);
+					}
+				}
+			});
+		} catch (VisitorException x) {
+			return null;
+		} catch (ClassCastException x) {
+			return null;
+		} catch (EmptyStackException x) {
+			return null;
+		}
+		Object value = stack.pop();
+		return (value instanceof Boolean) ? (Boolean) value : null;
+	}
+
+	private static long integer(Object value) {
+		return (Long) value;
+	}
+
+	private static boolean bool(Object value) {
+		return (Boolean) value;
+	}
+
+}
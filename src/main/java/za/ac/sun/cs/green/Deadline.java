@@ -0,0 +1,162 @@
+package za.ac.sun.cs.green;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadline of a request. A deadline is attached to the source instance of
+ * a request (see {@link Instance#setDeadline(Deadline)}) and is shared by all
+ * of the sub-instances that the services derive from it.
+ * <p>
+ * A deadline expires when its time runs out, or earlier when it is cancelled.
+ * Services are expected to cooperate: before an expensive step they check
+ * whether the deadline is done, they map the remaining time onto the limits
+ * of the solver they invoke, and they register a listener that aborts the
+ * solver (by interrupting it or by killing its process) when the deadline is
+ * cancelled. A service that gives up because of the deadline returns
+ * {@code null}, and the task manager then reports an {@link Unknown} result.
+ */
+public class Deadline {
+
+	/**
+	 * Thrown by helper routines of services when a solver was aborted because
+	 * its deadline expired or was cancelled.
+	 */
+	@SuppressWarnings("serial")
+	public static class ExceededException extends RuntimeException {
+
+		public ExceededException(String message) {
+			super(message);
+		}
+
+	}
+
+	/**
+	 * The value of {@link System#nanoTime()} at which the deadline expires, or
+	 * {@link Long#MAX_VALUE} for a deadline without a time limit.
+	 */
+	private final long expiry;
+
+	private final boolean bounded;
+
+	private volatile boolean cancelled = false;
+
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+	private Deadline(long expiry, boolean bounded) {
+		this.expiry = expiry;
+		this.bounded = bounded;
+	}
+
+	/**
+	 * Returns a deadline that expires after the given amount of time.
+	 *
+	 * @param timeout the time limit
+	 * @param unit    the unit of the time limit
+	 * @return the new deadline
+	 */
+	public static Deadline after(long timeout, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+	}
+
+	/**
+	 * Returns a deadline without a time limit. It is only done once it has
+	 * been cancelled.
+	 *
+	 * @return the new deadline
+	 */
+	public static Deadline none() {
+		return new Deadline(Long.MAX_VALUE, false);
+	}
+
+	/**
+	 * Returns whether the deadline has a time limit.
+	 *
+	 * @return {@code true} if and only if the deadline has a time limit
+	 */
+	public boolean isBounded() {
+		return bounded;
+	}
+
+	/**
+	 * Returns the time left before the deadline expires, or
+	 * {@link Long#MAX_VALUE} if the deadline has no time limit. Once the
+	 * deadline has expired, the remaining time is zero.
+	 *
+	 * @param unit the unit of the result
+	 * @return the remaining time
+	 */
+	public long remaining(TimeUnit unit) {
+		if (!bounded) {
+			return Long.MAX_VALUE;
+		}
+		long left = expiry - System.nanoTime();
+		return (left <= 0) ? 0 : unit.convert(left, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns whether the time limit has been reached.
+	 *
+	 * @return {@code true} if and only if the time limit has been reached
+	 */
+	public boolean isExpired() {
+		return bounded && (expiry - System.nanoTime() <= 0);
+	}
+
+	/**
+	 * Returns whether the deadline has been cancelled.
+	 *
+	 * @return {@code true} if and only if the deadline has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns whether work for the request should stop, because the deadline
+	 * has either expired or been cancelled.
+	 *
+	 * @return {@code true} if and only if the deadline is done
+	 */
+	public boolean isDone() {
+		return cancelled || isExpired();
+	}
+
+	/**
+	 * Cancels the deadline and runs all registered listeners.
+	 */
+	public void cancel() {
+		if (!cancelled) {
+			cancelled = true;
+			for (Runnable listener : listeners) {
+				listener.run();
+			}
+		}
+	}
+
+	/**
+	 * Registers a listener that is run when the deadline is cancelled. If the
+	 * deadline has already been cancelled, the listener is run immediately.
+	 * Listeners must be quick and must not throw exceptions; typically they
+	 * interrupt a solver or kill a process.
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+		if (cancelled && listeners.remove(listener)) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Removes a listener that was registered earlier.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+}
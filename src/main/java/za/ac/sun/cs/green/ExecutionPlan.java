@@ -0,0 +1,285 @@
+package za.ac.sun.cs.green;
+
+import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, array-based form of the service graph of a {@link Green}
+ * solver. Each {@link Node} holds its service and its child nodes directly, so
+ * that task managers walk the plan without looking up sub-services in the
+ * (mutable) maps of the solver. Since the plan is never modified after it has
+ * been compiled, it can be read from many threads without locking.
+ * <p>
+ * Green compiles the plan on demand and discards it whenever a service is
+ * registered; {@link za.ac.sun.cs.green.util.Configuration#configure()}
+ * compiles it eagerly once the whole graph is known.
+ */
+public final class ExecutionPlan {
+
+	/**
+	 * A node of the plan. The root of a named service has no service of its
+	 * own; its children are the services registered under the name.
+	 */
+	public static final class Node {
+
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private final Service service;
+
+		/**
+		 * The latency of {@link Service#processRequest(Instance)} for the
+		 * service, or {@code null} if it is not recorded.
+		 */
+		private final Metrics.Histogram latency;
+
+		/**
+		 * The name of the service in profiling events.
+		 */
+		private final String name;
+
+		private Node[] children = NO_CHILDREN;
+
+		private Node(Service service) {
+			this.service = service;
+			if (service instanceof BasicService) {
+				latency = ((BasicService) service).getMetrics().histogram("processRequest");
+				name = ((BasicService) service).getMetrics().getName();
+			} else {
+				latency = null;
+				name = (service == null) ? null : service.getClass().getSimpleName();
+			}
+		}
+
+		/**
+		 * Returns the service of this node, or {@code null} for the root of a
+		 * named service.
+		 *
+		 * @return the service or {@code null}
+		 */
+		public Service getService() {
+			return service;
+		}
+
+		/**
+		 * Asks the service of this node to process an instance, and records
+		 * how long that takes. Task managers call this instead of calling the
+		 * service directly. If the instance was processed already while the
+		 * keys of a {@link Batch} were collected, the sub-instances produced
+		 * then are returned.
+		 *
+		 * @param instance the instance to process
+		 * @return the sub-instances for the children of this node
+		 */
+		public Set<Instance> processRequest(Instance instance) {
+			Object event = Jfr.STAGE.begin();
+			Trace trace = instance.getTrace();
+			Recorder.Stages stages = instance.getStages();
+			if ((latency == null) && (event == null) && (trace == null) && (stages == null)) {
+				return process(instance);
+			}
+			Instance previous = Jfr.enterStage(event, instance);
+			Trace.Span span = (trace == null) ? null : trace.beginProcess(service, name, instance);
+			Set<Instance> result = null;
+			long start = System.nanoTime();
+			try {
+				result = process(instance);
+				return result;
+			} finally {
+				long elapsed = System.nanoTime() - start;
+				if (latency != null) {
+					latency.record(elapsed);
+				}
+				if (stages != null) {
+					stages.add(name, elapsed);
+				}
+				if (span != null) {
+					trace.endProcess(span, this, result);
+				}
+				Jfr.commitStage(event, name, instance, previous);
+			}
+		}
+
+		/**
+		 * Returns the sub-instances that were kept for the instance, or asks
+		 * the service to process it.
+		 */
+		private Set<Instance> process(Instance instance) {
+			Set<Instance> prepared = Batch.takePrepared(this, instance);
+			return (prepared != null) ? prepared : service.processRequest(instance);
+		}
+
+		/**
+		 * Passes the result for a sub-instance to the service of this node, as
+		 * {@link Service#childDone(Instance, Service, Instance, Object)}, and
+		 * records the call if the request is traced.
+		 *
+		 * @param instance    the instance of this node
+		 * @param subService  the service of the child node
+		 * @param subInstance the sub-instance that the child processed
+		 * @param result      the result of the child
+		 * @return the combined result
+		 */
+		public Object childDone(Instance instance, Service subService, Instance subInstance, Object result) {
+			Trace trace = instance.getTrace();
+			if (trace == null) {
+				return service.childDone(instance, subService, subInstance, result);
+			}
+			Trace.Span span = trace.begin(service, name, "childDone", instance, subInstance);
+			try {
+				return service.childDone(instance, subService, subInstance, result);
+			} finally {
+				trace.end(span);
+			}
+		}
+
+		/**
+		 * Tells the service of this node that all children are done, as
+		 * {@link Service#allChildrenDone(Instance, Object)}, and records the
+		 * call if the request is traced.
+		 *
+		 * @param instance the instance of this node
+		 * @param result   the combined result of the children
+		 * @return the final result
+		 */
+		public Object allChildrenDone(Instance instance, Object result) {
+			Trace trace = instance.getTrace();
+			if (trace == null) {
+				return service.allChildrenDone(instance, result);
+			}
+			Trace.Span span = trace.begin(service, name, "allChildrenDone", instance, null);
+			try {
+				return service.allChildrenDone(instance, result);
+			} finally {
+				trace.end(span);
+			}
+		}
+
+		/**
+		 * Returns the number of child nodes.
+		 *
+		 * @return the number of children
+		 */
+		public int getChildCount() {
+			return children.length;
+		}
+
+		/**
+		 * Returns the child node with the given index.
+		 *
+		 * @param index the index of the child
+		 * @return the child node
+		 */
+		public Node getChild(int index) {
+			return children[index];
+		}
+
+		/**
+		 * Returns whether this node has child nodes.
+		 *
+		 * @return {@code true} if and only if the node has children
+		 */
+		public boolean hasChildren() {
+			return children.length > 0;
+		}
+
+	}
+
+	/**
+	 * The root returned for names without services.
+	 */
+	private static final Node EMPTY = new Node(null);
+
+	/**
+	 * The roots of the named services.
+	 */
+	private final Map<String, Node> roots;
+
+	/**
+	 * The nodes of the services in the plan.
+	 */
+	private final Map<Service, Node> nodes;
+
+	/**
+	 * Compiles the service graph given by the two maps of a Green solver.
+	 *
+	 * @param services0 the mapping from service names to services
+	 * @param services1 the mapping from services to sub-services
+	 */
+	ExecutionPlan(Map<String, Set<Service>> services0, Map<Service, Set<Service>> services1) {
+		Map<Service, Node> nodes = new IdentityHashMap<Service, Node>();
+		Set<Service> visiting = Collections.newSetFromMap(new IdentityHashMap<Service, Boolean>());
+		Map<String, Node> r = new HashMap<String, Node>();
+		for (Map.Entry<String, Set<Service>> entry : services0.entrySet()) {
+			Node root = new Node(null);
+			root.children = compile(entry.getValue(), services1, nodes, visiting);
+			r.put(entry.getKey(), root);
+		}
+		roots = Collections.unmodifiableMap(r);
+		this.nodes = nodes;
+	}
+
+	private static Node[] compile(Set<Service> services, Map<Service, Set<Service>> services1, Map<Service, Node> nodes, Set<Service> visiting) {
+		if ((services == null) || services.isEmpty()) {
+			return Node.NO_CHILDREN;
+		}
+		Node[] children = new Node[services.size()];
+		int i = 0;
+		for (Service service : services) {
+			Node node = nodes.get(service);
+			if (node == null) {
+				if (!visiting.add(service)) {
+					throw new IllegalStateException("cyclic service graph at " + service.getClass().getName());
+				}
+				node = new Node(service);
+				node.children = compile(services1.get(service), services1, nodes, visiting);
+				visiting.remove(service);
+				nodes.put(service, node);
+			}
+			children[i++] = node;
+		}
+		return children;
+	}
+
+	/**
+	 * Returns the root of the named service. The children of the root are the
+	 * services registered under the name. If there are none, the root has no
+	 * children.
+	 *
+	 * @param serviceName the name of the service
+	 * @return the root node of the service
+	 */
+	public Node getRoot(String serviceName) {
+		Node root = roots.get(serviceName);
+		return (root == null) ? EMPTY : root;
+	}
+
+	/**
+	 * Returns the node of the given service, or {@code null} if the service is
+	 * not part of the plan. A service that is registered in more than one
+	 * place has a single node.
+	 *
+	 * @param service the service
+	 * @return the node of the service or {@code null}
+	 */
+	public Node getNode(Service service) {
+		return nodes.get(service);
+	}
+
+	/**
+	 * Returns the names of all services in the plan.
+	 *
+	 * @return the service names
+	 */
+	public Set<String> getServiceNames() {
+		return Collections.unmodifiableSet(new HashSet<String>(roots.keySet()));
+	}
+
+}
@@ -2,17 +2,28 @@ package za.ac.sun.cs.green;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.ExpressionFactory;
 import za.ac.sun.cs.green.store.NullStore;
 import za.ac.sun.cs.green.store.Store;
 import za.ac.sun.cs.green.taskmanager.SerialTaskManager;
 import za.ac.sun.cs.green.taskmanager.TaskManager;
+import za.ac.sun.cs.green.util.Jmx;
+import za.ac.sun.cs.green.util.Metrics;
+import za.ac.sun.cs.green.util.OpenMetrics;
 import za.ac.sun.cs.green.util.Reporter;
+import za.ac.sun.cs.green.util.SlowQueries;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * An instance of Green acts as a manager for services and problem instances. In
@@ -50,11 +61,55 @@ public class Green {
 	 */
 	private final Map<Service, Set<Service>> services1;
 
+	/**
+	 * The compiled form of {@link #services0} and {@link #services1}, or
+	 * {@code null} if it has to be recompiled.
+	 */
+	private volatile ExecutionPlan plan = null;
+
 	/**
 	 * The store associated with this Green solver.
 	 */
 	private Store store;
 
+	/**
+	 * The counters of the services, stores and task managers of this solver.
+	 */
+	private final Metrics metrics = new Metrics();
+
+	/**
+	 * The JMX MBeans of this solver, or {@code null} if they have not been
+	 * registered.
+	 */
+	private Jmx jmx = null;
+
+	/**
+	 * The OpenMetrics endpoint of this solver, or {@code null} if it has not
+	 * been started.
+	 */
+	private OpenMetrics openMetrics = null;
+
+	/**
+	 * Decides which requests are traced.
+	 */
+	private final Trace.Sampler sampler = new Trace.Sampler();
+
+	/**
+	 * The recorder of the requests handled by this solver, or {@code null}.
+	 */
+	private volatile Recorder recorder = null;
+
+	/**
+	 * The tracker of the queries that use up solver time.
+	 */
+	private final SlowQueries slowQueries;
+
+	/**
+	 * The factory that interns the expressions of instances, or
+	 * {@code null}.
+	 */
+	private volatile ExpressionFactory expressionFactory = null;
+
 	/**
 	 * Constructs a Green solver instance with the given name. The name can be
 	 * anything whatsoever and is mainly used to obtain a unique logger.
@@ -64,6 +119,7 @@ public class Green {
 	public Green(String solverName, Logger logger) {
 		this.solverName = solverName;
 		this.LOGGER = logger;
+		slowQueries = new SlowQueries(logger, metrics.register("SlowQueries"));
 		taskManager = new SerialTaskManager(this);
 		store = new NullStore(this);
 		services0 = new HashMap<String, Set<Service>>();
@@ -119,11 +175,22 @@ public class Green {
 	/**
 	 * Sets a {@link TaskManager} for this Green solver instance. By default, a
 	 * new {@link SerialTaskManager} is created for a new Green solver instance.
+	 * The metrics of the task manager that is replaced are removed from the
+	 * registry.
 	 *
 	 * @param taskManager the new task manager
 	 */
 	public void setTaskManager(final TaskManager taskManager) {
+		TaskManager previous = this.taskManager;
 		this.taskManager = taskManager;
+		if ((previous != null) && (previous != taskManager) && (previous.getMetrics() != null)) {
+			metrics.unregister(previous.getMetrics());
+			synchronized (this) {
+				if (jmx != null) {
+					jmx.register();
+				}
+			}
+		}
 	}
 
 	/**
@@ -156,6 +223,16 @@ public class Green {
 		return store;
 	}
 
+	/**
+	 * Returns the metrics registry of this Green solver instance. Services,
+	 * stores and task managers keep their counters in it.
+	 *
+	 * @return the metrics registry
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Returns the set of {@link Service}s associated with the given service
 	 * name. This mechanism allows problem instances to issue a request for a
@@ -183,6 +260,69 @@ public class Green {
 		return services1.get(service);
 	}
 
+	/**
+	 * Registers JMX MBeans for this solver and for the metrics of its task
+	 * manager, store and services (see {@link Jmx}). Services registered later
+	 * get their MBeans when the execution plan is next compiled. The MBeans
+	 * are unregistered by {@link #shutdown()}.
+	 *
+	 * @return the registered MBeans
+	 */
+	public synchronized Jmx registerMBeans() {
+		if (jmx == null) {
+			jmx = new Jmx(this);
+		}
+		jmx.register();
+		return jmx;
+	}
+
+	/**
+	 * Starts an HTTP endpoint on the loopback interface that serves the
+	 * metrics of this solver in the OpenMetrics text format at
+	 * {@code /metrics} (see {@link OpenMetrics}). The endpoint is stopped by
+	 * {@link #shutdown()}.
+	 *
+	 * @param port the port, or 0 for any free port
+	 * @return the endpoint, or {@code null} if it could not be started
+	 */
+	public synchronized OpenMetrics startMetricsEndpoint(int port) {
+		if (openMetrics == null) {
+			OpenMetrics m = new OpenMetrics(this);
+			try {
+				m.start(port);
+			} catch (IOException x) {
+				LOGGER.warn("could not start the metrics endpoint on port " + port, x);
+				return null;
+			}
+			openMetrics = m;
+		}
+		return openMetrics;
+	}
+
+	/**
+	 * Returns the execution plan of the services registered so far. The plan
+	 * is compiled on the first call after a service has been registered and is
+	 * shared by all subsequent calls.
+	 *
+	 * @return the execution plan
+	 */
+	public ExecutionPlan getPlan() {
+		ExecutionPlan p = plan;
+		if (p == null) {
+			synchronized (this) {
+				p = plan;
+				if (p == null) {
+					p = new ExecutionPlan(services0, services1);
+					plan = p;
+					if (jmx != null) {
+						jmx.register();
+					}
+				}
+			}
+		}
+		return p;
+	}
+
 	/**
 	 * Associates a given service name with a given {@link Service}.
 	 * <p>
@@ -201,7 +341,7 @@ public class Green {
 	 * @param serviceName the name of a (high-level) service
 	 * @param subService  another service to associate with the name
 	 */
-	public void registerService(String serviceName, Service subService) {
+	public synchronized void registerService(String serviceName, Service subService) {
 		LOGGER.info("register service: name=\"" + serviceName + "\", subservice=" + subService.getClass().getName());
 		Set<Service> serviceSet = services0.get(serviceName);
 		if (serviceSet == null) {
@@ -209,6 +349,7 @@ public class Green {
 			services0.put(serviceName, serviceSet);
 		}
 		serviceSet.add(subService);
+		plan = null;
 	}
 
 	/**
@@ -219,7 +360,7 @@ public class Green {
 	 * @param service    a service
 	 * @param subService another service to associate with the given service
 	 */
-	public void registerService(Service service, Service subService) {
+	public synchronized void registerService(Service service, Service subService) {
 		LOGGER.info("register service: name=\"" + service.getClass().getName() + "\", subservice=" + subService.getClass().getName());
 		Set<Service> serviceSet = services1.get(service);
 		if (serviceSet == null) {
@@ -227,6 +368,7 @@ public class Green {
 			services1.put(service, serviceSet);
 		}
 		serviceSet.add(subService);
+		plan = null;
 	}
 
 	/**
@@ -241,7 +383,188 @@ public class Green {
 	 * request
 	 */
 	public Object handleRequest(String serviceName, Instance instance) {
-		return taskManager.process(serviceName, instance);
+		Trace trace = sampler.sample(serviceName, instance);
+		Recorder r = recorder;
+		Recorder.Stages stages = (r == null) ? null : r.begin(serviceName, instance);
+		Object result = null;
+		try {
+			result = taskManager.process(serviceName, instance);
+			return result;
+		} finally {
+			if (trace != null) {
+				trace.finish();
+			}
+			if (stages != null) {
+				r.end(stages, result);
+			}
+		}
+	}
+
+	/**
+	 * Dispatches a request to apply the given service to the given instance
+	 * without waiting for the response. The returned future is completed by
+	 * the task manager once the request has been processed; cancelling it
+	 * cancels the outstanding tasks of the request.
+	 *
+	 * @param serviceName the name of the service
+	 * @param instance    the problem instance
+	 * @return a future for the Green solver's response to the request
+	 */
+	public CompletableFuture<Object> handleRequestAsync(String serviceName, Instance instance) {
+		final Trace trace = sampler.sample(serviceName, instance);
+		final Recorder r = recorder;
+		final Recorder.Stages stages = (r == null) ? null : r.begin(serviceName, instance);
+		CompletableFuture<Object> future = taskManager.processAsync(serviceName, instance);
+		if ((trace != null) || (stages != null)) {
+			future.whenComplete(new BiConsumer<Object, Throwable>() {
+				@Override
+				public void accept(Object result, Throwable failure) {
+					if (trace != null) {
+						trace.finish();
+					}
+					if (stages != null) {
+						r.end(stages, result);
+					}
+				}
+			});
+		}
+		return future;
+	}
+
+	/**
+	 * Dispatches a batch of requests to apply the given service to each of the
+	 * given instances. Before any instance is solved, the store keys that the
+	 * requests will need are collected and looked up in one bulk store access;
+	 * identical canonical sub-instances are solved only once per batch. The
+	 * results are returned in the order of the instances.
+	 *
+	 * @param serviceName the name of the service
+	 * @param instances   the problem instances
+	 * @return the Green solver's responses, one per instance and in the same
+	 * order
+	 */
+	public List<Object> handleRequests(String serviceName, List<Instance> instances) {
+		Batch batch = new Batch();
+		ExecutionPlan.Node root = getPlan().getRoot(serviceName);
+		for (Instance instance : instances) {
+			instance.prepare(batch);
+			batch.collect(root, instance);
+		}
+		batch.prefetch(store);
+		List<Trace> traces = new ArrayList<Trace>();
+		for (Instance instance : instances) {
+			Trace trace = sampler.sample(serviceName, instance);
+			if (trace != null) {
+				traces.add(trace);
+			}
+		}
+		Recorder r = recorder;
+		List<Recorder.Stages> stages = null;
+		if (r != null) {
+			stages = new ArrayList<Recorder.Stages>(instances.size());
+			for (Instance instance : instances) {
+				stages.add(r.begin(serviceName, instance));
+			}
+		}
+		List<Object> results = null;
+		try {
+			results = taskManager.processAll(serviceName, instances);
+			return results;
+		} finally {
+			for (Trace trace : traces) {
+				trace.finish();
+			}
+			if (stages != null) {
+				for (int i = 0; i < stages.size(); i++) {
+					r.end(stages.get(i), (results == null) ? null : results.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Traces one in every {@code n} requests: a {@link Trace} is attached to
+	 * the source instance of each sampled request, and records the time
+	 * spent in every stage of the pipeline. Tracing is off by default.
+	 *
+	 * @param n the sampling rate, or 0 to turn tracing off
+	 */
+	public void setTraceSampling(int n) {
+		sampler.setRate(n);
+	}
+
+	/**
+	 * Returns the trace sampling rate.
+	 *
+	 * @return one in how many requests is traced, or 0 if tracing is off
+	 */
+	public int getTraceSampling() {
+		return sampler.getRate();
+	}
+
+	/**
+	 * Records every request handled from now on with the given recorder, or
+	 * stops recording. The recorder is closed by {@link #shutdown()}.
+	 *
+	 * @param recorder the recorder, or {@code null} to stop recording
+	 */
+	public void setRecorder(Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Returns the recorder of this solver.
+	 *
+	 * @return the recorder, or {@code null} if requests are not recorded
+	 */
+	public Recorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Returns the tracker of the queries that use up solver time. The
+	 * services record every call to a decision procedure with it.
+	 *
+	 * @return the slow query tracker
+	 */
+	public SlowQueries getSlowQueries() {
+		return slowQueries;
+	}
+
+	/**
+	 * Sets the factory that interns the expressions of the instances of this
+	 * solver. Interning is off by default.
+	 *
+	 * @param expressionFactory the factory, or {@code null} to turn interning off
+	 */
+	public void setExpressionFactory(ExpressionFactory expressionFactory) {
+		this.expressionFactory = expressionFactory;
+	}
+
+	/**
+	 * Returns the factory that interns the expressions of the instances of
+	 * this solver.
+	 *
+	 * @return the factory, or {@code null} if expressions are not interned
+	 */
+	public ExpressionFactory getExpressionFactory() {
+		return expressionFactory;
+	}
+
+	/**
+	 * Decides both branches of a condition: the conjunction of the prefix and
+	 * the condition, and the conjunction of the prefix and the negation of the
+	 * condition. The prefix is analysed once for both branches, and the
+	 * solver is only called for branches that cannot be decided from what is
+	 * known about the prefix; see {@link BranchPair}.
+	 *
+	 * @param serviceName the name of the service
+	 * @param prefix      the path condition so far
+	 * @param condition   the branch condition
+	 * @return the verdicts, and models where available, for both branches
+	 */
+	public BranchPair handleBranches(String serviceName, Instance prefix, Expression condition) {
+		return BranchPair.decide(this, serviceName, prefix, condition);
 	}
 
 	/**
@@ -259,6 +582,8 @@ public class Green {
 	/**
 	 * Generates a report using the given {@link Reporter}. This mechanism
 	 * allows clients to process the report in whatever way they see fit.
+	 * The report ends with the p50, p99 and p999 latencies, in nanoseconds,
+	 * of request processing, store accesses and solver calls.
 	 *
 	 * @param reporter the {@link Reporter} for the report
 	 */
@@ -275,6 +600,16 @@ public class Green {
 				ss.report(reporter);
 			}
 		}
+		Recorder r = recorder;
+		if (r != null) {
+			r.report(reporter);
+		}
+		slowQueries.report(reporter);
+		ExpressionFactory f = expressionFactory;
+		if (f != null) {
+			f.report(reporter);
+		}
+		metrics.reportHistograms(reporter);
 	}
 
 	/**
@@ -291,9 +626,23 @@ public class Green {
 				ss.shutdown();
 			}
 		}
+		Recorder r = recorder;
+		if (r != null) {
+			r.close();
+		}
 		store.flushAll();
 		store.shutdown();
 		taskManager.shutdown();
+		synchronized (this) {
+			if (jmx != null) {
+				jmx.unregister();
+				jmx = null;
+			}
+			if (openMetrics != null) {
+				openMetrics.stop();
+				openMetrics = null;
+			}
+		}
 	}
 
 }
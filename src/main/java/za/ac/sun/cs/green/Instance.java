@@ -1,13 +1,61 @@
 package za.ac.sun.cs.green;
 
 import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.ExpressionFactory;
 import za.ac.sun.cs.green.expr.Operation;
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class Instance {
 
+	/**
+	 * The slot ids of the satellite data keys registered so far.
+	 */
+	private static final Map<Object, Integer> SLOT_IDS = new ConcurrentHashMap<Object, Integer>();
+
+	/**
+	 * The satellite data keys registered so far, indexed by slot id.
+	 */
+	private static final List<Object> SLOT_KEYS = new CopyOnWriteArrayList<Object>();
+
+	/**
+	 * Keys that were used as satellite data keys without a slot id.
+	 */
+	private static final Set<Object> UNREGISTERED_KEYS = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * For each slot id, whether its key was used before it was registered,
+	 * so that values may still be held under the key. Replaced, not
+	 * changed, when a slot is registered.
+	 */
+	private static volatile boolean[] lateSlots = new boolean[0];
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Instance, AtomicReferenceArray> SLOTS_UPDATER =
+			AtomicReferenceFieldUpdater.newUpdater(Instance.class, AtomicReferenceArray.class, "slots");
+
+	/**
+	 * The source of instance ids.
+	 */
+	private static final AtomicLong NEXT_ID = new AtomicLong();
+
+	/**
+	 * The id of this instance, unique within the JVM.
+	 */
+	private final long id = NEXT_ID.incrementAndGet();
+
 	private final Green solver;
 
 	private Instance source;
@@ -18,24 +66,67 @@ public class Instance {
 
 	private Expression fullExpression;
 
-	private final Map<Object, Object> data;
+	/**
+	 * Satellite data for keys that have a slot id, indexed by slot id. It is
+	 * created when the first slot is set, with room for all the slots
+	 * registered by then.
+	 */
+	private volatile AtomicReferenceArray<Object> slots = null;
+
+	/**
+	 * Satellite data for other keys, and for slots registered after
+	 * {@link #slots} was created, created when it is first needed.
+	 */
+	private volatile Map<Object, Object> data = null;
+
+	private Batch batch = null;
+
+	/**
+	 * Store keys that the request of this instance found missing, created
+	 * when the first one is recorded.
+	 */
+	private volatile Set<String> storeMisses = null;
+
+	private Deadline deadline = null;
+
+	private Trace trace = null;
+
+	private Recorder.Stages stages = null;
 
 	public Instance(final Green solver, final Instance parent, final Expression expression) {
 		this.solver = solver;
 		this.source = (parent == null) ? null : parent.source;
 		this.parent = parent;
-		this.expression = expression;
+		this.expression = intern(solver, expression);
 		fullExpression = null;
-		data = new Hashtable<Object, Object>();
 	}
 
 	public Instance(final Green solver, final Instance source, final Instance parent, final Expression expression) {
 		this.solver = solver;
 		this.source = source;
 		this.parent = parent;
-		this.expression = expression;
+		this.expression = intern(solver, expression);
 		fullExpression = null;
-		data = new Hashtable<Object, Object>();
+	}
+
+	/**
+	 * Returns the interned form of an expression if the solver interns
+	 * expressions, and the expression itself otherwise.
+	 */
+	private static Expression intern(Green solver, Expression expression) {
+		ExpressionFactory factory = (solver == null) ? null : solver.getExpressionFactory();
+		return (factory == null) ? expression : factory.intern(expression);
+	}
+
+	/**
+	 * Returns the id of this instance. Ids are assigned in order of creation
+	 * and are unique within the JVM; they identify instances in profiling
+	 * events.
+	 *
+	 * @return the id of the instance
+	 */
+	public long getId() {
+		return id;
 	}
 
 	public Instance getSource() {
@@ -52,24 +143,356 @@ public class Instance {
 
 	public Expression getFullExpression() {
 		if (fullExpression == null) {
-			Instance p = getParent();
-			Expression e = (p == null) ? null : p.getFullExpression();
-			fullExpression = (e == null) ? expression : new Operation(Operation.Operator.AND, expression, e);
+			// Compute the missing full expressions from the top down, so that
+			// long chains of extensions do not recurse deeply
+			List<Instance> pending = new ArrayList<Instance>();
+			for (Instance i = this; (i != null) && (i.fullExpression == null); i = i.getParent()) {
+				pending.add(i);
+			}
+			for (int j = pending.size() - 1; j >= 0; j--) {
+				Instance i = pending.get(j);
+				Instance p = i.getParent();
+				Expression e = (p == null) ? null : p.fullExpression;
+				i.fullExpression = (e == null) ? i.expression : intern(i.solver, new Operation(Operation.Operator.AND, i.expression, e));
+			}
 		}
 		return fullExpression;
 	}
 
+	/**
+	 * Returns a new instance for the conjunction of this instance and the
+	 * given conjunct. This is how a path condition grows by one branch.
+	 * Services that analyse instances incrementally, such as the factorizer
+	 * and the slicer, start from the cached analysis of this instance, so
+	 * that the work per extension depends on the size of the conjunct rather
+	 * than on the length of the path.
+	 *
+	 * @param conjunct the new conjunct
+	 * @return the extended instance
+	 */
+	public Instance extend(Expression conjunct) {
+		return new Instance(solver, this, conjunct);
+	}
+
 	public Object request(String serviceName) {
 		source = this;
+		batch = null;
+		storeMisses = null;
 		return solver.handleRequest(serviceName, this);
 	}
 
+	/**
+	 * Decides, in one request, which of the two branches of the given
+	 * condition are feasible after this instance.
+	 *
+	 * @param serviceName the name of the service
+	 * @param condition   the branch condition
+	 * @return the verdicts, and models where available, for both branches
+	 * @see Green#handleBranches(String, Instance, Expression)
+	 */
+	public BranchPair requestBranches(String serviceName, Expression condition) {
+		return solver.handleBranches(serviceName, this, condition);
+	}
+
+	/**
+	 * Issues a request for this instance that must complete within the given
+	 * time. If it does not, the result is {@link Unknown#TIMEOUT}. The time
+	 * limit applies to this request only: the deadline set with
+	 * {@link #setDeadline(Deadline)}, if any, is restored afterwards.
+	 *
+	 * @param serviceName the name of the service
+	 * @param timeout     the time limit
+	 * @param unit        the unit of the time limit
+	 * @return the response, or {@link Unknown#TIMEOUT}
+	 */
+	public Object request(String serviceName, long timeout, TimeUnit unit) {
+		Deadline previous = deadline;
+		deadline = Deadline.after(timeout, unit);
+		try {
+			return request(serviceName);
+		} finally {
+			deadline = previous;
+		}
+	}
+
+	/**
+	 * Issues a request for this instance without blocking the caller.
+	 *
+	 * @param serviceName the name of the service
+	 * @return a future for the response; cancelling it cancels the request
+	 */
+	public CompletableFuture<Object> requestAsync(String serviceName) {
+		source = this;
+		batch = null;
+		storeMisses = null;
+		return solver.handleRequestAsync(serviceName, this);
+	}
+
+	/**
+	 * Sets the deadline for requests issued for this instance.
+	 *
+	 * @param deadline the deadline, or {@code null} for none
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns the deadline of the request that this instance belongs to, or
+	 * {@code null} if the request has no deadline.
+	 *
+	 * @return the deadline of the source instance or {@code null}
+	 */
+	public Deadline getDeadline() {
+		return (source == null) ? deadline : source.deadline;
+	}
+
+	/**
+	 * Attaches a trace to this instance, so that the request issued for it
+	 * is traced. Green attaches traces to sampled requests by itself; see
+	 * {@link Green#setTraceSampling(int)}.
+	 *
+	 * @param trace the trace, or {@code null} for none
+	 */
+	public void setTrace(Trace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Returns the trace of the request that this instance belongs to, or
+	 * {@code null} if the request is not traced.
+	 *
+	 * @return the trace of the source instance or {@code null}
+	 */
+	public Trace getTrace() {
+		return (source == null) ? trace : source.trace;
+	}
+
+	/**
+	 * Attaches the stage times of a recorded request to this instance.
+	 *
+	 * @param stages the stage times, or {@code null} for none
+	 */
+	void setStages(Recorder.Stages stages) {
+		this.stages = stages;
+	}
+
+	/**
+	 * Returns the stage times of the request that this instance belongs to,
+	 * or {@code null} if the request is not recorded.
+	 *
+	 * @return the stage times of the source instance or {@code null}
+	 */
+	Recorder.Stages getStages() {
+		return (source == null) ? stages : source.stages;
+	}
+
+	/**
+	 * Makes this instance the source of a request that belongs to the given
+	 * batch.
+	 *
+	 * @param batch the batch the request belongs to
+	 */
+	void prepare(Batch batch) {
+		source = this;
+		this.batch = batch;
+		storeMisses = null;
+	}
+
+	/**
+	 * Returns the batch that the request of this instance belongs to, or
+	 * {@code null} if it was issued on its own.
+	 *
+	 * @return the batch of the source instance or {@code null}
+	 */
+	public Batch getBatch() {
+		return (source == null) ? batch : source.batch;
+	}
+
+	/**
+	 * Records that the given keys were looked up in the store for the request
+	 * of this instance and were not found. A service that looks up keys in
+	 * bulk records its misses, so that the service that would look up a key
+	 * again skips the store (see {@link #takeStoreMiss(String)}).
+	 *
+	 * @param keys the keys that were not found
+	 */
+	public void addStoreMisses(Collection<String> keys) {
+		Instance s = (source == null) ? this : source;
+		Set<String> misses = s.storeMisses;
+		if (misses == null) {
+			synchronized (s) {
+				misses = s.storeMisses;
+				if (misses == null) {
+					misses = ConcurrentHashMap.newKeySet();
+					s.storeMisses = misses;
+				}
+			}
+		}
+		misses.addAll(keys);
+	}
+
+	/**
+	 * Returns whether the key was recorded as missing from the store for the
+	 * request of this instance, and forgets it, so that only the first lookup
+	 * after the bulk lookup is skipped.
+	 *
+	 * @param key the store key
+	 * @return {@code true} if and only if the key is known to be missing
+	 */
+	public boolean takeStoreMiss(String key) {
+		Set<String> misses = (source == null) ? storeMisses : source.storeMisses;
+		return (misses != null) && misses.remove(key);
+	}
+
+	/**
+	 * Returns the slot id of a satellite data key, assigning the next free id
+	 * if the key does not have one yet. Ids are dense and are never reused.
+	 * Services register their keys when they are created, so that the keys
+	 * used on every request are resolved to an id once. A value that was
+	 * stored under the key before it was registered is found in the slot,
+	 * until the slot is first set.
+	 *
+	 * @param key the satellite data key
+	 * @return the slot id of the key
+	 */
+	public static int registerSlot(Object key) {
+		Integer id = SLOT_IDS.get(key);
+		if (id == null) {
+			synchronized (SLOT_IDS) {
+				id = SLOT_IDS.get(key);
+				if (id == null) {
+					id = SLOT_IDS.size();
+					SLOT_KEYS.add(key);
+					SLOT_IDS.put(key, id);
+					boolean[] late = Arrays.copyOf(lateSlots, id + 1);
+					late[id] = UNREGISTERED_KEYS.contains(key);
+					lateSlots = late;
+				}
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Associates a value with a key. If the key has a slot id (see
+	 * {@link #registerSlot(Object)}), this is the same as
+	 * {@link #setSlotData(int, Object)}. A {@code null} value removes the key.
+	 *
+	 * @param key   the satellite data key
+	 * @param value the value
+	 */
 	public void setData(Object key, Object value) {
-		data.put(key, value);
+		Integer id = SLOT_IDS.get(key);
+		if (id == null) {
+			// Recorded before the key is checked again, so that a slot that
+			// is registered meanwhile knows about the value
+			UNREGISTERED_KEYS.add(key);
+			id = SLOT_IDS.get(key);
+		}
+		if (id != null) {
+			setSlotData(id.intValue(), value);
+		} else {
+			putData(key, value);
+		}
 	}
 
+	/**
+	 * Associates a value with a key in the map of satellite data.
+	 */
+	private void putData(Object key, Object value) {
+		Map<Object, Object> d = data;
+		if (d == null) {
+			if (value == null) {
+				return;
+			}
+			synchronized (this) {
+				d = data;
+				if (d == null) {
+					d = new ConcurrentHashMap<Object, Object>(4);
+					data = d;
+				}
+			}
+		}
+		if (value == null) {
+			d.remove(key);
+		} else {
+			d.put(key, value);
+		}
+	}
+
+	/**
+	 * Returns the value associated with a key, or {@code null} if there is
+	 * none.
+	 *
+	 * @param key the satellite data key
+	 * @return the value or {@code null}
+	 */
 	public Object getData(Object key) {
-		return data.get(key);
+		Integer id = SLOT_IDS.get(key);
+		if (id != null) {
+			return getSlotData(id.intValue());
+		}
+		Map<Object, Object> d = data;
+		return (d == null) ? null : d.get(key);
+	}
+
+	/**
+	 * Associates a value with a slot. A {@code null} value clears the slot.
+	 *
+	 * @param slot  the slot id returned by {@link #registerSlot(Object)}
+	 * @param value the value
+	 */
+	public void setSlotData(int slot, Object value) {
+		AtomicReferenceArray<Object> s = slots;
+		if (s == null) {
+			if ((value == null) && (data == null)) {
+				return;
+			}
+			s = new AtomicReferenceArray<Object>(SLOT_KEYS.size());
+			if (!SLOTS_UPDATER.compareAndSet(this, null, s)) {
+				s = slots;
+			}
+		}
+		if (slot >= s.length()) {
+			// The slot was registered after the array was created
+			putData(SLOT_KEYS.get(slot), value);
+			return;
+		}
+		s.set(slot, value);
+		if (isLate(slot)) {
+			Map<Object, Object> d = data;
+			if (d != null) {
+				d.remove(SLOT_KEYS.get(slot));
+			}
+		}
+	}
+
+	/**
+	 * Returns the value in a slot, or {@code null} if the slot is empty.
+	 *
+	 * @param slot the slot id returned by {@link #registerSlot(Object)}
+	 * @return the value or {@code null}
+	 */
+	public Object getSlotData(int slot) {
+		AtomicReferenceArray<Object> s = slots;
+		if ((s != null) && (slot < s.length())) {
+			Object value = s.get(slot);
+			if ((value != null) || !isLate(slot)) {
+				return value;
+			}
+			// The key was used before it was registered
+		}
+		Map<Object, Object> d = data;
+		return (d == null) ? null : d.get(SLOT_KEYS.get(slot));
+	}
+
+	/**
+	 * Returns whether the key of a slot was used before it was registered.
+	 */
+	private static boolean isLate(int slot) {
+		boolean[] late = lateSlots;
+		return (slot < late.length) && late[slot];
 	}
 
 	@Override
@@ -77,7 +500,8 @@ public class Instance {
 		if (expression == null) {
 			return 0;
 		} else {
-			return expression.getCachedString().hashCode();
+			return expression.hashCode();
 		}
 	}
+
 }
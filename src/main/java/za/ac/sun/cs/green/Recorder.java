@@ -0,0 +1,1145 @@
+package za.ac.sun.cs.green;
+
+import org.apfloat.Apint;
+import za.ac.sun.cs.green.expr.BoolVariable;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.IntegerConstant;
+import za.ac.sun.cs.green.expr.IntegerVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.RealConstant;
+import za.ac.sun.cs.green.expr.RealVariable;
+import za.ac.sun.cs.green.expr.StringConstant;
+import za.ac.sun.cs.green.expr.StringVariable;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the requests handled by a {@link Green} solver in a binary log, so
+ * that real traffic can be replayed offline to tune stores and solvers. Every
+ * request is logged with the name of the service, the full expression of the
+ * instance, the result, the total latency and the time spent in each stage of
+ * the pipeline (summed over the calls of
+ * {@link Service#processRequest(Instance)} for each service).
+ * <p>
+ * The request thread encodes the record and offers it to a bounded lock-free
+ * ring buffer; a single writer thread drains the buffer into memory-mapped log
+ * files. When the buffer is full the record is dropped rather than blocking
+ * the request, and counted (see {@link #getDroppedCount()}).
+ * <p>
+ * The log is a sequence of files {@code <prefix>-00001.grec},
+ * {@code <prefix>-00002.grec}, ... in a directory. A file is rotated when the
+ * next record does not fit in it, and the oldest files are deleted so that at
+ * most a given number are kept. Numbering continues after the files already in
+ * the directory. Each file starts with a header that holds the format version
+ * and the names of the operators; each record is an {@code int} length
+ * followed by the encoded record, and a length of 0 marks the end. Integers
+ * are variable-length, expressions are encoded in prefix order, and each
+ * variable is spelt out once per record and referred to by index afterwards.
+ * Files are read with {@link Reader}.
+ * <p>
+ * Recording is turned on with {@link Green#setRecorder(Recorder)}, or with the
+ * {@code green.recorder.*} properties of
+ * {@link za.ac.sun.cs.green.util.Configuration}.
+ */
+public final class Recorder implements Closeable {
+
+	/**
+	 * The extension of log files.
+	 */
+	public static final String EXTENSION = ".grec";
+
+	private static final byte[] MAGIC = "GREENREC".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The header of every log file after the magic number: the version and
+	 * the names of the operators, whose ordinals are used in records.
+	 */
+	private static final byte[] HEADER = header();
+
+	// Expression tags
+	private static final int OPERATION = 0;
+	private static final int INT_CONSTANT = 1;
+	private static final int INTEGER_CONSTANT = 2;
+	private static final int REAL_CONSTANT = 3;
+	private static final int STRING_CONSTANT = 4;
+	private static final int VARIABLE_REFERENCE = 5;
+	private static final int INT_VARIABLE = 6;
+	private static final int INTEGER_VARIABLE = 7;
+	private static final int REAL_VARIABLE = 8;
+	private static final int BOOL_VARIABLE = 9;
+	private static final int STRING_VARIABLE = 10;
+
+	// Value tags
+	private static final int NULL = 0;
+	private static final int BOOLEAN = 1;
+	private static final int UNKNOWN = 2;
+	private static final int INTEGER = 3;
+	private static final int LONG = 4;
+	private static final int DOUBLE = 5;
+	private static final int STRING = 6;
+	private static final int APINT = 7;
+	private static final int BIG_INTEGER = 8;
+	private static final int EXPRESSION = 9;
+	private static final int MODEL = 10;
+	private static final int OTHER = 11;
+
+	/**
+	 * The time spent in each stage of one request. Stages are few, so they
+	 * are kept in short parallel arrays that are searched linearly.
+	 */
+	static final class Stages {
+
+		private final String serviceName;
+
+		private final Instance instance;
+
+		private final long timestamp = System.currentTimeMillis();
+
+		private final long start = System.nanoTime();
+
+		private String[] names = new String[4];
+
+		private long[] nanos = new long[4];
+
+		private int size = 0;
+
+		private Stages(String serviceName, Instance instance) {
+			this.serviceName = serviceName;
+			this.instance = instance;
+		}
+
+		/**
+		 * Adds the time of one call of a stage. Stages may run concurrently
+		 * on the worker threads of a parallel task manager.
+		 *
+		 * @param name    the name of the stage
+		 * @param elapsed the time of the call in nanoseconds
+		 */
+		synchronized void add(String name, long elapsed) {
+			for (int i = 0; i < size; i++) {
+				if (names[i].equals(name)) {
+					nanos[i] += elapsed;
+					return;
+				}
+			}
+			if (size == names.length) {
+				names = Arrays.copyOf(names, 2 * size);
+				nanos = Arrays.copyOf(nanos, 2 * size);
+			}
+			names[size] = name;
+			nanos[size++] = elapsed;
+		}
+
+	}
+
+	/**
+	 * A bounded ring buffer for many producers and one consumer. Producers
+	 * claim a slot by advancing the tail and then publish their record in it;
+	 * the consumer takes records in order, and stops at a claimed slot that
+	 * has not been published yet.
+	 */
+	private static final class Ring {
+
+		private final AtomicReferenceArray<byte[]> slots;
+
+		private final int mask;
+
+		private final AtomicLong tail = new AtomicLong();
+
+		private volatile long head = 0;
+
+		private Ring(int capacity) {
+			int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+			slots = new AtomicReferenceArray<byte[]>(size);
+			mask = size - 1;
+		}
+
+		private boolean offer(byte[] record) {
+			long t;
+			do {
+				t = tail.get();
+				if (t - head > mask) {
+					return false;
+				}
+			} while (!tail.compareAndSet(t, t + 1));
+			slots.lazySet((int) (t & mask), record);
+			return true;
+		}
+
+		private byte[] poll() {
+			long h = head;
+			int index = (int) (h & mask);
+			byte[] record = slots.get(index);
+			if (record != null) {
+				slots.lazySet(index, null);
+				head = h + 1;
+			}
+			return record;
+		}
+
+		private int size() {
+			return (int) (tail.get() - head);
+		}
+
+	}
+
+	private final File directory;
+
+	private final String prefix;
+
+	private final int maxFileSize;
+
+	private final int maxFiles;
+
+	private final Ring ring;
+
+	private final Thread writer;
+
+	private final Deque<File> files = new ArrayDeque<File>();
+
+	private int sequence;
+
+	private RandomAccessFile file = null;
+
+	private MappedByteBuffer buffer = null;
+
+	private final AtomicLong offered = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile long processed = 0;
+
+	private volatile long written = 0;
+
+	private volatile long bytesWritten = 0;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a recorder and starts its writer thread. The first log file is
+	 * created when the first record is written.
+	 *
+	 * @param directory   the directory of the log files, created if necessary
+	 * @param prefix      the prefix of the names of the log files
+	 * @param bufferSize  the number of records that the ring buffer holds,
+	 *                    rounded up to a power of two
+	 * @param maxFileSize the size of each log file in bytes
+	 * @param maxFiles    the number of log files to keep, or 0 to keep all
+	 * @throws IOException if the directory cannot be created
+	 */
+	public Recorder(File directory, String prefix, int bufferSize, int maxFileSize, int maxFiles) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create directory " + directory);
+		}
+		if (maxFileSize < 1024) {
+			throw new IllegalArgumentException("maximum file size too small: " + maxFileSize);
+		}
+		this.directory = directory;
+		this.prefix = prefix;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		ring = new Ring(bufferSize);
+		List<File> existing = listFiles(directory, prefix);
+		sequence = existing.isEmpty() ? 0 : sequenceOf(existing.get(existing.size() - 1), prefix);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "green-recorder-" + prefix);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the log files in a directory with the given prefix, in the
+	 * order in which they were written.
+	 *
+	 * @param directory the directory of the log files
+	 * @param prefix    the prefix of the names of the log files
+	 * @return the log files, oldest first
+	 */
+	public static List<File> listFiles(File directory, final String prefix) {
+		File[] found = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix + "-") && name.endsWith(EXTENSION)
+						&& name.substring(prefix.length() + 1, name.length() - EXTENSION.length()).matches("[0-9]+");
+			}
+		});
+		if (found == null) {
+			return Collections.emptyList();
+		}
+		List<File> result = new ArrayList<File>(Arrays.asList(found));
+		Collections.sort(result, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Integer.compare(sequenceOf(a, prefix), sequenceOf(b, prefix));
+			}
+		});
+		return result;
+	}
+
+	private static byte[] header() {
+		Encoder header = new Encoder();
+		header.writeVarLong(VERSION);
+		Operation.Operator[] operators = Operation.Operator.values();
+		header.writeVarLong(operators.length);
+		for (Operation.Operator operator : operators) {
+			header.writeString(operator.name());
+		}
+		return header.toByteArray();
+	}
+
+	private static int sequenceOf(File file, String prefix) {
+		String name = file.getName();
+		return Integer.parseInt(name.substring(prefix.length() + 1, name.length() - EXTENSION.length()));
+	}
+
+	// ======================================================================
+	//
+	// RECORDING
+	//
+	// ======================================================================
+
+	/**
+	 * Starts recording a request by attaching a {@link Stages} object to its
+	 * source instance.
+	 */
+	Stages begin(String serviceName, Instance instance) {
+		Stages stages = new Stages(serviceName, instance);
+		instance.setStages(stages);
+		return stages;
+	}
+
+	/**
+	 * Encodes a completed request and offers it to the ring buffer. This
+	 * never blocks.
+	 */
+	void end(Stages stages, Object result) {
+		long latency = System.nanoTime() - stages.start;
+		stages.instance.setStages(null);
+		if (closed) {
+			return;
+		}
+		byte[] record;
+		try {
+			record = encode(stages, result, latency);
+		} catch (IllegalArgumentException x) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (ring.offer(record)) {
+			offered.incrementAndGet();
+			if (ring.size() > ring.mask / 2) {
+				LockSupport.unpark(writer);
+			}
+		} else {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private static byte[] encode(Stages stages, Object result, long latency) {
+		Encoder out = new Encoder();
+		out.writeLong(stages.timestamp);
+		out.writeVarLong(latency);
+		out.writeString(stages.serviceName);
+		out.writeExpression(stages.instance.getFullExpression());
+		out.writeValue(result);
+		synchronized (stages) {
+			out.writeVarLong(stages.size);
+			for (int i = 0; i < stages.size; i++) {
+				out.writeString(stages.names[i]);
+				out.writeVarLong(stages.nanos[i]);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Waits until every record offered so far has been written, and forces
+	 * the current log file to disk.
+	 */
+	public void flush() {
+		long target = offered.get();
+		while ((processed < target) && writer.isAlive()) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(100000L);
+		}
+		synchronized (this) {
+			if (buffer != null) {
+				buffer.force();
+			}
+		}
+	}
+
+	/**
+	 * Stops recording: the records in the ring buffer are written, the writer
+	 * thread ends and the current log file is trimmed to its contents.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			closeFile();
+		}
+	}
+
+	// ======================================================================
+	//
+	// WRITING
+	//
+	// ======================================================================
+
+	private void drain() {
+		while (true) {
+			byte[] record = ring.poll();
+			if (record != null) {
+				synchronized (this) {
+					if (write(record)) {
+						written++;
+					}
+				}
+				processed++;
+			} else if (closed && (ring.size() == 0)) {
+				return;
+			} else {
+				LockSupport.parkNanos(this, 1000000L);
+			}
+		}
+	}
+
+	private boolean write(byte[] record) {
+		// Every file keeps room for the end marker
+		int needed = 4 + record.length;
+		if (MAGIC.length + 4 + HEADER.length + needed + 4 > maxFileSize) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		try {
+			if ((buffer == null) || (buffer.remaining() < needed + 4)) {
+				closeFile();
+				openFile();
+			}
+			buffer.putInt(record.length);
+			buffer.put(record);
+			bytesWritten += needed;
+			return true;
+		} catch (IOException x) {
+			closeFile();
+			dropped.incrementAndGet();
+			return false;
+		}
+	}
+
+	private void openFile() throws IOException {
+		File f = new File(directory, String.format("%s-%05d%s", prefix, ++sequence, EXTENSION));
+		file = new RandomAccessFile(f, "rw");
+		buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxFileSize);
+		buffer.put(MAGIC);
+		buffer.putInt(HEADER.length);
+		buffer.put(HEADER);
+		bytesWritten += MAGIC.length + 4 + HEADER.length;
+		files.addLast(f);
+		while ((maxFiles > 0) && (files.size() > maxFiles)) {
+			files.removeFirst().delete();
+		}
+	}
+
+	private void closeFile() {
+		if (file != null) {
+			try {
+				int size = buffer.position();
+				buffer.force();
+				file.getChannel().truncate(size + 4);
+				file.close();
+			} catch (IOException x) {
+				// The log is still readable up to the end marker
+			}
+			file = null;
+			buffer = null;
+		}
+	}
+
+	// ======================================================================
+	//
+	// STATISTICS
+	//
+	// ======================================================================
+
+	/**
+	 * Returns the number of records that have been written.
+	 *
+	 * @return the number of records written
+	 */
+	public long getRecordCount() {
+		return written;
+	}
+
+	/**
+	 * Returns the number of requests that were not recorded because the ring
+	 * buffer was full, the record did not fit in a log file or could not be
+	 * encoded, or the log file could not be written.
+	 *
+	 * @return the number of records dropped
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Returns the log files written by this recorder that have not been
+	 * deleted, oldest first.
+	 *
+	 * @return the log files
+	 */
+	public synchronized List<File> getFiles() {
+		return new ArrayList<File>(files);
+	}
+
+	/**
+	 * Reports the statistics of this recorder.
+	 *
+	 * @param reporter the reporter
+	 */
+	public void report(Reporter reporter) {
+		reporter.report(getClass().getSimpleName(), "recordCount = " + written);
+		reporter.report(getClass().getSimpleName(), "droppedCount = " + dropped.get());
+		reporter.report(getClass().getSimpleName(), "bufferedCount = " + ring.size());
+		reporter.report(getClass().getSimpleName(), "bytesWritten = " + bytesWritten);
+	}
+
+	// ======================================================================
+	//
+	// ENCODING
+	//
+	// ======================================================================
+
+	private static final class Encoder {
+
+		private byte[] bytes = new byte[256];
+
+		private int size = 0;
+
+		private final Map<Variable, Integer> variables = new IdentityHashMap<Variable, Integer>();
+
+		private void ensure(int n) {
+			if (size + n > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + n));
+			}
+		}
+
+		private void writeByte(int value) {
+			ensure(1);
+			bytes[size++] = (byte) value;
+		}
+
+		private void writeLong(long value) {
+			ensure(8);
+			for (int i = 56; i >= 0; i -= 8) {
+				bytes[size++] = (byte) (value >>> i);
+			}
+		}
+
+		private void writeVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		private void writeSignedVarLong(long value) {
+			writeVarLong((value << 1) ^ (value >> 63));
+		}
+
+		private void writeString(String value) {
+			byte[] b = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(b.length);
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, size, b.length);
+			size += b.length;
+		}
+
+		/**
+		 * Writes the flags for two optional bounds, followed by the bounds
+		 * that are present.
+		 */
+		private void writeBounds(Long lower, Long upper) {
+			writeByte(((lower == null) ? 0 : 1) | ((upper == null) ? 0 : 2));
+			if (lower != null) {
+				writeSignedVarLong(lower);
+			}
+			if (upper != null) {
+				writeSignedVarLong(upper);
+			}
+		}
+
+		/**
+		 * Writes an expression in prefix order. Path conditions can be very
+		 * deep, so the expression is walked with an explicit stack.
+		 */
+		private void writeExpression(Expression expression) {
+			Deque<Expression> pending = new ArrayDeque<Expression>();
+			pending.push(expression);
+			while (!pending.isEmpty()) {
+				Expression e = pending.pop();
+				if (e instanceof Operation) {
+					Operation operation = (Operation) e;
+					int n = operation.getOperatandCount();
+					writeByte(OPERATION);
+					writeVarLong(operation.getOperator().ordinal());
+					writeVarLong(n);
+					for (int i = n - 1; i >= 0; i--) {
+						pending.push(operation.getOperand(i));
+					}
+				} else if (e instanceof Variable) {
+					writeVariable((Variable) e);
+				} else if (e instanceof IntConstant) {
+					writeByte(INT_CONSTANT);
+					writeSignedVarLong(((IntConstant) e).getValue());
+				} else if (e instanceof IntegerConstant) {
+					writeByte(INTEGER_CONSTANT);
+					writeSignedVarLong(((IntegerConstant) e).getValue());
+					writeVarLong(((IntegerConstant) e).getSize());
+				} else if (e instanceof RealConstant) {
+					writeByte(REAL_CONSTANT);
+					writeLong(Double.doubleToLongBits(((RealConstant) e).getValue()));
+				} else if (e instanceof StringConstant) {
+					writeByte(STRING_CONSTANT);
+					writeString(((StringConstant) e).getValue());
+				} else {
+					throw new IllegalArgumentException("cannot encode " + ((e == null) ? null : e.getClass().getName()));
+				}
+			}
+		}
+
+		private void writeVariable(Variable variable) {
+			Integer index = variables.get(variable);
+			if (index != null) {
+				writeByte(VARIABLE_REFERENCE);
+				writeVarLong(index);
+				return;
+			}
+			variables.put(variable, variables.size());
+			if (variable instanceof IntVariable) {
+				IntVariable v = (IntVariable) variable;
+				writeByte(INT_VARIABLE);
+				writeString(v.getName());
+				writeBounds((v.getLowerBound() == null) ? null : Long.valueOf(v.getLowerBound()),
+						(v.getUpperBound() == null) ? null : Long.valueOf(v.getUpperBound()));
+			} else if (variable instanceof IntegerVariable) {
+				IntegerVariable v = (IntegerVariable) variable;
+				writeByte(INTEGER_VARIABLE);
+				writeString(v.getName());
+				writeBounds(v.getLowerBound(), v.getUpperBound());
+				writeVarLong((v.getSize() == null) ? 0 : v.getSize() + 1);
+			} else if (variable instanceof RealVariable) {
+				RealVariable v = (RealVariable) variable;
+				writeByte(REAL_VARIABLE);
+				writeString(v.getName());
+				writeByte(((v.getLowerBound() == null) ? 0 : 1) | ((v.getUpperBound() == null) ? 0 : 2));
+				if (v.getLowerBound() != null) {
+					writeLong(Double.doubleToLongBits(v.getLowerBound()));
+				}
+				if (v.getUpperBound() != null) {
+					writeLong(Double.doubleToLongBits(v.getUpperBound()));
+				}
+			} else if (variable instanceof BoolVariable) {
+				writeByte(BOOL_VARIABLE);
+				writeString(variable.getName());
+			} else if (variable instanceof StringVariable) {
+				writeByte(STRING_VARIABLE);
+				writeString(variable.getName());
+			} else {
+				throw new IllegalArgumentException("cannot encode " + variable.getClass().getName());
+			}
+		}
+
+		private void writeValue(Object value) {
+			if (value == null) {
+				writeByte(NULL);
+			} else if (value instanceof Boolean) {
+				writeByte(BOOLEAN);
+				writeByte(((Boolean) value) ? 1 : 0);
+			} else if (value instanceof Unknown) {
+				writeByte(UNKNOWN);
+				writeString(((Unknown) value).name());
+			} else if (value instanceof Integer) {
+				writeByte(INTEGER);
+				writeSignedVarLong((Integer) value);
+			} else if (value instanceof Long) {
+				writeByte(LONG);
+				writeSignedVarLong((Long) value);
+			} else if (value instanceof Double) {
+				writeByte(DOUBLE);
+				writeLong(Double.doubleToLongBits((Double) value));
+			} else if (value instanceof String) {
+				writeByte(STRING);
+				writeString((String) value);
+			} else if (value instanceof Apint) {
+				writeByte(APINT);
+				writeString(value.toString());
+			} else if (value instanceof BigInteger) {
+				writeByte(BIG_INTEGER);
+				writeString(value.toString());
+			} else if (value instanceof Expression) {
+				writeByte(EXPRESSION);
+				writeExpression((Expression) value);
+			} else if ((value instanceof Map) && isModel((Map<?, ?>) value)) {
+				Map<?, ?> model = (Map<?, ?>) value;
+				writeByte(MODEL);
+				writeVarLong(model.size());
+				for (Map.Entry<?, ?> entry : model.entrySet()) {
+					writeVariable((Variable) entry.getKey());
+					writeValue(entry.getValue());
+				}
+			} else {
+				writeByte(OTHER);
+				writeString(value.toString());
+			}
+		}
+
+		private static boolean isModel(Map<?, ?> map) {
+			for (Object key : map.keySet()) {
+				if (!(key instanceof Variable)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+
+	}
+
+	// ======================================================================
+	//
+	// READING
+	//
+	// ======================================================================
+
+	/**
+	 * One recorded request.
+	 */
+	public static final class Record {
+
+		private final long timestamp;
+
+		private final long latency;
+
+		private final String serviceName;
+
+		private final Expression expression;
+
+		private final Object result;
+
+		private final Map<String, Long> stages;
+
+		private Record(long timestamp, long latency, String serviceName, Expression expression, Object result,
+				Map<String, Long> stages) {
+			this.timestamp = timestamp;
+			this.latency = latency;
+			this.serviceName = serviceName;
+			this.expression = expression;
+			this.result = result;
+			this.stages = Collections.unmodifiableMap(stages);
+		}
+
+		/**
+		 * Returns when the request was issued.
+		 *
+		 * @return the time in milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns how long the request took.
+		 *
+		 * @return the latency in nanoseconds
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Returns the name of the requested service.
+		 *
+		 * @return the service name
+		 */
+		public String getServiceName() {
+			return serviceName;
+		}
+
+		/**
+		 * Returns the full expression of the instance. Occurrences of the
+		 * same variable are the same object.
+		 *
+		 * @return the expression
+		 */
+		public Expression getExpression() {
+			return expression;
+		}
+
+		/**
+		 * Returns the result of the request. Results of types that the log
+		 * does not know are returned as their string form.
+		 *
+		 * @return the result
+		 */
+		public Object getResult() {
+			return result;
+		}
+
+		/**
+		 * Returns the time spent in each stage of the request.
+		 *
+		 * @return the time in nanoseconds for each stage, in the order in
+		 * which the stages were first entered
+		 */
+		public Map<String, Long> getStages() {
+			return stages;
+		}
+
+	}
+
+	/**
+	 * Reads the records of one log file.
+	 */
+	public static final class Reader implements Closeable {
+
+		private final RandomAccessFile file;
+
+		private final ByteBuffer buffer;
+
+		private final Operation.Operator[] operators;
+
+		/**
+		 * Opens a log file.
+		 *
+		 * @param f the log file
+		 * @throws IOException if the file cannot be read or is not a log file
+		 */
+		public Reader(File f) throws IOException {
+			file = new RandomAccessFile(f, "r");
+			try {
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+				byte[] magic = new byte[MAGIC.length];
+				buffer.get(magic);
+				if (!Arrays.equals(magic, MAGIC)) {
+					throw new IOException("not a recorder log: " + f);
+				}
+				int length = buffer.getInt();
+				Decoder header = new Decoder(slice(buffer, length), null);
+				long version = header.readVarLong();
+				if (version != VERSION) {
+					throw new IOException("unsupported recorder log version " + version + ": " + f);
+				}
+				operators = new Operation.Operator[(int) header.readVarLong()];
+				for (int i = 0; i < operators.length; i++) {
+					String name = header.readString();
+					try {
+						operators[i] = Operation.Operator.valueOf(name);
+					} catch (IllegalArgumentException x) {
+						// Left null; records that use the operator cannot be read
+					}
+				}
+			} catch (BufferUnderflowException x) {
+				file.close();
+				throw new IOException("truncated recorder log: " + f);
+			} catch (IOException x) {
+				file.close();
+				throw x;
+			}
+		}
+
+		private static ByteBuffer slice(ByteBuffer buffer, int length) {
+			ByteBuffer b = buffer.slice();
+			b.limit(length);
+			buffer.position(buffer.position() + length);
+			return b;
+		}
+
+		/**
+		 * Returns the next record of the file.
+		 *
+		 * @return the next record, or {@code null} at the end of the file
+		 * @throws IOException if the record cannot be decoded
+		 */
+		public Record next() throws IOException {
+			if (buffer.remaining() < 4) {
+				return null;
+			}
+			int length = buffer.getInt();
+			if ((length <= 0) || (length > buffer.remaining())) {
+				return null;
+			}
+			Decoder in = new Decoder(slice(buffer, length), operators);
+			try {
+				long timestamp = in.readLong();
+				long latency = in.readVarLong();
+				String serviceName = in.readString();
+				Expression expression = in.readExpression();
+				Object result = in.readValue();
+				int n = (int) in.readVarLong();
+				Map<String, Long> stages = new LinkedHashMap<String, Long>();
+				for (int i = 0; i < n; i++) {
+					String name = in.readString();
+					stages.put(name, in.readVarLong());
+				}
+				return new Record(timestamp, latency, serviceName, expression, result, stages);
+			} catch (BufferUnderflowException x) {
+				throw new IOException("truncated record");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+
+	}
+
+	private static final class Decoder {
+
+		private final ByteBuffer buffer;
+
+		private final Operation.Operator[] operators;
+
+		private final List<Variable> variables = new ArrayList<Variable>();
+
+		private Decoder(ByteBuffer buffer, Operation.Operator[] operators) {
+			this.buffer = buffer;
+			this.operators = operators;
+		}
+
+		private long readLong() {
+			return buffer.getLong();
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+		}
+
+		private long readSignedVarLong() {
+			long value = readVarLong();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private String readString() {
+			byte[] b = new byte[(int) readVarLong()];
+			buffer.get(b);
+			return new String(b, StandardCharsets.UTF_8);
+		}
+
+		private Long readBound(int flags, int bit) {
+			return ((flags & bit) == 0) ? null : readSignedVarLong();
+		}
+
+		/**
+		 * The operands collected so far for an operation.
+		 */
+		private static final class Frame {
+
+			private final Operation.Operator operator;
+
+			private final Expression[] operands;
+
+			private int count = 0;
+
+			private Frame(Operation.Operator operator, int arity) {
+				this.operator = operator;
+				operands = new Expression[arity];
+			}
+
+		}
+
+		private Expression readExpression() throws IOException {
+			Deque<Frame> frames = new ArrayDeque<Frame>();
+			while (true) {
+				Expression e;
+				int tag = buffer.get();
+				if (tag == OPERATION) {
+					int ordinal = (int) readVarLong();
+					Operation.Operator operator = (ordinal < operators.length) ? operators[ordinal] : null;
+					if (operator == null) {
+						throw new IOException("unknown operator " + ordinal);
+					}
+					Frame frame = new Frame(operator, (int) readVarLong());
+					if (frame.operands.length > 0) {
+						frames.push(frame);
+						continue;
+					}
+					e = new Operation(operator);
+				} else {
+					e = readLeaf(tag);
+				}
+				while (true) {
+					Frame frame = frames.peek();
+					if (frame == null) {
+						return e;
+					}
+					frame.operands[frame.count++] = e;
+					if (frame.count < frame.operands.length) {
+						break;
+					}
+					frames.pop();
+					e = new Operation(frame.operator, frame.operands);
+				}
+			}
+		}
+
+		private Expression readLeaf(int tag) throws IOException {
+			switch (tag) {
+				case INT_CONSTANT:
+					return new IntConstant((int) readSignedVarLong());
+				case INTEGER_CONSTANT:
+					long value = readSignedVarLong();
+					return new IntegerConstant(value, (int) readVarLong());
+				case REAL_CONSTANT:
+					return new RealConstant(Double.longBitsToDouble(readLong()));
+				case STRING_CONSTANT:
+					return new StringConstant(readString());
+				default:
+					return readVariable(tag);
+			}
+		}
+
+		private Variable readVariable(int tag) throws IOException {
+			if (tag == VARIABLE_REFERENCE) {
+				int index = (int) readVarLong();
+				if (index >= variables.size()) {
+					throw new IOException("unknown variable " + index);
+				}
+				return variables.get(index);
+			}
+			Variable variable;
+			String name = readString();
+			switch (tag) {
+				case INT_VARIABLE: {
+					int flags = buffer.get();
+					Long lower = readBound(flags, 1);
+					Long upper = readBound(flags, 2);
+					variable = new IntVariable(name, (lower == null) ? null : lower.intValue(),
+							(upper == null) ? null : upper.intValue());
+					break;
+				}
+				case INTEGER_VARIABLE: {
+					int flags = buffer.get();
+					Long lower = readBound(flags, 1);
+					Long upper = readBound(flags, 2);
+					int size = (int) readVarLong();
+					variable = new IntegerVariable(name, lower, upper, (size == 0) ? null : size - 1);
+					break;
+				}
+				case REAL_VARIABLE: {
+					int flags = buffer.get();
+					Double lower = ((flags & 1) == 0) ? null : Double.longBitsToDouble(readLong());
+					Double upper = ((flags & 2) == 0) ? null : Double.longBitsToDouble(readLong());
+					variable = new RealVariable(name, lower, upper);
+					break;
+				}
+				case BOOL_VARIABLE:
+					variable = new BoolVariable(name);
+					break;
+				case STRING_VARIABLE:
+					variable = new StringVariable(name);
+					break;
+				default:
+					throw new IOException("unknown expression tag " + tag);
+			}
+			variables.add(variable);
+			return variable;
+		}
+
+		private Object readValue() throws IOException {
+			int tag = buffer.get();
+			switch (tag) {
+				case NULL:
+					return null;
+				case BOOLEAN:
+					return buffer.get() != 0;
+				case UNKNOWN:
+					return Unknown.valueOf(readString());
+				case INTEGER:
+					return (int) readSignedVarLong();
+				case LONG:
+					return readSignedVarLong();
+				case DOUBLE:
+					return Double.longBitsToDouble(readLong());
+				case STRING:
+				case OTHER:
+					return readString();
+				case APINT:
+					return new Apint(readString());
+				case BIG_INTEGER:
+					return new BigInteger(readString());
+				case EXPRESSION:
+					return readExpression();
+				case MODEL:
+					int n = (int) readVarLong();
+					Map<Variable, Object> model = new HashMap<Variable, Object>();
+					for (int i = 0; i < n; i++) {
+						Variable variable = readVariable(buffer.get());
+						model.put(variable, readValue());
+					}
+					return model;
+				default:
+					throw new IOException("unknown value tag " + tag);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,449 @@
+package za.ac.sun.cs.green;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The tree of time spent in each stage of one request. A trace is attached to
+ * the source instance of a sampled request (see
+ * {@link Green#setTraceSampling(int)}, or {@link Instance#setTrace(Trace)} to
+ * trace a particular request), and the execution plan records a span for
+ * every call of {@link Service#processRequest(Instance)},
+ * {@link Service#childDone(Instance, Service, Instance, Object)} and
+ * {@link Service#allChildrenDone(Instance, Object)} made for it, together with
+ * the instance and sub-instance involved.
+ * <p>
+ * The span of a {@code processRequest} call is the parent of the spans of the
+ * child services for the sub-instances that it returned; {@code childDone} and
+ * {@code allChildrenDone} spans are children of the {@code processRequest}
+ * span of the same service and instance. A service that calls another one
+ * directly, for example to collect store keys through the execution plan,
+ * gets the spans of those calls as children. The tree can be exported as JSON
+ * ({@link #toJson()}) or in the Chrome trace-event format
+ * ({@link #toChromeTrace()}), which {@code chrome://tracing} and Perfetto
+ * display as a flame chart with one row per thread.
+ * <p>
+ * Spans may be recorded concurrently by the worker threads of a parallel task
+ * manager. Times are nanoseconds since the start of the trace.
+ */
+public final class Trace {
+
+	/**
+	 * One timed call.
+	 */
+	public static final class Span {
+
+		private final Span parent;
+
+		private final String service;
+
+		private final String phase;
+
+		private final long instanceId;
+
+		private final long subInstanceId;
+
+		private final String thread;
+
+		private final long threadId;
+
+		private final long start;
+
+		private volatile long end = -1;
+
+		/**
+		 * The {@code processRequest} span that was open on the same thread
+		 * when this one started.
+		 */
+		private Span enclosing = null;
+
+		private final List<Span> children = new ArrayList<Span>();
+
+		private Span(Span parent, String service, String phase, long instanceId, long subInstanceId, long start) {
+			this.parent = parent;
+			this.service = service;
+			this.phase = phase;
+			this.instanceId = instanceId;
+			this.subInstanceId = subInstanceId;
+			Thread current = Thread.currentThread();
+			thread = current.getName();
+			threadId = current.getId();
+			this.start = start;
+			if (parent != null) {
+				synchronized (parent.children) {
+					parent.children.add(this);
+				}
+			}
+		}
+
+		/**
+		 * Returns the enclosing span, or {@code null} for the root.
+		 *
+		 * @return the parent span
+		 */
+		public Span getParent() {
+			return parent;
+		}
+
+		/**
+		 * Returns the name of the service, or of the requested service for the
+		 * root span.
+		 *
+		 * @return the service name
+		 */
+		public String getService() {
+			return service;
+		}
+
+		/**
+		 * Returns the kind of call: {@code request} for the root span, and
+		 * otherwise {@code processRequest}, {@code childDone} or
+		 * {@code allChildrenDone}.
+		 *
+		 * @return the phase
+		 */
+		public String getPhase() {
+			return phase;
+		}
+
+		/**
+		 * Returns the id of the instance that the call was made for.
+		 *
+		 * @return the instance id
+		 */
+		public long getInstanceId() {
+			return instanceId;
+		}
+
+		/**
+		 * Returns the id of the sub-instance whose result was passed to a
+		 * {@code childDone} call, or 0.
+		 *
+		 * @return the sub-instance id or 0
+		 */
+		public long getSubInstanceId() {
+			return subInstanceId;
+		}
+
+		/**
+		 * Returns the name of the thread that made the call.
+		 *
+		 * @return the thread name
+		 */
+		public String getThread() {
+			return thread;
+		}
+
+		/**
+		 * Returns the start of the call, relative to the start of the trace.
+		 *
+		 * @return the start in nanoseconds
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the duration of the call.
+		 *
+		 * @return the duration in nanoseconds, or -1 if the call has not ended
+		 */
+		public long getDuration() {
+			long e = end;
+			return (e < 0) ? -1 : e - start;
+		}
+
+		/**
+		 * Returns the spans of the calls made within this one, in the order in
+		 * which they started.
+		 *
+		 * @return the child spans
+		 */
+		public List<Span> getChildren() {
+			synchronized (children) {
+				return new ArrayList<Span>(children);
+			}
+		}
+
+	}
+
+	/**
+	 * A pair of objects compared by identity.
+	 */
+	private static final class Key {
+
+		private final Object first;
+
+		private final Object second;
+
+		private Key(Object first, Object second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			return (first == key.first) && (second == key.second);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(first) + System.identityHashCode(second);
+		}
+
+	}
+
+	private final long origin = System.nanoTime();
+
+	private final Span root;
+
+	/**
+	 * The span of the {@code processRequest} call that handed each
+	 * sub-instance to each child service.
+	 */
+	private final ConcurrentMap<Key, Span> producers = new ConcurrentHashMap<Key, Span>();
+
+	/**
+	 * The span of the {@code processRequest} call for each service and
+	 * instance.
+	 */
+	private final ConcurrentMap<Key, Span> processing = new ConcurrentHashMap<Key, Span>();
+
+	/**
+	 * The {@code processRequest} span that is open on each thread.
+	 */
+	private final ThreadLocal<Span> current = new ThreadLocal<Span>();
+
+	/**
+	 * Creates a trace for a request and starts its root span.
+	 *
+	 * @param serviceName the name of the requested service
+	 * @param instance    the source instance of the request
+	 */
+	public Trace(String serviceName, Instance instance) {
+		root = new Span(null, serviceName, "request", instance.getId(), 0, 0);
+	}
+
+	private long now() {
+		return System.nanoTime() - origin;
+	}
+
+	/**
+	 * Returns the root span, which covers the whole request.
+	 *
+	 * @return the root span
+	 */
+	public Span getRoot() {
+		return root;
+	}
+
+	/**
+	 * Ends the root span.
+	 */
+	public void finish() {
+		if (root.end < 0) {
+			root.end = now();
+		}
+	}
+
+	/**
+	 * Returns whether the root span has ended.
+	 *
+	 * @return {@code true} if and only if the request has completed
+	 */
+	public boolean isFinished() {
+		return root.end >= 0;
+	}
+
+	Span beginProcess(Service service, String name, Instance instance) {
+		Span enclosing = current.get();
+		Span parent = producers.get(new Key(service, instance));
+		if (parent == null) {
+			parent = (enclosing == null) ? root : enclosing;
+		}
+		Span span = new Span(parent, name, "processRequest", instance.getId(), 0, now());
+		span.enclosing = enclosing;
+		current.set(span);
+		processing.put(new Key(service, instance), span);
+		return span;
+	}
+
+	void endProcess(Span span, ExecutionPlan.Node node, Iterable<Instance> subInstances) {
+		span.end = now();
+		if (span.enclosing == null) {
+			current.remove();
+		} else {
+			current.set(span.enclosing);
+		}
+		if (subInstances != null) {
+			for (int i = 0, n = node.getChildCount(); i < n; i++) {
+				Service child = node.getChild(i).getService();
+				for (Instance subInstance : subInstances) {
+					producers.put(new Key(child, subInstance), span);
+				}
+			}
+		}
+	}
+
+	Span begin(Service service, String name, String phase, Instance instance, Instance subInstance) {
+		Span parent = processing.get(new Key(service, instance));
+		long subInstanceId = (subInstance == null) ? 0 : subInstance.getId();
+		return new Span((parent == null) ? root : parent, name, phase, instance.getId(), subInstanceId, now());
+	}
+
+	void end(Span span) {
+		span.end = now();
+	}
+
+	/**
+	 * Returns the span tree as a JSON object. Every span has the fields
+	 * {@code service}, {@code phase}, {@code instance}, {@code thread},
+	 * {@code start} and {@code duration} (in nanoseconds) and
+	 * {@code children}; {@code childDone} spans also have
+	 * {@code subInstance}.
+	 *
+	 * @return the JSON text
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		toJson(root, json);
+		return json.toString();
+	}
+
+	private static void toJson(Span span, StringBuilder json) {
+		json.append("{\"service\":");
+		quote(span.service, json);
+		json.append(",\"phase\":");
+		quote(span.phase, json);
+		json.append(",\"instance\":").append(span.instanceId);
+		if (span.subInstanceId != 0) {
+			json.append(",\"subInstance\":").append(span.subInstanceId);
+		}
+		json.append(",\"thread\":");
+		quote(span.thread, json);
+		json.append(",\"start\":").append(span.start);
+		json.append(",\"duration\":").append(span.getDuration());
+		json.append(",\"children\":[");
+		String separator = "";
+		for (Span child : span.getChildren()) {
+			json.append(separator);
+			toJson(child, json);
+			separator = ",";
+		}
+		json.append("]}");
+	}
+
+	/**
+	 * Returns the spans in the Chrome trace-event format: one complete
+	 * ({@code "ph":"X"}) event per span, with times in microseconds, one
+	 * {@code tid} per thread and the instance ids in {@code args}. Spans that
+	 * have not ended are left out.
+	 *
+	 * @return the JSON text
+	 */
+	public String toChromeTrace() {
+		StringBuilder json = new StringBuilder("{\"traceEvents\":[");
+		List<Span> pending = new ArrayList<Span>();
+		pending.add(root);
+		String separator = "";
+		while (!pending.isEmpty()) {
+			Span span = pending.remove(pending.size() - 1);
+			List<Span> children = span.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				pending.add(children.get(i));
+			}
+			long duration = span.getDuration();
+			if (duration < 0) {
+				continue;
+			}
+			json.append(separator).append("{\"name\":");
+			quote(span.service + "." + span.phase, json);
+			json.append(",\"cat\":\"green\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(span.threadId);
+			json.append(",\"ts\":").append(micros(span.start));
+			json.append(",\"dur\":").append(micros(duration));
+			json.append(",\"args\":{\"instance\":").append(span.instanceId);
+			if (span.subInstanceId != 0) {
+				json.append(",\"subInstance\":").append(span.subInstanceId);
+			}
+			json.append(",\"thread\":");
+			quote(span.thread, json);
+			json.append("}}");
+			separator = ",";
+		}
+		return json.append("]}").toString();
+	}
+
+	private static String micros(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+	}
+
+	private static void quote(String text, StringBuilder json) {
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"': json.append("\\\""); break;
+				case '\\': json.append("\\\\"); break;
+				case '\n': json.append("\\n"); break;
+				case '\r': json.append("\\r"); break;
+				case '\t': json.append("\\t"); break;
+				default:
+					if (c < 0x20) {
+						json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+					} else {
+						json.append(c);
+					}
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Decides which requests are traced: one in every {@code n}.
+	 */
+	static final class Sampler {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private volatile int n = 0;
+
+		void setRate(int n) {
+			this.n = Math.max(0, n);
+		}
+
+		int getRate() {
+			return n;
+		}
+
+		/**
+		 * Attaches a new trace to the instance if this request is sampled. A
+		 * trace that was attached by the caller and has not been used yet is
+		 * kept.
+		 *
+		 * @return the trace of the instance, or {@code null}
+		 */
+		Trace sample(String serviceName, Instance instance) {
+			Trace trace = instance.getTrace();
+			if ((trace != null) && !trace.isFinished()) {
+				return trace;
+			}
+			trace = null;
+			int rate = n;
+			if ((rate > 0) && (count.incrementAndGet() % rate == 0)) {
+				trace = new Trace(serviceName, instance);
+				instance.setTrace(trace);
+			}
+			return trace;
+		}
+
+	}
+
+}
@@ -0,0 +1,41 @@
+package za.ac.sun.cs.green;
+
+/**
+ * The result of a request that could not be completed before its
+ * {@link Deadline}. Task managers return one of these values instead of
+ * {@code null} when a request with a deadline produced no result.
+ */
+public enum Unknown {
+
+	/**
+	 * The time limit of the request was reached.
+	 */
+	TIMEOUT,
+
+	/**
+	 * The request was cancelled.
+	 */
+	CANCELLED;
+
+	/**
+	 * Returns the result a task manager should report for a request that
+	 * produced the given result under the given deadline.
+	 *
+	 * @param result   the result computed by the services
+	 * @param deadline the deadline of the request, or {@code null}
+	 * @return the result, or an {@link Unknown} value if there is no result
+	 * because the deadline is done
+	 */
+	public static Object ifMissing(Object result, Deadline deadline) {
+		if ((result != null) || (deadline == null)) {
+			return result;
+		} else if (deadline.isCancelled()) {
+			return CANCELLED;
+		} else if (deadline.isExpired()) {
+			return TIMEOUT;
+		} else {
+			return null;
+		}
+	}
+
+}
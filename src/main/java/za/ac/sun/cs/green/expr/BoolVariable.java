@@ -2,6 +2,8 @@ package za.ac.sun.cs.green.expr;
 
 public class BoolVariable extends Variable {
 
+	private static final long serialVersionUID = -2204726850649411139L;
+
 	public BoolVariable(String name) {
 		super(name);
 	}
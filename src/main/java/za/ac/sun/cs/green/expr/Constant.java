@@ -2,4 +2,6 @@ package za.ac.sun.cs.green.expr;
 
 public abstract class Constant extends Expression {
 
+	private static final long serialVersionUID = -4896515695474700055L;
+
 }
@@ -1,11 +1,32 @@
 package za.ac.sun.cs.green.expr;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class Expression implements Comparable<Expression>, Serializable {
 
+	/**
+	 * The serial version of the original serialized form, so that stored
+	 * expressions can still be read.
+	 */
+	private static final long serialVersionUID = -3229085228318134878L;
+
 	private String stringRep = null;
 
+	/**
+	 * The structural hash of this expression, set by the constructor of
+	 * every subclass. It is not serialized, but recomputed when the
+	 * expression is read (see {@link #readResolve()}).
+	 */
+	private transient long structuralHash = 0;
+
+	/**
+	 * The factory in whose intern table this expression is, or {@code null}.
+	 */
+	transient volatile ExpressionFactory factory = null;
+
 	public abstract void accept(Visitor visitor) throws VisitorException;
 
 	public String getCachedString() {
@@ -15,17 +36,172 @@ public abstract class Expression implements Comparable<Expression>, Serializable
 		return stringRep;
 	}
 
+	/**
+	 * Pushes the parts of the cached string of this expression that have
+	 * not been built onto a stack, last part first, and returns the text
+	 * that comes before them. Leaves return their whole string.
+	 *
+	 * @param stack the parts still to be compared
+	 * @return the text of this expression before the parts on the stack
+	 */
+	String pushParts(List<Object> stack) {
+		return getCachedString();
+	}
+
 	public double satDelta = 0.0;
 
+	/**
+	 * Compares the cached strings of two expressions (see
+	 * {@link #getCachedString()}), so that sorted collections order
+	 * expressions as before, but without building the strings: the strings
+	 * of both expressions are produced part by part from their trees until
+	 * they differ, and strings that are cached already are used as they are.
+	 * Expressions are traversed without recursion.
+	 */
 	@Override
 	public final int compareTo(Expression expression) {
-		// TODO
-		return getCachedString().compareTo(expression.getCachedString());
+		if (this == expression) {
+			return 0;
+		}
+		Cursor c1 = new Cursor(this);
+		Cursor c2 = new Cursor(expression);
+		while (true) {
+			int ch1 = c1.next();
+			int ch2 = c2.next();
+			if (ch1 != ch2) {
+				if (ch1 < 0) {
+					return -1;
+				} else if (ch2 < 0) {
+					return 1;
+				}
+				return ch1 - ch2;
+			} else if (ch1 < 0) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Produces the characters of the cached string of an expression.
+	 */
+	private static final class Cursor {
+
+		private final List<Object> stack = new ArrayList<Object>();
+
+		private String segment = "";
+
+		private int index = 0;
+
+		Cursor(Expression expression) {
+			stack.add(expression);
+		}
+
+		/**
+		 * Returns the next character, or -1 at the end of the string.
+		 */
+		int next() {
+			while (index >= segment.length()) {
+				if (stack.isEmpty()) {
+					return -1;
+				}
+				Object part = stack.remove(stack.size() - 1);
+				String s = (part instanceof String) ? (String) part : ((Expression) part).pushParts(stack);
+				segment = (s == null) ? "" : s;
+				index = 0;
+			}
+			return segment.charAt(index++);
+		}
+
+	}
+
+	/**
+	 * Returns a 64-bit hash of the structure of this expression. The hash
+	 * is computed from the hashes of the operands when the expression is
+	 * constructed, depends on the order of the operands, and is equal for
+	 * equal expressions.
+	 *
+	 * @return the structural hash
+	 */
+	public final long getStructuralHash() {
+		return structuralHash;
+	}
+
+	/**
+	 * Computes the structural hash of this expression from its fields and
+	 * the structural hashes of its operands. Subclasses that set a hash
+	 * override this; the default is 0.
+	 *
+	 * @return the structural hash
+	 */
+	protected long computeStructuralHash() {
+		return 0;
+	}
+
+	/**
+	 * Recomputes the structural hash of a deserialized expression. Operands
+	 * are resolved before the expressions that contain them, so their hashes
+	 * are known by then.
+	 *
+	 * @return this expression
+	 * @throws ObjectStreamException never
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		structuralHash = computeStructuralHash();
+		return this;
+	}
+
+	/**
+	 * Sets the structural hash; called by the constructors of subclasses.
+	 *
+	 * @param structuralHash the hash
+	 */
+	protected final void setStructuralHash(long structuralHash) {
+		this.structuralHash = structuralHash;
+	}
+
+	/**
+	 * Returns a hash that combines a hash with a value, well mixed and
+	 * sensitive to the order in which values are combined.
+	 *
+	 * @param hash  the hash so far
+	 * @param value the value
+	 * @return the combined hash
+	 */
+	protected static long mix(long hash, long value) {
+		long h = hash * 0x9e3779b97f4a7c15L + value;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * Returns a hash that combines a hash with a string.
+	 *
+	 * @param hash the hash so far
+	 * @param s    the string
+	 * @return the combined hash
+	 */
+	protected static long mix(long hash, String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(mix(hash, h), s.length());
 	}
 
 	@Override
 	public abstract boolean equals(Object object);
 
+	/**
+	 * Returns the structural hash folded to 32 bits.
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (structuralHash ^ (structuralHash >>> 32));
+	}
+
 	@Override
 	public abstract String toString();
 
@@ -0,0 +1,363 @@
+package za.ac.sun.cs.green.expr;
+
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hash-conses expressions: structurally equal expressions that pass through
+ * the same factory become the same object. Interned expressions share their
+ * subexpressions, so long path conditions are held in memory once, and two
+ * equal interned expressions are recognised by a reference comparison (see
+ * {@link Operation#equals(Object)}) instead of a walk over both trees.
+ * <p>
+ * The intern table is concurrent and holds its expressions weakly: an
+ * expression that is no longer used elsewhere is collected, and its entry
+ * is removed the next time the table is used. An operation is identified by
+ * its operator and the identities of its interned operands, so interning an
+ * expression looks at every node once and never compares subtrees.
+ * <p>
+ * Constants are identified by their value and variables by their class,
+ * name and bounds; variables with the same name but different bounds are
+ * not merged. Variables that carry an original object, Boolean variables
+ * and expressions of unknown classes are kept as they are, and operations
+ * over them are interned by the identity of those leaves. An expression
+ * whose operands are already interned is itself entered in the table, so
+ * interning allocates only for operations whose operands change.
+ * <p>
+ * Interning is opt-in (see {@code green.expression.intern}): when the
+ * solver has a factory, every {@link za.ac.sun.cs.green.Instance} interns
+ * its expression.
+ */
+public final class ExpressionFactory {
+
+	/**
+	 * The key of an operation: its operator and its interned operands,
+	 * compared by identity.
+	 */
+	private static final class OperationKey {
+
+		private final Operation.Operator operator;
+
+		private final Expression[] operands;
+
+		private final int hash;
+
+		OperationKey(Operation.Operator operator, Expression[] operands) {
+			this.operator = operator;
+			this.operands = operands;
+			int h = operator.ordinal();
+			for (Expression operand : operands) {
+				h = 31 * h + System.identityHashCode(operand);
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof OperationKey)) {
+				return false;
+			}
+			OperationKey key = (OperationKey) object;
+			if ((hash != key.hash) || (operator != key.operator) || (operands.length != key.operands.length)) {
+				return false;
+			}
+			for (int i = 0; i < operands.length; i++) {
+				if (operands[i] != key.operands[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+	/**
+	 * A weak reference to an interned expression that remembers its key, so
+	 * that the entry can be removed once the expression is collected.
+	 */
+	private static final class Ref extends WeakReference<Expression> {
+
+		private final Object key;
+
+		Ref(Expression expression, Object key, ReferenceQueue<Expression> queue) {
+			super(expression, queue);
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * A partly visited operation.
+	 */
+	private static final class Frame {
+
+		private final Operation operation;
+
+		private final Expression[] operands;
+
+		private int next = 0;
+
+		Frame(Operation operation) {
+			this.operation = operation;
+			operands = new Expression[operation.getOperatandCount()];
+		}
+
+	}
+
+	private final ConcurrentMap<Object, Ref> table = new ConcurrentHashMap<Object, Ref>();
+
+	private final ReferenceQueue<Expression> queue = new ReferenceQueue<Expression>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Returns the interned form of an expression: an expression that is
+	 * structurally equal to the given one, and the same object for all
+	 * equal expressions interned by this factory while it is in use.
+	 * Expressions are traversed without recursion.
+	 *
+	 * @param expression the expression, which is not changed
+	 * @param <E>        the class of the expression
+	 * @return the interned expression
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Expression> E intern(E expression) {
+		if ((expression == null) || (expression.factory == this)) {
+			return expression;
+		}
+		expunge();
+		if (!(expression instanceof Operation)) {
+			return (E) leaf(expression);
+		}
+		Map<Expression, Expression> done = new IdentityHashMap<Expression, Expression>();
+		List<Frame> frames = new ArrayList<Frame>();
+		frames.add(new Frame((Operation) expression));
+		Expression result = null;
+		while (!frames.isEmpty()) {
+			Frame f = frames.get(frames.size() - 1);
+			if (f.next < f.operands.length) {
+				Expression operand = f.operation.getOperand(f.next);
+				Expression interned = done.get(operand);
+				if (interned != null) {
+					f.operands[f.next++] = interned;
+				} else if (operand.factory == this) {
+					f.operands[f.next++] = operand;
+				} else if (operand instanceof Operation) {
+					frames.add(new Frame((Operation) operand));
+				} else {
+					interned = leaf(operand);
+					done.put(operand, interned);
+					f.operands[f.next++] = interned;
+				}
+			} else {
+				frames.remove(frames.size() - 1);
+				result = operation(f.operation, f.operands);
+				done.put(f.operation, result);
+				if (!frames.isEmpty()) {
+					Frame parent = frames.get(frames.size() - 1);
+					parent.operands[parent.next++] = result;
+				}
+			}
+		}
+		return (E) result;
+	}
+
+	/**
+	 * Returns the interned integer constant with the given value.
+	 *
+	 * @param value the value
+	 * @return the interned constant
+	 */
+	public IntConstant constant(int value) {
+		return intern(new IntConstant(value));
+	}
+
+	/**
+	 * Returns the interned integer variable with the given name and bounds.
+	 *
+	 * @param name       the name of the variable
+	 * @param lowerBound the lower bound
+	 * @param upperBound the upper bound
+	 * @return the interned variable
+	 */
+	public IntVariable variable(String name, Integer lowerBound, Integer upperBound) {
+		return intern(new IntVariable(name, lowerBound, upperBound));
+	}
+
+	/**
+	 * Returns the interned operation with the given operator and operands.
+	 * The operands are interned first.
+	 *
+	 * @param operator the operator
+	 * @param operands the operands
+	 * @return the interned operation
+	 */
+	public Operation operation(Operation.Operator operator, Expression... operands) {
+		return intern(new Operation(operator, operands));
+	}
+
+	/**
+	 * Returns the number of expressions in the intern table. Entries of
+	 * collected expressions that have not been removed yet are counted.
+	 *
+	 * @return the number of interned expressions
+	 */
+	public int size() {
+		expunge();
+		return table.size();
+	}
+
+	/**
+	 * Returns the number of nodes that were found in the intern table.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of nodes that were entered in the intern table.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Reports the size of the intern table and its hits and misses.
+	 *
+	 * @param reporter the mechanism through which reporting is done
+	 */
+	public void report(Reporter reporter) {
+		String context = getClass().getSimpleName();
+		reporter.report(context, "internedCount = " + size());
+		reporter.report(context, "internHitCount = " + hitCount.get());
+		reporter.report(context, "internMissCount = " + missCount.get());
+	}
+
+	/**
+	 * Returns the interned operation with the given operator and interned
+	 * operands, which is the given operation itself if its operands are
+	 * already interned and no equal operation is.
+	 */
+	private Expression operation(Operation operation, Expression[] operands) {
+		boolean same = true;
+		for (int i = 0; i < operands.length; i++) {
+			if (operands[i] != operation.getOperand(i)) {
+				same = false;
+				break;
+			}
+		}
+		OperationKey key = new OperationKey(operation.getOperator(), operands);
+		Expression interned = lookup(key);
+		if (interned != null) {
+			return interned;
+		}
+		return insert(key, same ? operation : new Operation(operation.getOperator(), operands));
+	}
+
+	/**
+	 * Returns the interned form of a constant or variable.
+	 */
+	private Expression leaf(Expression expression) {
+		Object key = leafKey(expression);
+		if (key == null) {
+			return expression;
+		}
+		Expression interned = lookup(key);
+		return (interned != null) ? interned : insert(key, expression);
+	}
+
+	/**
+	 * Returns the key of a leaf, or {@code null} if it is not interned.
+	 */
+	private static Object leafKey(Expression expression) {
+		if (expression instanceof IntConstant) {
+			return Arrays.asList(IntConstant.class, ((IntConstant) expression).getValue());
+		} else if (expression instanceof IntegerConstant) {
+			IntegerConstant c = (IntegerConstant) expression;
+			return Arrays.asList(IntegerConstant.class, c.getValue(), c.getSize());
+		} else if (expression instanceof RealConstant) {
+			double d = ((RealConstant) expression).getValue();
+			// 0.0 and -0.0 are equal constants; NaN is not equal to itself
+			return Double.isNaN(d) ? null : Arrays.asList(RealConstant.class, (d == 0) ? 0.0 : d);
+		} else if (expression instanceof StringConstant) {
+			return Arrays.asList(StringConstant.class, ((StringConstant) expression).getValue());
+		} else if (!(expression instanceof Variable) || (((Variable) expression).getOriginal() != null)) {
+			return null;
+		} else if (expression instanceof IntVariable) {
+			IntVariable v = (IntVariable) expression;
+			return Arrays.asList(IntVariable.class, v.getName(), v.getLowerBound(), v.getUpperBound());
+		} else if (expression instanceof IntegerVariable) {
+			IntegerVariable v = (IntegerVariable) expression;
+			return Arrays.asList(IntegerVariable.class, v.getName(), v.getLowerBound(), v.getUpperBound(), v.getSize());
+		} else if (expression instanceof RealVariable) {
+			RealVariable v = (RealVariable) expression;
+			return Arrays.asList(RealVariable.class, v.getName(), v.getLowerBound(), v.getUpperBound());
+		} else if (expression instanceof StringVariable) {
+			return Arrays.asList(StringVariable.class, ((StringVariable) expression).getName());
+		}
+		return null;
+	}
+
+	private Expression lookup(Object key) {
+		Ref ref = table.get(key);
+		Expression interned = (ref == null) ? null : ref.get();
+		if (interned != null) {
+			hitCount.incrementAndGet();
+		}
+		return interned;
+	}
+
+	/**
+	 * Enters an expression in the table, unless another thread has entered
+	 * an equal one first.
+	 */
+	private Expression insert(Object key, Expression expression) {
+		Ref created = new Ref(expression, key, queue);
+		while (true) {
+			Ref ref = table.putIfAbsent(key, created);
+			if (ref == null) {
+				missCount.incrementAndGet();
+				expression.factory = this;
+				return expression;
+			}
+			Expression interned = ref.get();
+			if (interned != null) {
+				hitCount.incrementAndGet();
+				return interned;
+			}
+			table.remove(key, ref);
+		}
+	}
+
+	/**
+	 * Removes the entries of collected expressions.
+	 */
+	private void expunge() {
+		Object ref;
+		while ((ref = queue.poll()) != null) {
+			table.remove(((Ref) ref).key, ref);
+		}
+	}
+
+}
@@ -2,10 +2,20 @@ package za.ac.sun.cs.green.expr;
 
 public class IntConstant extends Constant {
 
+	private static final long serialVersionUID = 1218090840820645022L;
+
+	private static final long HASH_SEED = 1;
+
 	private final int value;
 
 	public IntConstant(final int value) {
 		this.value = value;
+		setStructuralHash(computeStructuralHash());
+	}
+
+	@Override
+	protected long computeStructuralHash() {
+		return mix(HASH_SEED, value);
 	}
 
 	public final int getValue() {
@@ -40,11 +50,6 @@ public class IntConstant extends Constant {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return value;
-	}
-
 	@Override
 	public String toString() {
 		return Integer.toString(value);
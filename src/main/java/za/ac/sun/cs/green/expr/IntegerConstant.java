@@ -2,17 +2,28 @@ package za.ac.sun.cs.green.expr;
 
 public class IntegerConstant extends Constant {
 
+	private static final long serialVersionUID = -188232380713969220L;
+
 	public static final Constant ZERO32 = new IntegerConstant(0, 32);
 	public static final Constant ZERO64 = new IntegerConstant(0, 64);
 	public static final Constant ONE32 = new IntegerConstant(1, 32);
 	public static final Constant ONE64 = new IntegerConstant(1, 64);
 
+	private static final long HASH_SEED = 2;
+
 	private final long value;
 	private final int size;
 
 	public IntegerConstant(final long value, final int size) {
 		this.value = value;
 		this.size = size;
+		setStructuralHash(computeStructuralHash());
+	}
+
+	@Override
+	protected long computeStructuralHash() {
+		// The size is not part of the hash: constants of different sizes are equal
+		return mix(HASH_SEED, value);
 	}
 
 	public long getValue() {
@@ -39,11 +50,6 @@ public class IntegerConstant extends Constant {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return Long.hashCode(value);
-	}
-
 	@Override
 	public String toString() {
 		return Long.toString(value);
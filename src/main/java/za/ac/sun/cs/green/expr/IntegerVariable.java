@@ -64,11 +64,6 @@ public class IntegerVariable extends Variable {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return getName().hashCode();
-	}
-
 	@Override
 	public String toString() {
 		return getName();
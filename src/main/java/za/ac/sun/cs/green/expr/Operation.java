@@ -1,10 +1,13 @@
 package za.ac.sun.cs.green.expr;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public class Operation extends Expression {
 
+	private static final long serialVersionUID = -5969046918662169400L;
+
 	public enum Fix {
 		PREFIX, INFIX, POSTFIX
 	}
@@ -125,7 +128,8 @@ public class Operation extends Expression {
 
 	public static final Expression TRUE = new Operation(Operation.Operator.EQ, ZERO, ZERO);
 
-	private int hashCode = -1;
+	private static final long HASH_SEED = 6;
+
 	private final Operator operator;
 	private String stringRep = null;
 	private final Expression[] operands;
@@ -133,6 +137,16 @@ public class Operation extends Expression {
 	public Operation(final Operator operator, Expression... operands) {
 		this.operator = operator;
 		this.operands = operands;
+		setStructuralHash(computeStructuralHash());
+	}
+
+	@Override
+	protected long computeStructuralHash() {
+		long h = mix(mix(HASH_SEED, operator.ordinal()), operands.length);
+		for (Expression operand : operands) {
+			h = mix(h, (operand == null) ? 0 : operand.getStructuralHash());
+		}
+		return h;
 	}
 
 	public static Expression apply(Operator operator, Expression... operands) {
@@ -232,8 +246,14 @@ public class Operation extends Expression {
 	public boolean equals(Object object) {
 		//        return this.hashCode() == expression.hashCode() ? 1 : -1;
 
-		if (object instanceof Operation) {
+		if (this == object) {
+			// Always the case for equal interned expressions
+			return true;
+		} else if (object instanceof Operation) {
 			Operation operation = (Operation) object;
+			if (getStructuralHash() != operation.getStructuralHash()) {
+				return false;
+			}
 			if (operator != operation.operator) {
 				return false;
 			}
@@ -251,22 +271,20 @@ public class Operation extends Expression {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		// TODO
-		if (hashCode == -1) {
-			int h = operator.hashCode();
-			for (Expression o : operands) {
-				h ^= o.hashCode();
-			}
-			hashCode = h;
-		}
-		return hashCode;
-
-	}
-
 	private StringBuilder getShortString() {
 		StringBuilder sb = new StringBuilder();
+		if (operands.length != 2) {
+			sb.append(operator.toString());
+			sb.append('(');
+			for (int i = 0; i < operands.length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				sb.append(operands[i].getCachedString());
+			}
+			sb.append(')');
+			return sb;
+		}
 		if ((operands[0] instanceof Constant) || (operands[0] instanceof Variable)) {
 			sb.append(operands[0].getCachedString());
 		} else {
@@ -286,6 +304,33 @@ public class Operation extends Expression {
 		return sb;
 	}
 
+	/**
+	 * Pushes the parts of the cached string in the order of
+	 * {@link #getShortString()}, so that the strings of the operands are not
+	 * built.
+	 */
+	@Override
+	String pushParts(List<Object> stack) {
+		if (stringRep != null) {
+			return stringRep;
+		}
+		if (operands.length != 2) {
+			stack.add(")");
+			for (int i = operands.length - 1; i >= 0; i--) {
+				stack.add(operands[i]);
+				if (i > 0) {
+					stack.add(",");
+				}
+			}
+			stack.add("(");
+			return operator.toString();
+		}
+		stack.add(operands[1]);
+		stack.add(operator.toString());
+		stack.add(operands[0]);
+		return "";
+	}
+
 	public String getCachedString() {
 		if (stringRep == null) {
 			stringRep = getShortString().toString();
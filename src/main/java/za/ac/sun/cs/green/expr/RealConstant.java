@@ -2,10 +2,21 @@ package za.ac.sun.cs.green.expr;
 
 public class RealConstant extends Constant {
 
+	private static final long serialVersionUID = 5342850784343698801L;
+
+	private static final long HASH_SEED = 3;
+
 	private final double value;
 
 	public RealConstant(final double value) {
 		this.value = value;
+		setStructuralHash(computeStructuralHash());
+	}
+
+	@Override
+	protected long computeStructuralHash() {
+		// 0.0 and -0.0 are equal constants
+		return mix(HASH_SEED, Double.doubleToLongBits((value == 0) ? 0.0 : value));
 	}
 
 	public final double getValue() {
@@ -40,11 +51,6 @@ public class RealConstant extends Constant {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return (int) value;
-	}
-
 	@Override
 	public String toString() {
 		return Double.toString(value);
@@ -50,11 +50,6 @@ public class RealVariable extends Variable {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return getName().hashCode();
-	}
-
 	@Override
 	public String toString() {
 		return getName();
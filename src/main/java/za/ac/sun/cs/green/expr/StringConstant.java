@@ -2,10 +2,20 @@ package za.ac.sun.cs.green.expr;
 
 public class StringConstant extends Constant {
 
+	private static final long serialVersionUID = -5850463337832601650L;
+
+	private static final long HASH_SEED = 4;
+
 	private final String value;
 
 	public StringConstant(final String value) {
 		this.value = value;
+		setStructuralHash(computeStructuralHash());
+	}
+
+	@Override
+	protected long computeStructuralHash() {
+		return (value == null) ? HASH_SEED : mix(HASH_SEED, value);
 	}
 
 	public final String getValue() {
@@ -40,11 +50,6 @@ public class StringConstant extends Constant {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return value.hashCode();
-	}
-
 	@Override
 	public String toString() {
 		return value;
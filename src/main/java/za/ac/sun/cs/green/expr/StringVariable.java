@@ -34,11 +34,6 @@ public class StringVariable extends Variable {
 		}
 	}
 
-	@Override
-	public int hashCode() {
-		return getName().hashCode();
-	}
-
 	@Override
 	public String toString() {
 		return getName();
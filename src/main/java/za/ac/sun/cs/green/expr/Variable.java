@@ -6,6 +6,8 @@ public abstract class Variable extends Expression implements Serializable {
 
 	private static final long serialVersionUID = -1712398155778326862L;
 
+	private static final long HASH_SEED = 5;
+
 	private final String name;
 
 	private final Object original;
@@ -13,11 +15,22 @@ public abstract class Variable extends Expression implements Serializable {
 	public Variable(final String name) {
 		this.name = name;
 		this.original = null;
+		setStructuralHash(computeStructuralHash());
 	}
 
 	public Variable(final String name, final Object original) {
 		this.name = name;
 		this.original = original;
+		setStructuralHash(computeStructuralHash());
+	}
+
+	/**
+	 * Returns the structural hash of a variable, which depends only on its
+	 * name, like the equality of variables.
+	 */
+	@Override
+	protected long computeStructuralHash() {
+		return (name == null) ? HASH_SEED : mix(HASH_SEED, name);
 	}
 
 	public final String getName() {
@@ -0,0 +1,358 @@
+package za.ac.sun.cs.green.parser.smtlib2;
+
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Operation.Operator;
+import za.ac.sun.cs.green.expr.RealConstant;
+import za.ac.sun.cs.green.expr.RealVariable;
+import za.ac.sun.cs.green.expr.Variable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the queries of an SMT-LIB 2 script over linear integer and real
+ * arithmetic as Green expressions: every {@code (check-sat)} yields the
+ * conjunction of the assertions in scope. The commands {@code declare-fun}
+ * and {@code declare-const} (of sort {@code Int} or {@code Real}),
+ * {@code assert}, {@code push}, {@code pop}, {@code reset} and
+ * {@code reset-assertions} are interpreted; other commands are skipped.
+ * <p>
+ * Terms may use {@code and}, {@code or}, {@code not}, {@code =>},
+ * {@code =}, {@code distinct}, {@code <}, {@code <=}, {@code >},
+ * {@code >=}, {@code +}, {@code -}, {@code *}, {@code div}, {@code /},
+ * {@code mod} and {@code to_real}. N-ary operators are folded into binary
+ * operations. The domains of variables are not part of an SMT-LIB
+ * declaration, so integer variables get the same wide bounds as in
+ * {@link za.ac.sun.cs.green.parser.sexpr.LIAParser}; bounds are normally
+ * asserted explicitly, as Green's own SMT-LIB translations do.
+ */
+public class QueryParser {
+
+	private final Reader reader;
+
+	private int lookahead = -2;
+
+	private final Map<String, Variable> variables = new HashMap<String, Variable>();
+
+	/**
+	 * The assertions of each open scope; the first is the outermost.
+	 */
+	private final List<List<Expression>> scopes = new ArrayList<List<Expression>>();
+
+	public QueryParser(Reader reader) {
+		this.reader = reader;
+		scopes.add(new ArrayList<Expression>());
+	}
+
+	/**
+	 * Reads the whole script.
+	 *
+	 * @return the query of every {@code check-sat}, in order
+	 * @throws ParseException if the script cannot be parsed
+	 * @throws IOException    if the script cannot be read
+	 */
+	public List<Expression> parse() throws ParseException, IOException {
+		List<Expression> queries = new ArrayList<Expression>();
+		for (Object command = read(); command != null; command = read()) {
+			if (!(command instanceof List) || ((List<?>) command).isEmpty()) {
+				throw new ParseException("command expected, found " + command);
+			}
+			List<?> c = (List<?>) command;
+			String name = String.valueOf(c.get(0));
+			if (name.equals("declare-fun") || name.equals("declare-const")) {
+				declare(c);
+			} else if (name.equals("assert")) {
+				expect(c, 2);
+				scopes.get(scopes.size() - 1).add(toExpression(c.get(1)));
+			} else if (name.equals("check-sat")) {
+				queries.add(query());
+			} else if (name.equals("push")) {
+				int n = (c.size() > 1) ? Integer.parseInt(String.valueOf(c.get(1))) : 1;
+				for (int i = 0; i < n; i++) {
+					scopes.add(new ArrayList<Expression>());
+				}
+			} else if (name.equals("pop")) {
+				int n = (c.size() > 1) ? Integer.parseInt(String.valueOf(c.get(1))) : 1;
+				if (n >= scopes.size()) {
+					throw new ParseException("pop without push");
+				}
+				for (int i = 0; i < n; i++) {
+					scopes.remove(scopes.size() - 1);
+				}
+			} else if (name.equals("reset-assertions") || name.equals("reset")) {
+				scopes.clear();
+				scopes.add(new ArrayList<Expression>());
+				if (name.equals("reset")) {
+					variables.clear();
+				}
+			} else if (name.equals("exit")) {
+				break;
+			}
+		}
+		return queries;
+	}
+
+	private Expression query() {
+		Expression result = null;
+		for (List<Expression> scope : scopes) {
+			for (Expression assertion : scope) {
+				result = (result == null) ? assertion : new Operation(Operator.AND, result, assertion);
+			}
+		}
+		return (result == null) ? Operation.TRUE : result;
+	}
+
+	private void declare(List<?> c) throws ParseException {
+		String name = String.valueOf(c.get(1));
+		Object sort;
+		if (c.get(0).equals("declare-fun")) {
+			expect(c, 4);
+			if (!(c.get(2) instanceof List) || !((List<?>) c.get(2)).isEmpty()) {
+				throw new ParseException("unsupported function " + name);
+			}
+			sort = c.get(3);
+		} else {
+			expect(c, 3);
+			sort = c.get(2);
+		}
+		if ("Int".equals(sort)) {
+			variables.put(name, new IntVariable(name, Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1));
+		} else if ("Real".equals(sort)) {
+			variables.put(name, new RealVariable(name, -Double.MAX_VALUE, Double.MAX_VALUE));
+		} else {
+			throw new ParseException("unsupported sort " + sort + " of " + name);
+		}
+	}
+
+	private static void expect(List<?> c, int size) throws ParseException {
+		if (c.size() != size) {
+			throw new ParseException("malformed command " + c);
+		}
+	}
+
+	// ======================================================================
+	//
+	// TERMS
+	//
+	// ======================================================================
+
+	private Expression toExpression(Object term) throws ParseException {
+		if (term instanceof String) {
+			String s = (String) term;
+			Variable v = variables.get(s);
+			if (v != null) {
+				return v;
+			} else if (s.equals("true")) {
+				return Operation.TRUE;
+			} else if (s.equals("false")) {
+				return Operation.FALSE;
+			} else if (s.matches("[0-9]+")) {
+				try {
+					return new IntConstant(Integer.parseInt(s));
+				} catch (NumberFormatException x) {
+					throw new ParseException("integer out of range: " + s);
+				}
+			} else if (s.matches("[0-9]+\\.[0-9]+")) {
+				return new RealConstant(Double.parseDouble(s));
+			}
+			throw new ParseException("unknown symbol " + s);
+		}
+		List<?> t = (List<?>) term;
+		if (t.isEmpty() || !(t.get(0) instanceof String)) {
+			throw new ParseException("unsupported term " + term);
+		}
+		String op = (String) t.get(0);
+		List<Expression> args = new ArrayList<Expression>();
+		for (int i = 1; i < t.size(); i++) {
+			args.add(toExpression(t.get(i)));
+		}
+		if (args.isEmpty()) {
+			throw new ParseException("missing operands: " + term);
+		}
+		if (op.equals("and")) {
+			return fold(Operator.AND, args);
+		} else if (op.equals("or")) {
+			return fold(Operator.OR, args);
+		} else if (op.equals("+")) {
+			return fold(Operator.ADD, args);
+		} else if (op.equals("*")) {
+			return fold(Operator.MUL, args);
+		} else if (op.equals("-")) {
+			if (args.size() == 1) {
+				Expression e = args.get(0);
+				if (e instanceof IntConstant) {
+					return new IntConstant(-((IntConstant) e).getValue());
+				} else if (e instanceof RealConstant) {
+					return new RealConstant(-((RealConstant) e).getValue());
+				}
+				return new Operation(Operator.NEG, e);
+			}
+			return fold(Operator.SUB, args);
+		} else if (op.equals("not")) {
+			return new Operation(Operator.NOT, single(args, term));
+		} else if (op.equals("to_real")) {
+			return single(args, term);
+		} else if (op.equals("=>")) {
+			// Right associative
+			Expression result = args.get(args.size() - 1);
+			for (int i = args.size() - 2; i >= 0; i--) {
+				result = new Operation(Operator.IMPLIES, args.get(i), result);
+			}
+			return result;
+		} else if (op.equals("=")) {
+			return chain(Operator.EQ, args);
+		} else if (op.equals("<")) {
+			return chain(Operator.LT, args);
+		} else if (op.equals("<=")) {
+			return chain(Operator.LE, args);
+		} else if (op.equals(">")) {
+			return chain(Operator.GT, args);
+		} else if (op.equals(">=")) {
+			return chain(Operator.GE, args);
+		} else if (op.equals("distinct")) {
+			Expression result = null;
+			for (int i = 0; i < args.size(); i++) {
+				for (int j = i + 1; j < args.size(); j++) {
+					Expression ne = new Operation(Operator.NE, args.get(i), args.get(j));
+					result = (result == null) ? ne : new Operation(Operator.AND, result, ne);
+				}
+			}
+			return (result == null) ? Operation.TRUE : result;
+		} else if ((op.equals("div") || op.equals("/")) && (args.size() == 2)) {
+			return new Operation(Operator.DIV, args.get(0), args.get(1));
+		} else if (op.equals("mod") && (args.size() == 2)) {
+			return new Operation(Operator.MOD, args.get(0), args.get(1));
+		}
+		throw new ParseException("unsupported operator " + op);
+	}
+
+	private static Expression single(List<Expression> args, Object term) throws ParseException {
+		if (args.size() != 1) {
+			throw new ParseException("one operand expected: " + term);
+		}
+		return args.get(0);
+	}
+
+	private static Expression fold(Operator operator, List<Expression> args) {
+		Expression result = args.get(0);
+		for (int i = 1; i < args.size(); i++) {
+			result = new Operation(operator, result, args.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Turns a chained comparison such as {@code (< a b c)} into the
+	 * conjunction of the comparisons of adjacent operands.
+	 */
+	private static Expression chain(Operator operator, List<Expression> args) throws ParseException {
+		if (args.size() < 2) {
+			throw new ParseException("two operands expected for " + operator);
+		}
+		Expression result = null;
+		for (int i = 0; i + 1 < args.size(); i++) {
+			Expression c = new Operation(operator, args.get(i), args.get(i + 1));
+			result = (result == null) ? c : new Operation(Operator.AND, result, c);
+		}
+		return result;
+	}
+
+	// ======================================================================
+	//
+	// S-EXPRESSIONS
+	//
+	// ======================================================================
+
+	private int peek() throws IOException {
+		if (lookahead == -2) {
+			lookahead = reader.read();
+		}
+		return lookahead;
+	}
+
+	private int next() throws IOException {
+		int c = peek();
+		lookahead = -2;
+		return c;
+	}
+
+	private void skipSpace() throws IOException {
+		while (true) {
+			int c = peek();
+			if (c == ';') {
+				while ((c != -1) && (c != '\n')) {
+					c = next();
+				}
+			} else if ((c != -1) && Character.isWhitespace(c)) {
+				next();
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads one s-expression: a symbol, numeral, keyword or string as a
+	 * {@link String}, or a parenthesised list as a {@link List}.
+	 *
+	 * @return the s-expression, or {@code null} at the end of the input
+	 */
+	private Object read() throws ParseException, IOException {
+		List<List<Object>> stack = new ArrayList<List<Object>>();
+		while (true) {
+			skipSpace();
+			int c = peek();
+			Object item;
+			if (c == -1) {
+				if (!stack.isEmpty()) {
+					throw new ParseException("unexpected end of input");
+				}
+				return null;
+			} else if (c == '(') {
+				next();
+				stack.add(new ArrayList<Object>());
+				continue;
+			} else if (c == ')') {
+				next();
+				if (stack.isEmpty()) {
+					throw new ParseException("unbalanced ')'");
+				}
+				item = stack.remove(stack.size() - 1);
+			} else {
+				item = readAtom();
+			}
+			if (stack.isEmpty()) {
+				return item;
+			}
+			stack.get(stack.size() - 1).add(item);
+		}
+	}
+
+	private String readAtom() throws ParseException, IOException {
+		StringBuilder b = new StringBuilder();
+		int c = peek();
+		if ((c == '"') || (c == '|')) {
+			int quote = next();
+			for (c = next(); c != quote; c = next()) {
+				if (c == -1) {
+					throw new ParseException("unterminated " + (char) quote);
+				}
+				b.append((char) c);
+			}
+			return (quote == '|') ? b.toString() : '"' + b.toString() + '"';
+		}
+		while ((c != -1) && (c != '(') && (c != ')') && (c != ';') && !Character.isWhitespace(c)) {
+			b.append((char) next());
+			c = peek();
+		}
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,343 @@
+package za.ac.sun.cs.green.parser.smtlib2;
+
+import za.ac.sun.cs.green.expr.BoolVariable;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.IntegerConstant;
+import za.ac.sun.cs.green.expr.IntegerVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Operation.Operator;
+import za.ac.sun.cs.green.expr.RealConstant;
+import za.ac.sun.cs.green.expr.RealVariable;
+import za.ac.sun.cs.green.expr.StringConstant;
+import za.ac.sun.cs.green.expr.StringVariable;
+import za.ac.sun.cs.green.expr.Variable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a Green expression as an SMT-LIB 2 script: a declaration of every
+ * variable, the bounds of the variables and the expression as assertions,
+ * and a {@code (check-sat)}. The script of an expression over linear
+ * arithmetic can be read back by {@link QueryParser}.
+ * <p>
+ * Integer operands of real operations are converted with {@code to_real},
+ * and {@code !=} is written as {@code distinct}. Operators that have no
+ * SMT-LIB counterpart, such as the bit operators, are written as the
+ * application of an uninterpreted function named after the operator, for
+ * example {@code (|BIT_AND| x y)}; such scripts are meant to be read, not
+ * solved. Variables are declared once per name. Expressions are traversed
+ * without recursion, so deep expressions do not overflow the stack.
+ */
+public final class QueryPrinter {
+
+	private enum Sort {
+		BOOL("Bool"), INT("Int"), REAL("Real"), STRING("String");
+
+		private final String name;
+
+		Sort(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A partly visited operation.
+	 */
+	private static final class Frame {
+
+		private final Operation operation;
+
+		private int next = 0;
+
+		Frame(Operation operation) {
+			this.operation = operation;
+		}
+
+	}
+
+	private final Map<Expression, Sort> sorts = new IdentityHashMap<Expression, Sort>();
+
+	private final Map<String, Variable> variables = new LinkedHashMap<String, Variable>();
+
+	private QueryPrinter() {
+	}
+
+	/**
+	 * Returns the SMT-LIB script that checks the satisfiability of an
+	 * expression.
+	 *
+	 * @param expression the expression
+	 * @return the script, one command per line
+	 */
+	public static String print(Expression expression) {
+		QueryPrinter printer = new QueryPrinter();
+		printer.infer(expression);
+		StringBuilder b = new StringBuilder();
+		for (Map.Entry<String, Variable> entry : printer.variables.entrySet()) {
+			String name = symbol(entry.getKey());
+			Variable v = entry.getValue();
+			b.append("(declare-fun ").append(name).append(" () ").append(sortOf(v).name).append(")\n");
+			Object lower = null;
+			Object upper = null;
+			if (v instanceof IntVariable) {
+				lower = ((IntVariable) v).getLowerBound();
+				upper = ((IntVariable) v).getUpperBound();
+			} else if (v instanceof IntegerVariable) {
+				lower = ((IntegerVariable) v).getLowerBound();
+				upper = ((IntegerVariable) v).getUpperBound();
+			} else if (v instanceof RealVariable) {
+				lower = ((RealVariable) v).getLowerBound();
+				upper = ((RealVariable) v).getUpperBound();
+			}
+			if (lower != null) {
+				b.append("(assert (>= ").append(name).append(' ').append(number(lower)).append("))\n");
+			}
+			if (upper != null) {
+				b.append("(assert (<= ").append(name).append(' ').append(number(upper)).append("))\n");
+			}
+		}
+		b.append("(assert ");
+		printer.term(expression, b);
+		b.append(")\n(check-sat)\n");
+		return b.toString();
+	}
+
+	/**
+	 * Computes the sort of every operation and collects the variables.
+	 */
+	private void infer(Expression expression) {
+		List<Frame> frames = new ArrayList<Frame>();
+		if (!(expression instanceof Operation)) {
+			leaf(expression);
+			return;
+		}
+		frames.add(new Frame((Operation) expression));
+		while (!frames.isEmpty()) {
+			Frame f = frames.get(frames.size() - 1);
+			if (f.next < f.operation.getOperatandCount()) {
+				Expression operand = f.operation.getOperand(f.next++);
+				if (operand instanceof Operation) {
+					if (!sorts.containsKey(operand)) {
+						frames.add(new Frame((Operation) operand));
+					}
+				} else {
+					leaf(operand);
+				}
+			} else {
+				frames.remove(frames.size() - 1);
+				sorts.put(f.operation, sortOf(f.operation));
+			}
+		}
+	}
+
+	private void leaf(Expression expression) {
+		if (expression instanceof Variable) {
+			Variable v = (Variable) expression;
+			if (!variables.containsKey(v.getName())) {
+				variables.put(v.getName(), v);
+			}
+		}
+	}
+
+	private static Sort sortOf(Expression expression) {
+		if ((expression instanceof RealVariable) || (expression instanceof RealConstant)) {
+			return Sort.REAL;
+		} else if ((expression instanceof StringVariable) || (expression instanceof StringConstant)) {
+			return Sort.STRING;
+		} else if (expression instanceof BoolVariable) {
+			return Sort.BOOL;
+		}
+		return Sort.INT;
+	}
+
+	private Sort sortOf(Operation operation) {
+		switch (operation.getOperator()) {
+			case EQ:
+			case NE:
+			case LT:
+			case LE:
+			case GT:
+			case GE:
+			case AND:
+			case OR:
+			case IMPLIES:
+			case NOT:
+				return Sort.BOOL;
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+			case MOD:
+			case NEG:
+				return operandSort(operation);
+			default:
+				return Sort.INT;
+		}
+	}
+
+	private Sort sort(Expression expression) {
+		Sort sort = sorts.get(expression);
+		return (sort == null) ? sortOf(expression) : sort;
+	}
+
+	/**
+	 * Returns {@link Sort#REAL} if any operand is real, and {@link Sort#INT}
+	 * otherwise.
+	 */
+	private Sort operandSort(Operation operation) {
+		for (Expression operand : operation.getOperands()) {
+			if (sort(operand) == Sort.REAL) {
+				return Sort.REAL;
+			}
+		}
+		return Sort.INT;
+	}
+
+	private static String name(Operation operation, Sort operands) {
+		switch (operation.getOperator()) {
+			case EQ:
+				return "=";
+			case NE:
+				return "distinct";
+			case LT:
+				return "<";
+			case LE:
+				return "<=";
+			case GT:
+				return ">";
+			case GE:
+				return ">=";
+			case AND:
+				return "and";
+			case OR:
+				return "or";
+			case IMPLIES:
+				return "=>";
+			case NOT:
+				return "not";
+			case ADD:
+				return "+";
+			case SUB:
+			case NEG:
+				return "-";
+			case MUL:
+				return "*";
+			case DIV:
+				return (operands == Sort.REAL) ? "/" : "div";
+			case MOD:
+				return "mod";
+			default:
+				return "|" + operation.getOperator().name() + "|";
+		}
+	}
+
+	private static boolean isArithmetic(Operator operator) {
+		switch (operator) {
+			case EQ:
+			case NE:
+			case LT:
+			case LE:
+			case GT:
+			case GE:
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+			case MOD:
+			case NEG:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Writes the term of an expression. The pending work is a stack of
+	 * expressions still to be written and of text to be written between
+	 * them.
+	 */
+	private void term(Expression expression, StringBuilder b) {
+		List<Object> stack = new ArrayList<Object>();
+		stack.add(expression);
+		while (!stack.isEmpty()) {
+			Object item = stack.remove(stack.size() - 1);
+			if (item instanceof String) {
+				b.append((String) item);
+			} else if (item instanceof Operation) {
+				Operation operation = (Operation) item;
+				Sort operands = operandSort(operation);
+				boolean convert = (operands == Sort.REAL) && isArithmetic(operation.getOperator());
+				b.append('(').append(name(operation, operands));
+				stack.add(")");
+				for (int i = operation.getOperatandCount() - 1; i >= 0; i--) {
+					Expression operand = operation.getOperand(i);
+					if (convert && (sort(operand) == Sort.INT)) {
+						stack.add(")");
+						stack.add(operand);
+						stack.add(" (to_real ");
+					} else {
+						stack.add(operand);
+						stack.add(" ");
+					}
+				}
+			} else {
+				b.append(atom((Expression) item));
+			}
+		}
+	}
+
+	private static String atom(Expression expression) {
+		if (expression instanceof Variable) {
+			return symbol(((Variable) expression).getName());
+		} else if (expression instanceof IntConstant) {
+			return number(((IntConstant) expression).getValue());
+		} else if (expression instanceof IntegerConstant) {
+			return number(((IntegerConstant) expression).getValue());
+		} else if (expression instanceof RealConstant) {
+			return number(((RealConstant) expression).getValue());
+		} else if (expression instanceof StringConstant) {
+			return '"' + ((StringConstant) expression).getValue().replace("\"", "\"\"") + '"';
+		}
+		return symbol(String.valueOf(expression));
+	}
+
+	/**
+	 * Writes a number as an SMT-LIB numeral or decimal; negative numbers are
+	 * negations.
+	 */
+	private static String number(Object value) {
+		String s;
+		if ((value instanceof Double) || (value instanceof Float)) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return symbol(Double.toString(d));
+			}
+			s = BigDecimal.valueOf(d).toPlainString();
+			if (s.indexOf('.') < 0) {
+				s = s + ".0";
+			}
+		} else {
+			s = BigInteger.valueOf(((Number) value).longValue()).toString();
+		}
+		return (s.charAt(0) == '-') ? "(- " + s.substring(1) + ")" : s;
+	}
+
+	/**
+	 * Returns a name as an SMT-LIB symbol, quoted if necessary.
+	 */
+	private static String symbol(String name) {
+		if (name.matches("[A-Za-z~!@$%^&*_+=<>.?/-][A-Za-z0-9~!@$%^&*_+=<>.?/-]*")) {
+			return name;
+		}
+		return "|" + name.replace('|', '_').replace('\\', '_') + "|";
+	}
+
+}
@@ -5,6 +5,7 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
 import za.ac.sun.cs.green.store.Store;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Set;
@@ -61,7 +62,18 @@ public abstract class BasicService implements Service {
 	protected final Store store;
 
 	/**
-	 * Constructor for the basic service. It simply initializes its three
+	 * The satellite data slot of this service's class. Services keep their
+	 * per-instance results in this slot instead of under the class key.
+	 */
+	protected final int slot;
+
+	/**
+	 * The counters of this service, registered under its class name.
+	 */
+	protected final Metrics.Group metrics;
+
+	/**
+	 * Constructor for the basic service. It simply initializes its
 	 * attributes.
 	 *
 	 * @param solver the {@link Green} solver this service will be added to
@@ -70,6 +82,8 @@ public abstract class BasicService implements Service {
 		this.solver = solver;
 		this.log = solver.getLogger();
 		store = solver.getStore();
+		slot = Instance.registerSlot(getClass());
+		metrics = solver.getMetrics().register(getClass().getSimpleName());
 	}
 
 	/*
@@ -82,6 +96,16 @@ public abstract class BasicService implements Service {
 		return solver;
 	}
 
+	/**
+	 * Returns the group in the solver's metrics registry that holds the
+	 * counters of this service.
+	 *
+	 * @return the metrics group of this service
+	 */
+	public Metrics.Group getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * This fallback implementation of {@link #processRequest(Instance)} return
 	 * {@code null}. See the class comment for a description of what effect this
@@ -1,23 +1,40 @@
 package za.ac.sun.cs.green.service;
 
 import org.apfloat.Apint;
+import za.ac.sun.cs.green.Batch;
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
+import za.ac.sun.cs.green.util.SingleFlight;
 
 import java.util.Set;
+import java.util.function.Supplier;
 
-public abstract class CountService extends BasicService {
+public abstract class CountService extends BasicService implements Batch.Prefetchable {
 
 	private static final String SERVICE_KEY = "COUNT:";
 
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
-	private int cacheHitCount = 0;
+	private final Metrics.Counter cacheHitCount = metrics.counter("cacheHitCount");
 
-	private int cacheMissCount = 0;
+	private final Metrics.Counter cacheMissCount = metrics.counter("cacheMissCount");
 
-	private long timeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+
+	/**
+	 * Latency, in nanoseconds, of the calls to the decision procedure.
+	 */
+	private final Metrics.Histogram solveLatency = metrics.histogram("solve");
+
+	/**
+	 * Counting calls in flight, so that concurrent identical queries are only
+	 * counted once.
+	 */
+	private final SingleFlight<Apint> inflight = new SingleFlight<Apint>();
 
 	public CountService(Green solver) {
 		super(solver);
@@ -25,49 +42,99 @@ public abstract class CountService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "coalescedCount = " + inflight.getCoalescedCount());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+	}
+
+	@Override
+	public String getStoreKey(Instance instance) {
+		return SERVICE_KEY + instance.getFullExpression().getCachedString();
 	}
 
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
-		return instance.getData(getClass());
+		return instance.getSlotData(slot);
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
-		Apint result = (Apint) instance.getData(getClass());
+		Apint result = (Apint) instance.getSlotData(slot);
 		if (result == null) {
 			result = solve0(instance);
 			if (result != null) {
-				instance.setData(getClass(), result);
+				instance.setSlotData(slot, result);
 			}
 		}
 		return null;
 	}
 
-	private Apint solve0(Instance instance) {
-		invocationCount++;
-		String key = SERVICE_KEY + instance.getFullExpression().getCachedString();
-		Apint result = store.getApfloatInteger(key);
+	private Apint solve0(final Instance instance) {
+		invocationCount.increment();
+		final String key = getStoreKey(instance);
+		final Batch batch = instance.getBatch();
+		Apint result;
+		Object event = Jfr.STORE_LOOKUP.begin();
+		if (batch == null) {
+			result = store.getApfloatInteger(key);
+		} else {
+			Object value = batch.get(key, store);
+			result = (value instanceof Apint) ? (Apint) value : null;
+		}
+		Jfr.commitStoreLookup(event, metrics.getName(), instance, key, result != null);
 		if (result == null) {
-			cacheMissCount++;
-			result = solve1(instance);
-			if (result != null) {
-				store.put(key, result);
-			}
+			result = inflight.execute(key, new Supplier<Apint>() {
+				@Override
+				public Apint get() {
+					return solveMiss(instance, key, batch);
+				}
+			}, instance.getDeadline());
 		} else {
-			cacheHitCount++;
+			cacheHitCount.increment();
+		}
+		return result;
+	}
+
+	/**
+	 * Counts an instance that was not found in the store and stores the
+	 * result. Concurrent requests for the same key wait for this call.
+	 */
+	private Apint solveMiss(Instance instance, String key, Batch batch) {
+		Deadline deadline = instance.getDeadline();
+		if ((deadline != null) && deadline.isDone()) {
+			return null;
+		}
+		if (batch != null) {
+			// Another request of the batch may have solved the key meanwhile
+			Object known = batch.getKnown(key);
+			if (known instanceof Apint) {
+				cacheHitCount.increment();
+				return (Apint) known;
+			}
+		}
+		cacheMissCount.increment();
+		Apint result = solve1(instance);
+		if (result != null) {
+			store.put(key, result);
+			if (batch != null) {
+				batch.put(key, result);
+			}
 		}
 		return result;
 	}
 
 	private Apint solve1(Instance instance) {
 		long startTime = System.currentTimeMillis();
+		long nanos = System.nanoTime();
+		Object event = Jfr.SOLVER_INVOCATION.begin();
 		Apint result = solve(instance);
-		timeConsumption += System.currentTimeMillis() - startTime;
+		Jfr.commitSolverInvocation(event, metrics.getName(), instance, result);
+		nanos = System.nanoTime() - nanos;
+		solveLatency.record(nanos);
+		solver.getSlowQueries().record(metrics.getName(), instance.getFullExpression(), nanos, result);
+		timeConsumption.add(System.currentTimeMillis() - startTime);
 		return result;
 	}
 
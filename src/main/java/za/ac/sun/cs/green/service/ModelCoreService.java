@@ -6,6 +6,7 @@ import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.expr.Variable;
 import za.ac.sun.cs.green.service.grulia.gruliastore.SatEntry;
 import za.ac.sun.cs.green.service.grulia.gruliastore.UnsatEntry;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Map;
@@ -22,25 +23,36 @@ public abstract class ModelCoreService extends BasicService {
 
 	public static final String SAT_KEY = "-SAT";
 
+	private static final int SAT_SLOT = Instance.registerSlot(SAT_KEY);
+
 	public static final String MODEL_KEY = "-MODEL";
 
+	private static final int MODEL_SLOT = Instance.registerSlot(MODEL_KEY);
+
 	public static final String CORE_KEY = "-CORE";
 
-	private int invocationCount = 0;
+	private static final int CORE_SLOT = Instance.registerSlot(CORE_KEY);
+
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
+
+	protected final Metrics.Counter cacheHitCount = metrics.counter("cacheHitCount");
+	protected final Metrics.Counter satHitCount = metrics.counter("satHitCount");
+	protected final Metrics.Counter unsatHitCount = metrics.counter("unsatHitCount");
 
-	protected int cacheHitCount = 0;
-	protected int satHitCount = 0;
-	protected int unsatHitCount = 0;
+	protected final Metrics.Counter cacheMissCount = metrics.counter("cacheMissCount");
+	protected final Metrics.Counter satMissCount = metrics.counter("satMissCount");
+	protected final Metrics.Counter unsatMissCount = metrics.counter("unsatMissCount");
 
-	protected int cacheMissCount = 0;
-	protected int satMissCount = 0;
-	protected int unsatMissCount = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter storageTimeConsumption = metrics.counter("storageTimeConsumption");
 
-	private long timeConsumption = 0;
-	protected long storageTimeConsumption = 0;
+	protected final Metrics.Counter satCount = metrics.counter("satCount");
+	protected final Metrics.Counter unsatCount = metrics.counter("unsatCount");
 
-	protected int satCount = 0;
-	protected int unsatCount = 0;
+	/**
+	 * Latency, in nanoseconds, of the calls to the decision procedure.
+	 */
+	private final Metrics.Histogram solveLatency = metrics.histogram("solve");
 
 	public ModelCoreService(Green solver) {
 		super(solver);
@@ -48,17 +60,17 @@ public abstract class ModelCoreService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unssatQueries = " + unsatCount);
+		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unssatQueries = " + unsatCount.get());
 	}
 
 	@Override
@@ -68,7 +80,7 @@ public abstract class ModelCoreService extends BasicService {
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
-		if (instance.getData(SAT_KEY) == null) {
+		if (instance.getSlotData(SAT_SLOT) == null) {
 			solve3(instance);
 		}
 		return null;
@@ -76,16 +88,16 @@ public abstract class ModelCoreService extends BasicService {
 
 	@SuppressWarnings("unchecked")
 	private void solve0(Instance instance) {
-		invocationCount++;
+		invocationCount.increment();
 		/*--- NO CACHING: ---*
-		cacheMissCount++;
+		cacheMissCount.increment();
 		ModelCore modelCore = solve1(instance);
 		Boolean isSat = modelCore.getIsSat();
-		instance.setData(SAT_KEY, isSat);
+		instance.setSlotData(SAT_SLOT, isSat);
 		if (isSat) {
-			instance.setData(MODEL_KEY, modelCore.getModel());
+			instance.setSlotData(MODEL_SLOT, modelCore.getModel());
 		} else {
-			instance.setData(CORE_KEY, modelCore.getCore());
+			instance.setSlotData(CORE_SLOT, modelCore.getCore());
 		}
 		/*------*/
 
@@ -99,22 +111,22 @@ public abstract class ModelCoreService extends BasicService {
 		long start = System.currentTimeMillis();
 		Boolean isSat = (Boolean) store.get(key + SAT_KEY);
 		if (isSat == null) {
-			cacheMissCount++;
+			cacheMissCount.increment();
 			long startTime = System.currentTimeMillis();
 			ModelCore modelCore = solve1(instance);
-			timeConsumption += (System.currentTimeMillis() - startTime);
+			timeConsumption.add((System.currentTimeMillis() - startTime));
 			tmpConsumption = System.currentTimeMillis() - startTime;
 			isSat = modelCore.getIsSat();
 			store.put(key + SAT_KEY, isSat);
 			if (isSat) {
-				satMissCount++;
+				satMissCount.increment();
 				// TODO: Change to storing model not se
 				model = modelCore.getModel();
 				se = new SatEntry(instance.getExpression().satDelta, model);
 //				store.put(key + "-MODEL", (HashMap<Variable, Constant>) model);
 				store.put(key + MODEL_KEY, se);
 			} else {
-				unsatMissCount++;
+				unsatMissCount.increment();
 				// TODO: Change to storing core not ue
 				core = modelCore.getCore();
 				ue = new UnsatEntry(instance.getExpression().satDelta, core);
@@ -123,75 +135,80 @@ public abstract class ModelCoreService extends BasicService {
 			}
 		} else {
 			if (isSat) {
-				satHitCount++;
+				satHitCount.increment();
 //				model = (HashMap<Variable, Constant>) store.get(key + "-MODEL");
 				se = (SatEntry) store.get(key + MODEL_KEY);
 			} else {
-				unsatHitCount++;
+				unsatHitCount.increment();
 //				core = (HashSet<Expression>) store.get(key + "-CORE");
 				ue = (UnsatEntry) store.get(key + CORE_KEY);
 			}
-			cacheHitCount++;
+			cacheHitCount.increment();
 		}
-		instance.setData(SAT_KEY, isSat);
+		instance.setSlotData(SAT_SLOT, isSat);
 		if (isSat) {
 //			instance.setData(MODEL_KEY, model);
-			instance.setData(MODEL_KEY, se);
+			instance.setSlotData(MODEL_SLOT, se);
 		} else {
 //			instance.setData(CORE_KEY, core);
-			instance.setData(CORE_KEY, ue);
+			instance.setSlotData(CORE_SLOT, ue);
 		}
 		/*------*/
-		storageTimeConsumption += ((System.currentTimeMillis() - start) - tmpConsumption);
+		storageTimeConsumption.add(((System.currentTimeMillis() - start) - tmpConsumption));
 	}
 
 	private void solve3(Instance instance) {
-		invocationCount++;
+		invocationCount.increment();
 		Map<Variable, Object> model = null;
 		Set<Expression> core = null;
 		SatEntry se = null;
 		UnsatEntry ue = null;
 		long startTime = System.currentTimeMillis();
 		ModelCore modelCore = solve1(instance);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		boolean isSat = modelCore.getIsSat();
-		instance.setData(SAT_KEY, isSat);
+		instance.setSlotData(SAT_SLOT, isSat);
 		if (isSat) {
-			satMissCount++;
+			satMissCount.increment();
 			// TODO: Change to storing model not se
 			model = modelCore.getModel();
 			se = new SatEntry(instance.getExpression().satDelta, model);
-			instance.setData(MODEL_KEY, se);
+			instance.setSlotData(MODEL_SLOT, se);
 		} else {
-			unsatMissCount++;
+			unsatMissCount.increment();
 			// TODO: Change to storing core not ue
 			core = modelCore.getCore();
 			ue = new UnsatEntry(instance.getExpression().satDelta, core);
-			instance.setData(CORE_KEY, ue);
+			instance.setSlotData(CORE_SLOT, ue);
 		}
 	}
 
 	private ModelCore solve1(Instance instance) {
 		long startTime = System.currentTimeMillis();
+		long nanos = System.nanoTime();
 		ModelCore modelCore = modelCore(instance);
-		timeConsumption += System.currentTimeMillis() - startTime;
+		nanos = System.nanoTime() - nanos;
+		solveLatency.record(nanos);
+		solver.getSlowQueries().record(metrics.getName(), instance.getFullExpression(), nanos,
+				(modelCore == null) ? null : modelCore.getIsSat());
+		timeConsumption.add(System.currentTimeMillis() - startTime);
 		return modelCore;
 	}
 
 	protected abstract ModelCore modelCore(Instance instance);
 
 	public static final Boolean isSat(Instance instance) {
-		return (Boolean) instance.getData(SAT_KEY);
+		return (Boolean) instance.getSlotData(SAT_SLOT);
 	}
 
 	@SuppressWarnings("unchecked")
 	public static final Map<Variable, Object> getModel(Instance instance) {
-		return ((SatEntry) instance.getData(MODEL_KEY)).getSolution();
+		return ((SatEntry) instance.getSlotData(MODEL_SLOT)).getSolution();
 	}
 
 	@SuppressWarnings("unchecked")
 	public static final Set<Expression> getCore(Instance instance) {
-		return ((UnsatEntry) instance.getData(CORE_KEY)).getSolution();
+		return ((UnsatEntry) instance.getSlotData(CORE_SLOT)).getSolution();
 	}
 
 	public static class ModelCore {
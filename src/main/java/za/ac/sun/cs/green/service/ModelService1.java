@@ -3,6 +3,7 @@ package za.ac.sun.cs.green.service;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.HashMap;
@@ -13,21 +14,26 @@ public abstract class ModelService1 extends BasicService {
 
 	private static final String SERVICE_KEY = "MODEL:";
 
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
-	protected int cacheHitCount = 0;
-	protected int satHitCount = 0;
-	protected int unsatHitCount = 0;
+	protected final Metrics.Counter cacheHitCount = metrics.counter("cacheHitCount");
+	protected final Metrics.Counter satHitCount = metrics.counter("satHitCount");
+	protected final Metrics.Counter unsatHitCount = metrics.counter("unsatHitCount");
 
-	protected int cacheMissCount = 0;
-	protected int satMissCount = 0;
-	protected int unsatMissCount = 0;
+	protected final Metrics.Counter cacheMissCount = metrics.counter("cacheMissCount");
+	protected final Metrics.Counter satMissCount = metrics.counter("satMissCount");
+	protected final Metrics.Counter unsatMissCount = metrics.counter("unsatMissCount");
 
-	private long timeConsumption = 0;
-	protected long storageTimeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter storageTimeConsumption = metrics.counter("storageTimeConsumption");
 
-	protected int satCount = 0;
-	protected int unsatCount = 0;
+	protected final Metrics.Counter satCount = metrics.counter("satCount");
+	protected final Metrics.Counter unsatCount = metrics.counter("unsatCount");
+
+	/**
+	 * Latency, in nanoseconds, of the calls to the decision procedure.
+	 */
+	private final Metrics.Histogram solveLatency = metrics.histogram("solve");
 
 	public ModelService1(Green solver) {
 		super(solver);
@@ -35,56 +41,61 @@ public abstract class ModelService1 extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unssatQueries = " + unsatCount);
+		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unssatQueries = " + unsatCount.get());
 	}
 
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
-		return instance.getData(getClass());
+		return instance.getSlotData(slot);
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		@SuppressWarnings("unchecked")
-		Map<Variable, Object> result = (Map<Variable, Object>) instance.getData(getClass());
+		Map<Variable, Object> result = (Map<Variable, Object>) instance.getSlotData(slot);
 		if (result == null) {
 			result = solve0(instance);
 			if (result != null) {
-				instance.setData(getClass(), result);
+				instance.setSlotData(slot, result);
 			}
 		}
 		return null;
 	}
 
 	private Map<Variable, Object> solve0(Instance instance) {
-		invocationCount++;
-		HashMap<Variable, Object> result = (HashMap<Variable, Object>) instance.getData(getClass());
+		invocationCount.increment();
+		HashMap<Variable, Object> result = (HashMap<Variable, Object>) instance.getSlotData(slot);
 		if (result == null) {
 			result = solve1(instance);
 			if (result != null) {
-				instance.setData(getClass(), result);
+				instance.setSlotData(slot, result);
 			}
 		}
 //        assert result != null;
 		if (result != null)
-			satCount++;
+			satCount.increment();
 		else
-			unsatCount++;
+			unsatCount.increment();
 		return null;
 	}
 
 	private HashMap<Variable, Object> solve1(Instance instance) {
+		long nanos = System.nanoTime();
 		HashMap<Variable, Object> result = (HashMap<Variable, Object>) model(instance);
+		nanos = System.nanoTime() - nanos;
+		solveLatency.record(nanos);
+		solver.getSlowQueries().record(metrics.getName(), instance.getFullExpression(), nanos,
+				(result == null) ? Boolean.FALSE : result);
 		return result; // change this!
 	}
 
@@ -1,30 +1,47 @@
 package za.ac.sun.cs.green.service;
 
+import za.ac.sun.cs.green.Batch;
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
+import za.ac.sun.cs.green.util.SingleFlight;
 
 import java.util.Set;
+import java.util.function.Supplier;
 
-public abstract class SATService extends BasicService {
+public abstract class SATService extends BasicService implements Batch.Prefetchable {
 
 	private static final String SERVICE_KEY = "SAT:";
 
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
-	protected int cacheHitCount = 0;
-	protected int satHitCount = 0;
-	protected int unsatHitCount = 0;
+	protected final Metrics.Counter cacheHitCount = metrics.counter("cacheHitCount");
+	protected final Metrics.Counter satHitCount = metrics.counter("satHitCount");
+	protected final Metrics.Counter unsatHitCount = metrics.counter("unsatHitCount");
 
-	protected int cacheMissCount = 0;
-	protected int satMissCount = 0;
-	protected int unsatMissCount = 0;
+	protected final Metrics.Counter cacheMissCount = metrics.counter("cacheMissCount");
+	protected final Metrics.Counter satMissCount = metrics.counter("satMissCount");
+	protected final Metrics.Counter unsatMissCount = metrics.counter("unsatMissCount");
 
-	private long timeConsumption = 0;
-	protected long storageTimeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter storageTimeConsumption = metrics.counter("storageTimeConsumption");
 
-	protected int satCount = 0;
-	protected int unsatCount = 0;
+	protected final Metrics.Counter satCount = metrics.counter("satCount");
+	protected final Metrics.Counter unsatCount = metrics.counter("unsatCount");
+
+	/**
+	 * Latency, in nanoseconds, of the calls to the decision procedure.
+	 */
+	private final Metrics.Histogram solveLatency = metrics.histogram("solve");
+
+	/**
+	 * Solver calls in flight, so that concurrent identical queries are only
+	 * solved once.
+	 */
+	private final SingleFlight<Boolean> inflight = new SingleFlight<Boolean>();
 
 	public SATService(Green solver) {
 		super(solver);
@@ -32,80 +49,138 @@ public abstract class SATService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unssatQueries = " + unsatCount);
+		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "coalescedCount = " + inflight.getCoalescedCount());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unssatQueries = " + unsatCount.get());
+	}
+
+	@Override
+	public String getStoreKey(Instance instance) {
+		return SERVICE_KEY + instance.getFullExpression().getCachedString();
 	}
 
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
-		return instance.getData(getClass());
+		return instance.getSlotData(slot);
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
-		Boolean result = (Boolean) instance.getData(getClass());
+		Boolean result = (Boolean) instance.getSlotData(slot);
 		if (result == null) {
 			result = solve0(instance);
 			if (result != null) {
-				instance.setData(getClass(), result);
+				instance.setSlotData(slot, result);
 			}
 		}
-//        assert result != null;
-		if (result)
-			satCount++;
-		else
-			unsatCount++;
+		// The result is null if the solver gave up, for example because the
+		// deadline of the request was reached
+		if (result == null) {
+			return null;
+		} else if (result) {
+			satCount.increment();
+		} else {
+			unsatCount.increment();
+		}
 		return null;
 	}
 
-	private Boolean solve0(Instance instance) {
-		invocationCount++;
-		String key = SERVICE_KEY + instance.getFullExpression().getCachedString();
+	private Boolean solve0(final Instance instance) {
+		invocationCount.increment();
+		final String key = getStoreKey(instance);
+		final Batch batch = instance.getBatch();
 		long tmpConsumption = 0L;
 		long start = System.currentTimeMillis();
-		Boolean result = store.getBoolean(key);
+		Boolean result;
+		Object event = Jfr.STORE_LOOKUP.begin();
+		if (batch == null) {
+			// A miss of a bulk lookup earlier in the request is not repeated
+			result = instance.takeStoreMiss(key) ? null : store.getBoolean(key);
+		} else {
+			Object value = batch.get(key, store);
+			result = (value instanceof Boolean) ? (Boolean) value : null;
+		}
+		Jfr.commitStoreLookup(event, metrics.getName(), instance, key, result != null);
 
 		if (result == null) {
-			cacheMissCount++;
 			long startTime = System.currentTimeMillis();
-			result = solve(instance);
-			timeConsumption += (System.currentTimeMillis() - startTime);
-			tmpConsumption = System.currentTimeMillis() - startTime;
-			if (result != null) {
-				if (result) {
-					satMissCount++;
-				} else {
-					unsatMissCount++;
+			result = inflight.execute(key, new Supplier<Boolean>() {
+				@Override
+				public Boolean get() {
+					return solveMiss(instance, key, batch);
 				}
-				store.put(key, result);
-			}
+			}, instance.getDeadline());
+			tmpConsumption = System.currentTimeMillis() - startTime;
 		} else {
-			cacheHitCount++;
+			cacheHitCount.increment();
 			if (result) {
-				satHitCount++;
+				satHitCount.increment();
 			} else {
-				unsatHitCount++;
+				unsatHitCount.increment();
+			}
+		}
+		storageTimeConsumption.add(((System.currentTimeMillis() - start) - tmpConsumption));
+		return result;
+	}
+
+	/**
+	 * Solves an instance that was not found in the store and stores the
+	 * result. Concurrent requests for the same key wait for this call.
+	 */
+	private Boolean solveMiss(Instance instance, String key, Batch batch) {
+		Deadline deadline = instance.getDeadline();
+		if ((deadline != null) && deadline.isDone()) {
+			return null;
+		}
+		if (batch != null) {
+			// Another request of the batch may have solved the key meanwhile
+			Object known = batch.getKnown(key);
+			if (known instanceof Boolean) {
+				cacheHitCount.increment();
+				return (Boolean) known;
+			}
+		}
+		cacheMissCount.increment();
+		long startTime = System.currentTimeMillis();
+		long nanos = System.nanoTime();
+		Object event = Jfr.SOLVER_INVOCATION.begin();
+		Boolean result = solve(instance);
+		Jfr.commitSolverInvocation(event, metrics.getName(), instance, result);
+		nanos = System.nanoTime() - nanos;
+		solveLatency.record(nanos);
+		solver.getSlowQueries().record(metrics.getName(), instance.getFullExpression(), nanos, result);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
+		if (result != null) {
+			if (result) {
+				satMissCount.increment();
+			} else {
+				unsatMissCount.increment();
+			}
+			startTime = System.currentTimeMillis();
+			store.put(key, result);
+			if (batch != null) {
+				batch.put(key, result);
 			}
+			storageTimeConsumption.add((System.currentTimeMillis() - startTime));
 		}
-		storageTimeConsumption += ((System.currentTimeMillis() - start) - tmpConsumption);
 		return result;
 	}
 
 	private Boolean solve1(Instance instance) {
-		invocationCount++;
-		cacheMissCount++;
+		invocationCount.increment();
+		cacheMissCount.increment();
 		long startTime = System.currentTimeMillis();
 		Boolean result = solve0(instance);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return result;
 	}
 
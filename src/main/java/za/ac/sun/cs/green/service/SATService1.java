@@ -2,6 +2,7 @@ package za.ac.sun.cs.green.service;
 
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Set;
@@ -13,21 +14,26 @@ public abstract class SATService1 extends BasicService {
 
 	private static final String SERVICE_KEY = "SAT1:";
 
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
-	protected int cacheHitCount = 0;
-	protected int satHitCount = 0;
-	protected int unsatHitCount = 0;
+	protected final Metrics.Counter cacheHitCount = metrics.counter("cacheHitCount");
+	protected final Metrics.Counter satHitCount = metrics.counter("satHitCount");
+	protected final Metrics.Counter unsatHitCount = metrics.counter("unsatHitCount");
 
-	protected int cacheMissCount = 0;
-	protected int satMissCount = 0;
-	protected int unsatMissCount = 0;
+	protected final Metrics.Counter cacheMissCount = metrics.counter("cacheMissCount");
+	protected final Metrics.Counter satMissCount = metrics.counter("satMissCount");
+	protected final Metrics.Counter unsatMissCount = metrics.counter("unsatMissCount");
 
-	private long timeConsumption = 0;
-	protected long storageTimeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter storageTimeConsumption = metrics.counter("storageTimeConsumption");
 
-	protected int satCount = 0;
-	protected int unsatCount = 0;
+	protected final Metrics.Counter satCount = metrics.counter("satCount");
+	protected final Metrics.Counter unsatCount = metrics.counter("unsatCount");
+
+	/**
+	 * Latency, in nanoseconds, of the calls to the decision procedure.
+	 */
+	private final Metrics.Histogram solveLatency = metrics.histogram("solve");
 
 
 	public SATService1(Green solver) {
@@ -36,52 +42,57 @@ public abstract class SATService1 extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
+		reporter.report(getClass().getSimpleName(), "invocationCount = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
 	}
 
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
-		return instance.getData(getClass());
+		return instance.getSlotData(slot);
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
-		Boolean result = (Boolean) instance.getData(getClass());
+		Boolean result = (Boolean) instance.getSlotData(slot);
 		if (result == null) {
 			result = solve0(instance);
 			if (result != null) {
-				instance.setData(getClass(), result);
+				instance.setSlotData(slot, result);
 			}
 		}
 		assert result != null;
 		if (result)
-			satCount++;
+			satCount.increment();
 		else
-			unsatCount++;
+			unsatCount.increment();
 		return null;
 	}
 
 	private Boolean solve0(Instance instance) {
-		invocationCount++;
-		cacheMissCount++;
+		invocationCount.increment();
+		cacheMissCount.increment();
 		long startTime = System.currentTimeMillis();
 		Boolean result = solve1(instance);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return result;
 	}
 
 	private Boolean solve1(Instance instance) {
-		return solve(instance);
+		long nanos = System.nanoTime();
+		Boolean result = solve(instance);
+		nanos = System.nanoTime() - nanos;
+		solveLatency.record(nanos);
+		solver.getSlowQueries().record(metrics.getName(), instance.getFullExpression(), nanos, result);
+		return result;
 	}
 
 	protected abstract Boolean solve(Instance instance);
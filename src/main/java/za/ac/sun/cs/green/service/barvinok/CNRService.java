@@ -9,6 +9,8 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.CountService;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.*;
@@ -118,22 +120,22 @@ public class CNRService extends CountService {
 	/*
 	 * Execution Time of the service.
 	 */
-	private long timeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	/*
 	 * Total number of times a formula is retrieved from Redis.
 	 */
-	private int cacheHitCount = 0;
+	private final Metrics.Counter cacheHitCount = metrics.counter("cacheHitCount");
 
 	/*
 	 * Total number of times a formula is not in Redis.
 	 */
-	private int cacheMissCount = 0;
+	private final Metrics.Counter cacheMissCount = metrics.counter("cacheMissCount");
 
 	/*
 	 * Total number of time the service is invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/*##################################################################*/
 
@@ -189,16 +191,16 @@ public class CNRService extends CountService {
 
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
-		return instance.getData(getClass());
+		return instance.getSlotData(slot);
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
-		Apint result = (Apint) instance.getData(getClass());
+		Apint result = (Apint) instance.getSlotData(slot);
 		if (result == null) {
 			result = solve(instance);
 			if (result != null) {
-				instance.setData(getClass(), result);
+				instance.setSlotData(slot, result);
 			}
 		}
 		return null;
@@ -206,12 +208,12 @@ public class CNRService extends CountService {
 
 	protected Apint solve(Instance instance) {
 		// Wrapper function to calculate time consumption.
-		invocationCount++;
+		invocationCount.increment();
 		long startTime = System.currentTimeMillis();
 		Apint count = null;
 
 		count = solve0(instance);
-		timeConsumption += System.currentTimeMillis() - startTime;
+		timeConsumption.add(System.currentTimeMillis() - startTime);
 
 		return count;
 	}
@@ -228,7 +230,7 @@ public class CNRService extends CountService {
 
 			if (cases == null) {
 				//  not in store
-				cacheMissCount++;
+				cacheMissCount.increment();
 				try {
 					//  translate to barvinok & add bounds
 					result = translate(instance);
@@ -256,7 +258,7 @@ public class CNRService extends CountService {
 				}
 			} else {
 				// else :: in store
-				cacheHitCount++;
+				cacheHitCount.increment();
 			}
 
 		} else {
@@ -326,7 +328,12 @@ public class CNRService extends CountService {
 			executor.setStreamHandler(new PumpStreamHandler(outputStream));
 			executor.setWorkingDirectory(new File(directory));
 			executor.setExitValues(null);
-			executor.execute(CommandLine.parse(barvinokCommand));
+			Object event = Jfr.PROCESS_SPAWN.begin();
+			try {
+				executor.execute(CommandLine.parse(barvinokCommand));
+			} finally {
+				Jfr.commitProcessSpawn(event, barvinokCommand);
+			}
 			result = outputStream.toString();
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -345,10 +352,10 @@ public class CNRService extends CountService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 }
 
@@ -3,9 +3,11 @@ package za.ac.sun.cs.green.service.barvinok;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
 import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.logging.log4j.Logger;
 import org.apfloat.Apint;
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.Expression;
@@ -13,10 +15,12 @@ import za.ac.sun.cs.green.expr.IntConstant;
 import za.ac.sun.cs.green.expr.IntVariable;
 import za.ac.sun.cs.green.expr.Operation;
 import za.ac.sun.cs.green.service.CountService;
+import za.ac.sun.cs.green.util.Jfr;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /***
  * [Dependencies]
@@ -139,7 +143,12 @@ public class CountBarvinokService extends CountService {
 
 	@Override
 	protected Apint solve(Instance instance) {
-		return new HMatrix().count(instance.getExpression());
+		try {
+			return new HMatrix(instance.getDeadline()).count(instance.getExpression());
+		} catch (Deadline.ExceededException x) {
+			log.warn(x.getMessage());
+			return null;
+		}
 	}
 
 	/**
@@ -399,10 +408,18 @@ public class CountBarvinokService extends CountService {
 		 */
 		private Apint correction;
 
+		/**
+		 * The deadline of the request, or {@code null}.
+		 */
+		private final Deadline deadline;
+
 		/**
 		 * Constructor for an H-matrix.
+		 *
+		 * @param deadline the deadline of the request, or {@code null}
 		 */
-		public HMatrix() {
+		public HMatrix(Deadline deadline) {
+			this.deadline = deadline;
 			eqRows = new HashSet<HRow>();
 			neRows = new HashSet<HRow>();
 			ltRows = new HashSet<HRow>();
@@ -637,6 +654,9 @@ public class CountBarvinokService extends CountService {
 		 * @return the number of satisfying solutions as an {@link Apint}
 		 */
 		private Apint processInput(String input) {
+			if ((deadline != null) && deadline.isDone()) {
+				throw new Deadline.ExceededException("Barvinok not invoked after the deadline");
+			}
 			if (store == null) {
 				return new Apint(invokeBarvinok(input)).multiply(correction);
 			} else {
@@ -678,7 +698,31 @@ public class CountBarvinokService extends CountService {
 				executor.setStreamHandler(new PumpStreamHandler(outputStream));
 				executor.setWorkingDirectory(new File(directory));
 				executor.setExitValues(null);
-				executor.execute(CommandLine.parse(barvinokCommand));
+				// Kill the process when the deadline expires or is cancelled
+				final ExecuteWatchdog watchdog = new ExecuteWatchdog(((deadline != null) && deadline.isBounded())
+						? Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)) : ExecuteWatchdog.INFINITE_TIMEOUT);
+				executor.setWatchdog(watchdog);
+				Runnable kill = new Runnable() {
+					@Override
+					public void run() {
+						watchdog.destroyProcess();
+					}
+				};
+				if (deadline != null) {
+					deadline.addListener(kill);
+				}
+				Object event = Jfr.PROCESS_SPAWN.begin();
+				try {
+					executor.execute(CommandLine.parse(barvinokCommand));
+				} finally {
+					Jfr.commitProcessSpawn(event, barvinokCommand);
+					if (deadline != null) {
+						deadline.removeListener(kill);
+					}
+				}
+				if (watchdog.killedProcess()) {
+					throw new Deadline.ExceededException("Barvinok killed at the deadline");
+				}
 				result = outputStream.toString();
 			} catch (ExecuteException e) {
 				System.out.println("LattECounter : caught " + e.getClass()
@@ -4,6 +4,7 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
@@ -32,13 +33,13 @@ public class BounderService extends BasicService {
 	/**
 	 * Number of times the bounder has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Total number of variables processed.
 	 */
-	private int totalVariableCount = 0;
-	private long timeConsumption = 0;
+	private final Metrics.Counter totalVariableCount = metrics.counter("totalVariableCount");
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	public BounderService(Green solver) {
 		super(solver);
@@ -48,7 +49,7 @@ public class BounderService extends BasicService {
 	public Set<Instance> processRequest(Instance instance) {
 		long start = System.currentTimeMillis();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			Expression e = bound(instance.getFullExpression());
 			final Instance p = instance.getParent();
@@ -61,19 +62,19 @@ public class BounderService extends BasicService {
 			final Instance i = new Instance(getSolver(), instance.getSource(),
 					q, instance.getExpression());
 			result = Collections.singleton(i);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 		return result;
 	}
 
 	@Override
 	public void report(Reporter reporter) {
 		reporter.report(getClass().getSimpleName(), "invocations = "
-				+ invocationCount);
+				+ invocationCount.get());
 		reporter.report(getClass().getSimpleName(), "totalVariables = "
-				+ totalVariableCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+				+ totalVariableCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 	/**
@@ -86,12 +87,12 @@ public class BounderService extends BasicService {
 	 * @return bound conjuncts for all of the variables in the input
 	 */
 	private Expression bound(Expression expression) {
-		invocationCount++;
+		invocationCount.increment();
 		Expression e = null;
 		try {
 			Set<Variable> variables = new VariableCollector()
 					.getVariables(expression);
-			totalVariableCount += variables.size();
+			totalVariableCount.add(variables.size());
 			for (Variable v : variables) {
 				if (v instanceof IntVariable) {
 					IntVariable iv = (IntVariable) v;
@@ -14,6 +14,7 @@ import java.util.Set;
 public class ModelCanonizerService extends SATCanonizerService {
 
 	private static final String RENAME = "RENAME";
+	private static final int RENAME_SLOT = Instance.registerSlot(RENAME);
 
 	public ModelCanonizerService(Green solver) {
 		super(solver);
@@ -30,15 +31,15 @@ public class ModelCanonizerService extends SATCanonizerService {
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			final Map<Variable, Variable> map = new HashMap<Variable, Variable>();
 			final Expression e = canonize(instance.getFullExpression(), map);
 			Map<Variable, Variable> reverseMap = reverseMap(map);
 			final Instance i = new Instance(getSolver(), instance.getSource(), null, e);
 			result = Collections.singleton(i);
-			instance.setData(getClass(), result);
-			instance.setData(RENAME, reverseMap);
+			instance.setSlotData(slot, result);
+			instance.setSlotData(RENAME_SLOT, reverseMap);
 		}
 		return result;
 	}
@@ -53,7 +54,7 @@ public class ModelCanonizerService extends SATCanonizerService {
 		}
 
 		@SuppressWarnings("unchecked")
-		HashMap<Variable, Variable> reverseMap = (HashMap<Variable, Variable>) instance.getData(RENAME);
+		HashMap<Variable, Variable> reverseMap = (HashMap<Variable, Variable>) instance.getSlotData(RENAME_SLOT);
 
 		HashMap<Variable, Object> newResult = new HashMap<Variable, Object>();
 		for (Map.Entry<Variable, Object> m : r.entrySet()) {
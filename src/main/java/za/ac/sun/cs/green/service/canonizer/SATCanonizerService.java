@@ -4,6 +4,7 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.*;
@@ -13,8 +14,38 @@ public class SATCanonizerService extends BasicService {
 	/**
 	 * Number of times the slicer has been invoked.
 	 */
-	private int invocations = 0;
-	private long timeConsumption = 0;
+	private final Metrics.Counter invocations = metrics.counter("invocations");
+	private final Metrics.Counter reuseCount = metrics.counter("reuseCount");
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+
+	/**
+	 * Canonical forms of the expressions canonized so far. Instances that are
+	 * extended one conjunct at a time pass the same (unchanged) factors to the
+	 * canonizer over and over. The keys are weak, so that an entry disappears
+	 * with the last reference to its expression.
+	 * <p>
+	 * Variables are equal when their names are, but the canonical form
+	 * carries their bounds, so an entry is only reused for an expression whose
+	 * variables have the same bounds.
+	 */
+	private final Map<Expression, Canonical> canonical = Collections.synchronizedMap(new WeakHashMap<Expression, Canonical>());
+
+	/**
+	 * A canonical form and the bounds of the variables of the expression it
+	 * was computed for.
+	 */
+	private static final class Canonical {
+
+		private final List<Integer> bounds;
+
+		private final Expression expression;
+
+		Canonical(List<Integer> bounds, Expression expression) {
+			this.bounds = bounds;
+			this.expression = expression;
+		}
+
+	}
 
 	public SATCanonizerService(Green solver) {
 		super(solver);
@@ -24,29 +55,65 @@ public class SATCanonizerService extends BasicService {
 	public Set<Instance> processRequest(Instance instance) {
 		long startTime = System.currentTimeMillis();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
-			final Map<Variable, Variable> map = new HashMap<Variable, Variable>();
-			final Expression e = canonize(instance.getFullExpression(), map);
+			final Expression full = instance.getFullExpression();
+			List<Integer> bounds = bounds(full);
+			Canonical c = canonical.get(full);
+			Expression e;
+			if ((c == null) || !c.bounds.equals(bounds)) {
+				e = canonize(full, new HashMap<Variable, Variable>());
+				if (e != null) {
+					canonical.put(full, new Canonical(bounds, e));
+				}
+			} else {
+				e = c.expression;
+				reuseCount.increment();
+			}
 			final Instance i = new Instance(getSolver(), instance.getSource(), null, e);
 			result = Collections.singleton(i);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return result;
 	}
 
+	/**
+	 * Returns the bounds of the integer variables of an expression, in the
+	 * order in which they occur. The expression is traversed without
+	 * recursion.
+	 */
+	private static List<Integer> bounds(Expression expression) {
+		List<Integer> bounds = new ArrayList<Integer>();
+		Stack<Expression> pending = new Stack<Expression>();
+		pending.push(expression);
+		while (!pending.isEmpty()) {
+			Expression e = pending.pop();
+			if (e instanceof Operation) {
+				Operation o = (Operation) e;
+				for (int i = o.getOperatandCount() - 1; i >= 0; i--) {
+					pending.push(o.getOperand(i));
+				}
+			} else if (e instanceof IntVariable) {
+				bounds.add(((IntVariable) e).getLowerBound());
+				bounds.add(((IntVariable) e).getUpperBound());
+			}
+		}
+		return bounds;
+	}
+
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocations);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocations.get());
+		reporter.report(getClass().getSimpleName(), "reuseCount = " + reuseCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 	public Expression canonize(Expression expression,
 							   Map<Variable, Variable> map) {
 		try {
 //			log.debug("Before Canonization: {}", expression);
-			invocations++;
+			invocations.increment();
 			OrderingVisitor orderingVisitor = new OrderingVisitor();
 			expression.accept(orderingVisitor);
 			expression = orderingVisitor.getExpression();
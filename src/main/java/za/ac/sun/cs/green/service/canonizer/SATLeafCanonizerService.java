@@ -14,7 +14,7 @@ public class SATLeafCanonizerService extends SATCanonizerService {
 	@SuppressWarnings("unchecked")
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
-		Object canonized = instance.getData(getClass());
+		Object canonized = instance.getSlotData(slot);
 		if (canonized instanceof Set) {
 			return ((Set<Instance>) canonized).iterator().next().getExpression();
 		} else {
@@ -27,7 +27,12 @@ public class ModelChocoService extends ModelService {
 		try {
 			new ChocoTranslator(chocoModel, variableMap).translate(instance.getExpression());
 			Solver chocoSolver = chocoModel.getSolver();
+			SATChocoService.limit(chocoSolver, instance.getDeadline());
 			if (!chocoSolver.solve()) {
+				if (chocoSolver.isStopCriterionMet()) {
+					log.warn("Choco stopped at the deadline");
+					return null;
+				}
 				log.warn("constraint has no model, it is infeasible");
 				return null;
 			}
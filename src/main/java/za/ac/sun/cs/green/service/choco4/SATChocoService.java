@@ -3,6 +3,8 @@ package za.ac.sun.cs.green.service.choco4;
 import org.chocosolver.solver.Model;
 import org.chocosolver.solver.Solver;
 import org.chocosolver.solver.variables.IntVar;
+import org.chocosolver.util.criteria.Criterion;
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.Variable;
@@ -11,6 +13,7 @@ import za.ac.sun.cs.green.service.SATService;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class SATChocoService extends SATService {
 
@@ -25,7 +28,13 @@ public class SATChocoService extends SATService {
 		try {
 			new ChocoTranslator(chocoModel, variableMap).translate(instance.getExpression());
 			Solver chocoSolver = chocoModel.getSolver();
-			return chocoSolver.solve();
+			limit(chocoSolver, instance.getDeadline());
+			boolean result = chocoSolver.solve();
+			if (!result && chocoSolver.isStopCriterionMet()) {
+				log.warn("Choco stopped at the deadline");
+				return null;
+			}
+			return result;
 		} catch (TranslatorUnsupportedOperation x) {
 			log.warn(x.getMessage(), x);
 		} catch (VisitorException x) {
@@ -33,4 +42,27 @@ public class SATChocoService extends SATService {
 		}
 		return null;
 	}
+
+	/**
+	 * Limits the search to the deadline of the request: the remaining time
+	 * becomes a Choco time limit, and cancellation stops the search.
+	 *
+	 * @param chocoSolver the Choco solver
+	 * @param deadline    the deadline of the request, or {@code null}
+	 */
+	static void limit(Solver chocoSolver, final Deadline deadline) {
+		if (deadline == null) {
+			return;
+		}
+		if (deadline.isBounded()) {
+			chocoSolver.limitTime(Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)));
+		}
+		chocoSolver.limitSearch(new Criterion() {
+			@Override
+			public boolean isMet() {
+				return deadline.isCancelled();
+			}
+		});
+	}
+
 }
@@ -6,6 +6,7 @@ import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
 import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
@@ -14,25 +15,30 @@ import java.util.Set;
 
 public class CountFactorizerService extends BasicService {
 
+	private static final int FACTOR_EXPRESSION_SLOT = Instance.registerSlot(FactorExpressionOld.class);
+
 	private static final String FACTORS = "FACTORS";
+	private static final int FACTORS_SLOT = Instance.registerSlot(FACTORS);
 	private static final String COUNT = "COUNT";
+	private static final int COUNT_SLOT = Instance.registerSlot(COUNT);
 
 	private static final String FACTORS_UNSOLVED = "FACTORS_UNSOLVED";
+	private static final int FACTORS_UNSOLVED_SLOT = Instance.registerSlot(FACTORS_UNSOLVED);
 
 	/**
 	 * Number of times the slicer has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Total number of constraints processed.
 	 */
-	private int constraintCount = 0;
+	private final Metrics.Counter constraintCount = metrics.counter("constraintCount");
 
 	/**
 	 * Number of factored constraints returned.
 	 */
-	private int factorCount = 0;
+	private final Metrics.Counter factorCount = metrics.counter("factorCount");
 
 	public CountFactorizerService(Green solver) {
 		super(solver);
@@ -40,24 +46,24 @@ public class CountFactorizerService extends BasicService {
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
-		invocationCount++;
+		invocationCount.increment();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(FACTORS);
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(FACTORS_SLOT);
 		if (result == null) {
 			final Instance p = instance.getParent();
 
 			FactorExpressionOld fc0 = null;
 			if (p != null) {
-				fc0 = (FactorExpressionOld) p.getData(FactorExpressionOld.class);
+				fc0 = (FactorExpressionOld) p.getSlotData(FACTOR_EXPRESSION_SLOT);
 				if (fc0 == null) {
 					// Construct the parent's factor and store it
 					fc0 = new FactorExpressionOld(null, p.getFullExpression());
-					p.setData(FactorExpressionOld.class, fc0);
+					p.setSlotData(FACTOR_EXPRESSION_SLOT, fc0);
 				}
 			}
 
 			final FactorExpressionOld fc = new FactorExpressionOld(fc0, instance.getExpression());
-			instance.setData(FactorExpressionOld.class, fc);
+			instance.setSlotData(FACTOR_EXPRESSION_SLOT, fc);
 
 			result = new HashSet<Instance>();
 			for (Expression e : fc.getFactors()) {
@@ -66,14 +72,14 @@ public class CountFactorizerService extends BasicService {
 				result.add(i);
 			}
 			result = Collections.unmodifiableSet(result);
-			instance.setData(FACTORS, result);
-			instance.setData(COUNT, Apint.ONE);
-			instance.setData(FACTORS_UNSOLVED, new HashSet<Instance>(result));
+			instance.setSlotData(FACTORS_SLOT, result);
+			instance.setSlotData(COUNT_SLOT, Apint.ONE);
+			instance.setSlotData(FACTORS_UNSOLVED_SLOT, new HashSet<Instance>(result));
 
 			log.info("Factorize exiting with " + result.size() + " results");
 
-			constraintCount += 1;
-			factorCount += fc.getNumFactors();
+			constraintCount.add(1);
+			factorCount.add(fc.getNumFactors());
 		}
 		return result;
 	}
@@ -86,14 +92,14 @@ public class CountFactorizerService extends BasicService {
 			return Apint.ZERO;
 		}
 		@SuppressWarnings("unchecked")
-		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getData(FACTORS_UNSOLVED);
+		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getSlotData(FACTORS_UNSOLVED_SLOT);
 		if (unsolved.contains(subinstance)) {
-			Apint total = (Apint) instance.getData(COUNT);
+			Apint total = (Apint) instance.getSlotData(COUNT_SLOT);
 			total = total.multiply(count);
-			instance.setData(COUNT, total);
+			instance.setSlotData(COUNT_SLOT, total);
 			// Remove the subinstance now that it is solved 
 			unsolved.remove(subinstance);
-			instance.setData(FACTORS_UNSOLVED, unsolved);
+			instance.setSlotData(FACTORS_UNSOLVED_SLOT, unsolved);
 			// Return true if no more unsolved factors; else return null to carry on the computation
 			return (unsolved.isEmpty()) ? total : null;
 		} else {
@@ -106,7 +112,7 @@ public class CountFactorizerService extends BasicService {
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
 		@SuppressWarnings("unchecked")
-		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getData(FACTORS_UNSOLVED);
+		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getSlotData(FACTORS_UNSOLVED_SLOT);
 		if (unsolved.size() >= 1 && result == null) {
 			log.fatal("Unsolved Factors but result is null -> concurrency bug");
 			result = true;
@@ -116,9 +122,9 @@ public class CountFactorizerService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "totalConstraints = " + constraintCount);
-		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "totalConstraints = " + constraintCount.get());
+		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount.get());
 	}
 
 }
@@ -0,0 +1,460 @@
+package za.ac.sun.cs.green.service.factorizer;
+
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.expr.Visitor;
+import za.ac.sun.cs.green.expr.VisitorException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable partition of the propositions of a conjunction into factors
+ * that share no variables. A factorization is extended one conjunct at a
+ * time: {@link #extend(Expression)} returns a new factorization and leaves
+ * the old one intact, so that both branches of a path condition can be
+ * extended from the same prefix.
+ * <p>
+ * The factors form a persistent union-find. Every factor has an id, every
+ * variable is mapped to the id of the factor in which it first appeared,
+ * and when factors merge, the smaller ones are linked to the largest. An
+ * extension records only what it changes: its new variables and
+ * propositions, its new links and the factors it creates or grows. These
+ * records are kept in a list of levels, newest first, that is shared with
+ * the factorizations that are extended; like a binary counter, a level is
+ * merged with the level below it when that covers no more extensions, so
+ * that there are at most logarithmically many levels. Extending therefore
+ * does not revisit the propositions that are already present, and costs time
+ * proportional to the conjunct, times a factor that is logarithmic in the
+ * length of the conjunction (amortized over the extensions). A path of
+ * <i>n</i> conjuncts whose prefixes are all factorized retains
+ * <i>O(n</i> log <i>n)</i> entries in total.
+ * <p>
+ * The factorization of an {@link Instance} is cached in its satellite data.
+ * {@link #get(Instance)} computes it from the factorization of the parent
+ * instance, so that instances created with {@link Instance#extend(Expression)}
+ * are factorized in time proportional to their own conjunct.
+ */
+public final class Factorization {
+
+	/**
+	 * A factor: the conjunction of a set of propositions that share variables.
+	 */
+	private static final class Factor {
+
+		private final Expression expression;
+
+		private final int propositionCount;
+
+		private final int variableCount;
+
+		private Factor(Expression expression, int propositionCount, int variableCount) {
+			this.expression = expression;
+			this.propositionCount = propositionCount;
+			this.variableCount = variableCount;
+		}
+
+	}
+
+	/**
+	 * The changes made by one or more consecutive extensions.
+	 */
+	private static final class Level {
+
+		/**
+		 * The factor id of each variable that first appears in these
+		 * extensions. Ids are not updated when factors merge; {@link #links}
+		 * lead them to the current factor.
+		 */
+		private final Map<Variable, Integer> variables;
+
+		/**
+		 * The propositions that first appear in these extensions.
+		 */
+		private final Set<Expression> propositions;
+
+		/**
+		 * For each factor id that was merged by these extensions, the id of the
+		 * factor it was merged into.
+		 */
+		private final Map<Integer, Integer> links;
+
+		/**
+		 * The factors created or grown by these extensions, by id.
+		 */
+		private final Map<Integer, Factor> factors;
+
+		/**
+		 * The number of extensions covered by this level.
+		 */
+		private final int extensionCount;
+
+		/**
+		 * The level of the earlier extensions, or {@code null}.
+		 */
+		private final Level next;
+
+		private Level(Map<Variable, Integer> variables, Set<Expression> propositions, Map<Integer, Integer> links,
+				Map<Integer, Factor> factors, int extensionCount, Level next) {
+			this.variables = variables;
+			this.propositions = propositions;
+			this.links = links;
+			this.factors = factors;
+			this.extensionCount = extensionCount;
+			this.next = next;
+		}
+
+		/**
+		 * Returns the level that covers this level and the level below it.
+		 * Factors of ids that are merged by then are dropped.
+		 */
+		private Level mergeWithNext() {
+			Map<Variable, Integer> vs = new HashMap<Variable, Integer>(next.variables);
+			vs.putAll(variables);
+			Set<Expression> ps = new HashSet<Expression>(next.propositions);
+			ps.addAll(propositions);
+			Map<Integer, Integer> ls = new HashMap<Integer, Integer>(next.links);
+			ls.putAll(links);
+			Map<Integer, Factor> fs = new HashMap<Integer, Factor>(next.factors);
+			fs.putAll(factors);
+			fs.keySet().removeAll(ls.keySet());
+			return new Level(vs, ps, ls, fs, extensionCount + next.extensionCount, next.next);
+		}
+
+	}
+
+	/**
+	 * The satellite data slot in which instances keep their factorization.
+	 */
+	private static final int SLOT = Instance.registerSlot(Factorization.class);
+
+	/**
+	 * The factorization of the empty conjunction.
+	 */
+	public static final Factorization EMPTY = new Factorization(null, 0, 0, 0);
+
+	/**
+	 * The links and factors of a lookup outside an extension.
+	 */
+	private static final Map<Integer, Integer> NO_LINKS = Collections.emptyMap();
+
+	private static final Map<Integer, Factor> NO_FACTORS = Collections.emptyMap();
+
+	/**
+	 * The changes of the most recent extensions, or {@code null}.
+	 */
+	private final Level level;
+
+	/**
+	 * The number of factor ids that have been handed out.
+	 */
+	private final int idCount;
+
+	private final int propositionCount;
+
+	private final int variableCount;
+
+	private Factorization(Level level, int idCount, int propositionCount, int variableCount) {
+		this.level = level;
+		this.idCount = idCount;
+		this.propositionCount = propositionCount;
+		this.variableCount = variableCount;
+	}
+
+	/**
+	 * Returns the factorization of the given expression.
+	 *
+	 * @param expression the conjunction to factorize
+	 * @return the factorization
+	 */
+	public static Factorization of(Expression expression) {
+		return EMPTY.extend(expression);
+	}
+
+	/**
+	 * Returns the factorization of the full expression of the instance. The
+	 * result is cached in the instance, and it is computed from the cached
+	 * factorization of the closest ancestor that has one.
+	 *
+	 * @param instance the instance
+	 * @return the factorization of the full expression of the instance
+	 */
+	public static Factorization get(Instance instance) {
+		Factorization f = (Factorization) instance.getSlotData(SLOT);
+		if (f != null) {
+			return f;
+		}
+		List<Instance> pending = new ArrayList<Instance>();
+		Instance i = instance;
+		while ((i != null) && (f == null)) {
+			pending.add(i);
+			i = i.getParent();
+			f = (i == null) ? EMPTY : (Factorization) i.getSlotData(SLOT);
+		}
+		for (int j = pending.size() - 1; j >= 0; j--) {
+			Instance p = pending.get(j);
+			f = f.extend(p.getExpression());
+			p.setSlotData(SLOT, f);
+		}
+		return f;
+	}
+
+	/**
+	 * Returns the factorization of the conjunction of this factorization and
+	 * the given conjunct. If the conjunct adds no propositions, the result is
+	 * this factorization.
+	 *
+	 * @param conjunct the new conjunct
+	 * @return the extended factorization
+	 */
+	public Factorization extend(Expression conjunct) {
+		List<Expression> fresh = new ArrayList<Expression>();
+		split(conjunct, fresh);
+		Map<Variable, Integer> newVariables = new HashMap<Variable, Integer>();
+		Set<Expression> newPropositions = new HashSet<Expression>();
+		Map<Integer, Integer> newLinks = new HashMap<Integer, Integer>();
+		Map<Integer, Factor> newFactors = new HashMap<Integer, Factor>();
+		int n = idCount;
+		int pc = propositionCount;
+		int vc = variableCount;
+		for (Expression proposition : fresh) {
+			if (newPropositions.contains(proposition) || containsProposition(proposition)) {
+				continue;
+			}
+			newPropositions.add(proposition);
+			pc++;
+			Set<Integer> touched = new LinkedHashSet<Integer>();
+			List<Variable> unknown = new ArrayList<Variable>();
+			for (Variable variable : collectVariables(proposition)) {
+				Integer vid = newVariables.get(variable);
+				if (vid == null) {
+					vid = lookup(variable);
+				}
+				if (vid == null) {
+					unknown.add(variable);
+				} else {
+					touched.add(find(vid, newLinks));
+				}
+			}
+			vc += unknown.size();
+			// The proposition joins the largest factor it touches, and the
+			// other factors it touches are linked to that one
+			int root = -1;
+			int rootSize = 0;
+			Expression expression = proposition;
+			int size = 1;
+			int vars = unknown.size();
+			for (int t : touched) {
+				Factor f = factor(t, newFactors);
+				if (f.propositionCount > rootSize) {
+					root = t;
+					rootSize = f.propositionCount;
+				}
+				expression = new Operation(Operation.Operator.AND, f.expression, expression);
+				size += f.propositionCount;
+				vars += f.variableCount;
+			}
+			if (root < 0) {
+				root = n++;
+			}
+			for (int t : touched) {
+				if (t != root) {
+					newLinks.put(t, root);
+					newFactors.remove(t);
+				}
+			}
+			for (Variable variable : unknown) {
+				newVariables.put(variable, root);
+			}
+			newFactors.put(root, new Factor(expression, size, vars));
+		}
+		if (newPropositions.isEmpty()) {
+			return this;
+		}
+		Level l = new Level(newVariables, newPropositions, newLinks, newFactors, 1, level);
+		while ((l.next != null) && (l.next.extensionCount <= l.extensionCount)) {
+			l = l.mergeWithNext();
+		}
+		return new Factorization(l, n, pc, vc);
+	}
+
+	private Integer lookup(Variable variable) {
+		for (Level l = level; l != null; l = l.next) {
+			Integer id = l.variables.get(variable);
+			if (id != null) {
+				return id;
+			}
+		}
+		return null;
+	}
+
+	private boolean containsProposition(Expression proposition) {
+		for (Level l = level; l != null; l = l.next) {
+			if (l.propositions.contains(proposition)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the id of the factor that now contains the given id, following
+	 * the links of an extension in progress first.
+	 */
+	private int find(int id, Map<Integer, Integer> pending) {
+		while (true) {
+			Integer link = pending.get(id);
+			for (Level l = level; (link == null) && (l != null); l = l.next) {
+				link = l.links.get(id);
+			}
+			if (link == null) {
+				return id;
+			}
+			id = link;
+		}
+	}
+
+	/**
+	 * Returns the factor of an id that is its own representative, looking at
+	 * the factors of an extension in progress first.
+	 */
+	private Factor factor(int id, Map<Integer, Factor> pending) {
+		Factor factor = pending.get(id);
+		for (Level l = level; (factor == null) && (l != null); l = l.next) {
+			factor = l.factors.get(id);
+		}
+		return factor;
+	}
+
+	/**
+	 * Returns the factors.
+	 *
+	 * @return the conjunction of each factor
+	 */
+	public Set<Expression> getFactors() {
+		Set<Integer> merged = new HashSet<Integer>();
+		for (Level l = level; l != null; l = l.next) {
+			merged.addAll(l.links.keySet());
+		}
+		// The newest factor of each id that has not been merged
+		Set<Integer> seen = new HashSet<Integer>();
+		Set<Expression> result = new HashSet<Expression>();
+		for (Level l = level; l != null; l = l.next) {
+			for (Map.Entry<Integer, Factor> entry : l.factors.entrySet()) {
+				if (!merged.contains(entry.getKey()) && seen.add(entry.getKey())) {
+					result.add(entry.getValue().expression);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the conjunction of the factors that share variables with the
+	 * given conjunct, which must be part of this factorization. This is the
+	 * slice of the conjunction with respect to the conjunct. A conjunct
+	 * without variables is its own slice.
+	 *
+	 * @param conjunct the conjunct
+	 * @return the slice for the conjunct
+	 */
+	public Expression slice(Expression conjunct) {
+		Set<Integer> ids = new LinkedHashSet<Integer>();
+		for (Variable variable : collectVariables(conjunct)) {
+			Integer id = lookup(variable);
+			if (id != null) {
+				ids.add(find(id, NO_LINKS));
+			}
+		}
+		if (ids.isEmpty()) {
+			return conjunct;
+		}
+		Expression result = null;
+		for (int id : ids) {
+			Expression e = factor(id, NO_FACTORS).expression;
+			result = (result == null) ? e : new Operation(Operation.Operator.AND, result, e);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of propositions and variables in the slice for the
+	 * given conjunct, in that order.
+	 *
+	 * @param conjunct the conjunct
+	 * @return the sizes of the slice
+	 */
+	public int[] getSliceSize(Expression conjunct) {
+		Set<Integer> ids = new HashSet<Integer>();
+		for (Variable variable : collectVariables(conjunct)) {
+			Integer id = lookup(variable);
+			if (id != null) {
+				ids.add(find(id, NO_LINKS));
+			}
+		}
+		int[] size = new int[2];
+		for (int id : ids) {
+			Factor f = factor(id, NO_FACTORS);
+			size[0] += f.propositionCount;
+			size[1] += f.variableCount;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct propositions.
+	 *
+	 * @return the number of propositions
+	 */
+	public int getPropositionCount() {
+		return propositionCount;
+	}
+
+	/**
+	 * Returns the number of distinct variables.
+	 *
+	 * @return the number of variables
+	 */
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	/**
+	 * Splits an expression into its top-level propositions, in the same way
+	 * as {@link FactorExpression}: nested conjunctions are flattened, and any
+	 * other operation is a proposition.
+	 */
+	private static void split(Expression expression, List<Expression> propositions) {
+		if ((expression instanceof Operation) && (((Operation) expression).getOperator() == Operation.Operator.AND)) {
+			for (Expression operand : ((Operation) expression).getOperands()) {
+				split(operand, propositions);
+			}
+		} else if (expression != null) {
+			propositions.add(expression);
+		}
+	}
+
+	private static Set<Variable> collectVariables(Expression expression) {
+		final Set<Variable> variables = new LinkedHashSet<Variable>();
+		try {
+			expression.accept(new Visitor() {
+				@Override
+				public void postVisit(Variable variable) {
+					variables.add(variable);
+				}
+			});
+		} catch (VisitorException x) {
+			// The visitor does not throw exceptions
+		}
+		return variables;
+	}
+
+}
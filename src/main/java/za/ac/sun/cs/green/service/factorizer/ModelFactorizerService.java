@@ -6,6 +6,7 @@ import za.ac.sun.cs.green.Service;
 import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.expr.Variable;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
@@ -16,13 +17,16 @@ import java.util.Set;
 public class ModelFactorizerService extends BasicService {
 
 	private static final String FACTORS = "FACTORS";
+	private static final int FACTORS_SLOT = Instance.registerSlot(FACTORS);
 	private static final String MODELS = "MODELS";
+	private static final int MODELS_SLOT = Instance.registerSlot(MODELS);
 	private static final String FACTORS_UNSOLVED = "FACTORS_UNSOLVED";
+	private static final int FACTORS_UNSOLVED_SLOT = Instance.registerSlot(FACTORS_UNSOLVED);
 
 	private FactorExpression factorizer;
-	private int invocationCount = 0; // number of times factorizer has been invoked (constraints processed)
-	private int factorCount = 0; // number of factors
-	private long timeConsumption = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount"); // number of times factorizer has been invoked (constraints processed)
+	private final Metrics.Counter factorCount = metrics.counter("factorCount"); // number of factors
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	public ModelFactorizerService(Green solver) {
 		super(solver);
@@ -40,14 +44,14 @@ public class ModelFactorizerService extends BasicService {
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		long startTime = System.currentTimeMillis();
-		invocationCount++;
+		invocationCount.increment();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			result = processRequest0(instance);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return result;
 	}
 
@@ -67,14 +71,14 @@ public class ModelFactorizerService extends BasicService {
 			result.add(new Instance(getSolver(), instance.getSource(), null, factor));
 		}
 		result = Collections.unmodifiableSet(result);
-		instance.setData(FACTORS_UNSOLVED, new HashSet<>(result));
+		instance.setSlotData(FACTORS_UNSOLVED_SLOT, new HashSet<>(result));
 //		return result;
-		instance.setData(FACTORS, result);
-		instance.setData(MODELS, new HashMap<Variable, Object>());
+		instance.setSlotData(FACTORS_SLOT, result);
+		instance.setSlotData(MODELS_SLOT, new HashMap<Variable, Object>());
 
 		log.debug("Factorizer exiting with " + result.size() + " results");
 
-		factorCount += factors.size();
+		factorCount.add(factors.size());
 		return result;
 	}
 
@@ -94,7 +98,7 @@ public class ModelFactorizerService extends BasicService {
 	@SuppressWarnings("unchecked")
 	@Override
 	public Object childDone(Instance instance, Service subservice, Instance subinstance, Object result) {
-		Set<Instance> unsolved = (HashSet<Instance>) instance.getData(FACTORS_UNSOLVED);
+		Set<Instance> unsolved = (HashSet<Instance>) instance.getSlotData(FACTORS_UNSOLVED_SLOT);
 		if (isUnsat(result)) {
 			return null;
 		}
@@ -110,7 +114,7 @@ public class ModelFactorizerService extends BasicService {
 		if (unsolved.contains(subinstance)) {
 			result = handleNewChild(instance, subservice, subinstance, result);
 			unsolved.remove(subinstance);
-			instance.setData(FACTORS_UNSOLVED, unsolved);
+			instance.setSlotData(FACTORS_UNSOLVED_SLOT, unsolved);
 
 
 			// Return true if no more unsolved factors; else return null to carry on the
@@ -127,7 +131,7 @@ public class ModelFactorizerService extends BasicService {
 		if (result instanceof HashMap) {
 			HashMap<Variable, Object> model = (HashMap<Variable, Object>) result;
 			@SuppressWarnings("unchecked")
-			HashMap<Variable, Object> wholeModel = (HashMap<Variable, Object>) instance.getData(MODELS);
+			HashMap<Variable, Object> wholeModel = (HashMap<Variable, Object>) instance.getSlotData(MODELS_SLOT);
 			wholeModel.putAll(model);
 		}
 		return result;
@@ -138,7 +142,7 @@ public class ModelFactorizerService extends BasicService {
 			HashMap<Variable, Object>  model = (HashMap<Variable, Object> ) result;
 			if (model != null) {
 				@SuppressWarnings("unchecked")
-				HashMap<Variable, Object> wholeModel = (HashMap<Variable, Object>) instance.getData(MODELS);
+				HashMap<Variable, Object> wholeModel = (HashMap<Variable, Object>) instance.getSlotData(MODELS_SLOT);
 				return new HashMap<>(wholeModel);
 			}
 		}
@@ -147,10 +151,10 @@ public class ModelFactorizerService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount.get());
 		reporter.report(getClass().getSimpleName(), "conjunctCount = " + factorizer.getConjunctCount());
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 }
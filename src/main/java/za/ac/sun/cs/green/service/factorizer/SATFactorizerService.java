@@ -1,28 +1,54 @@
 package za.ac.sun.cs.green.service.factorizer;
 
+import za.ac.sun.cs.green.Batch;
+import za.ac.sun.cs.green.ExecutionPlan;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
 import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class SATFactorizerService extends BasicService {
 
-	private FactorExpression factorizer;
 	private static final String FACTORS_UNSOLVED = "FACTORS_UNSOLVED";
+	private static final String FACTORS_KNOWN = "FACTORS_KNOWN";
+	private static final int UNSOLVED_SLOT = Instance.registerSlot(FACTORS_UNSOLVED);
+	private static final int KNOWN_SLOT = Instance.registerSlot(FACTORS_KNOWN);
 
-	private int invocationCount = 0; // number of times factorizer has been invoked
-	private int factorCount = 0; // number of factors
-	private long timeConsumption = 0;
+	/**
+	 * Orders factors by the length of their textual form, which serves as an
+	 * estimate of the cost of solving them.
+	 */
+	private static final Comparator<Instance> BY_SIZE = new Comparator<Instance>() {
+		@Override
+		public int compare(Instance i0, Instance i1) {
+			return Integer.compare(i0.getExpression().getCachedString().length(),
+					i1.getExpression().getCachedString().length());
+		}
+	};
+
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount"); // number of times factorizer has been invoked
+	private final Metrics.Counter factorCount = metrics.counter("factorCount"); // number of factors
+	private final Metrics.Counter propositionCount = metrics.counter("propositionCount"); // number of conjuncts factorized
+	private final Metrics.Counter storeHitFactorCount = metrics.counter("storeHitFactorCount"); // number of factors found to be satisfiable in the store
+	private final Metrics.Counter unsatShortCircuitCount = metrics.counter("unsatShortCircuitCount"); // number of instances found to be unsatisfiable in the store
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	public SATFactorizerService(Green solver) {
 		super(solver);
-		factorizer = new FactorExpression(log);
 	}
 
 	/**
@@ -36,14 +62,14 @@ public class SATFactorizerService extends BasicService {
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		long startTime = System.currentTimeMillis();
-		invocationCount++;
+		invocationCount.increment();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			result = processRequest0(instance);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return result;
 	}
 
@@ -55,17 +81,99 @@ public class SATFactorizerService extends BasicService {
 	 * @return set of factors as instances
 	 */
 	protected Set<Instance> processRequest0(Instance instance) {
-		Set<Expression> factors = factorizer.factorize(instance.getFullExpression());
-		Set<Instance> result = new HashSet<>();
+		Factorization factorization = Factorization.get(instance);
+		Set<Expression> factors = factorization.getFactors();
+		propositionCount.add(factorization.getPropositionCount());
+		List<Instance> factorInstances = new ArrayList<>(factors.size());
 		for (Expression factor : factors) {
-			result.add(new Instance(getSolver(), instance.getSource(), null, factor));
+			factorInstances.add(new Instance(getSolver(), instance.getSource(), null, factor));
 		}
-		result = Collections.unmodifiableSet(result);
-		instance.setData(FACTORS_UNSOLVED, new HashSet<>(result));
-		factorCount += factors.size();
+		Set<Instance> result = schedule(instance, factorInstances);
+		instance.setSlotData(UNSOLVED_SLOT, new HashSet<>(result));
+		factorCount.add(factors.size());
 		return result;
 	}
 
+	/**
+	 * Decides which factors are passed on to the sub-services, and in which
+	 * order. The task managers process sub-instances in the order of the set
+	 * they receive, so the factors are ordered from small to large: cheap
+	 * factors are solved first, and an unsatisfiable one among them cancels
+	 * the solving of the others sooner.
+	 * <p>
+	 * Before that, the results of the factors are looked up in the store with
+	 * one bulk access, using the keys of the sub-services that each factor
+	 * will reach. Factors that are known to be satisfiable are not passed on
+	 * at all. If one factor is known to be unsatisfiable, so is the whole
+	 * instance, and no factor is passed on. The keys that are not found are
+	 * recorded for the request (see {@link Instance#addStoreMisses}), so that
+	 * the sub-services do not look them up a second time. Requests that belong to a
+	 * {@link Batch} skip this step, since the batch fetches the same keys in
+	 * bulk for all of its requests.
+	 *
+	 * @param instance the instance that was factorized
+	 * @param factors  the factors of the instance
+	 * @return the factors that must be solved, in the order to solve them
+	 */
+	private Set<Instance> schedule(Instance instance, List<Instance> factors) {
+		Map<Instance, String> keys = (instance.getBatch() == null) ? getStoreKeys(factors)
+				: Collections.<Instance, String>emptyMap();
+		Map<String, Object> known = keys.isEmpty() ? Collections.<String, Object>emptyMap()
+				: store.getAll(new HashSet<>(keys.values()));
+		List<Instance> unknown = new ArrayList<>(factors.size());
+		List<String> misses = new ArrayList<>(factors.size());
+		for (Instance factor : factors) {
+			String key = keys.get(factor);
+			Object value = (key == null) ? null : known.get(key);
+			if (Boolean.FALSE.equals(value)) {
+				unsatShortCircuitCount.increment();
+				instance.setSlotData(KNOWN_SLOT, Boolean.FALSE);
+				return Collections.emptySet();
+			} else if (Boolean.TRUE.equals(value)) {
+				storeHitFactorCount.increment();
+			} else {
+				unknown.add(factor);
+				if ((key != null) && (value == null)) {
+					misses.add(key);
+				}
+			}
+		}
+		if (!misses.isEmpty()) {
+			instance.addStoreMisses(misses);
+		}
+		if (unknown.isEmpty() && !factors.isEmpty()) {
+			instance.setSlotData(KNOWN_SLOT, Boolean.TRUE);
+		}
+		Collections.sort(unknown, BY_SIZE);
+		return Collections.unmodifiableSet(new LinkedHashSet<>(unknown));
+	}
+
+	/**
+	 * Returns the store key of each factor that reaches exactly one
+	 * {@link Batch.Prefetchable} sub-service. Factors that reach none (or
+	 * several, for example because an intermediate service splits them
+	 * further) are not looked up.
+	 *
+	 * @param factors the factors
+	 * @return the mapping from factors to store keys
+	 */
+	private Map<Instance, String> getStoreKeys(Collection<Instance> factors) {
+		Map<Instance, String> keys = new HashMap<>();
+		ExecutionPlan.Node node = solver.getPlan().getNode(this);
+		if ((node == null) || !node.hasChildren()) {
+			return keys;
+		}
+		List<String> k = new ArrayList<>(1);
+		for (Instance factor : factors) {
+			k.clear();
+			Batch.collectKeys(node, factor, k);
+			if (k.size() == 1) {
+				keys.put(factor, k.get(0));
+			}
+		}
+		return keys;
+	}
+
 	private boolean checkFalse(Object result) {
 		Boolean issat = (Boolean) result;
 		return (issat != null) && !issat;
@@ -96,11 +204,11 @@ public class SATFactorizerService extends BasicService {
 		}
 
 		@SuppressWarnings("unchecked")
-		Set<Instance> unsolved = (Set<Instance>) instance.getData(FACTORS_UNSOLVED);
+		Set<Instance> unsolved = (Set<Instance>) instance.getSlotData(UNSOLVED_SLOT);
 		if (unsolved.contains(subinstance)) {
 			result = handleNewChild(instance, subservice, subinstance, result);
 			unsolved.remove(subinstance);
-			instance.setData(FACTORS_UNSOLVED, unsolved);
+			instance.setSlotData(UNSOLVED_SLOT, unsolved);
 			// Return true if no more unsolved factors; else return null to carry on the
 			// computation
 			return (unsolved.isEmpty()) ? result : null;
@@ -140,19 +248,25 @@ public class SATFactorizerService extends BasicService {
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
 		@SuppressWarnings("unchecked")
-		Set<Instance> unsolved = (Set<Instance>) instance.getData(FACTORS_UNSOLVED);
+		Set<Instance> unsolved = (Set<Instance>) instance.getSlotData(UNSOLVED_SLOT);
 		if (!unsolved.isEmpty() && (result == null)) {
 			log.warn("unsolved factors but result is null");
 		}
+		if (unsolved.isEmpty() && (result == null)) {
+			// All factors were settled by the store
+			result = instance.getSlotData(KNOWN_SLOT);
+		}
 		return super.allChildrenDone(instance, result);
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount);
-		reporter.report(getClass().getSimpleName(), "conjunctCount = " + factorizer.getConjunctCount());
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount.get());
+		reporter.report(getClass().getSimpleName(), "storeHitFactors = " + storeHitFactorCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatShortCircuits = " + unsatShortCircuitCount.get());
+		reporter.report(getClass().getSimpleName(), "conjunctCount = " + propositionCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 }
 
@@ -5,6 +5,7 @@ import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
 import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
@@ -13,25 +14,29 @@ import java.util.Set;
 
 public class SATOldFactorizerService extends BasicService {
 
+	private static final int FACTOR_EXPRESSION_SLOT = Instance.registerSlot(FactorExpressionOld.class);
+
 	private static final String FACTORS = "FACTORS";
+	private static final int FACTORS_SLOT = Instance.registerSlot(FACTORS);
 
 	private static final String FACTORS_UNSOLVED = "FACTORS_UNSOLVED";
+	private static final int FACTORS_UNSOLVED_SLOT = Instance.registerSlot(FACTORS_UNSOLVED);
 
 	/**
 	 * Number of times the factorizer has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Total number of constraints processed.
 	 */
-	private int constraintCount = 0;
+	private final Metrics.Counter constraintCount = metrics.counter("constraintCount");
 
 	/**
 	 * Number of factored constraints returned.
 	 */
-	private int factorCount = 0;
-	private long timeConsumption = 0;
+	private final Metrics.Counter factorCount = metrics.counter("factorCount");
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	public SATOldFactorizerService(Green solver) {
 		super(solver);
@@ -40,24 +45,24 @@ public class SATOldFactorizerService extends BasicService {
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		long startTime = System.currentTimeMillis();
-		invocationCount++;
+		invocationCount.increment();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(FACTORS);
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(FACTORS_SLOT);
 		if (result == null) {
 			final Instance p = instance.getParent();
 
 			FactorExpressionOld fc0 = null;
 			if (p != null) {
-				fc0 = (FactorExpressionOld) p.getData(FactorExpressionOld.class);
+				fc0 = (FactorExpressionOld) p.getSlotData(FACTOR_EXPRESSION_SLOT);
 				if (fc0 == null) {
 					// Construct the parent's factor and store it
 					fc0 = new FactorExpressionOld(null, p.getFullExpression());
-					p.setData(FactorExpressionOld.class, fc0);
+					p.setSlotData(FACTOR_EXPRESSION_SLOT, fc0);
 				}
 			}
 
 			final FactorExpressionOld fc = new FactorExpressionOld(fc0, instance.getExpression());
-			instance.setData(FactorExpressionOld.class, fc);
+			instance.setSlotData(FACTOR_EXPRESSION_SLOT, fc);
 
 			result = new HashSet<Instance>();
 			for (Expression e : fc.getFactors()) {
@@ -66,15 +71,15 @@ public class SATOldFactorizerService extends BasicService {
 				result.add(i);
 			}
 			result = Collections.unmodifiableSet(result);
-			instance.setData(FACTORS, result);
-			instance.setData(FACTORS_UNSOLVED, new HashSet<Instance>(result));
+			instance.setSlotData(FACTORS_SLOT, result);
+			instance.setSlotData(FACTORS_UNSOLVED_SLOT, new HashSet<Instance>(result));
 
 //			log.info("Factorize exiting with " + result.size() + " results");
 
-			constraintCount += 1;
-			factorCount += fc.getNumFactors();
+			constraintCount.add(1);
+			factorCount.add(fc.getNumFactors());
 		}
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return result;
 	}
 
@@ -85,11 +90,11 @@ public class SATOldFactorizerService extends BasicService {
 			return false;
 		}
 		@SuppressWarnings("unchecked")
-		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getData(FACTORS_UNSOLVED);
+		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getSlotData(FACTORS_UNSOLVED_SLOT);
 		if (unsolved.contains(subinstance)) {
 			// Remove the subinstance now that it is solved 
 			unsolved.remove(subinstance);
-			instance.setData(FACTORS_UNSOLVED, unsolved);
+			instance.setSlotData(FACTORS_UNSOLVED_SLOT, unsolved);
 			// Return true if no more unsolved factors; else return null to carry on the computation
 			return (unsolved.isEmpty()) ? result : null;
 		} else {
@@ -101,7 +106,7 @@ public class SATOldFactorizerService extends BasicService {
 	@Override
 	public Object allChildrenDone(Instance instance, Object result) {
 		@SuppressWarnings("unchecked")
-		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getData(FACTORS_UNSOLVED);
+		HashSet<Instance> unsolved = (HashSet<Instance>) instance.getSlotData(FACTORS_UNSOLVED_SLOT);
 		if (unsolved.size() >= 1 && result == null) {
 			log.fatal("Unsolved Factors but result is null -> concurrency bug");
 			result = true;
@@ -111,10 +116,10 @@ public class SATOldFactorizerService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "totalConstraints = " + constraintCount);
-		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "totalConstraints = " + constraintCount.get());
+		reporter.report(getClass().getSimpleName(), "factoredConstraints = " + factorCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 }
@@ -10,6 +10,8 @@ import za.ac.sun.cs.green.service.grulia.gruliastore.GruliaStore;
 import za.ac.sun.cs.green.service.grulia.gruliastore.SatEntry;
 import za.ac.sun.cs.green.service.grulia.gruliastore.UnsatEntry;
 import za.ac.sun.cs.green.service.z3.ModelCoreZ3JavaService;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.File;
@@ -105,72 +107,72 @@ public class GruliaService extends SATService1 {
 	/**
 	 * Number of times the service has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Number of times some model satisfied some expression (in a run).
 	 */
-	private int satModelCount = 0;
+	private final Metrics.Counter satModelCount = metrics.counter("satModelCount");
 
 	/**
 	 * Number of times some unsat-core was in some expression (in a run).
 	 */
-	private int sharesUnsatCoresCount = 0;
+	private final Metrics.Counter sharesUnsatCoresCount = metrics.counter("sharesUnsatCoresCount");
 
 	/**
 	 * Number of times model tested
 	 */
-	private int modelsTested = 0;
+	private final Metrics.Counter modelsTested = metrics.counter("modelsTested");
 
 	/**
 	 * Number of times core tested
 	 */
-	private int unsatCoresTested = 0;
+	private final Metrics.Counter unsatCoresTested = metrics.counter("unsatCoresTested");
 
 	/**
 	 * Number of times the SMT solver was called.
 	 */
-	private int solverCount = 0;
+	private final Metrics.Counter solverCount = metrics.counter("solverCount");
 
 	/**
 	 * Number of models cached.
 	 */
-	private int satEntryCount = 0;
+	private final Metrics.Counter satEntryCount = metrics.counter("satEntryCount");
 
 	/**
 	 * Number of cores cached.
 	 */
-	private int unsatEntryCount = 0;
+	private final Metrics.Counter unsatEntryCount = metrics.counter("unsatEntryCount");
 
 	/**
 	 * Number of satisfied expressions (for a run).
 	 */
-	private int satCount = 0;
+	private final Metrics.Counter satCount = metrics.counter("satCount");
 
 	/**
 	 * Number of unsatisfied expressions.
 	 */
-	private int unsatCount = 0;
+	private final Metrics.Counter unsatCount = metrics.counter("unsatCount");
 
 	/**
 	 * Number of times a valid sat entry found in the Repository.
 	 */
-	private int satCacheHitCount = 0;
+	private final Metrics.Counter satCacheHitCount = metrics.counter("satCacheHitCount");
 
 	/**
 	 * Number of times a valid unsat entry found in the Repository.
 	 */
-	private int unsatCacheHitCount = 0;
+	private final Metrics.Counter unsatCacheHitCount = metrics.counter("unsatCacheHitCount");
 
 	/**
 	 * Number of times a valid sat entry was not found in the satRepo.
 	 */
-	private int satCacheMissCount = 0;
+	private final Metrics.Counter satCacheMissCount = metrics.counter("satCacheMissCount");
 
 	/**
 	 * Number of times a valid unsat entry was not found in the satRepo.
 	 */
-	private int unsatCacheMissCount = 0;
+	private final Metrics.Counter unsatCacheMissCount = metrics.counter("unsatCacheMissCount");
 
 	/**
 	 * Number of times a reference model satisfied the constraint
@@ -180,7 +182,7 @@ public class GruliaService extends SATService1 {
 	/**
 	 * Total number of variables encountered.
 	 */
-//	private int totalVariableCount = 0;
+//	private final Metrics.Counter totalVariableCount = metrics.counter("totalVariableCount");
 
 	/**
 	 * To keep track of the already seen variables.
@@ -195,7 +197,7 @@ public class GruliaService extends SATService1 {
 	/**
 	 * Total number of new variables encountered.
 	 */
-	protected int newVariableCount = 0;
+	protected final Metrics.Counter newVariableCount = metrics.counter("newVariableCount");
 
 	/*
 	 #################### TIME ########################
@@ -204,89 +206,59 @@ public class GruliaService extends SATService1 {
 	/**
 	 * Execution Time of the service.
 	 */
-	private long timeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
-	private long satTimeConsumption = 0;
+	private final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
 
-	private long unsatTimeConsumption = 0;
+	private final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
 
-	private long cacheLoadTimeConsumption = 0;
+	private final Metrics.Counter cacheLoadTimeConsumption = metrics.counter("cacheLoadTimeConsumption");
 
-	private long satCacheTime = 0;
-	private long unsatCacheTime = 0;
-	private long solverTime = 0;
-	private long satDeltaCalculationTime = 0;
+	private final Metrics.Counter satCacheTime = metrics.counter("satCacheTime");
+	private final Metrics.Counter unsatCacheTime = metrics.counter("unsatCacheTime");
+	private final Metrics.Counter solverTime = metrics.counter("solverTime");
+	private final Metrics.Counter satDeltaCalculationTime = metrics.counter("satDeltaCalculationTime");
 
-	private long modelsExtractionTime = 0;
-	private long modelsTestingTime = 0;
-	private long modelEvalTime = 0;
-	private long coreExtractionTime = 0;
-	private long coreTestingTime = 0;
+	private final Metrics.Counter modelsExtractionTime = metrics.counter("modelsExtractionTime");
+	private final Metrics.Counter modelsTestingTime = metrics.counter("modelsTestingTime");
+	private final Metrics.Counter modelEvalTime = metrics.counter("modelEvalTime");
+	private final Metrics.Counter coreExtractionTime = metrics.counter("coreExtractionTime");
+	private final Metrics.Counter coreTestingTime = metrics.counter("coreTestingTime");
 
 	/*** Resetting counters ***/
-	private void setSatModelCount(int x) {
-		satModelCount = x;
-	}
-
-	private void setUnsatCoreCount(int x) {
-		sharesUnsatCoresCount = x;
-	}
-
-	private void setSolverCount(int x) {
-		solverCount = x;
-	}
-
-	private void setEntryCount(int x) {
-		satEntryCount = x;
-		unsatEntryCount = x;
-	}
-
-	private void setSatCount(int x) {
-		satCount = x;
-	}
-
-	private void setUnsatCount(int x) {
-		unsatCount = x;
-	}
-
-	private void setTimeConsumption(long x) {
-		timeConsumption = x;
-		satTimeConsumption = x;
-		unsatTimeConsumption = x;
-	}
-
-	private void setCacheHitCount(int x) {
-		satCacheHitCount = x;
-	}
-
-	private void setUnsatCacheHitCount(int x) {
-		unsatCacheHitCount = x;
-	}
-
-	private void setCacheMissCount(int x) {
-		satCacheMissCount = x;
-	}
-
-	private void setUnsatCacheMissCount(int x) {
-		unsatCacheMissCount = x;
-	}
-
 	public void reset() {
-		setCacheHitCount(0);
-		setCacheMissCount(0);
-		setEntryCount(0);
-		setSatCount(0);
-		setSatModelCount(0);
-		setSolverCount(0);
-		setTimeConsumption(0L);
-		setUnsatCount(0);
-		setUnsatCacheHitCount(0);
-		setUnsatCacheMissCount(0);
-		setUnsatCoreCount(0);
+		satCacheHitCount.reset();
+		satCacheMissCount.reset();
+		satEntryCount.reset();
+		unsatEntryCount.reset();
+		satCount.reset();
+		satModelCount.reset();
+		solverCount.reset();
+		timeConsumption.reset();
+		satTimeConsumption.reset();
+		unsatTimeConsumption.reset();
+		unsatCount.reset();
+		unsatCacheHitCount.reset();
+		unsatCacheMissCount.reset();
+		sharesUnsatCoresCount.reset();
 	}
 
 	/*##################################################################*/
 
+	/**
+	 * Constructs the service and sets the soft memory limit of its
+	 * repositories from the {@code green.grulia.memory.limit} property.
+	 *
+	 * @param solver     the {@link Green} solver this service will be added to
+	 * @param properties the configuration properties
+	 */
+	public GruliaService(Green solver, Properties properties) {
+		this(solver);
+		long limit = Configuration.getLongProperty(properties, Configuration.GRULIA_MEMORY_LIMIT_PROPERTY, 0);
+		SAT_REPO.getMemory().setSoftLimit(limit);
+		UNSAT_REPO.getMemory().setSoftLimit(limit);
+	}
+
 	/**
 	 * Constructor for the basic service. It simply initializes its three
 	 * attributes.
@@ -297,8 +269,8 @@ public class GruliaService extends SATService1 {
 	 */
 	public GruliaService(Green solver) {
 		super(solver);
-		SAT_REPO = new BinaryTreeStore<SatEntry>(solver, defaultZero);
-		UNSAT_REPO = new BinaryTreeStore<UnsatEntry>(solver, defaultZero);
+		SAT_REPO = new BinaryTreeStore<SatEntry>(solver, defaultZero, getClass().getSimpleName() + "SatRepository");
+		UNSAT_REPO = new BinaryTreeStore<UnsatEntry>(solver, defaultZero, getClass().getSimpleName() + "UnsatRepository");
 
 		// Load from store (specifically redis)
 		// -- for persistent storage
@@ -311,7 +283,7 @@ public class GruliaService extends SATService1 {
 				UNSAT_REPO.add((UnsatEntry) val);
 			}
 		}
-		cacheLoadTimeConsumption += (System.currentTimeMillis() - start);
+		cacheLoadTimeConsumption.add((System.currentTimeMillis() - start));
 
         /*
 		newVariables = new ArrayList<IntVariable>();
@@ -364,11 +336,11 @@ public class GruliaService extends SATService1 {
 		boolean isSat;
 		isSat = solve1(instance);
 		long a = (System.currentTimeMillis() - startTime);
-		timeConsumption += a;
+		timeConsumption.add(a);
 		if (isSat) {
-			satTimeConsumption += a;
+			satTimeConsumption.add(a);
 		} else {
-			unsatTimeConsumption += a;
+			unsatTimeConsumption.add(a);
 		}
 		return isSat;
 	}
@@ -384,7 +356,7 @@ public class GruliaService extends SATService1 {
 		long startTime;
 		boolean status = false;
 
-		invocationCount++;
+		invocationCount.increment();
 		Expression target = instance.getFullExpression();
 		ExprVisitor exprVisitor = new ExprVisitor();
 		try {
@@ -397,7 +369,7 @@ public class GruliaService extends SATService1 {
 
 		startTime = System.currentTimeMillis();
 		satDelta = calculateSATDelta(target);
-		satDeltaCalculationTime += (System.currentTimeMillis() - startTime);
+		satDeltaCalculationTime.add((System.currentTimeMillis() - startTime));
 
 		if (Math.round(satDelta) == 0) {
 			// The sat-delta computation produced a hit
@@ -408,7 +380,7 @@ public class GruliaService extends SATService1 {
 		startTime = System.currentTimeMillis();
 		SatEntry ref0 = new SatEntry(satDelta, null, setOfVars.size());
 		status = sharesModel(ref0, target);
-		satCacheTime += (System.currentTimeMillis() - startTime);
+		satCacheTime.add((System.currentTimeMillis() - startTime));
 		if (status) {
 			// if model satisfied expression, i.e. query is sat
 			// return immediately
@@ -418,7 +390,7 @@ public class GruliaService extends SATService1 {
 		startTime = System.currentTimeMillis();
 		UnsatEntry ref1 = new UnsatEntry(satDelta, null, -1);
 		status = sharesUnsatCores(ref1, target);
-		unsatCacheTime += (System.currentTimeMillis() - startTime);
+		unsatCacheTime.add((System.currentTimeMillis() - startTime));
 		if (status) {
 			// if shares unsat cores i.e. query is unsat
 			// return immediately
@@ -430,7 +402,7 @@ public class GruliaService extends SATService1 {
 		startTime = System.currentTimeMillis();
 		status = callSolver(satDelta, target);
 
-		solverTime += (System.currentTimeMillis() - startTime);
+		solverTime.add((System.currentTimeMillis() - startTime));
 		return status;
 	}
 
@@ -457,7 +429,7 @@ public class GruliaService extends SATService1 {
 					// The reference solution satisfies the constraint
 					satDeltaIs0++;
 					expr.satDelta = referenceSatDelta;
-					satCount++;
+					satCount.increment();
 					return referenceSatDelta;
 				} else {
 					// Record calculated delta
@@ -468,7 +440,7 @@ public class GruliaService extends SATService1 {
 			result = result / REF_SOL_SIZE; // calculate average satDelta
 			expr.satDelta = result;    // record the final satDelta in expression
 //			satDeltaValues.add(result);
-//			totalVariableCount += VARS.size();
+//			totalVariableCount.add(VARS.size());
 		} catch (VisitorException x) {
 			result = -1;
 			log.fatal("encountered an exception -- this should not be happening!", x);
@@ -496,9 +468,9 @@ public class GruliaService extends SATService1 {
 			long start = System.currentTimeMillis();
 			long start1;
 			List<SatEntry> models = SAT_REPO.extract(dummy, K);
-			modelsExtractionTime += (System.currentTimeMillis() - start);
+			modelsExtractionTime.add((System.currentTimeMillis() - start));
 			if (models == null || models.isEmpty()) {
-				satCacheMissCount++;
+				satCacheMissCount.increment();
 				return false;
 			}
 
@@ -517,25 +489,25 @@ public class GruliaService extends SATService1 {
 				} catch (VisitorException x) {
 					log.fatal("encountered an exception -- this should not be happening!", x);
 				}
-				modelEvalTime += (System.currentTimeMillis() - start1);
+				modelEvalTime.add((System.currentTimeMillis() - start1));
 
 				if (exprSATCheck.isSat()) {
 					// already in repo,
 					// don't have to do anything
-					satModelCount++;
-					satCount++;
-					satCacheHitCount++;
+					satModelCount.increment();
+					satCount.increment();
+					satCacheHitCount.increment();
 //                    modelNumbers[i]++;
-					modelsTestingTime += (System.currentTimeMillis() - start);
+					modelsTestingTime.add((System.currentTimeMillis() - start));
 					return true;
 				} else {
-					modelsTested++;
+					modelsTested.increment();
 				}
 			}
-			modelsTestingTime += (System.currentTimeMillis() - start);
+			modelsTestingTime.add((System.currentTimeMillis() - start));
 		} // else :: repo empty -> check unsat cache
 
-		satCacheMissCount++;
+		satCacheMissCount.increment();
 		return false;
 	}
 
@@ -558,11 +530,11 @@ public class GruliaService extends SATService1 {
 		if (UNSAT_REPO.size() != 0) {
 			long start0 = System.currentTimeMillis();
 			List<UnsatEntry> cores = UNSAT_REPO.extract(dummy, K);
-			coreExtractionTime += (System.currentTimeMillis() - start0);
+			coreExtractionTime.add((System.currentTimeMillis() - start0));
 			boolean shares;
 
 			if (cores == null || cores.isEmpty()) {
-				unsatCacheMissCount++;
+				unsatCacheMissCount.increment();
 				return false;
 			}
 
@@ -584,22 +556,22 @@ public class GruliaService extends SATService1 {
 						}
 					}
 					if (shares) {
-						sharesUnsatCoresCount++;
-						unsatCount++;
-						unsatCacheHitCount++;
-						coreTestingTime += (System.currentTimeMillis() - start0);
+						sharesUnsatCoresCount.increment();
+						unsatCount.increment();
+						unsatCacheHitCount.increment();
+						coreTestingTime.add((System.currentTimeMillis() - start0));
 						return true;
 					} else {
-						unsatCoresTested++;
+						unsatCoresTested.increment();
 					}
 				} else {
 //                    log.log(Level.WARN, "Core with no entry found");
 				}
 			}
-			coreTestingTime += (System.currentTimeMillis() - start0);
+			coreTestingTime.add((System.currentTimeMillis() - start0));
 		} // else :: repo empty -> call solver
 
-		unsatCacheMissCount++;
+		unsatCacheMissCount.increment();
 		return false;
 	}
 
@@ -615,7 +587,7 @@ public class GruliaService extends SATService1 {
 		// Get model for formula
 		boolean isSat;
 		Instance i = new Instance(null, null, expr);
-		solverCount++;
+		solverCount.increment();
 
 		mcs.processRequest(i);
 		if (ModelCoreService.isSat(i)) {
@@ -624,15 +596,15 @@ public class GruliaService extends SATService1 {
 
 			SAT_REPO.add(newEntry);
 //			satDeltaValuesInRepo.add(satDelta);
-			satEntryCount++;
-			satCount++;
+			satEntryCount.increment();
+			satCount.increment();
 			isSat = true;
 		} else {
 			Set<Expression> core = ModelCoreService.getCore(i);
 			UnsatEntry newEntry = new UnsatEntry(satDelta, core);
 			UNSAT_REPO.add(newEntry);
-			unsatEntryCount++;
-			unsatCount++;
+			unsatEntryCount.increment();
+			unsatCount.increment();
 			isSat = false;
 		}
 		return isSat;
@@ -711,42 +683,44 @@ public class GruliaService extends SATService1 {
 	@Override
 	public void report(Reporter reporter) {
 		mcs.report(reporter);
-//        reporter.report(getClass().getSimpleName(), "totalVariables = " + totalVariableCount);
-//        reporter.report(getClass().getSimpleName(), "totalNewVariables = " + newVariableCount);
+		SAT_REPO.getMemory().report(getClass().getSimpleName() + "SatRepository", reporter);
+		UNSAT_REPO.getMemory().report(getClass().getSimpleName() + "UnsatRepository", reporter);
+//        reporter.report(getClass().getSimpleName(), "totalVariables = " + totalVariableCount.get());
+//        reporter.report(getClass().getSimpleName(), "totalNewVariables = " + newVariableCount.get());
 //        reporter.report(getClass().getSimpleName(), "totalOldVariables = " + (totalVariableCount-newVariableCount));
 //		reporter.report(getClass().getSimpleName(), "total SAT queries = " + totSatCount);
 		// COUNTS
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satCacheHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satCacheMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatCacheHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatCacheMissCount);
-		reporter.report(getClass().getSimpleName(), "solverCalls = " + solverCount);
-		reporter.report(getClass().getSimpleName(), "models_tested = " + modelsTested);
-		reporter.report(getClass().getSimpleName(), "models_reused = " + satModelCount);
-		reporter.report(getClass().getSimpleName(), "unsatCores_tested = " + unsatCoresTested);
-		reporter.report(getClass().getSimpleName(), "unsatCores_reused = " + sharesUnsatCoresCount);
-		reporter.report(getClass().getSimpleName(), "satEntries added to cache = " + satEntryCount);
-		reporter.report(getClass().getSimpleName(), "unsatEntries added to cache = " + unsatEntryCount);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satCacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satCacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatCacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatCacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "solverCalls = " + solverCount.get());
+		reporter.report(getClass().getSimpleName(), "models_tested = " + modelsTested.get());
+		reporter.report(getClass().getSimpleName(), "models_reused = " + satModelCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCores_tested = " + unsatCoresTested.get());
+		reporter.report(getClass().getSimpleName(), "unsatCores_reused = " + sharesUnsatCoresCount.get());
+		reporter.report(getClass().getSimpleName(), "satEntries added to cache = " + satEntryCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatEntries added to cache = " + unsatEntryCount.get());
 		reporter.report(getClass().getSimpleName(), "satDeltaIs0 = " + satDeltaIs0);
 		//		reporter.report(getClass().getSimpleName(), "total Models reused = " + totSatModelCount);
 
 		// TIMES
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "cacheLoadTime = " + cacheLoadTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "K_Model_extractTime = " + modelsExtractionTime);
-		reporter.report(getClass().getSimpleName(), "K_Model_testingTime = " + modelsTestingTime);
-		reporter.report(getClass().getSimpleName(), "model_evaluationTime = " + modelEvalTime);
-		reporter.report(getClass().getSimpleName(), "core_extractTime = " + coreExtractionTime);
-		reporter.report(getClass().getSimpleName(), "core_testingTime = " + coreTestingTime);
-		reporter.report(getClass().getSimpleName(), "satDelta_computationTime = " + satDeltaCalculationTime);
-		reporter.report(getClass().getSimpleName(), "satCache_checkTime = " + satCacheTime);
-		reporter.report(getClass().getSimpleName(), "unsatCache_checkTime = " + unsatCacheTime);
-		reporter.report(getClass().getSimpleName(), "solverCallTime = " + solverTime);
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "cacheLoadTime = " + cacheLoadTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "K_Model_extractTime = " + modelsExtractionTime.get());
+		reporter.report(getClass().getSimpleName(), "K_Model_testingTime = " + modelsTestingTime.get());
+		reporter.report(getClass().getSimpleName(), "model_evaluationTime = " + modelEvalTime.get());
+		reporter.report(getClass().getSimpleName(), "core_extractTime = " + coreExtractionTime.get());
+		reporter.report(getClass().getSimpleName(), "core_testingTime = " + coreTestingTime.get());
+		reporter.report(getClass().getSimpleName(), "satDelta_computationTime = " + satDeltaCalculationTime.get());
+		reporter.report(getClass().getSimpleName(), "satCache_checkTime = " + satCacheTime.get());
+		reporter.report(getClass().getSimpleName(), "unsatCache_checkTime = " + unsatCacheTime.get());
+		reporter.report(getClass().getSimpleName(), "solverCallTime = " + solverTime.get());
 /*
 		if (false) {
 			// Sat delta values
@@ -10,6 +10,8 @@ import za.ac.sun.cs.green.service.grulia.gruliastore.GruliaStore;
 import za.ac.sun.cs.green.service.grulia.gruliastore.SatEntry;
 import za.ac.sun.cs.green.service.grulia.gruliastore.UnsatEntry;
 import za.ac.sun.cs.green.service.z3.ModelCoreZ3JavaService;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.File;
@@ -106,72 +108,72 @@ public class ModelGruliaService extends ModelService1 {
 	/**
 	 * Number of times the service has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Number of times some model satisfied some expression (in a run).
 	 */
-	private int satModelCount = 0;
+	private final Metrics.Counter satModelCount = metrics.counter("satModelCount");
 
 	/**
 	 * Number of times some unsat-core was in some expression (in a run).
 	 */
-	private int sharesUnsatCoresCount = 0;
+	private final Metrics.Counter sharesUnsatCoresCount = metrics.counter("sharesUnsatCoresCount");
 
 	/**
 	 * Number of times model tested
 	 */
-	private int modelsTested = 0;
+	private final Metrics.Counter modelsTested = metrics.counter("modelsTested");
 
 	/**
 	 * Number of times core tested
 	 */
-	private int unsatCoresTested = 0;
+	private final Metrics.Counter unsatCoresTested = metrics.counter("unsatCoresTested");
 
 	/**
 	 * Number of times the SMT solver was called.
 	 */
-	private int solverCount = 0;
+	private final Metrics.Counter solverCount = metrics.counter("solverCount");
 
 	/**
 	 * Number of models cached.
 	 */
-	private int satEntryCount = 0;
+	private final Metrics.Counter satEntryCount = metrics.counter("satEntryCount");
 
 	/**
 	 * Number of cores cached.
 	 */
-	private int unsatEntryCount = 0;
+	private final Metrics.Counter unsatEntryCount = metrics.counter("unsatEntryCount");
 
 	/**
 	 * Number of satisfied expressions (for a run).
 	 */
-	private int satCount = 0;
+	private final Metrics.Counter satCount = metrics.counter("satCount");
 
 	/**
 	 * Number of unsatisfied expressions.
 	 */
-	private int unsatCount = 0;
+	private final Metrics.Counter unsatCount = metrics.counter("unsatCount");
 
 	/**
 	 * Number of times a valid sat entry found in the Repository.
 	 */
-	private int satCacheHitCount = 0;
+	private final Metrics.Counter satCacheHitCount = metrics.counter("satCacheHitCount");
 
 	/**
 	 * Number of times a valid unsat entry found in the Repository.
 	 */
-	private int unsatCacheHitCount = 0;
+	private final Metrics.Counter unsatCacheHitCount = metrics.counter("unsatCacheHitCount");
 
 	/**
 	 * Number of times a valid sat entry was not found in the satRepo.
 	 */
-	private int satCacheMissCount = 0;
+	private final Metrics.Counter satCacheMissCount = metrics.counter("satCacheMissCount");
 
 	/**
 	 * Number of times a valid unsat entry was not found in the satRepo.
 	 */
-	private int unsatCacheMissCount = 0;
+	private final Metrics.Counter unsatCacheMissCount = metrics.counter("unsatCacheMissCount");
 
 	/**
 	 * Number of times a reference model satisfied the constraint
@@ -181,7 +183,7 @@ public class ModelGruliaService extends ModelService1 {
 	/**
 	 * Total number of variables encountered.
 	 */
-//	private int totalVariableCount = 0;
+//	private final Metrics.Counter totalVariableCount = metrics.counter("totalVariableCount");
 
 	/**
 	 * To keep track of the already seen variables.
@@ -196,7 +198,7 @@ public class ModelGruliaService extends ModelService1 {
 	/**
 	 * Total number of new variables encountered.
 	 */
-	protected int newVariableCount = 0;
+	protected final Metrics.Counter newVariableCount = metrics.counter("newVariableCount");
 
 	/*
 	 #################### TIME ########################
@@ -205,86 +207,56 @@ public class ModelGruliaService extends ModelService1 {
 	/**
 	 * Execution Time of the service.
 	 */
-	private long timeConsumption = 0;
-	private long satTimeConsumption = 0;
-	private long unsatTimeConsumption = 0;
-	private long cacheLoadTimeConsumption = 0;
-
-	private long satCacheTime = 0;
-	private long unsatCacheTime = 0;
-	private long solverTime = 0;
-	private long satDeltaCalculationTime = 0;
-
-	private long modelsExtractionTime = 0;
-	private long modelsTestingTime = 0;
-	private long modelEvalTime = 0;
-	private long coreExtractionTime = 0;
-	private long coreTestingTime = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	private final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
+	private final Metrics.Counter cacheLoadTimeConsumption = metrics.counter("cacheLoadTimeConsumption");
+
+	private final Metrics.Counter satCacheTime = metrics.counter("satCacheTime");
+	private final Metrics.Counter unsatCacheTime = metrics.counter("unsatCacheTime");
+	private final Metrics.Counter solverTime = metrics.counter("solverTime");
+	private final Metrics.Counter satDeltaCalculationTime = metrics.counter("satDeltaCalculationTime");
+
+	private final Metrics.Counter modelsExtractionTime = metrics.counter("modelsExtractionTime");
+	private final Metrics.Counter modelsTestingTime = metrics.counter("modelsTestingTime");
+	private final Metrics.Counter modelEvalTime = metrics.counter("modelEvalTime");
+	private final Metrics.Counter coreExtractionTime = metrics.counter("coreExtractionTime");
+	private final Metrics.Counter coreTestingTime = metrics.counter("coreTestingTime");
 
 	/*** Resetting counters ***/
-	private void setSatModelCount(int x) {
-		satModelCount = x;
-	}
-
-	private void setUnsatCoreCount(int x) {
-		sharesUnsatCoresCount = x;
-	}
-
-	private void setSolverCount(int x) {
-		solverCount = x;
-	}
-
-	private void setEntryCount(int x) {
-		satEntryCount = x;
-		unsatEntryCount = x;
-	}
-
-	private void setSatCount(int x) {
-		satCount = x;
-	}
-
-	private void setUnsatCount(int x) {
-		unsatCount = x;
-	}
-
-	private void setTimeConsumption(long x) {
-		timeConsumption = x;
-		satTimeConsumption = x;
-		unsatTimeConsumption = x;
-	}
-
-	private void setCacheHitCount(int x) {
-		satCacheHitCount = x;
-	}
-
-	private void setUnsatCacheHitCount(int x) {
-		unsatCacheHitCount = x;
-	}
-
-	private void setCacheMissCount(int x) {
-		satCacheMissCount = x;
-	}
-
-	private void setUnsatCacheMissCount(int x) {
-		unsatCacheMissCount = x;
-	}
-
 	public void reset() {
-		setCacheHitCount(0);
-		setCacheMissCount(0);
-		setEntryCount(0);
-		setSatCount(0);
-		setSatModelCount(0);
-		setSolverCount(0);
-		setTimeConsumption(0L);
-		setUnsatCount(0);
-		setUnsatCacheHitCount(0);
-		setUnsatCacheMissCount(0);
-		setUnsatCoreCount(0);
+		satCacheHitCount.reset();
+		satCacheMissCount.reset();
+		satEntryCount.reset();
+		unsatEntryCount.reset();
+		satCount.reset();
+		satModelCount.reset();
+		solverCount.reset();
+		timeConsumption.reset();
+		satTimeConsumption.reset();
+		unsatTimeConsumption.reset();
+		unsatCount.reset();
+		unsatCacheHitCount.reset();
+		unsatCacheMissCount.reset();
+		sharesUnsatCoresCount.reset();
 	}
 
 	/*##################################################################*/
 
+	/**
+	 * Constructs the service and sets the soft memory limit of its
+	 * repositories from the {@code green.grulia.memory.limit} property.
+	 *
+	 * @param solver     the {@link Green} solver this service will be added to
+	 * @param properties the configuration properties
+	 */
+	public ModelGruliaService(Green solver, Properties properties) {
+		this(solver);
+		long limit = Configuration.getLongProperty(properties, Configuration.GRULIA_MEMORY_LIMIT_PROPERTY, 0);
+		SAT_REPO.getMemory().setSoftLimit(limit);
+		UNSAT_REPO.getMemory().setSoftLimit(limit);
+	}
+
 	/**
 	 * Constructor for the basic service. It simply initializes its three
 	 * attributes.
@@ -295,8 +267,8 @@ public class ModelGruliaService extends ModelService1 {
 	 */
 	public ModelGruliaService(Green solver) {
 		super(solver);
-		SAT_REPO = new BinaryTreeStore<SatEntry>(solver, defaultZero);
-		UNSAT_REPO = new BinaryTreeStore<UnsatEntry>(solver, defaultZero);
+		SAT_REPO = new BinaryTreeStore<SatEntry>(solver, defaultZero, getClass().getSimpleName() + "SatRepository");
+		UNSAT_REPO = new BinaryTreeStore<UnsatEntry>(solver, defaultZero, getClass().getSimpleName() + "UnsatRepository");
 
 		// Load from store (specifically redis)
 		// -- for persistent storage
@@ -309,7 +281,7 @@ public class ModelGruliaService extends ModelService1 {
 				UNSAT_REPO.add((UnsatEntry) val);
 			}
 		}
-		cacheLoadTimeConsumption += (System.currentTimeMillis() - start);
+		cacheLoadTimeConsumption.add((System.currentTimeMillis() - start));
 
         /*
 		newVariables = new ArrayList<IntVariable>();
@@ -366,7 +338,7 @@ public class ModelGruliaService extends ModelService1 {
 		long startTime;
 		Map<Variable, Object> model = null;
 
-		invocationCount++;
+		invocationCount.increment();
 		Expression target = instance.getFullExpression();
 		ExprVisitor exprVisitor = new ExprVisitor();
 		try {
@@ -379,7 +351,7 @@ public class ModelGruliaService extends ModelService1 {
 
 		startTime = System.currentTimeMillis();
 		Object[] deltaAndModel = calculateSATDelta(target);
-		satDeltaCalculationTime += (System.currentTimeMillis() - startTime);
+		satDeltaCalculationTime.add((System.currentTimeMillis() - startTime));
 
 		if (deltaAndModel[0] != null) {
 			// The sat-delta computation produced a hit
@@ -392,7 +364,7 @@ public class ModelGruliaService extends ModelService1 {
 		startTime = System.currentTimeMillis();
 		SatEntry ref0 = new SatEntry(satDelta, null, setOfVars.size());
 		model = sharesModel(ref0, target);
-		satCacheTime += (System.currentTimeMillis() - startTime);
+		satCacheTime.add((System.currentTimeMillis() - startTime));
 		if (model != null) {
 			// if model satisfied expression, i.e. query is sat
 			// return immediately
@@ -402,7 +374,7 @@ public class ModelGruliaService extends ModelService1 {
 		startTime = System.currentTimeMillis();
 		UnsatEntry ref1 = new UnsatEntry(satDelta, null, -1);
 		Set<Expression> core = sharesUnsatCores(ref1, target);
-		unsatCacheTime += (System.currentTimeMillis() - startTime);
+		unsatCacheTime.add((System.currentTimeMillis() - startTime));
 		if (core != null) {
 			// if shares unsat cores i.e. query is unsat
 			// return immediately
@@ -416,7 +388,7 @@ public class ModelGruliaService extends ModelService1 {
 		startTime = System.currentTimeMillis();
 		model = callSolver(satDelta, target);
 
-		solverTime += (System.currentTimeMillis() - startTime);
+		solverTime.add((System.currentTimeMillis() - startTime));
 		return model;
 	}
 
@@ -427,11 +399,11 @@ public class ModelGruliaService extends ModelService1 {
 		Map<Variable, Object> hasModel;
 		hasModel = solve1(instance);
 		long a = (System.currentTimeMillis() - startTime);
-		timeConsumption += a;
+		timeConsumption.add(a);
 		if (hasModel != null) {
-			satTimeConsumption += a;
+			satTimeConsumption.add(a);
 		} else {
-			unsatTimeConsumption += a;
+			unsatTimeConsumption.add(a);
 		}
 		return hasModel;
 	}
@@ -459,7 +431,7 @@ public class ModelGruliaService extends ModelService1 {
 					// The reference solution satisfies the constraint
 					satDeltaIs0++;
 					expr.satDelta = referenceSatDelta;
-					satCount++;
+					satCount.increment();
 					return new Object[] {gVisitor.getModel(), referenceSatDelta};
 				} else {
 					// Record calculated delta
@@ -470,7 +442,7 @@ public class ModelGruliaService extends ModelService1 {
 			result = result / REF_SOL_SIZE; // calculate average satDelta
 			expr.satDelta = result;    // record the final satDelta in expression
 //			satDeltaValues.add(result);
-//			totalVariableCount += VARS.size();
+//			totalVariableCount.add(VARS.size());
 		} catch (VisitorException x) {
 			result = null;
 			log.fatal("encountered an exception -- this should not be happening!", x);
@@ -498,9 +470,9 @@ public class ModelGruliaService extends ModelService1 {
 			long start = System.currentTimeMillis();
 			long start1;
 			List<SatEntry> models = SAT_REPO.extract(dummy, K);
-			modelsExtractionTime += (System.currentTimeMillis() - start);
+			modelsExtractionTime.add((System.currentTimeMillis() - start));
 			if (models == null || models.isEmpty()) {
-				satCacheMissCount++;
+				satCacheMissCount.increment();
 				return null;
 			}
 
@@ -519,25 +491,25 @@ public class ModelGruliaService extends ModelService1 {
 				} catch (VisitorException x) {
 					log.fatal("encountered an exception -- this should not be happening!", x);
 				}
-				modelEvalTime += (System.currentTimeMillis() - start1);
+				modelEvalTime.add((System.currentTimeMillis() - start1));
 
 				if (exprSATCheck.isSat()) {
 					// already in repo,
 					// don't have to do anything
-					satModelCount++;
-					satCount++;
-					satCacheHitCount++;
+					satModelCount.increment();
+					satCount.increment();
+					satCacheHitCount.increment();
 //                    modelNumbers[i]++;
-					modelsTestingTime += (System.currentTimeMillis() - start);
+					modelsTestingTime.add((System.currentTimeMillis() - start));
 					return trimSolution(dummy, model);
 				} else {
-					modelsTested++;
+					modelsTested.increment();
 				}
 			}
-			modelsTestingTime += (System.currentTimeMillis() - start);
+			modelsTestingTime.add((System.currentTimeMillis() - start));
 		} // else :: repo empty -> check unsat cache
 
-		satCacheMissCount++;
+		satCacheMissCount.increment();
 		return null;
 	}
 
@@ -590,11 +562,11 @@ public class ModelGruliaService extends ModelService1 {
 		if (UNSAT_REPO.size() != 0) {
 			long start0 = System.currentTimeMillis();
 			List<UnsatEntry> cores = UNSAT_REPO.extract(dummy, K);
-			coreExtractionTime += (System.currentTimeMillis() - start0);
+			coreExtractionTime.add((System.currentTimeMillis() - start0));
 			boolean shares;
 
 			if (cores == null || cores.isEmpty()) {
-				unsatCacheMissCount++;
+				unsatCacheMissCount.increment();
 				return null;
 			}
 
@@ -616,22 +588,22 @@ public class ModelGruliaService extends ModelService1 {
 						}
 					}
 					if (shares) {
-						sharesUnsatCoresCount++;
-						unsatCount++;
-						unsatCacheHitCount++;
-						coreTestingTime += (System.currentTimeMillis() - start0);
+						sharesUnsatCoresCount.increment();
+						unsatCount.increment();
+						unsatCacheHitCount.increment();
+						coreTestingTime.add((System.currentTimeMillis() - start0));
 						return core;
 					} else {
-						unsatCoresTested++;
+						unsatCoresTested.increment();
 					}
 				} else {
 //                    log.log(Level.WARN, "Core with no entry found");
 				}
 			}
-			coreTestingTime += (System.currentTimeMillis() - start0);
+			coreTestingTime.add((System.currentTimeMillis() - start0));
 		} // else :: repo empty -> call solver
 
-		unsatCacheMissCount++;
+		unsatCacheMissCount.increment();
 		return null;
 	}
 
@@ -647,7 +619,7 @@ public class ModelGruliaService extends ModelService1 {
 		// Get model for formula
 //		boolean isSat;
 		Instance i = new Instance(null, null, expr);
-		solverCount++;
+		solverCount.increment();
 
 		mcs.processRequest(i);
 		if (ModelCoreService.isSat(i)) {
@@ -656,16 +628,16 @@ public class ModelGruliaService extends ModelService1 {
 
 			SAT_REPO.add(newEntry);
 //			satDeltaValuesInRepo.add(satDelta);
-			satEntryCount++;
-			satCount++;
+			satEntryCount.increment();
+			satCount.increment();
 //			isSat = true;
 			return model;
 		} else {
 			Set<Expression> core = ModelCoreService.getCore(i);
 			UnsatEntry newEntry = new UnsatEntry(satDelta, core);
 			UNSAT_REPO.add(newEntry);
-			unsatEntryCount++;
-			unsatCount++;
+			unsatEntryCount.increment();
+			unsatCount.increment();
 //			isSat = false;
 			return null;
 		}
@@ -744,42 +716,44 @@ public class ModelGruliaService extends ModelService1 {
 	@Override
 	public void report(Reporter reporter) {
 		mcs.report(reporter);
-//        reporter.report(getClass().getSimpleName(), "totalVariables = " + totalVariableCount);
-//        reporter.report(getClass().getSimpleName(), "totalNewVariables = " + newVariableCount);
+		SAT_REPO.getMemory().report(getClass().getSimpleName() + "SatRepository", reporter);
+		UNSAT_REPO.getMemory().report(getClass().getSimpleName() + "UnsatRepository", reporter);
+//        reporter.report(getClass().getSimpleName(), "totalVariables = " + totalVariableCount.get());
+//        reporter.report(getClass().getSimpleName(), "totalNewVariables = " + newVariableCount.get());
 //        reporter.report(getClass().getSimpleName(), "totalOldVariables = " + (totalVariableCount-newVariableCount));
 //		reporter.report(getClass().getSimpleName(), "total SAT queries = " + totSatCount);
 		// COUNTS
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satCacheHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satCacheMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatCacheHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatCacheMissCount);
-		reporter.report(getClass().getSimpleName(), "solverCalls = " + solverCount);
-		reporter.report(getClass().getSimpleName(), "models_tested = " + modelsTested);
-		reporter.report(getClass().getSimpleName(), "models_reused = " + satModelCount);
-		reporter.report(getClass().getSimpleName(), "unsatCores_tested = " + unsatCoresTested);
-		reporter.report(getClass().getSimpleName(), "unsatCores_reused = " + sharesUnsatCoresCount);
-		reporter.report(getClass().getSimpleName(), "satEntries added to cache = " + satEntryCount);
-		reporter.report(getClass().getSimpleName(), "unsatEntries added to cache = " + unsatEntryCount);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satCacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satCacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatCacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatCacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "solverCalls = " + solverCount.get());
+		reporter.report(getClass().getSimpleName(), "models_tested = " + modelsTested.get());
+		reporter.report(getClass().getSimpleName(), "models_reused = " + satModelCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCores_tested = " + unsatCoresTested.get());
+		reporter.report(getClass().getSimpleName(), "unsatCores_reused = " + sharesUnsatCoresCount.get());
+		reporter.report(getClass().getSimpleName(), "satEntries added to cache = " + satEntryCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatEntries added to cache = " + unsatEntryCount.get());
 		reporter.report(getClass().getSimpleName(), "satDeltaIs0 = " + satDeltaIs0);
 //		reporter.report(getClass().getSimpleName(), "total Models reused = " + totSatModelCount);
 
 		// TIMES
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "cacheLoadTime = " + cacheLoadTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "K_Model_extractTime = " + modelsExtractionTime);
-		reporter.report(getClass().getSimpleName(), "K_Model_testingTime = " + modelsTestingTime);
-		reporter.report(getClass().getSimpleName(), "model_evaluationTime = " + modelEvalTime);
-		reporter.report(getClass().getSimpleName(), "core_extractTime = " + coreExtractionTime);
-		reporter.report(getClass().getSimpleName(), "core_testingTime = " + coreTestingTime);
-		reporter.report(getClass().getSimpleName(), "satDelta_computationTime = " + satDeltaCalculationTime);
-		reporter.report(getClass().getSimpleName(), "satCache_checkTime = " + satCacheTime);
-		reporter.report(getClass().getSimpleName(), "unsatCache_checkTime = " + unsatCacheTime);
-		reporter.report(getClass().getSimpleName(), "solverCallTime = " + solverTime);
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "cacheLoadTime = " + cacheLoadTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "K_Model_extractTime = " + modelsExtractionTime.get());
+		reporter.report(getClass().getSimpleName(), "K_Model_testingTime = " + modelsTestingTime.get());
+		reporter.report(getClass().getSimpleName(), "model_evaluationTime = " + modelEvalTime.get());
+		reporter.report(getClass().getSimpleName(), "core_extractTime = " + coreExtractionTime.get());
+		reporter.report(getClass().getSimpleName(), "core_testingTime = " + coreTestingTime.get());
+		reporter.report(getClass().getSimpleName(), "satDelta_computationTime = " + satDeltaCalculationTime.get());
+		reporter.report(getClass().getSimpleName(), "satCache_checkTime = " + satCacheTime.get());
+		reporter.report(getClass().getSimpleName(), "unsatCache_checkTime = " + unsatCacheTime.get());
+		reporter.report(getClass().getSimpleName(), "solverCallTime = " + solverTime.get());
 /*
 		if (false) {
 			// Sat delta values
@@ -1,6 +1,8 @@
 package za.ac.sun.cs.green.service.grulia.gruliastore;
 
 import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.util.MemoryAccount;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.Serializable;
@@ -21,21 +23,90 @@ public class BinaryTreeStore<E extends Entry> implements GruliaStore<E>, Compara
 	 * Contains the entries in the repo.
 	 */
 	private TreeSet<E> entries;
+
+	/**
+	 * The entries in the order in which they were added, so that the oldest
+	 * can be evicted.
+	 */
+	private ArrayDeque<E> order;
+
+	/**
+	 * The estimated size of the entries.
+	 */
+	private transient MemoryAccount memory;
+	private transient Metrics.Counter evictionCount;
 	private Green solver;
 	protected boolean default_zero;
 	private final String KEY = "ENTRY:";
-	protected long flushTime = 0;
-	protected long storeTime = 0;
-	protected long putTime = 0;
-	protected long getTime = 0;
-	protected long putCount = 0;
-	protected long getCount = 0;
+	protected transient Metrics.Counter flushTime;
+	protected transient Metrics.Counter storeTime;
+	protected transient Metrics.Counter putTime;
+	protected transient Metrics.Counter getTime;
+	protected transient Metrics.Counter putCount;
+	protected transient Metrics.Counter getCount;
 
 
 	public BinaryTreeStore(Green solver, boolean default_zero) {
+		this(solver, default_zero, BinaryTreeStore.class.getSimpleName());
+	}
+
+	/**
+	 * Creates a repository whose memory account and counters are registered
+	 * under the given name.
+	 *
+	 * @param solver       the solver
+	 * @param default_zero whether entries are not filtered by size
+	 * @param name         the name of the repository in the metrics registry
+	 */
+	public BinaryTreeStore(Green solver, boolean default_zero, String name) {
 		this.entries = new TreeSet<>();
+		this.order = new ArrayDeque<>();
 		this.default_zero = default_zero;
 		this.solver = solver;
+		Metrics.Group metrics = solver.getMetrics().register(name);
+		memory = new MemoryAccount(metrics);
+		evictionCount = metrics.counter("evictionCount");
+		flushTime = metrics.counter("flushTime");
+		storeTime = metrics.counter("storeTime");
+		putTime = metrics.counter("putTime");
+		getTime = metrics.counter("getTime");
+		putCount = metrics.counter("putCount");
+		getCount = metrics.counter("getCount");
+		memory.addEvictionListener(new MemoryAccount.EvictionListener() {
+			@Override
+			public void evict(MemoryAccount account, long excess) {
+				evictOldest(excess);
+			}
+		});
+	}
+
+	/**
+	 * Evicts the oldest entries until their estimated size is at least the
+	 * given number of bytes.
+	 */
+	private void evictOldest(long bytes) {
+		while ((bytes > 0) && !order.isEmpty()) {
+			E entry = order.pollFirst();
+			if (entries.remove(entry)) {
+				long size = sizeOf(entry);
+				memory.remove(KEY, size);
+				evictionCount.increment();
+				bytes -= size;
+			}
+		}
+	}
+
+	/**
+	 * Returns the estimated size of an entry, its node in the tree and its
+	 * slot in the insertion order.
+	 */
+	private static long sizeOf(Entry entry) {
+		return MemoryAccount.TREE_ENTRY_SIZE + MemoryAccount.REFERENCE_SIZE + entry.estimateSize();
+	}
+
+	@Override
+	public MemoryAccount getMemory() {
+		return memory;
 	}
 
 	@Override
@@ -51,10 +122,12 @@ public class BinaryTreeStore<E extends Entry> implements GruliaStore<E>, Compara
 	public void add(E entry) {
 		long startTime = System.currentTimeMillis();
 		if (this.entries.add(entry)) {
-			putCount++;
+			putCount.increment();
+			order.addLast(entry);
+			memory.add(KEY, sizeOf(entry));
 		}
-		putTime += (System.currentTimeMillis() - startTime);
-		storeTime += (System.currentTimeMillis() - startTime);
+		putTime.add((System.currentTimeMillis() - startTime));
+		storeTime.add((System.currentTimeMillis() - startTime));
 	}
 
 	/**
@@ -198,9 +271,9 @@ public class BinaryTreeStore<E extends Entry> implements GruliaStore<E>, Compara
 		} else {
 			entries = this.filterByProximity(anchor, k);
 		}
-		getCount++;
-		getTime += (System.currentTimeMillis() - startTime);
-		storeTime += (System.currentTimeMillis() - startTime);
+		getCount.increment();
+		getTime.add((System.currentTimeMillis() - startTime));
+		storeTime.add((System.currentTimeMillis() - startTime));
 		return Collections.unmodifiableList(entries);
 	}
 
@@ -219,8 +292,8 @@ public class BinaryTreeStore<E extends Entry> implements GruliaStore<E>, Compara
 		for (E e : getEntries()) {
 			solver.getStore().put(getKey() + e.hashCode(), e);
 		}
-		flushTime += (System.currentTimeMillis() - startTime);
-		storeTime += (System.currentTimeMillis() - startTime);
+		flushTime.add((System.currentTimeMillis() - startTime));
+		storeTime.add((System.currentTimeMillis() - startTime));
 	}
 
 	public String toString() {
@@ -236,14 +309,18 @@ public class BinaryTreeStore<E extends Entry> implements GruliaStore<E>, Compara
 	@Override
 	public void clear() {
 		entries.clear();
+		order.clear();
+		memory.clear();
 	}
 
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "getCount = " + getCount);
-		reporter.report(getClass().getSimpleName(), "putCount = " + putCount);
-		reporter.report(getClass().getSimpleName(), "storeTime = " + storeTime);
-		reporter.report(getClass().getSimpleName(), "getTime = " + getTime);
-		reporter.report(getClass().getSimpleName(), "putTime = " + putTime);
-		reporter.report(getClass().getSimpleName(), "flushTime = " + flushTime);
+		reporter.report(getClass().getSimpleName(), "getCount = " + getCount.get());
+		reporter.report(getClass().getSimpleName(), "putCount = " + putCount.get());
+		reporter.report(getClass().getSimpleName(), "storeTime = " + storeTime.get());
+		reporter.report(getClass().getSimpleName(), "getTime = " + getTime.get());
+		reporter.report(getClass().getSimpleName(), "putTime = " + putTime.get());
+		reporter.report(getClass().getSimpleName(), "flushTime = " + flushTime.get());
+		reporter.report(getClass().getSimpleName(), "evictionCount = " + evictionCount.get());
+		memory.report(getClass().getSimpleName(), reporter);
 	}
 }
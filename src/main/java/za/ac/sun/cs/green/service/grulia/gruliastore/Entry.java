@@ -1,5 +1,7 @@
 package za.ac.sun.cs.green.service.grulia.gruliastore;
 
+import za.ac.sun.cs.green.util.MemoryAccount;
+
 import java.io.Serializable;
 
 /**
@@ -111,4 +113,14 @@ public abstract class Entry implements Comparable<Entry>, Serializable {
 		return size;
 	}
 
+	/**
+	 * Returns the estimated size of this entry in memory, including its
+	 * string representation, which is computed when entries are compared.
+	 *
+	 * @return the size in bytes
+	 */
+	public long estimateSize() {
+		return 32 + MemoryAccount.sizeOf(toString());
+	}
+
 }
@@ -1,5 +1,7 @@
 package za.ac.sun.cs.green.service.grulia.gruliastore;
 
+import za.ac.sun.cs.green.util.MemoryAccount;
+
 import java.util.List;
 
 /**
@@ -26,4 +28,12 @@ public interface GruliaStore<E extends Entry> {
 
 	String getKey();
 
+	/**
+	 * Returns the estimated size of the entries. When it exceeds its soft
+	 * limit, the oldest entries are evicted.
+	 *
+	 * @return the memory account of the store
+	 */
+	MemoryAccount getMemory();
+
 }
@@ -1,6 +1,8 @@
 package za.ac.sun.cs.green.service.grulia.gruliastore;
 
 import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.util.MemoryAccount;
+import za.ac.sun.cs.green.util.Metrics;
 
 import java.io.Serializable;
 import java.util.*;
@@ -19,22 +21,64 @@ public class LinearListStore<E extends Entry> implements GruliaStore<E>, Seriali
 	 */
 	private ArrayList<E> entries;
 	private HashMap<Double, String> hashcache;
+	/**
+	 * The estimated size of the entries.
+	 */
+	private transient MemoryAccount memory;
 	private Green solver;
 	private boolean default_zero;
 	private final String KEY = "ENTRY:";
-	protected long flushTime = 0;
-	protected long storeTime = 0;
-	protected long putTime = 0;
-	protected long getTime = 0;
-	protected long putCount = 0;
-	protected long getCount = 0;
+	protected transient Metrics.Counter flushTime;
+	protected transient Metrics.Counter storeTime;
+	protected transient Metrics.Counter putTime;
+	protected transient Metrics.Counter getTime;
+	protected transient Metrics.Counter putCount;
+	protected transient Metrics.Counter getCount;
 
 	public LinearListStore(Green solver, boolean default_zero) {
 		this.entries = new ArrayList<>();
 		this.hashcache = new HashMap<>();
 		this.default_zero = default_zero;
 		this.solver = solver;
+		Metrics.Group metrics = solver.getMetrics().register(getClass().getSimpleName());
+		memory = new MemoryAccount(metrics);
+		flushTime = metrics.counter("flushTime");
+		storeTime = metrics.counter("storeTime");
+		putTime = metrics.counter("putTime");
+		getTime = metrics.counter("getTime");
+		putCount = metrics.counter("putCount");
+		getCount = metrics.counter("getCount");
+		memory.addEvictionListener(new MemoryAccount.EvictionListener() {
+			@Override
+			public void evict(MemoryAccount account, long excess) {
+				evictOldest(excess);
+			}
+		});
+	}
 
+	/**
+	 * Evicts the oldest entries until their estimated size is at least the
+	 * given number of bytes. The list is in the order in which entries were
+	 * added, so they are removed from its front in one step.
+	 */
+	private void evictOldest(long bytes) {
+		int k = 0;
+		while ((bytes > 0) && (k < entries.size())) {
+			E entry = entries.get(k++);
+			long size = MemoryAccount.REFERENCE_SIZE + entry.estimateSize();
+			memory.remove(KEY, size);
+			String solution = solutionOf(entry);
+			if (solution != null) {
+				hashcache.remove(entry.getSatDelta(), solution);
+			}
+			bytes -= size;
+		}
+		entries.subList(0, k).clear();
+	}
+
+	@Override
+	public MemoryAccount getMemory() {
+		return memory;
 	}
 
 	/**
@@ -45,10 +89,11 @@ public class LinearListStore<E extends Entry> implements GruliaStore<E>, Seriali
 	public void add(E entry) {
 		long startTime = System.currentTimeMillis();
 		if (this.entries.add(entry)) {
-			putCount++;
+			putCount.increment();
+			memory.add(KEY, MemoryAccount.REFERENCE_SIZE + entry.estimateSize());
 		}
-		putTime += (System.currentTimeMillis() - startTime);
-		storeTime += (System.currentTimeMillis() - startTime);
+		putTime.add((System.currentTimeMillis() - startTime));
+		storeTime.add((System.currentTimeMillis() - startTime));
 	}
 
 	/**
@@ -62,14 +107,22 @@ public class LinearListStore<E extends Entry> implements GruliaStore<E>, Seriali
 		} else if (this.hashcache.get(entry.getSatDelta()) == null) {
 			return false;
 		}
+		String solution = solutionOf(entry);
+		// An entry that is neither satisfiable nor unsatisfiable should not be happening
+		return (solution != null) && this.hashcache.get(entry.getSatDelta()).equals(solution);
+	}
+
+	/**
+	 * Returns the string of the solution of an entry, under which it is kept
+	 * in {@link #hashcache}, or {@code null} for an unknown kind of entry.
+	 */
+	private static String solutionOf(Entry entry) {
 		if (entry instanceof SatEntry) {
-			return this.hashcache.get(entry.getSatDelta()).equals(((SatEntry) entry).getSolution().toString());
-		} else if (entry instanceof UnsatEntry){
-			return this.hashcache.get(entry.getSatDelta()).equals(((UnsatEntry) entry).getSolution().toString());
-		} else {
-			// This should not be happening
-			return false;
+			return ((SatEntry) entry).getSolution().toString();
+		} else if (entry instanceof UnsatEntry) {
+			return ((UnsatEntry) entry).getSolution().toString();
 		}
+		return null;
 	}
 
 	/**
@@ -110,18 +163,24 @@ public class LinearListStore<E extends Entry> implements GruliaStore<E>, Seriali
 	 * @return the extracted entries, sorted by increasing distance from the given SATDelta.
 	 */
 	public List<E> extract(E anchor, int k) {
+		long startTime = System.currentTimeMillis();
 		List<E> entries;
 		if (k <= 0) {
 			entries = new ArrayList<>();
 		} else {
 			entries = this.filterByProximity(anchor, k);
 		}
+		getCount.increment();
+		getTime.add((System.currentTimeMillis() - startTime));
+		storeTime.add((System.currentTimeMillis() - startTime));
 		return Collections.unmodifiableList(entries);
 	}
 
 	@Override
 	public void clear() {
 		entries.clear();
+		hashcache.clear();
+		memory.clear();
 	}
 
 	@Override
@@ -139,8 +198,8 @@ public class LinearListStore<E extends Entry> implements GruliaStore<E>, Seriali
 		for (E e : getEntries()) {
 			solver.getStore().put(getKey() + e.hashCode(), e);
 		}
-		flushTime += (System.currentTimeMillis() - startTime);
-		storeTime += (System.currentTimeMillis() - startTime);
+		flushTime.add((System.currentTimeMillis() - startTime));
+		storeTime.add((System.currentTimeMillis() - startTime));
 	}
 
 	public String toString() {
@@ -1,6 +1,7 @@
 package za.ac.sun.cs.green.service.grulia.gruliastore;
 
 import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.util.MemoryAccount;
 
 import java.util.Map;
 import java.util.TreeMap;
@@ -71,6 +72,11 @@ public class SatEntry extends Entry {
 		return s.toString();
 	}
 
+	@Override
+	public long estimateSize() {
+		return super.estimateSize() + MemoryAccount.sizeOf(solution);
+	}
+
 	@Override
 	public boolean isValidFor(Entry entry) {
 		return getSize() >= ((SatEntry) entry).getSize();
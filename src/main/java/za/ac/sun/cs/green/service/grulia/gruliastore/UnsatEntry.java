@@ -1,6 +1,7 @@
 package za.ac.sun.cs.green.service.grulia.gruliastore;
 
 import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.util.MemoryAccount;
 
 import java.util.Set;
 import java.util.TreeSet;
@@ -57,6 +58,11 @@ public class UnsatEntry extends Entry {
 		return s.toString();
 	}
 
+	@Override
+	public long estimateSize() {
+		return super.estimateSize() + MemoryAccount.sizeOf(solution);
+	}
+
 	@Override
 	public boolean isValidFor(Entry entry) {
 		return true;
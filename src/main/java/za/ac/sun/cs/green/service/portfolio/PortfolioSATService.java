@@ -0,0 +1,472 @@
+package za.ac.sun.cs.green.service.portfolio;
+
+import za.ac.sun.cs.green.Deadline;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.Service;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.RealVariable;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.expr.Visitor;
+import za.ac.sun.cs.green.expr.VisitorException;
+import za.ac.sun.cs.green.service.SATService;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A decision procedure that races its sub-services against each other. The
+ * sub-services are the {@link SATService}s registered below the portfolio,
+ * for example
+ *
+ * <pre>
+ * green.service.sat = (canonize (portfolio z3java choco))
+ * green.service.sat.portfolio = za.ac.sun.cs.green.service.portfolio.PortfolioSATService
+ * </pre>
+ * <p>
+ * The portfolio behaves like a leaf service as far as the task manager is
+ * concerned: it looks up the store as usual, and on a miss it hands the
+ * instance to all of its sub-services at once, each on its own thread and
+ * with its own {@link Deadline}. The first answer wins. The deadlines of the
+ * other sub-services are then cancelled, which interrupts Z3, stops the Choco
+ * search and kills external processes, instead of letting the losers run to
+ * completion. The deadline of the request bounds all of the racers.
+ * <p>
+ * The portfolio records how often each sub-service wins, both overall and per
+ * query shape (the operators, variable types and approximate size of the
+ * query). Once one sub-service has won at least {@value #DEFAULT_MIN_RACES}
+ * races (see {@link #MIN_RACES_PROPERTY}) of a shape, with a win rate of at
+ * least {@link #THRESHOLD_PROPERTY} percent, it is started alone and the
+ * others only join the race if it has not answered within
+ * {@link #HEADSTART_PROPERTY} milliseconds. A head start of zero disables
+ * this.
+ */
+public class PortfolioSATService extends SATService {
+
+	/**
+	 * The property that sets the head start (in milliseconds) of the
+	 * favourite of a query shape.
+	 */
+	public static final String HEADSTART_PROPERTY = "green.portfolio.headstart";
+
+	/**
+	 * The property that sets the number of races of a shape that must be
+	 * recorded before a favourite is chosen.
+	 */
+	public static final String MIN_RACES_PROPERTY = "green.portfolio.minraces";
+
+	/**
+	 * The property that sets the win rate (in percent) that makes a
+	 * sub-service the favourite of a shape.
+	 */
+	public static final String THRESHOLD_PROPERTY = "green.portfolio.threshold";
+
+	private static final int DEFAULT_HEADSTART = 25;
+
+	private static final int DEFAULT_MIN_RACES = 10;
+
+	private static final int DEFAULT_THRESHOLD = 80;
+
+	/**
+	 * Interval at which the portfolio checks the deadline of its request.
+	 */
+	private static final long POLL_MILLIS = 50;
+
+	private final long headStart;
+
+	private final int minRaces;
+
+	private final int threshold;
+
+	/**
+	 * The threads on which the sub-services run.
+	 */
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * The sub-services, computed on the first race.
+	 */
+	private volatile SATService[] racers = null;
+
+	/**
+	 * The number of wins of each sub-service.
+	 */
+	private volatile AtomicIntegerArray wins = null;
+
+	/**
+	 * The number of wins of each sub-service, per query shape.
+	 */
+	private final Map<String, AtomicIntegerArray> shapeWins = new ConcurrentHashMap<String, AtomicIntegerArray>();
+
+	private final Metrics.Counter raceCount = metrics.counter("raceCount");
+
+	private final Metrics.Counter abortedCount = metrics.counter("abortedCount");
+
+	private final Metrics.Counter headStartCount = metrics.counter("headStartCount");
+
+	private final Metrics.Counter headStartWinCount = metrics.counter("headStartWinCount");
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	public PortfolioSATService(Green solver) {
+		this(solver, new Properties());
+	}
+
+	public PortfolioSATService(Green solver, Properties properties) {
+		super(solver);
+		headStart = Math.max(0, Configuration.getIntegerProperty(properties, HEADSTART_PROPERTY, DEFAULT_HEADSTART));
+		minRaces = Math.max(1, Configuration.getIntegerProperty(properties, MIN_RACES_PROPERTY, DEFAULT_MIN_RACES));
+		threshold = Configuration.getIntegerProperty(properties, THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Returns the sub-services that take part in the race. They are looked up
+	 * once, after the configuration is complete.
+	 */
+	private SATService[] getRacers() {
+		SATService[] r = racers;
+		if (r == null) {
+			List<SATService> list = new ArrayList<SATService>();
+			Set<Service> services = solver.getService(this);
+			if (services != null) {
+				for (Service service : services) {
+					if (service instanceof SATService) {
+						list.add((SATService) service);
+					} else {
+						log.warn("portfolio ignores " + service.getClass().getName() + ", which is not a SATService");
+					}
+				}
+			}
+			r = list.toArray(new SATService[list.size()]);
+			wins = new AtomicIntegerArray(r.length);
+			racers = r;
+		}
+		return r;
+	}
+
+	@Override
+	protected Boolean solve(Instance instance) {
+		SATService[] services = getRacers();
+		if (services.length == 0) {
+			log.fatal("portfolio has no SATService sub-services");
+			return null;
+		}
+		raceCount.increment();
+		String shape = getShape(instance.getFullExpression());
+		AtomicIntegerArray perShape = shapeWins.get(shape);
+		if (perShape == null) {
+			shapeWins.putIfAbsent(shape, new AtomicIntegerArray(services.length));
+			perShape = shapeWins.get(shape);
+		}
+		int favourite = (headStart > 0) ? getFavourite(perShape) : -1;
+		final Deadline deadline = instance.getDeadline();
+		final BlockingQueue<Racer> done = new LinkedBlockingQueue<Racer>();
+		final List<Racer> started = new ArrayList<Racer>(services.length);
+		Runnable abort = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (started) {
+					for (Racer racer : started) {
+						racer.deadline.cancel();
+					}
+				}
+			}
+		};
+		if (deadline != null) {
+			deadline.addListener(abort);
+		}
+		Racer winner = null;
+		try {
+			int pending = 0;
+			if (favourite >= 0) {
+				headStartCount.increment();
+				start(favourite, services[favourite], instance, deadline, done, started);
+				pending++;
+				Racer racer = take(done, deadline, headStart);
+				if (racer != null) {
+					pending--;
+					if (racer.result != null) {
+						headStartWinCount.increment();
+						winner = racer;
+					}
+				}
+			}
+			if (winner == null) {
+				for (int i = 0; i < services.length; i++) {
+					if (i != favourite) {
+						start(i, services[i], instance, deadline, done, started);
+						pending++;
+					}
+				}
+			}
+			while ((winner == null) && (pending > 0)) {
+				Racer racer = take(done, deadline, Long.MAX_VALUE);
+				if (racer == null) {
+					break;
+				}
+				pending--;
+				if (racer.result != null) {
+					winner = racer;
+				}
+			}
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (deadline != null) {
+				deadline.removeListener(abort);
+			}
+			synchronized (started) {
+				for (Racer racer : started) {
+					if ((racer != winner) && !racer.finished) {
+						abortedCount.increment();
+						racer.deadline.cancel();
+					}
+				}
+			}
+		}
+		if (winner == null) {
+			return null;
+		}
+		wins.incrementAndGet(winner.index);
+		perShape.incrementAndGet(winner.index);
+		return winner.result;
+	}
+
+	/**
+	 * Starts a sub-service on a copy of the instance that has its own
+	 * deadline.
+	 */
+	private void start(int index, SATService service, Instance instance, Deadline deadline, BlockingQueue<Racer> done, List<Racer> started) {
+		Instance copy = new Instance(solver, null, instance.getFullExpression());
+		Deadline d = ((deadline != null) && deadline.isBounded())
+				? Deadline.after(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)
+				: Deadline.none();
+		if ((deadline != null) && deadline.isCancelled()) {
+			d.cancel();
+		}
+		copy.setDeadline(d);
+		Racer racer = new Racer(index, service, copy, d, done);
+		synchronized (started) {
+			started.add(racer);
+		}
+		activeCount.incrementAndGet();
+		executor.execute(racer);
+	}
+
+	/**
+	 * Waits for the next sub-service to finish, for at most the given time.
+	 * Returns {@code null} if no sub-service finished in time or the deadline
+	 * of the request is done.
+	 */
+	private static Racer take(BlockingQueue<Racer> done, Deadline deadline, long millis) throws InterruptedException {
+		long end = (millis == Long.MAX_VALUE) ? Long.MAX_VALUE : System.currentTimeMillis() + millis;
+		while ((deadline == null) || !deadline.isDone()) {
+			long wait = Math.min(POLL_MILLIS, end - System.currentTimeMillis());
+			if (deadline != null) {
+				wait = Math.min(wait, Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)));
+			}
+			if (wait <= 0) {
+				return null;
+			}
+			Racer racer = done.poll(wait, TimeUnit.MILLISECONDS);
+			if (racer != null) {
+				return racer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the index of the sub-service that wins the races of a shape
+	 * often enough to be started first, or -1 if there is none.
+	 */
+	private int getFavourite(AtomicIntegerArray perShape) {
+		int total = 0;
+		int best = -1;
+		int bestWins = 0;
+		for (int i = 0; i < perShape.length(); i++) {
+			int w = perShape.get(i);
+			total += w;
+			if (w > bestWins) {
+				best = i;
+				bestWins = w;
+			}
+		}
+		if ((total < minRaces) || (bestWins * 100 < threshold * total)) {
+			return -1;
+		}
+		return best;
+	}
+
+	/**
+	 * Returns a short description of the kind of query: the operators it
+	 * uses, whether it has real variables, and the number of variables and
+	 * operations rounded to a power of two.
+	 *
+	 * @param expression the query
+	 * @return the shape of the query
+	 */
+	public static String getShape(Expression expression) {
+		ShapeVisitor visitor = new ShapeVisitor();
+		try {
+			expression.accept(visitor);
+		} catch (VisitorException x) {
+			return "?";
+		}
+		StringBuilder b = new StringBuilder();
+		for (Operation.Operator operator : visitor.operators) {
+			b.append(operator.name()).append(',');
+		}
+		b.append(visitor.real ? "R" : "I");
+		b.append(":v").append(log2(visitor.variables.size()));
+		b.append(":o").append(log2(visitor.operationCount));
+		return b.toString();
+	}
+
+	private static int log2(int n) {
+		return 32 - Integer.numberOfLeadingZeros(n);
+	}
+
+	/**
+	 * Returns the number of races that the given sub-service has won.
+	 *
+	 * @param service the sub-service
+	 * @return the number of wins
+	 */
+	public int getWinCount(Service service) {
+		SATService[] r = getRacers();
+		for (int i = 0; i < r.length; i++) {
+			if (r[i] == service) {
+				return wins.get(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of sub-services that are still running, including
+	 * losers that have not yet reacted to being aborted.
+	 *
+	 * @return the number of running sub-services
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	@Override
+	public void report(Reporter reporter) {
+		super.report(reporter);
+		reporter.report(getClass().getSimpleName(), "raceCount = " + raceCount.get());
+		reporter.report(getClass().getSimpleName(), "abortedCount = " + abortedCount.get());
+		reporter.report(getClass().getSimpleName(), "headStartCount = " + headStartCount.get());
+		reporter.report(getClass().getSimpleName(), "headStartWinCount = " + headStartWinCount.get());
+		reporter.report(getClass().getSimpleName(), "shapeCount = " + shapeWins.size());
+		SATService[] r = racers;
+		if (r != null) {
+			long races = Math.max(1, raceCount.get());
+			for (int i = 0; i < r.length; i++) {
+				String name = r[i].getClass().getSimpleName();
+				reporter.report(getClass().getSimpleName(), "wins." + name + " = " + wins.get(i));
+				reporter.report(getClass().getSimpleName(), "winRate." + name + " = " + ((double) wins.get(i) / races));
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * A sub-service working on its copy of the instance.
+	 */
+	private class Racer implements Runnable {
+
+		private final int index;
+
+		private final SATService service;
+
+		private final Instance instance;
+
+		private final Deadline deadline;
+
+		private final BlockingQueue<Racer> done;
+
+		private volatile Boolean result = null;
+
+		private volatile boolean finished = false;
+
+		Racer(int index, SATService service, Instance instance, Deadline deadline, BlockingQueue<Racer> done) {
+			this.index = index;
+			this.service = service;
+			this.instance = instance;
+			this.deadline = deadline;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			try {
+				service.processRequest(instance);
+				Object r = instance.getData(service.getClass());
+				if (r instanceof Boolean) {
+					result = (Boolean) r;
+				}
+			} catch (RuntimeException x) {
+				log.fatal("portfolio member " + service.getClass().getName() + " failed", x);
+			} finally {
+				finished = true;
+				activeCount.decrementAndGet();
+				done.add(this);
+			}
+		}
+
+	}
+
+	/**
+	 * Collects the ingredients of the shape of a query.
+	 */
+	private static class ShapeVisitor extends Visitor {
+
+		private final Set<Operation.Operator> operators = EnumSet.noneOf(Operation.Operator.class);
+
+		private final Set<Variable> variables = new HashSet<Variable>();
+
+		private boolean real = false;
+
+		private int operationCount = 0;
+
+		@Override
+		public void postVisit(Variable variable) {
+			variables.add(variable);
+			if (variable instanceof RealVariable) {
+				real = true;
+			}
+		}
+
+		@Override
+		public void postVisit(Operation operation) {
+			operators.add(operation.getOperator());
+			operationCount++;
+		}
+
+	}
+
+}
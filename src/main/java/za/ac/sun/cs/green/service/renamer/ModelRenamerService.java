@@ -13,6 +13,7 @@ import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.*;
@@ -23,16 +24,17 @@ import java.util.*;
 public class ModelRenamerService extends BasicService {
 
 	private static final String RENAME = "RENAME";
+	private static final int RENAME_SLOT = Instance.registerSlot(RENAME);
 
 	/**
 	 * Number of times the renamer has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Milliseconds spent executing the service
 	 */
-	private long timeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	/**
 	 * Create a renamer service.
@@ -46,8 +48,8 @@ public class ModelRenamerService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 	private Map<Variable, Variable> reverseMap(Map<Variable, Variable> map) {
@@ -61,19 +63,19 @@ public class ModelRenamerService extends BasicService {
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		long startTime = System.currentTimeMillis();
-		invocationCount++;
+		invocationCount.increment();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			final Map<Variable, Variable> map = new HashMap<Variable, Variable>();
 			final Expression expression = rename(instance.getFullExpression(), map);
 			Map<Variable, Variable> reverseMap = reverseMap(map);
 			final Instance newInstance = new Instance(getSolver(), instance.getSource(), null, expression);
 			result = Collections.singleton(newInstance);
-			instance.setData(getClass(), result);
-			instance.setData(RENAME, reverseMap);
+			instance.setSlotData(slot, result);
+			instance.setSlotData(RENAME_SLOT, reverseMap);
 		}
-		timeConsumption += System.currentTimeMillis() - startTime;
+		timeConsumption.add(System.currentTimeMillis() - startTime);
 		return result;
 	}
 
@@ -116,7 +118,7 @@ public class ModelRenamerService extends BasicService {
 			}
 
 			@SuppressWarnings("unchecked")
-			HashMap<Variable, Variable> reverseMap = (HashMap<Variable, Variable>) instance.getData(RENAME);
+			HashMap<Variable, Variable> reverseMap = (HashMap<Variable, Variable>) instance.getSlotData(RENAME_SLOT);
 
 			HashMap<Variable, Object> newResult = new HashMap<Variable, Object>();
 			for (Map.Entry<Variable, Object> m : r.entrySet()) {
@@ -24,6 +24,7 @@ import za.ac.sun.cs.green.expr.Variable;
 import za.ac.sun.cs.green.expr.Visitor;
 import za.ac.sun.cs.green.expr.VisitorException;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 /**
@@ -34,12 +35,12 @@ public class RenamerService extends BasicService {
 	/**
 	 * Number of times the renamer has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Milliseconds spent executing the service
 	 */
-	private long timeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	/**
 	 * Create a renamer service.
@@ -53,24 +54,24 @@ public class RenamerService extends BasicService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		long startTime = System.currentTimeMillis();
-		invocationCount++;
+		invocationCount.increment();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			final Map<Variable, Variable> map = new HashMap<Variable, Variable>();
 			final Expression expression = rename(instance.getFullExpression(), map);
 			final Instance newInstance = new Instance(getSolver(), instance.getSource(), null, expression);
 			result = Collections.singleton(newInstance);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
-		timeConsumption += System.currentTimeMillis() - startTime;
+		timeConsumption.add(System.currentTimeMillis() - startTime);
 		return result;
 	}
 
@@ -4,6 +4,7 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.*;
@@ -13,10 +14,10 @@ public class SATPropagationService extends BasicService {
 	/**
 	 * Number of times the simplifier has been invoked.
 	 */
-	private int invocations = 0;
-	private int simplifications = 0;
-	private int propagations = 0;
-	private long timeConsumption = 0;
+	private final Metrics.Counter invocations = metrics.counter("invocations");
+	private final Metrics.Counter simplifications = metrics.counter("simplifications");
+	private final Metrics.Counter propagations = metrics.counter("propagations");
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
 
 	public SATPropagationService(Green solver) {
 		super(solver);
@@ -26,24 +27,24 @@ public class SATPropagationService extends BasicService {
 	public Set<Instance> processRequest(Instance instance) {
 		long start = System.currentTimeMillis();
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			final Map<Variable, Variable> map = new HashMap<Variable, Variable>();
 			final Expression e = simplify(instance.getFullExpression(), map);
 			final Instance i = new Instance(getSolver(), instance.getSource(), null, e);
 			result = Collections.singleton(i);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 		return result;
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocations);
-		reporter.report(getClass().getSimpleName(), "simplifications = " + simplifications);
-		reporter.report(getClass().getSimpleName(), "propagations = " + propagations);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocations.get());
+		reporter.report(getClass().getSimpleName(), "simplifications = " + simplifications.get());
+		reporter.report(getClass().getSimpleName(), "propagations = " + propagations.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
 	}
 
 	public Expression simplify(Expression expression) {
@@ -53,7 +54,7 @@ public class SATPropagationService extends BasicService {
 			while (!Done) {
 				CollectionVisitor colVisitor = new CollectionVisitor();
 				expression.accept(colVisitor);
-				simplifications += colVisitor.getSimplifications();
+				simplifications.add(colVisitor.getSimplifications());
 				List<Tuple> vars = colVisitor.getVars();
 //                for (Tuple v : vars) {
 //                    System.out.print(v.getVariable() + "=" + v.getValue() + ", ");
@@ -66,8 +67,8 @@ public class SATPropagationService extends BasicService {
 					ReplaceVisitor repVisitor = new ReplaceVisitor(vars);
 					expression.accept(repVisitor);
 					expression = repVisitor.getExpression();
-					simplifications += repVisitor.getSimplifications();
-					propagations += repVisitor.getPropagations(); // TODO: is this correct?
+					simplifications.add(repVisitor.getSimplifications());
+					propagations.add(repVisitor.getPropagations()); // TODO: is this correct?
 				}
 			}
 			HashMap<Expression, Integer> conjuncts = new HashMap<>(); // remember conjuncts, to prevent duplicated conjuncts in answer
@@ -90,7 +91,7 @@ public class SATPropagationService extends BasicService {
 	}
 
 	public Expression simplify(Expression expression, Map<Variable, Variable> map) {
-		invocations++;
+		invocations.increment();
 		return simplify(expression);
 	}
 
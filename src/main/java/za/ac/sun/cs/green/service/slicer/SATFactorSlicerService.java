@@ -5,6 +5,7 @@ import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.service.BasicService;
 import za.ac.sun.cs.green.service.factorizer.FactorExpressionOld;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
@@ -12,30 +13,32 @@ import java.util.Set;
 
 public class SATFactorSlicerService extends BasicService {
 
+	private static final int FACTOR_EXPRESSION_SLOT = Instance.registerSlot(FactorExpressionOld.class);
+
 	/**
 	 * Number of times the slicer has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount = metrics.counter("invocationCount");
 
 	/**
 	 * Total number of conjuncts processed.
 	 */
-	private int totalConjunctCount = 0;
+	private final Metrics.Counter totalConjunctCount = metrics.counter("totalConjunctCount");
 
 	/**
 	 * Number of minimal conjuncts returned.
 	 */
-	private int minimalConjunctCount = 0;
+	private final Metrics.Counter minimalConjunctCount = metrics.counter("minimalConjunctCount");
 
 	/**
 	 * Total number of variables processed.
 	 */
-	private int totalVariableCount = 0;
+	private final Metrics.Counter totalVariableCount = metrics.counter("totalVariableCount");
 
 	/**
 	 * Number of minimal variables returned.
 	 */
-	private int minimalVariableCount = 0;
+	private final Metrics.Counter minimalVariableCount = metrics.counter("minimalVariableCount");
 
 	public SATFactorSlicerService(Green solver) {
 		super(solver);
@@ -44,49 +47,49 @@ public class SATFactorSlicerService extends BasicService {
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			final Instance p = instance.getParent();
 
 			// Handle two initial conditions: no parent and no FactoredConstraint for the parent
 			FactorExpressionOld fc0 = null;
 			if (p != null) {
-				fc0 = (FactorExpressionOld) p.getData(FactorExpressionOld.class);
+				fc0 = (FactorExpressionOld) p.getSlotData(FACTOR_EXPRESSION_SLOT);
 				if (fc0 == null) {
 					// Construct the parent's factor and store it 
 					fc0 = new FactorExpressionOld(null, p.getFullExpression());
-					p.setData(FactorExpressionOld.class, fc0);
+					p.setSlotData(FACTOR_EXPRESSION_SLOT, fc0);
 				}
 			}
 
 			final FactorExpressionOld fc = new FactorExpressionOld(fc0, instance.getExpression());
-			instance.setData(FactorExpressionOld.class, fc);
+			instance.setSlotData(FACTOR_EXPRESSION_SLOT, fc);
 
 			final Expression e = fc.getDependentFactor(instance.getExpression());
 
 			final Instance i = new Instance(getSolver(), instance.getSource(), null, e);
 			result = Collections.singleton(i);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 
 			// First update our statistics
-			invocationCount++;
-			minimalVariableCount += fc.getDependentVariableCount(instance.getExpression());
-			minimalConjunctCount += fc.getDependentConjunctCount(instance.getExpression());
-			totalConjunctCount += fc.getConjunctCount();
-			totalVariableCount += fc.getVariableCount();
+			invocationCount.increment();
+			minimalVariableCount.add(fc.getDependentVariableCount(instance.getExpression()));
+			minimalConjunctCount.add(fc.getDependentConjunctCount(instance.getExpression()));
+			totalConjunctCount.add(fc.getConjunctCount());
+			totalVariableCount.add(fc.getVariableCount());
 		}
 		return result;
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount);
-		reporter.report(getClass().getSimpleName(), "totalConjuncts = " + totalConjunctCount);
-		reporter.report(getClass().getSimpleName(), "minimalConjuncts = " + minimalConjunctCount);
-		reporter.report(getClass().getSimpleName(), "conjunctReduction = " + ((totalConjunctCount - minimalConjunctCount) * 100.0D / totalConjunctCount));
-		reporter.report(getClass().getSimpleName(), "totalVariables = " + totalVariableCount);
-		reporter.report(getClass().getSimpleName(), "minimalVariables = " + minimalVariableCount);
-		reporter.report(getClass().getSimpleName(), "variableReduction = " + ((totalVariableCount - minimalVariableCount) * 100.0D / totalVariableCount));
+		reporter.report(getClass().getSimpleName(), "invocations = " + invocationCount.get());
+		reporter.report(getClass().getSimpleName(), "totalConjuncts = " + totalConjunctCount.get());
+		reporter.report(getClass().getSimpleName(), "minimalConjuncts = " + minimalConjunctCount.get());
+		reporter.report(getClass().getSimpleName(), "conjunctReduction = " + ((totalConjunctCount.get() - minimalConjunctCount.get()) * 100.0D / totalConjunctCount.get()));
+		reporter.report(getClass().getSimpleName(), "totalVariables = " + totalVariableCount.get());
+		reporter.report(getClass().getSimpleName(), "minimalVariables = " + minimalVariableCount.get());
+		reporter.report(getClass().getSimpleName(), "variableReduction = " + ((totalVariableCount.get() - minimalVariableCount.get()) * 100.0D / totalVariableCount.get()));
 	}
 
 }
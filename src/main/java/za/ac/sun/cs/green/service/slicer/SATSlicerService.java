@@ -4,6 +4,7 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.Expression;
 import za.ac.sun.cs.green.service.BasicService;
+import za.ac.sun.cs.green.service.factorizer.Factorization;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
@@ -15,20 +16,25 @@ public class SATSlicerService extends BasicService {
 
 	public SATSlicerService(Green solver) {
 		super(solver);
-		slicer = new Slicer(log);
+		slicer = new Slicer(log, metrics);
 	}
 
 	@Override
 	public Set<Instance> processRequest(Instance instance) {
 		@SuppressWarnings("unchecked")
-		Set<Instance> result = (Set<Instance>) instance.getData(getClass());
+		Set<Instance> result = (Set<Instance>) instance.getSlotData(slot);
 		if (result == null) {
 			final Instance p = instance.getParent();
-			final Expression f = (p == null) ? null : p.getFullExpression();
-			final Expression e = slicer.slice(instance.getExpression(), f);
+			final Expression e;
+			if (p == null) {
+				e = slicer.slice(instance.getExpression(), (Expression) null);
+			} else {
+				// The factorization of the parent is reused if it is known
+				e = slicer.slice(instance.getExpression(), Factorization.get(instance));
+			}
 			final Instance i = new Instance(getSolver(), instance.getSource(), null, e);
 			result = Collections.singleton(i);
-			instance.setData(getClass(), result);
+			instance.setSlotData(slot, result);
 		}
 		return result;
 	}
@@ -2,6 +2,8 @@ package za.ac.sun.cs.green.service.slicer;
 
 import org.apache.logging.log4j.Logger;
 import za.ac.sun.cs.green.expr.*;
+import za.ac.sun.cs.green.service.factorizer.Factorization;
+import za.ac.sun.cs.green.util.Metrics;
 
 import java.util.*;
 
@@ -12,55 +14,95 @@ public class Slicer {
 	/**
 	 * Number of times the slicer has been invoked.
 	 */
-	private int invocationCount = 0;
+	private final Metrics.Counter invocationCount;
 
 	/**
 	 * Total number of conjuncts processed.
 	 */
-	private int totalConjunctCount = 0;
+	private final Metrics.Counter totalConjunctCount;
 
 	/**
 	 * Number of minimal conjuncts returned.
 	 */
-	private int minimalConjunctCount = 0;
+	private final Metrics.Counter minimalConjunctCount;
 
 	/**
 	 * Total number of variables processed.
 	 */
-	private int totalVariableCount = 0;
+	private final Metrics.Counter totalVariableCount;
 
 	/**
 	 * Number of minimal variables returned.
 	 */
-	private int minimalVariableCount = 0;
+	private final Metrics.Counter minimalVariableCount;
 
 	public Slicer(final Logger log) {
+		this(log, new Metrics().register(Slicer.class.getSimpleName()));
+	}
+
+	/**
+	 * Constructs a slicer that keeps its counters in the given group,
+	 * usually the group of the service that uses it.
+	 *
+	 * @param log     the logger
+	 * @param metrics the group for the counters of the slicer
+	 */
+	public Slicer(final Logger log, final Metrics.Group metrics) {
 		this.LOGGER = log;
+		invocationCount = metrics.counter("invocationCount");
+		totalConjunctCount = metrics.counter("totalConjunctCount");
+		minimalConjunctCount = metrics.counter("minimalConjunctCount");
+		totalVariableCount = metrics.counter("totalVariableCount");
+		minimalVariableCount = metrics.counter("minimalVariableCount");
 	}
 
 	public int getInvocationCount() {
-		return invocationCount;
+		return (int) invocationCount.get();
 	}
 
 	public int getTotalConjunctCount() {
-		return totalConjunctCount;
+		return (int) totalConjunctCount.get();
 	}
 
 	public int getMinimalConjunctCount() {
-		return minimalConjunctCount;
+		return (int) minimalConjunctCount.get();
 	}
 
 	public int getTotalVariableCount() {
-		return totalVariableCount;
+		return (int) totalVariableCount.get();
 	}
 
 	public int getMinimalVariableCount() {
-		return minimalVariableCount;
+		return (int) minimalVariableCount.get();
+	}
+
+	/**
+	 * Slices a conjunction whose factorization is already known. The
+	 * factorization groups the conjuncts that share variables, so the slice
+	 * consists of the factors that contain the variables of the fresh
+	 * conjunct, and nothing has to be traversed.
+	 *
+	 * @param fresh         the fresh conjunct
+	 * @param factorization the factorization of the fresh conjunct and the
+	 *                      rest of the conjunction
+	 * @return the slice
+	 */
+	public Expression slice(Expression fresh, Factorization factorization) {
+		invocationCount.increment();
+		Expression minimal = factorization.slice(fresh);
+		if (minimal != fresh) {
+			int[] size = factorization.getSliceSize(fresh);
+			totalConjunctCount.add(factorization.getPropositionCount());
+			totalVariableCount.add(factorization.getVariableCount());
+			minimalConjunctCount.add(size[0]);
+			minimalVariableCount.add(size[1]);
+		}
+		return minimal;
 	}
 
 	public Expression slice(Expression fresh, Expression rest) {
 		// First update our statistics
-		invocationCount++;
+		invocationCount.increment();
 
 		// Prepare to build the conjunct <-> variable mappings
 		Map<Expression, Set<Variable>> conjunct2Vars = new HashMap<Expression, Set<Variable>>();
@@ -90,8 +132,8 @@ public class Slicer {
 		}
 
 		// Update our statistics
-		totalConjunctCount += conjunct2Vars.size();
-		totalVariableCount += var2Conjuncts.size();
+		totalConjunctCount.add(conjunct2Vars.size());
+		totalVariableCount.add(var2Conjuncts.size());
 
 		// Prepare to collect the minimal conjuncts
 		Set<Expression> minimalConjuncts = new HashSet<Expression>();
@@ -124,8 +166,8 @@ public class Slicer {
 		}
 
 		// Update statistics once again
-		minimalConjunctCount += minimalConjuncts.size();
-		minimalVariableCount += varSet.size();
+		minimalConjunctCount.add(minimalConjuncts.size());
+		minimalVariableCount.add(varSet.size());
 
 		// Finally, combine the minimal conjuncts into one conjunction
 		Expression minimal = null;
@@ -6,6 +6,7 @@ import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.expr.Operation.Operator;
 import za.ac.sun.cs.green.service.ModelCoreService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Misc;
 
 import java.util.*;
@@ -21,9 +22,9 @@ public abstract class ModelCoreSMTLIBService extends ModelCoreService {
 		super(solver);
 	}
 
-	protected long translationTimeConsumption = 0;
-	protected int conjunctCount = 0;
-	protected int varCount = 0;
+	protected final Metrics.Counter translationTimeConsumption = metrics.counter("translationTimeConsumption");
+	protected final Metrics.Counter conjunctCount = metrics.counter("conjunctCount");
+	protected final Metrics.Counter varCount = metrics.counter("varCount");
 
 	@Override
 	public ModelCore modelCore(Instance instance) {
@@ -44,9 +45,9 @@ public abstract class ModelCoreSMTLIBService extends ModelCoreService {
 			b.append(Misc.join(t.getAsserts(), " "));
 			b.append("(check-sat)");
 			String a = b.toString();
-			translationTimeConsumption += (System.currentTimeMillis() - start);
-			conjunctCount += instance.getExpression().getCachedString().split("&&").length;
-			varCount += t.getVariables().size();
+			translationTimeConsumption.add((System.currentTimeMillis() - start));
+			conjunctCount.add(instance.getExpression().getCachedString().split("&&").length);
+			varCount.add(t.getVariables().size());
 			return solve0(a, t.getVariables(), t.getCoreClauseMapping());
 		} catch (TranslatorUnsupportedOperation x) {
 			log.log(Level.WARN, x.getMessage(), x);
@@ -1,10 +1,12 @@
 package za.ac.sun.cs.green.service.smtlib;
 
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.expr.Operation.Operator;
 import za.ac.sun.cs.green.service.SATService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Misc;
 
 import java.util.*;
@@ -15,9 +17,9 @@ public abstract class SATSMTLIBService extends SATService {
 		super(solver);
 	}
 
-	protected long translationTimeConsumption = 0;
-	protected int conjunctCount = 0;
-	protected int varCount = 0;
+	protected final Metrics.Counter translationTimeConsumption = metrics.counter("translationTimeConsumption");
+	protected final Metrics.Counter conjunctCount = metrics.counter("conjunctCount");
+	protected final Metrics.Counter varCount = metrics.counter("varCount");
 
 	@Override
 	protected Boolean solve(Instance instance) {
@@ -33,10 +35,10 @@ public abstract class SATSMTLIBService extends SATService {
 			b.append("(assert ").append(t.getTranslation()).append(')');
 			b.append("(check-sat)");
 			String a = b.toString();
-			translationTimeConsumption += (System.currentTimeMillis() - start);
-			conjunctCount += instance.getExpression().getCachedString().split("&&").length;
-			varCount += t.getVariables().size();
-			return solve0(a);
+			translationTimeConsumption.add((System.currentTimeMillis() - start));
+			conjunctCount.add(instance.getExpression().getCachedString().split("&&").length);
+			varCount.add(t.getVariables().size());
+			return solve0(a, instance.getDeadline());
 		} catch (TranslatorUnsupportedOperation x) {
 			log.warn(x.getMessage(), x);
 		} catch (VisitorException x) {
@@ -47,6 +49,18 @@ public abstract class SATSMTLIBService extends SATService {
 
 	protected abstract Boolean solve0(String smtQuery);
 
+	/**
+	 * Decides the query within the given deadline. Services that can abort
+	 * their solver override this; by default the deadline is ignored.
+	 *
+	 * @param smtQuery the query in SMT-LIB format
+	 * @param deadline the deadline of the request, or {@code null}
+	 * @return the result, or {@code null} if the query was not decided
+	 */
+	protected Boolean solve0(String smtQuery, Deadline deadline) {
+		return solve0(smtQuery);
+	}
+
 	@SuppressWarnings("serial")
 	private static class TranslatorUnsupportedOperation extends
 			VisitorException {
@@ -4,6 +4,8 @@ import org.apache.logging.log4j.Level;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.smtlib.ModelCoreSMTLIBService;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.*;
@@ -25,9 +27,9 @@ public class ModelCoreZ3Service extends ModelCoreSMTLIBService {
 	/**
 	 * Execution Time of the service.
 	 */
-	private long timeConsumption = 0;
-	private long satTimeConsumption = 0;
-	private long unsatTimeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	private final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
 
 	public ModelCoreZ3Service(Green solver, Properties properties) {
 		super(solver);
@@ -60,6 +62,7 @@ public class ModelCoreZ3Service extends ModelCoreSMTLIBService {
 	@Override
 	protected ModelCore solve0(String smtQuery, Map<Variable, String> variables, Map<String, Expression> coreClauseMapping) {
 		long startTime = System.currentTimeMillis();
+		Object event = Jfr.PROCESS_SPAWN.begin();
 		try {
 			Process process = Runtime.getRuntime().exec(z3Command);
 			OutputStream stdin = process.getOutputStream();
@@ -93,15 +96,17 @@ public class ModelCoreZ3Service extends ModelCoreSMTLIBService {
 			ModelCore tmp;
 			if (issat) {
 				tmp = retrieveModel(output, variables);
-				satTimeConsumption += (System.currentTimeMillis() - startTime);
+				satTimeConsumption.add((System.currentTimeMillis() - startTime));
 			} else {
 				tmp = retrieveCore(output, coreClauseMapping);
-				unsatTimeConsumption += (System.currentTimeMillis() - startTime);
+				unsatTimeConsumption.add((System.currentTimeMillis() - startTime));
 			}
-			timeConsumption += (System.currentTimeMillis() - startTime);
+			timeConsumption.add((System.currentTimeMillis() - startTime));
 			return tmp;
 		} catch (IOException x) {
 			log.log(Level.FATAL, x.getMessage(), x);
+		} finally {
+			Jfr.commitProcessSpawn(event, z3Command);
 		}
 		return null;
 	}
@@ -154,18 +159,18 @@ public class ModelCoreZ3Service extends ModelCoreSMTLIBService {
 
 	@Override
 	public void report(Reporter reporter) {
-//        reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-//        reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-//        reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-//        reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-//        reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-//        reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-//        reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-//        reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
+//        reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+//        reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+//        reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+//        reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+//        reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+//        reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+//        reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+//        reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
 		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption);
 		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount);
 		reporter.report(getClass().getSimpleName(), "varCount = " + varCount);
@@ -7,6 +7,7 @@ import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.Variable;
 import za.ac.sun.cs.green.expr.VisitorException;
 import za.ac.sun.cs.green.service.ModelService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.HashMap;
@@ -17,12 +18,12 @@ public class ModelZ3JavaService extends ModelService {
 
 	Context ctx;
 	Solver Z3solver;
-	protected long timeConsumption = 0;
-	protected long translationTimeConsumption = 0;
-	protected long satTimeConsumption = 0;
-	protected long unsatTimeConsumption = 0;
-	protected int conjunctCount = 0;
-	protected int variableCount = 0;
+	protected final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter translationTimeConsumption = metrics.counter("translationTimeConsumption");
+	protected final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	protected final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
+	protected final Metrics.Counter conjunctCount = metrics.counter("conjunctCount");
+	protected final Metrics.Counter variableCount = metrics.counter("variableCount");
 	private final static String LOGIC = "QF_LIA";
 
 	public ModelZ3JavaService(Green solver, Properties properties) {
@@ -59,9 +60,9 @@ public class ModelZ3JavaService extends ModelService {
 		} catch (Z3Exception e1) {
 			log.log(Level.WARN, "Error in Z3" + e1.getMessage());
 		}
-		conjunctCount += instance.getExpression().getCachedString().split("&&").length;
-		variableCount += translator.getVariableCount();
-		translationTimeConsumption += (System.currentTimeMillis() - T0translation);
+		conjunctCount.add(instance.getExpression().getCachedString().split("&&").length);
+		variableCount.add(translator.getVariableCount());
+		translationTimeConsumption.add((System.currentTimeMillis() - T0translation));
 		//solve
 		try { // Real Stuff is still untested
 			if (Status.SATISFIABLE == Z3solver.check()) {
@@ -87,36 +88,36 @@ public class ModelZ3JavaService extends ModelService {
 			} else {
 //				log.log(Level.WARNING,"constraint has no model, it is infeasible");
 				long a = System.currentTimeMillis() - startTime;
-				timeConsumption += a;
-				unsatTimeConsumption += a;
+				timeConsumption.add(a);
+				unsatTimeConsumption.add(a);
 				return null;
 			}
 		} catch (Z3Exception e) {
 			log.log(Level.WARN, "Error in Z3" + e.getMessage());
 		}
 		long a = System.currentTimeMillis() - startTime;
-		timeConsumption += a;
-		satTimeConsumption += a;
+		timeConsumption.add(a);
+		satTimeConsumption.add(a);
 		return results;
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount);
-		reporter.report(getClass().getSimpleName(), "variableCount = " + variableCount);
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount.get());
+		reporter.report(getClass().getSimpleName(), "variableCount = " + variableCount.get());
 	}
 
 }
\ No newline at end of file
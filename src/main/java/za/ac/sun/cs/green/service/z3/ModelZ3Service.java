@@ -4,6 +4,8 @@ import org.apache.logging.log4j.Level;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.expr.*;
 import za.ac.sun.cs.green.service.smtlib.ModelSMTLIBService;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.*;
@@ -23,9 +25,9 @@ public class ModelZ3Service extends ModelSMTLIBService {
 	/**
 	 * Execution Time of the service.
 	 */
-	private long timeConsumption = 0;
-	private long satTimeConsumption = 0;
-	private long unsatTimeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	private final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
 
 	public ModelZ3Service(Green solver, Properties properties) {
 		super(solver);
@@ -52,6 +54,7 @@ public class ModelZ3Service extends ModelSMTLIBService {
 	@Override
 	protected Map<Variable, Object> solve0(String smtQuery, Map<Variable, String> variables) {
 		long startTime = System.currentTimeMillis();
+		Object event = Jfr.PROCESS_SPAWN.begin();
 		try {
 			Process process = Runtime.getRuntime().exec(z3Command);
 			OutputStream stdin = process.getOutputStream();
@@ -64,8 +67,8 @@ public class ModelZ3Service extends ModelSMTLIBService {
 
 			if (output.equals("unsat")) {
 				long a = System.currentTimeMillis() - startTime;
-				timeConsumption += a;
-				unsatTimeConsumption += a;
+				timeConsumption.add(a);
+				unsatTimeConsumption.add(a);
 				stdin.close();
 				stdout.close();
 				process.destroy();
@@ -86,12 +89,14 @@ public class ModelZ3Service extends ModelSMTLIBService {
 			process.destroy();
 
 			long a = System.currentTimeMillis() - startTime;
-			timeConsumption += a;
+			timeConsumption.add(a);
 			Map<Variable, Object> tmp = retrieveModel(output, variables);
-			satTimeConsumption += a;
+			satTimeConsumption.add(a);
 			return tmp;
 		} catch (IOException x) {
 			log.log(Level.FATAL, x.getMessage(), x);
+		} finally {
+			Jfr.commitProcessSpawn(event, z3Command);
 		}
 		return null;
 	}
@@ -136,9 +141,9 @@ public class ModelZ3Service extends ModelSMTLIBService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
 	}
 
 }
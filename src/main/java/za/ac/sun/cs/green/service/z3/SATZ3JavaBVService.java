@@ -5,6 +5,7 @@ import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.VisitorException;
 import za.ac.sun.cs.green.service.SATService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.HashMap;
@@ -14,12 +15,12 @@ public class SATZ3JavaBVService extends SATService {
 
 	Context ctx;
 	Solver Z3solver;
-	protected long timeConsumption = 0;
-	protected long translationTimeConsumption = 0;
-	protected long satTimeConsumption = 0;
-	protected long unsatTimeConsumption = 0;
-	protected int conjunctCount = 0;
-	protected int variableCount = 0;
+	protected final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter translationTimeConsumption = metrics.counter("translationTimeConsumption");
+	protected final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	protected final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
+	protected final Metrics.Counter conjunctCount = metrics.counter("conjunctCount");
+	protected final Metrics.Counter variableCount = metrics.counter("variableCount");
 
 	private static class Z3Wrapper {
 		private Context ctx;
@@ -98,9 +99,9 @@ public class SATZ3JavaBVService extends SATService {
 		} catch (Z3Exception e1) {
 			log.warn("Error in Z3 ({})", e1.getMessage());
 		}
-		conjunctCount += instance.getExpression().getCachedString().split("&&").length;
-		variableCount += translator.getVariableCount();
-		translationTimeConsumption += (System.currentTimeMillis() - T0translation);
+		conjunctCount.add(instance.getExpression().getCachedString().split("&&").length);
+		variableCount.add(translator.getVariableCount());
+		translationTimeConsumption.add((System.currentTimeMillis() - T0translation));
 		//solve
 		try {
 			result = Status.SATISFIABLE == Z3solver.check();
@@ -113,32 +114,32 @@ public class SATZ3JavaBVService extends SATService {
 		if (scopes > 0) {
 			Z3solver.pop(scopes);
 		}
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 		if (result) {
-			satTimeConsumption += (System.currentTimeMillis() - start);
+			satTimeConsumption.add((System.currentTimeMillis() - start));
 		} else {
-			unsatTimeConsumption += (System.currentTimeMillis() - start);
+			unsatTimeConsumption.add((System.currentTimeMillis() - start));
 		}
 		return result;
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount);
-		reporter.report(getClass().getSimpleName(), "variableCount = " + variableCount);
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount.get());
+		reporter.report(getClass().getSimpleName(), "variableCount = " + variableCount.get());
 	}
 
 
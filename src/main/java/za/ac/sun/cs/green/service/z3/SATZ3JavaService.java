@@ -1,25 +1,29 @@
 package za.ac.sun.cs.green.service.z3;
 
 import com.microsoft.z3.*;
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.expr.VisitorException;
 import za.ac.sun.cs.green.service.SATService;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class SATZ3JavaService extends SATService {
 
 	Context ctx;
 	Solver Z3solver;
-	protected long timeConsumption = 0;
-	protected long translationTimeConsumption = 0;
-	protected long satTimeConsumption = 0;
-	protected long unsatTimeConsumption = 0;
-	protected int conjunctCount = 0;
-	protected int variableCount = 0;
+	private final Z3Wrapper z3Wrapper;
+	protected final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	protected final Metrics.Counter translationTimeConsumption = metrics.counter("translationTimeConsumption");
+	protected final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	protected final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
+	protected final Metrics.Counter conjunctCount = metrics.counter("conjunctCount");
+	protected final Metrics.Counter variableCount = metrics.counter("variableCount");
 
 	private static class Z3Wrapper {
 		private Context ctx;
@@ -28,6 +32,11 @@ public class SATZ3JavaService extends SATService {
 
 		private static Z3Wrapper instance = null;
 
+		/**
+		 * The number of checks running on the shared context.
+		 */
+		private int checkCount = 0;
+
 		public static Z3Wrapper getInstance() {
 			if (instance != null) {
 				return instance;
@@ -55,12 +64,31 @@ public class SATZ3JavaService extends SATService {
 		public Context getCtx() {
 			return this.ctx;
 		}
+
+		synchronized void beginCheck() {
+			checkCount++;
+		}
+
+		synchronized void endCheck() {
+			checkCount--;
+		}
+
+		/**
+		 * Interrupts the check of the calling request, which must be running,
+		 * unless other requests are checking on the shared context too:
+		 * interrupting the context would abort their checks as well.
+		 */
+		synchronized void interruptCheck() {
+			if (checkCount == 1) {
+				ctx.interrupt();
+			}
+		}
 	}
 
 	public SATZ3JavaService(Green solver, Properties properties) {
 		super(solver);
 
-		Z3Wrapper z3Wrapper = Z3Wrapper.getInstance();
+		z3Wrapper = Z3Wrapper.getInstance();
 		Z3solver = z3Wrapper.getSolver();
 		ctx = z3Wrapper.getCtx();
 		
@@ -79,7 +107,7 @@ public class SATZ3JavaService extends SATService {
 	@Override
 	protected Boolean solve(Instance instance) {
 		long start = System.currentTimeMillis();
-		Boolean result = false;
+		Boolean result = null;
 		// translate instance to Z3
 		long T0translation = System.currentTimeMillis();
 		Z3JavaTranslator translator = new Z3JavaTranslator(ctx);
@@ -98,46 +126,88 @@ public class SATZ3JavaService extends SATService {
 		} catch (Z3Exception e1) {
 			log.warn("Error in Z3 ({})", e1.getMessage());
 		}
-		conjunctCount += instance.getExpression().getCachedString().split("&&").length;
-		variableCount += translator.getVariableCount();
-		translationTimeConsumption += (System.currentTimeMillis() - T0translation);
+		conjunctCount.add(instance.getExpression().getCachedString().split("&&").length);
+		variableCount.add(translator.getVariableCount());
+		translationTimeConsumption.add((System.currentTimeMillis() - T0translation));
 		//solve
+		final Deadline deadline = instance.getDeadline();
+		Runnable interrupt = null;
+		z3Wrapper.beginCheck();
+		if (deadline != null) {
+			if (deadline.isBounded()) {
+				// Round up, so that Z3 does not give up before the deadline
+				setTimeout(TimeUnit.NANOSECONDS.toMillis(deadline.remaining(TimeUnit.NANOSECONDS) + 999999));
+			}
+			interrupt = new Runnable() {
+				@Override
+				public void run() {
+					z3Wrapper.interruptCheck();
+				}
+			};
+			deadline.addListener(interrupt);
+		}
 		try {
-			result = Status.SATISFIABLE == Z3solver.check();
+			// Z3 answers UNKNOWN when it times out, is interrupted or cannot
+			// decide the query; none of these may be stored as unsatisfiable
+			Status status = Z3solver.check();
+			if (status != Status.UNKNOWN) {
+				result = Status.SATISFIABLE == status;
+			}
 		} catch (Z3Exception e) {
 			log.warn("Error in Z3 ({})", e.getMessage());
+		} finally {
+			if (deadline != null) {
+				deadline.removeListener(interrupt);
+				if (deadline.isBounded()) {
+					setTimeout(Integer.MAX_VALUE);
+				}
+			}
+			z3Wrapper.endCheck();
 		}
 		// clean up
 		int scopes = Z3solver.getNumScopes();
 		if (scopes > 0) {
 			Z3solver.pop(scopes);
 		}
-		timeConsumption += (System.currentTimeMillis() - start);
-		if (result) {
-			satTimeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
+		if (result == null) {
+			log.warn("Z3 gave no answer");
+		} else if (result) {
+			satTimeConsumption.add((System.currentTimeMillis() - start));
 		} else {
-			unsatTimeConsumption += (System.currentTimeMillis() - start);
+			unsatTimeConsumption.add((System.currentTimeMillis() - start));
 		}
 		return result;
 	}
 
+	/**
+	 * Sets the Z3 timeout for subsequent checks.
+	 *
+	 * @param millis the timeout in milliseconds
+	 */
+	private void setTimeout(long millis) {
+		Params params = ctx.mkParams();
+		params.add("timeout", (int) Math.max(1, Math.min(Integer.MAX_VALUE, millis)));
+		Z3solver.setParameters(params);
+	}
+
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount);
-		reporter.report(getClass().getSimpleName(), "variableCount = " + variableCount);
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount.get());
+		reporter.report(getClass().getSimpleName(), "variableCount = " + variableCount.get());
 	}
 
 
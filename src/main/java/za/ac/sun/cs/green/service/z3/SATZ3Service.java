@@ -1,11 +1,15 @@
 package za.ac.sun.cs.green.service.z3;
 
+import za.ac.sun.cs.green.Deadline;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.service.smtlib.SATSMTLIBService;
+import za.ac.sun.cs.green.util.Jfr;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.*;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class SATZ3Service extends SATSMTLIBService {
 	private final String DEFAULT_Z3_PATH;
@@ -14,9 +18,9 @@ public class SATZ3Service extends SATSMTLIBService {
 	private final String z3Command;
 	private final String resourceName = "build.properties";
 
-	private long timeConsumption = 0;
-	private long satTimeConsumption = 0;
-	private long unsatTimeConsumption = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter satTimeConsumption = metrics.counter("satTimeConsumption");
+	private final Metrics.Counter unsatTimeConsumption = metrics.counter("unsatTimeConsumption");
 
 	public SATZ3Service(Green solver, Properties properties) {
 		super(solver);
@@ -49,29 +53,69 @@ public class SATZ3Service extends SATSMTLIBService {
 
 	@Override
 	protected Boolean solve0(String smtQuery) {
+		return solve0(smtQuery, null);
+	}
+
+	/**
+	 * Runs Z3 on the query. If the deadline expires or is cancelled before Z3
+	 * answers, the process is killed and {@code null} is returned.
+	 */
+	@Override
+	protected Boolean solve0(String smtQuery, Deadline deadline) {
 		long startTime = System.currentTimeMillis();
 		String output = "";
+		Process process = null;
+		Runnable kill = null;
+		Object event = Jfr.PROCESS_SPAWN.begin();
 		try {
-			Process process = Runtime.getRuntime().exec(z3Command);
+			process = Runtime.getRuntime().exec(z3Command);
+			if (deadline != null) {
+				final Process p = process;
+				kill = new Runnable() {
+					@Override
+					public void run() {
+						p.destroyForcibly();
+					}
+				};
+				deadline.addListener(kill);
+			}
 			OutputStream stdin = process.getOutputStream();
 			InputStream stdout = process.getInputStream();
 			BufferedReader outReader = new BufferedReader(new InputStreamReader(stdout));
 			stdin.write((smtQuery + "(exit)\n").getBytes());
 			stdin.flush();
 			stdin.close();
+			if ((deadline != null) && deadline.isBounded()
+					&& !process.waitFor(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)) {
+				process.destroyForcibly();
+			}
 			output = outReader.readLine();
 			stdout.close();
 			process.destroy();
 		} catch (IOException x) {
 			log.fatal(x.getMessage(), x);
+		} catch (InterruptedException x) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+		} finally {
+			Jfr.commitProcessSpawn(event, z3Command);
+			if (kill != null) {
+				deadline.removeListener(kill);
+			}
 		}
 		long a = System.currentTimeMillis() - startTime;
-		timeConsumption += a;
-		if (output.equals("sat")) {
-			satTimeConsumption += a;
+		timeConsumption.add(a);
+		if ((deadline != null) && deadline.isDone() && !"sat".equals(output) && !"unsat".equals(output)) {
+			log.warn("Z3 killed at the deadline");
+			return null;
+		} else if (output == null) {
+			log.fatal("Z3 returned no output");
+			return null;
+		} else if (output.equals("sat")) {
+			satTimeConsumption.add(a);
 			return true;
 		} else if (output.equals("unsat")) {
-			unsatTimeConsumption += a;
+			unsatTimeConsumption.add(a);
 			return false;
 		} else {
 			log.fatal("Z3 returned a null {}", output);
@@ -81,18 +125,18 @@ public class SATZ3Service extends SATSMTLIBService {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount);
-		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount);
-		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount);
-		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount);
-		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount);
-		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount);
-		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption);
-		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption);
+		reporter.report(getClass().getSimpleName(), "cacheHitCount = " + cacheHitCount.get());
+		reporter.report(getClass().getSimpleName(), "cacheMissCount = " + cacheMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheHitCount = " + satHitCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheHitCount = " + unsatHitCount.get());
+		reporter.report(getClass().getSimpleName(), "satCacheMissCount = " + satMissCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatCacheMissCount = " + unsatMissCount.get());
+		reporter.report(getClass().getSimpleName(), "satQueries = " + satCount.get());
+		reporter.report(getClass().getSimpleName(), "unsatQueries = " + unsatCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "satTimeConsumption = " + satTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "unsatTimeConsumption = " + unsatTimeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "storageTimeConsumption = " + storageTimeConsumption.get());
 		reporter.report(getClass().getSimpleName(), "translationTimeConsumption = " + translationTimeConsumption);
 		reporter.report(getClass().getSimpleName(), "conjunctCount = " + conjunctCount);
 		reporter.report(getClass().getSimpleName(), "varCount = " + varCount);
@@ -4,17 +4,41 @@ import org.apache.logging.log4j.Logger;
 import org.apfloat.Apint;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.util.Base64;
+import za.ac.sun.cs.green.util.Metrics;
 
 import java.io.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class BasicStore implements Store {
 
 	protected final Green solver;
 	protected final Logger LOGGER;
 
+	/**
+	 * The counters of this store, registered under its class name.
+	 */
+	protected final Metrics.Group metrics;
+
+	/**
+	 * Latencies, in nanoseconds, of {@link #get(String)},
+	 * {@link #getAll(Collection)} and {@link #put(String, Serializable)}.
+	 * Subclasses record them.
+	 */
+	protected final Metrics.Histogram getLatency;
+
+	protected final Metrics.Histogram getAllLatency;
+
+	protected final Metrics.Histogram putLatency;
+
 	public BasicStore(Green solver) {
 		this.solver = solver;
 		LOGGER = solver.getLogger();
+		metrics = solver.getMetrics().register(getClass().getSimpleName());
+		getLatency = metrics.histogram("get");
+		getAllLatency = metrics.histogram("getAll");
+		putLatency = metrics.histogram("put");
 	}
 
 	@Override
@@ -45,6 +69,20 @@ public abstract class BasicStore implements Store {
 		return new String(Base64.encode(baos.toByteArray()));
 	}
 
+	@Override
+	public Map<String, Object> getAll(Collection<String> keys) {
+		long nanos = System.nanoTime();
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (String key : keys) {
+			Object value = get(key);
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		getAllLatency.record(System.nanoTime() - nanos);
+		return values;
+	}
+
 	@Override
 	public String getString(String key) {
 		Object value = get(key);
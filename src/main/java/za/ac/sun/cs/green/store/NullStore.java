@@ -1,17 +1,20 @@
 package za.ac.sun.cs.green.store;
 
 import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 public class NullStore extends BasicStore {
 
-	private int getCount = 0;
+	private final Metrics.Counter getCount = metrics.counter("getCount");
 
-	private int putCount = 0;
+	private final Metrics.Counter putCount = metrics.counter("putCount");
 
 	public NullStore(Green solver) {
 		super(solver);
@@ -19,19 +22,31 @@ public class NullStore extends BasicStore {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "getCount = " + getCount);
-		reporter.report(getClass().getSimpleName(), "putCount = " + putCount);
+		reporter.report(getClass().getSimpleName(), "getCount = " + getCount.get());
+		reporter.report(getClass().getSimpleName(), "putCount = " + putCount.get());
 	}
 
 	@Override
 	public Object get(String key) {
-		getCount++;
+		long nanos = System.nanoTime();
+		getCount.increment();
+		getLatency.record(System.nanoTime() - nanos);
 		return null;
 	}
 
+	@Override
+	public Map<String, Object> getAll(Collection<String> keys) {
+		long nanos = System.nanoTime();
+		getCount.add(keys.size());
+		getAllLatency.record(System.nanoTime() - nanos);
+		return Collections.emptyMap();
+	}
+
 	@Override
 	public void put(String key, Serializable value) {
-		putCount++;
+		long nanos = System.nanoTime();
+		putCount.increment();
+		putLatency.record(System.nanoTime() - nanos);
 	}
 
 	@Override
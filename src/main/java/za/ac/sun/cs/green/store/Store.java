@@ -4,6 +4,8 @@ import org.apfloat.Apint;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,6 +38,16 @@ public interface Store {
 	 */
 	Object get(String key);
 
+	/**
+	 * Returns the objects associated with the given keys. Keys that have no
+	 * association are omitted from the result. Stores that support it answer
+	 * all the keys with a single lookup.
+	 *
+	 * @param keys the keys to use for the lookup
+	 * @return a map from the keys that were found to their objects
+	 */
+	Map<String, Object> getAll(Collection<String> keys);
+
 	/**
 	 * Returns the string that is associated with the given key. If there is
 	 * nothing associated with the key, the method returns <code>null</code>.
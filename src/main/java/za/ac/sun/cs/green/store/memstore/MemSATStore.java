@@ -3,6 +3,9 @@ package za.ac.sun.cs.green.store.memstore;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.store.BasicStore;
 import za.ac.sun.cs.green.store.redis.RedisStore;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.MemoryAccount;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.Serializable;
@@ -19,45 +22,102 @@ public class MemSATStore extends BasicStore {
 	/**
 	 * Number of times <code>get(...)</code> was called.
 	 */
-	private int retrievalCount = 0;
+	private final Metrics.Counter retrievalCount = metrics.counter("retrievalCount");
 
 	/**
 	 * Number of times <code>put(...)</code> was called.
 	 */
-	private int insertionCount = 0;
+	private final Metrics.Counter insertionCount = metrics.counter("insertionCount");
 
 	/**
 	 * The Memory Store
 	 */
 	private Map<String, Boolean> db;
 	private RedisStore redisStore;
-	private long timePut = 0;
-	private long timeGet = 0;
-	private long timeConsumption = 0;
-	private long getKeySetTime = 0;
+	private final Metrics.Counter timePut = metrics.counter("timePut");
+	private final Metrics.Counter timeGet = metrics.counter("timeGet");
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter getKeySetTime = metrics.counter("getKeySetTime");
+
+	/**
+	 * The estimated size of the entries, per key prefix.
+	 */
+	private final MemoryAccount memory = new MemoryAccount(metrics);
+
+	private final Metrics.Counter evictionCount = metrics.counter("evictionCount");
 
 	/**
 	 * Constructor to create memory store
 	 */
 	public MemSATStore(Green solver, Properties properties) {
 		super(solver);
-		db = new HashMap<String, Boolean>();
+		// In access order, so that the least recently used entries are
+		// evicted first when the memory limit is reached
+		db = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
 		redisStore = new RedisStore(solver, "localhost", 6379);
+		if (properties != null) {
+			memory.setSoftLimit(Configuration.getLongProperty(properties, Configuration.STORE_MEMORY_LIMIT_PROPERTY, 0));
+		}
+		memory.addEvictionListener(new MemoryAccount.EvictionListener() {
+			@Override
+			public void evict(MemoryAccount account, long excess) {
+				evictLeastRecentlyUsed(excess);
+			}
+		});
+	}
+
+	/**
+	 * Returns the estimated size of the entries of this store.
+	 *
+	 * @return the memory account of the store
+	 */
+	public MemoryAccount getMemory() {
+		return memory;
+	}
+
+	/**
+	 * Evicts the least recently used entries until their estimated size is
+	 * at least the given number of bytes.
+	 */
+	private synchronized void evictLeastRecentlyUsed(long bytes) {
+		Iterator<Map.Entry<String, Boolean>> entries = db.entrySet().iterator();
+		while ((bytes > 0) && entries.hasNext()) {
+			Map.Entry<String, Boolean> entry = entries.next();
+			long size = MemoryAccount.sizeOf(entry.getKey(), entry.getValue());
+			memory.remove(entry.getKey(), size);
+			entries.remove();
+			evictionCount.increment();
+			bytes -= size;
+		}
+	}
+
+	/**
+	 * Adds an entry to the database and accounts for its size.
+	 */
+	private void store(String key, Boolean value) {
+		Boolean old = db.put(key, value);
+		if (old != null) {
+			memory.remove(key, MemoryAccount.sizeOf(key, old));
+		}
+		memory.add(key, MemoryAccount.sizeOf(key, value));
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "retrievalCount = " + retrievalCount);
-		reporter.report(getClass().getSimpleName(), "insertionCount = " + insertionCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "getTime = " + timeGet);
-		reporter.report(getClass().getSimpleName(), "putTime = " + timePut);
+		reporter.report(getClass().getSimpleName(), "retrievalCount = " + retrievalCount.get());
+		reporter.report(getClass().getSimpleName(), "insertionCount = " + insertionCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "getTime = " + timeGet.get());
+		reporter.report(getClass().getSimpleName(), "putTime = " + timePut.get());
+		reporter.report(getClass().getSimpleName(), "evictionCount = " + evictionCount.get());
+		memory.report(getClass().getSimpleName(), reporter);
 	}
 
 	@Override
 	public synchronized Object get(String key) {
 		long start = System.currentTimeMillis();
-		retrievalCount++;
+		long nanos = System.nanoTime();
+		retrievalCount.increment();
 		Boolean b = db.get(key);
 
 		if (b == null) {
@@ -68,23 +128,26 @@ public class MemSATStore extends BasicStore {
 			if (redisStore.isSet()) {
 				b = redisStore.getBoolean(key);
 				if (b != null) {
-					db.put(key, b);
+					store(key, b);
 				}
 			}
 		}
 
-		timeGet += (System.currentTimeMillis() - start);
-		timeConsumption += (System.currentTimeMillis() - start);
+		getLatency.record(System.nanoTime() - nanos);
+		timeGet.add((System.currentTimeMillis() - start));
+		timeConsumption.add((System.currentTimeMillis() - start));
 		return b;
 	}
 
 	@Override
 	public synchronized void put(String key, Serializable value) {
 		long start = System.currentTimeMillis();
-		insertionCount++;
-		db.put(key, (Boolean) value);
-		timePut += (System.currentTimeMillis() - start);
-		timeConsumption += (System.currentTimeMillis() - start);
+		long nanos = System.nanoTime();
+		insertionCount.increment();
+		store(key, (Boolean) value);
+		putLatency.record(System.nanoTime() - nanos);
+		timePut.add((System.currentTimeMillis() - start));
+		timeConsumption.add((System.currentTimeMillis() - start));
 	}
 
 	@Override
@@ -101,9 +164,13 @@ public class MemSATStore extends BasicStore {
 				keys = redisStore.keySet(pattern);
 			}
 		} else {
-			// look in local database
+			// look in local database, in a copy: lookups reorder the map
+			Set<String> all;
+			synchronized (this) {
+				all = new HashSet<String>(db.keySet());
+			}
 			if (pattern == null || pattern.equals("")) {
-				keys = db.keySet();
+				keys = all;
 			} else {
 				if (pattern.endsWith("*")) {
 //					pattern = pattern.replaceAll("^.*\\*", "");
@@ -112,13 +179,13 @@ public class MemSATStore extends BasicStore {
 				final String finalPattern = pattern;
 				// TODO: filter is not robust, can fail if not given exact search
 				// eg. fail on pattern being ab*.extension
-				keys = db.keySet().stream()
+				keys = all.stream()
 						.filter(e -> e.startsWith(finalPattern))
 						.collect(Collectors.toSet());
 			}
 		}
-		getKeySetTime += (System.currentTimeMillis() - startTime);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		getKeySetTime.add((System.currentTimeMillis() - startTime));
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return Collections.unmodifiableSet(keys);
 	}
 
@@ -126,23 +193,28 @@ public class MemSATStore extends BasicStore {
 	public void flushAll() {
 		long start = System.currentTimeMillis();
 		flushAllToRedis();
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 	}
 
 	@Override
 	public void clear() {
 		long start = System.currentTimeMillis();
-		db.clear();
+		synchronized (this) {
+			db.clear();
+			memory.clear();
+		}
 		if (redisStore.isSet()) {
 			redisStore.clear();
 		}
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 	}
 
 	@Override
 	public boolean isSet() {
 		try {
-			db.get("foo");
+			synchronized (this) {
+				db.get("foo");
+			}
 			return true;
 		} catch (Exception e) {
 			return false;
@@ -151,8 +223,13 @@ public class MemSATStore extends BasicStore {
 
 	private void flushAllToRedis() {
 		if (redisStore.isSet()) {
-			for (String key : db.keySet()) {
-				redisStore.put(key, db.get(key));
+			// A copy: lookups reorder the map while it is written out
+			Map<String, Boolean> entries;
+			synchronized (this) {
+				entries = new HashMap<String, Boolean>(db);
+			}
+			for (Map.Entry<String, Boolean> entry : entries.entrySet()) {
+				redisStore.put(entry.getKey(), entry.getValue());
 			}
 		}
 	}
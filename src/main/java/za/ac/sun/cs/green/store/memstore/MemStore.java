@@ -3,6 +3,9 @@ package za.ac.sun.cs.green.store.memstore;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.store.BasicStore;
 import za.ac.sun.cs.green.store.redis.RedisStore;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.MemoryAccount;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.Serializable;
@@ -19,12 +22,12 @@ public class MemStore extends BasicStore {
 	/**
 	 * Number of times <code>get(...)</code> was called.
 	 */
-	private int retrievalCount = 0;
+	private final Metrics.Counter retrievalCount = metrics.counter("retrievalCount");
 
 	/**
 	 * Number of times <code>put(...)</code> was called.
 	 */
-	private int insertionCount = 0;
+	private final Metrics.Counter insertionCount = metrics.counter("insertionCount");
 
 	/**
 	 * The Memory Store
@@ -32,33 +35,90 @@ public class MemStore extends BasicStore {
 	private Map<String, Object> db;
 	private RedisStore redisStore;
 
-	private long timePut = 0;
-	private long timeGet = 0;
-	private long timeConsumption = 0;
-	private long getKeySetTime = 0;
+	private final Metrics.Counter timePut = metrics.counter("timePut");
+	private final Metrics.Counter timeGet = metrics.counter("timeGet");
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter getKeySetTime = metrics.counter("getKeySetTime");
+
+	/**
+	 * The estimated size of the entries, per key prefix.
+	 */
+	private final MemoryAccount memory = new MemoryAccount(metrics);
+
+	private final Metrics.Counter evictionCount = metrics.counter("evictionCount");
 
 	/**
 	 * Constructor to create memory store
 	 */
 	public MemStore(Green solver, Properties properties) {
 		super(solver);
-		db = new HashMap<String, Object>();
+		// In access order, so that the least recently used entries are
+		// evicted first when the memory limit is reached
+		db = new LinkedHashMap<String, Object>(16, 0.75f, true);
 		redisStore = new RedisStore(solver, "localhost", 6379);
+		if (properties != null) {
+			memory.setSoftLimit(Configuration.getLongProperty(properties, Configuration.STORE_MEMORY_LIMIT_PROPERTY, 0));
+		}
+		memory.addEvictionListener(new MemoryAccount.EvictionListener() {
+			@Override
+			public void evict(MemoryAccount account, long excess) {
+				evictLeastRecentlyUsed(excess);
+			}
+		});
+	}
+
+	/**
+	 * Returns the estimated size of the entries of this store.
+	 *
+	 * @return the memory account of the store
+	 */
+	public MemoryAccount getMemory() {
+		return memory;
+	}
+
+	/**
+	 * Evicts the least recently used entries until their estimated size is
+	 * at least the given number of bytes.
+	 */
+	private synchronized void evictLeastRecentlyUsed(long bytes) {
+		Iterator<Map.Entry<String, Object>> entries = db.entrySet().iterator();
+		while ((bytes > 0) && entries.hasNext()) {
+			Map.Entry<String, Object> entry = entries.next();
+			long size = MemoryAccount.sizeOf(entry.getKey(), entry.getValue());
+			memory.remove(entry.getKey(), size);
+			entries.remove();
+			evictionCount.increment();
+			bytes -= size;
+		}
+	}
+
+	/**
+	 * Adds an entry to the database and accounts for its size.
+	 */
+	private void store(String key, Object value) {
+		Object old = db.put(key, value);
+		if (old != null) {
+			memory.remove(key, MemoryAccount.sizeOf(key, old));
+		}
+		memory.add(key, MemoryAccount.sizeOf(key, value));
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "retrievalCount = " + retrievalCount);
-		reporter.report(getClass().getSimpleName(), "insertionCount = " + insertionCount);
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "getTime = " + timeGet);
-		reporter.report(getClass().getSimpleName(), "putTime = " + timePut);
+		reporter.report(getClass().getSimpleName(), "retrievalCount = " + retrievalCount.get());
+		reporter.report(getClass().getSimpleName(), "insertionCount = " + insertionCount.get());
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "getTime = " + timeGet.get());
+		reporter.report(getClass().getSimpleName(), "putTime = " + timePut.get());
+		reporter.report(getClass().getSimpleName(), "evictionCount = " + evictionCount.get());
+		memory.report(getClass().getSimpleName(), reporter);
 	}
 
 	@Override
 	public synchronized Object get(String key) {
 		long start = System.currentTimeMillis();
-		retrievalCount++;
+		long nanos = System.nanoTime();
+		retrievalCount.increment();
 		Object s = db.get(key);
 		if (s == null) {
 			// Greedy approach:
@@ -68,23 +128,54 @@ public class MemStore extends BasicStore {
 			if (redisStore.isSet()) {
 				s = redisStore.get(key);
 				if (s != null) {
-					db.put(key, s);
+					store(key, (Serializable) s);
 				}
 			}
 		}
-		timeGet += (System.currentTimeMillis() - start);
-		timeConsumption += (System.currentTimeMillis() - start);
+		getLatency.record(System.nanoTime() - nanos);
+		timeGet.add((System.currentTimeMillis() - start));
+		timeConsumption.add((System.currentTimeMillis() - start));
 		return s;
 	}
 
+	@Override
+	public synchronized Map<String, Object> getAll(Collection<String> keys) {
+		long start = System.currentTimeMillis();
+		long nanos = System.nanoTime();
+		retrievalCount.add(keys.size());
+		Map<String, Object> values = new HashMap<String, Object>();
+		List<String> misses = new ArrayList<String>();
+		for (String key : keys) {
+			Object s = db.get(key);
+			if (s != null) {
+				values.put(key, s);
+			} else {
+				misses.add(key);
+			}
+		}
+		if (!misses.isEmpty() && redisStore.isSet()) {
+			Map<String, Object> found = redisStore.getAll(misses);
+			for (Map.Entry<String, Object> entry : found.entrySet()) {
+				store(entry.getKey(), entry.getValue());
+			}
+			values.putAll(found);
+		}
+		getAllLatency.record(System.nanoTime() - nanos);
+		timeGet.add((System.currentTimeMillis() - start));
+		timeConsumption.add((System.currentTimeMillis() - start));
+		return values;
+	}
+
 	@Override
 	public synchronized void put(String key, Serializable value) {
 		long start = System.currentTimeMillis();
-		insertionCount++;
+		long nanos = System.nanoTime();
+		insertionCount.increment();
 		// Unnecessary to convert to Base64 string
-		db.put(key, value);
-		timePut += (System.currentTimeMillis() - start);
-		timeConsumption += (System.currentTimeMillis() - start);
+		store(key, value);
+		putLatency.record(System.nanoTime() - nanos);
+		timePut.add((System.currentTimeMillis() - start));
+		timeConsumption.add((System.currentTimeMillis() - start));
 	}
 
 	@Override
@@ -101,9 +192,13 @@ public class MemStore extends BasicStore {
 				keys = redisStore.keySet(pattern);
 			}
 		} else {
-			// look in local database
+			// look in local database, in a copy: lookups reorder the map
+			Set<String> all;
+			synchronized (this) {
+				all = new HashSet<String>(db.keySet());
+			}
 			if (pattern == null || pattern.equals("")) {
-				keys = db.keySet();
+				keys = all;
 			} else {
 				if (pattern.endsWith("*")) {
 //					pattern = pattern.replaceAll("^.*\\*", "");
@@ -112,13 +207,13 @@ public class MemStore extends BasicStore {
 				final String finalPattern = pattern;
 				// TODO: filter is not robust, can fail if not given exact search
 				// eg. fail on pattern being ab*.extension
-				keys = db.keySet().stream()
+				keys = all.stream()
 						.filter(e -> e.startsWith(finalPattern))
 						.collect(Collectors.toSet());
 			}
 		}
-		getKeySetTime += (System.currentTimeMillis() - startTime);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		getKeySetTime.add((System.currentTimeMillis() - startTime));
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return Collections.unmodifiableSet(keys);
 	}
 
@@ -126,23 +221,28 @@ public class MemStore extends BasicStore {
 	public void flushAll() {
 		long start = System.currentTimeMillis();
 		flushAllToRedis();
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 	}
 
 	@Override
 	public void clear() {
 		long start = System.currentTimeMillis();
-		db.clear();
+		synchronized (this) {
+			db.clear();
+			memory.clear();
+		}
 //		if (redisStore.isSet()) {
 //			redisStore.clear();
 //		}
-		timeConsumption += (System.currentTimeMillis() - start);
+		timeConsumption.add((System.currentTimeMillis() - start));
 	}
 
 	@Override
 	public boolean isSet() {
 		try {
-			db.get("foo");
+			synchronized (this) {
+				db.get("foo");
+			}
 			return true;
 		} catch (Exception e) {
 			return false;
@@ -151,7 +251,12 @@ public class MemStore extends BasicStore {
 
 	private void flushAllToRedis() {
 		if (redisStore.isSet()) {
-			db.forEach((k, v) -> redisStore.put(k, (Serializable) v));
+			// A copy: lookups reorder the map while it is written out
+			Map<String, Object> entries;
+			synchronized (this) {
+				entries = new HashMap<String, Object>(db);
+			}
+			entries.forEach((k, v) -> redisStore.put(k, (Serializable) v));
 		}
 	}
 
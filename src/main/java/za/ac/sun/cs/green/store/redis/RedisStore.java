@@ -4,10 +4,15 @@ import redis.clients.jedis.Jedis;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.store.BasicStore;
 import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -27,20 +32,20 @@ public class RedisStore extends BasicStore {
 	 * Connection to the redis store.
 	 */
 	private Jedis db = null;
-	private long timeConsumption = 0;
-	private long getTime = 0;
-	private long getKeySetTime = 0;
-	private long putTime = 0;
+	private final Metrics.Counter timeConsumption = metrics.counter("timeConsumption");
+	private final Metrics.Counter getTime = metrics.counter("getTime");
+	private final Metrics.Counter getKeySetTime = metrics.counter("getKeySetTime");
+	private final Metrics.Counter putTime = metrics.counter("putTime");
 	private Boolean set = null;
 	/**
 	 * Number of times <code>get(...)</code> was called.
 	 */
-	private int retrievalCount = 0;
+	private final Metrics.Counter retrievalCount = metrics.counter("retrievalCount");
 
 	/**
 	 * Number of times <code>put(...)</code> was called.
 	 */
-	private int insertionCount = 0;
+	private final Metrics.Counter insertionCount = metrics.counter("insertionCount");
 
 	/**
 	 * The default host of the redis server.
@@ -75,44 +80,78 @@ public class RedisStore extends BasicStore {
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption);
-		reporter.report(getClass().getSimpleName(), "get = " + getTime);
-		reporter.report(getClass().getSimpleName(), "put = " + putTime);
-		reporter.report(getClass().getSimpleName(), "getKeySet = " + getKeySetTime);
-		reporter.report(getClass().getSimpleName(), "retrievalCount = " + retrievalCount);
-		reporter.report(getClass().getSimpleName(), "insertionCount = " + insertionCount);
+		reporter.report(getClass().getSimpleName(), "timeConsumption = " + timeConsumption.get());
+		reporter.report(getClass().getSimpleName(), "get = " + getTime.get());
+		reporter.report(getClass().getSimpleName(), "put = " + putTime.get());
+		reporter.report(getClass().getSimpleName(), "getKeySet = " + getKeySetTime.get());
+		reporter.report(getClass().getSimpleName(), "retrievalCount = " + retrievalCount.get());
+		reporter.report(getClass().getSimpleName(), "insertionCount = " + insertionCount.get());
 	}
 
 	@Override
 	public synchronized Object get(String key) {
 		long startTime = System.currentTimeMillis();
-		retrievalCount++;
+		long nanos = System.nanoTime();
+		retrievalCount.increment();
 		try {
 			String s = db.get(key);
-			getTime += (System.currentTimeMillis() - startTime);
-			timeConsumption += (System.currentTimeMillis() - startTime);
+			getLatency.record(System.nanoTime() - nanos);
+			getTime.add((System.currentTimeMillis() - startTime));
+			timeConsumption.add((System.currentTimeMillis() - startTime));
 			return (s == null) ? null : fromString(s);
 		} catch (IOException x) {
 			LOGGER.fatal("io problem", x);
 		} catch (ClassNotFoundException x) {
 			LOGGER.fatal("class not found problem", x);
 		}
-		getTime += (System.currentTimeMillis() - startTime);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		getLatency.record(System.nanoTime() - nanos);
+		getTime.add((System.currentTimeMillis() - startTime));
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return null;
 	}
 
+	@Override
+	public synchronized Map<String, Object> getAll(Collection<String> keys) {
+		long startTime = System.currentTimeMillis();
+		long nanos = System.nanoTime();
+		retrievalCount.add(keys.size());
+		Map<String, Object> values = new HashMap<String, Object>();
+		if (!keys.isEmpty()) {
+			String[] k = keys.toArray(new String[keys.size()]);
+			List<String> v = db.mget(k);
+			for (int i = 0; i < k.length; i++) {
+				String s = v.get(i);
+				if (s == null) {
+					continue;
+				}
+				try {
+					values.put(k[i], fromString(s));
+				} catch (IOException x) {
+					LOGGER.fatal("io problem", x);
+				} catch (ClassNotFoundException x) {
+					LOGGER.fatal("class not found problem", x);
+				}
+			}
+		}
+		getAllLatency.record(System.nanoTime() - nanos);
+		getTime.add((System.currentTimeMillis() - startTime));
+		timeConsumption.add((System.currentTimeMillis() - startTime));
+		return values;
+	}
+
 	@Override
 	public synchronized void put(String key, Serializable value) {
 		long startTime = System.currentTimeMillis();
-		insertionCount++;
+		long nanos = System.nanoTime();
+		insertionCount.increment();
 		try {
 			db.set(key, toString(value));
 		} catch (IOException x) {
 			LOGGER.fatal("io problem", x);
 		}
-		putTime += (System.currentTimeMillis() - startTime);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		putLatency.record(System.nanoTime() - nanos);
+		putTime.add((System.currentTimeMillis() - startTime));
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 	}
 
 	@Override
@@ -124,8 +163,8 @@ public class RedisStore extends BasicStore {
 		} else {
 			keys = db.keys(pattern);
 		}
-		getKeySetTime += (System.currentTimeMillis() - startTime);
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		getKeySetTime.add((System.currentTimeMillis() - startTime));
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 		return keys;
 	}
 
@@ -141,7 +180,7 @@ public class RedisStore extends BasicStore {
 			db.flushAll();
 		} catch (Exception e) {
 		}
-		timeConsumption += (System.currentTimeMillis() - startTime);
+		timeConsumption.add((System.currentTimeMillis() - startTime));
 	}
 
 	public boolean isSet() {
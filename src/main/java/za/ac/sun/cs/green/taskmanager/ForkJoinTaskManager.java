@@ -0,0 +1,317 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import org.apache.logging.log4j.Logger;
+import za.ac.sun.cs.green.Deadline;
+import za.ac.sun.cs.green.ExecutionPlan;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.Service;
+import za.ac.sun.cs.green.Unknown;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongSupplier;
+
+/**
+ * A task manager that runs the service tree on a {@link ForkJoinPool} with a
+ * bounded number of workers.
+ * <p>
+ * Unlike the {@link ParallelTaskManager}, a service that produces
+ * sub-instances does not park its thread while the children are computed.
+ * Each (service, instance) pair becomes a {@link RecursiveTask}; the children
+ * of a node are forked, the first child is computed directly by the current
+ * worker, and the remaining children are joined (which lets the worker help
+ * with outstanding work instead of blocking). Results are consumed in
+ * completion order where possible, and the remaining children are cancelled
+ * as soon as a non-{@code null} result is obtained.
+ * <p>
+ * The {@link Service#childDone(Instance, Service, Instance, Object)} and
+ * {@link Service#allChildrenDone(Instance, Object)} routines of a service are
+ * always called by the worker that forked its children, one at a time, so
+ * services do not observe concurrent calls for the same instance.
+ * <p>
+ * Services at the leaves of the plan usually wait for an external solver, so
+ * they are called through a {@link ForkJoinPool.ManagedBlocker}: while a leaf
+ * service blocks, the pool may start a spare worker, so that the other forked
+ * tasks still make progress.
+ * <p>
+ * The number of workers is read from the "{@code green.taskmanager.parallelism}"
+ * property and defaults to the number of available processors.
+ */
+public class ForkJoinTaskManager implements TaskManager {
+
+	/**
+	 * The property that determines the number of worker threads.
+	 */
+	public static final String PARALLELISM_PROPERTY = "green.taskmanager.parallelism";
+
+	private final Green solver;
+
+	private final Logger LOGGER;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * The counters of this task manager.
+	 */
+	private final Metrics.Group metrics;
+
+	private final Metrics.Counter processedCount;
+
+	private final Metrics.Counter taskCount;
+
+	private final Metrics.Counter cancelledCount;
+
+	public ForkJoinTaskManager(final Green solver) {
+		this(solver, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ForkJoinTaskManager(final Green solver, final Properties properties) {
+		this(solver, Configuration.getIntegerProperty(properties, PARALLELISM_PROPERTY,
+				Runtime.getRuntime().availableProcessors()));
+	}
+
+	public ForkJoinTaskManager(final Green solver, final int parallelism) {
+		this.solver = solver;
+		LOGGER = solver.getLogger();
+		pool = new ForkJoinPool(Math.max(1, parallelism));
+		metrics = solver.getMetrics().register(getClass().getSimpleName());
+		processedCount = metrics.counter("processedCount");
+		taskCount = metrics.counter("taskCount");
+		cancelledCount = metrics.counter("cancelledCount");
+		metrics.gauge("queuedTaskCount", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return pool.getQueuedTaskCount();
+			}
+		});
+		metrics.gauge("activeThreadCount", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return pool.getActiveThreadCount();
+			}
+		});
+	}
+
+	/**
+	 * Applies the service of each child of the plan node to each of the
+	 * instances and combines the results. This routine must be called from
+	 * within the pool.
+	 *
+	 * @param parent         the plan node whose children are applied
+	 * @param parentInstance the instance processed by the parent service
+	 * @param instances      the instances to apply the services to
+	 * @param request        the future of an asynchronous request, or
+	 *                       {@code null}
+	 * @return the combined result
+	 */
+	private Object execute(ExecutionPlan.Node parent, Instance parentInstance, Set<Instance> instances,
+			TaskFuture request) {
+		final Service parentService = parent.getService();
+		final List<Task> tasks = new ArrayList<Task>(parent.getChildCount() * instances.size());
+		for (int i = 0, n = parent.getChildCount(); i < n; i++) {
+			ExecutionPlan.Node node = parent.getChild(i);
+			for (Instance instance : instances) {
+				tasks.add(new Task(node, instance, request));
+			}
+		}
+		taskCount.add(tasks.size());
+		Deadline deadline = instances.isEmpty() ? null : instances.iterator().next().getDeadline();
+		Object result = null;
+		int consumed = 0;
+		try {
+			// Fork in reverse so that the local deque yields the tasks in order
+			for (int i = tasks.size() - 1; i > 0; i--) {
+				tasks.get(i).fork();
+			}
+			while ((result == null) && (consumed < tasks.size())) {
+				if (((deadline != null) && deadline.isDone()) || ((request != null) && request.isCancelled())) {
+					break;
+				}
+				Task next = (consumed == 0) ? tasks.get(0) : nextTask(tasks);
+				next.consumed = true;
+				consumed++;
+				Object r = (consumed == 1) ? next.invoke() : next.join();
+				result = (parentService == null) ? r : parent.childDone(parentInstance, next.node.getService(), next.instance, r);
+			}
+		} finally {
+			for (Task task : tasks) {
+				if (!task.consumed && task.cancel(false)) {
+					cancelledCount.increment();
+				}
+			}
+		}
+		if (parentService != null) {
+			result = parent.allChildrenDone(parentInstance, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the first unconsumed task that has already completed or, if
+	 * there is none, the first unconsumed task.
+	 *
+	 * @param tasks the list of tasks
+	 * @return the task whose result should be consumed next
+	 */
+	private Task nextTask(List<Task> tasks) {
+		Task first = null;
+		for (Task task : tasks) {
+			if (!task.consumed) {
+				if (task.isDone()) {
+					return task;
+				} else if (first == null) {
+					first = task;
+				}
+			}
+		}
+		return first;
+	}
+
+	@Override
+	public Object process(final String serviceName, final Instance instance) {
+		processedCount.increment();
+		final ExecutionPlan.Node root = solver.getPlan().getRoot(serviceName);
+		try {
+			Object result = pool.invoke(new RecursiveTask<Object>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Object compute() {
+					return execute(root, null, Collections.singleton(instance), null);
+				}
+			});
+			return Unknown.ifMissing(result, instance.getDeadline());
+		} catch (RuntimeException x) {
+			LOGGER.fatal("task execution error", x);
+		}
+		return null;
+	}
+
+	/**
+	 * Submits the request to the pool. Workers are not interrupted when the
+	 * future is cancelled: a service that is running finishes (unless it
+	 * watches the deadline of the request, which is cancelled too), but no
+	 * task of the request starts once the future is cancelled, and the
+	 * remaining children of a node are abandoned when the running child
+	 * returns.
+	 */
+	@Override
+	public CompletableFuture<Object> processAsync(final String serviceName, final Instance instance) {
+		processedCount.increment();
+		final ExecutionPlan.Node root = solver.getPlan().getRoot(serviceName);
+		final TaskFuture future = new TaskFuture(instance.getDeadline());
+		future.attach(pool.submit(new RecursiveTask<Object>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Object compute() {
+				try {
+					Object result = execute(root, null, Collections.singleton(instance), future);
+					future.complete(Unknown.ifMissing(result, instance.getDeadline()));
+				} catch (RuntimeException x) {
+					future.completeExceptionally(x);
+				}
+				return null;
+			}
+		}));
+		return future;
+	}
+
+	@Override
+	public Metrics.Group getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void report(Reporter reporter) {
+		reporter.report(getClass().getSimpleName(), "processedCount = " + processedCount.get());
+		reporter.report(getClass().getSimpleName(), "taskCount = " + taskCount.get());
+		reporter.report(getClass().getSimpleName(), "cancelledCount = " + cancelledCount.get());
+		reporter.report(getClass().getSimpleName(), "parallelism = " + pool.getParallelism());
+		reporter.report(getClass().getSimpleName(), "stealCount = " + pool.getStealCount());
+	}
+
+	@Override
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	@SuppressWarnings("serial")
+	private class Task extends RecursiveTask<Object> {
+
+		private final ExecutionPlan.Node node;
+
+		private final Instance instance;
+
+		private final TaskFuture request;
+
+		/**
+		 * Whether the forking worker has already taken (or given up on) the
+		 * result of this task. Only accessed by the forking worker.
+		 */
+		private boolean consumed = false;
+
+		Task(final ExecutionPlan.Node node, final Instance instance, final TaskFuture request) {
+			this.node = node;
+			this.instance = instance;
+			this.request = request;
+		}
+
+		@Override
+		protected Object compute() {
+			Object result = null;
+			if ((request != null) && request.isCancelled()) {
+				return result;
+			}
+			if (!node.hasChildren()) {
+				processLeaf();
+				return node.allChildrenDone(instance, result);
+			}
+			Set<Instance> subinstances = node.processRequest(instance);
+			if ((subinstances != null) && (subinstances.size() > 0)) {
+				result = execute(node, instance, subinstances, request);
+			} else {
+				result = node.allChildrenDone(instance, result);
+			}
+			return result;
+		}
+
+		/**
+		 * Lets the service of a leaf node process the instance, telling the
+		 * pool that the worker may block.
+		 */
+		private void processLeaf() {
+			try {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					private boolean done = false;
+
+					@Override
+					public boolean block() {
+						node.processRequest(instance);
+						done = true;
+						return true;
+					}
+
+					@Override
+					public boolean isReleasable() {
+						return done;
+					}
+				});
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
@@ -1,75 +1,370 @@
 package za.ac.sun.cs.green.taskmanager;
 
 import org.apache.logging.log4j.Logger;
+import za.ac.sun.cs.green.Deadline;
+import za.ac.sun.cs.green.ExecutionPlan;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
+import za.ac.sun.cs.green.Unknown;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+/**
+ * A task manager that runs every (service, instance) pair as a separate task
+ * on a thread pool.
+ * <p>
+ * Admission control is configured with the following properties (all limits
+ * are disabled when zero, which is the default):
+ * <ul>
+ * <li>{@value #MAX_REQUESTS_PROPERTY}: the maximum number of root requests
+ * that are processed concurrently;</li>
+ * <li>{@value #QUEUE_PROPERTY}: the maximum number of root requests that wait
+ * for admission; further requests are rejected;</li>
+ * <li>{@value #MAX_TASKS_PROPERTY}: the maximum number of tasks that run on
+ * the pool concurrently; when this limit is reached, tasks are run by the
+ * thread that spawns them, which slows down the spawning request instead of
+ * growing the pool;</li>
+ * <li>{@value #POLICY_PROPERTY}: either {@code block} (the default), in which
+ * case callers wait for admission, or {@code reject}, in which case requests
+ * that cannot be admitted immediately are rejected.</li>
+ * </ul>
+ * Rejected requests fail with a {@link RejectedExecutionException}. A request
+ * whose deadline is done while it waits for admission yields
+ * {@link Unknown#TIMEOUT} (or {@link Unknown#CANCELLED}).
+ */
 public class ParallelTaskManager implements TaskManager {
 
+	/**
+	 * The property that limits the number of concurrent root requests.
+	 */
+	public static final String MAX_REQUESTS_PROPERTY = "green.taskmanager.maxrequests";
+
+	/**
+	 * The property that limits the number of concurrent tasks.
+	 */
+	public static final String MAX_TASKS_PROPERTY = "green.taskmanager.maxtasks";
+
+	/**
+	 * The property that limits the number of requests waiting for admission.
+	 */
+	public static final String QUEUE_PROPERTY = "green.taskmanager.queue";
+
+	/**
+	 * The property that selects what happens to requests that cannot be
+	 * admitted: {@code block} or {@code reject}.
+	 */
+	public static final String POLICY_PROPERTY = "green.taskmanager.policy";
+
 	private final Green solver;
 
 	private final Logger LOGGER;
 
 	private final ExecutorService executor;
 
-	private int processedCount = 0;
+	/**
+	 * Interval at which a waiting thread checks the deadline of its request.
+	 */
+	private static final long POLL_MILLIS = 50;
+
+	/**
+	 * Permits for root requests, or {@code null} if they are not limited.
+	 */
+	private final Semaphore requestPermits;
+
+	/**
+	 * Permits for tasks on the pool, or {@code null} if they are not limited.
+	 */
+	private final Semaphore taskPermits;
+
+	/**
+	 * Maximum number of requests waiting for admission, or zero for no limit.
+	 */
+	private final int queueCapacity;
+
+	/**
+	 * Whether requests that cannot be admitted immediately are rejected.
+	 */
+	private final boolean rejecting;
+
+	/**
+	 * The counters of this task manager.
+	 */
+	private final Metrics.Group metrics;
+
+	private final Metrics.Counter processedCount;
+
+	private final Metrics.Counter threadsCreated;
+
+	private final AtomicInteger maxSimultaneousThreads = new AtomicInteger();
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
 
-	private int threadsCreated = 0;
+	private final Metrics.Counter waitCount;
 
-	private int maxSimultaneousThreads = 0;
+	private final Metrics.Counter waitTime;
+
+	private final AtomicLong maxWaitTime = new AtomicLong();
+
+	private final Metrics.Counter rejectedCount;
+
+	private final Metrics.Counter inlineTaskCount;
 
 	public ParallelTaskManager(final Green solver) {
+		this(solver, Executors.newCachedThreadPool());
+	}
+
+	public ParallelTaskManager(final Green solver, final Properties properties) {
+		this(solver, Executors.newCachedThreadPool(), properties);
+	}
+
+	/**
+	 * Constructs a parallel task manager that submits one task per (service,
+	 * instance) pair to the given executor. Since a task waits for the tasks
+	 * of its sub-services, the executor must not bound the number of threads.
+	 *
+	 * @param solver   the Green solver this task manager belongs to
+	 * @param executor the executor that runs the tasks
+	 */
+	protected ParallelTaskManager(final Green solver, final ExecutorService executor) {
+		this(solver, executor, new Properties());
+	}
+
+	/**
+	 * Constructs a parallel task manager with the admission limits given by
+	 * the properties.
+	 *
+	 * @param solver     the Green solver this task manager belongs to
+	 * @param executor   the executor that runs the tasks
+	 * @param properties the configuration properties
+	 */
+	protected ParallelTaskManager(final Green solver, final ExecutorService executor, final Properties properties) {
 		this.solver = solver;
 		LOGGER = solver.getLogger();
-		executor = Executors.newCachedThreadPool();
+		this.executor = executor;
+		metrics = solver.getMetrics().register(getClass().getSimpleName());
+		processedCount = metrics.counter("processedCount");
+		threadsCreated = metrics.counter("threadsCreated");
+		waitCount = metrics.counter("waitCount");
+		waitTime = metrics.counter("waitTime");
+		rejectedCount = metrics.counter("rejectedCount");
+		inlineTaskCount = metrics.counter("inlineTaskCount");
+		metrics.gauge("maxSimultaneousThreads", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return maxSimultaneousThreads.get();
+			}
+		});
+		metrics.gauge("queueDepth", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return queueDepth.get();
+			}
+		});
+		metrics.gauge("maxQueueDepth", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return maxQueueDepth.get();
+			}
+		});
+		metrics.gauge("maxWaitTime", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return maxWaitTime.get();
+			}
+		});
+		int maxRequests = Configuration.getIntegerProperty(properties, MAX_REQUESTS_PROPERTY, 0);
+		int maxTasks = Configuration.getIntegerProperty(properties, MAX_TASKS_PROPERTY, 0);
+		requestPermits = (maxRequests > 0) ? new Semaphore(maxRequests, true) : null;
+		taskPermits = (maxTasks > 0) ? new Semaphore(maxTasks) : null;
+		queueCapacity = Math.max(0, Configuration.getIntegerProperty(properties, QUEUE_PROPERTY, 0));
+		rejecting = "reject".equals(properties.getProperty(POLICY_PROPERTY, "block"));
 	}
 
-	public Object execute(Service parent, Instance parentInstance, Set<Service> services, Set<Instance> instances) throws InterruptedException, ExecutionException {
-		CompletionService<Object> cs = new ExecutorCompletionService<Object>(executor);
-		int n = services.size() * instances.size();
-		if (n > maxSimultaneousThreads) {
-			maxSimultaneousThreads = n;
+	/**
+	 * Applies the services of the children of the given plan node to the
+	 * instances concurrently and combines the results as they arrive, until
+	 * one of them produces a result.
+	 *
+	 * @param parent         the plan node whose children are applied
+	 * @param parentInstance the instance of the parent, or {@code null} for
+	 *                       the root of a named service
+	 * @param instances      the instances to process
+	 * @return the combined result
+	 * @throws InterruptedException if the calling thread is interrupted
+	 * @throws ExecutionException   if a task fails
+	 */
+	public Object execute(ExecutionPlan.Node parent, Instance parentInstance, Set<Instance> instances) throws InterruptedException, ExecutionException {
+		BlockingQueue<Task> done = new LinkedBlockingQueue<Task>();
+		Service parentService = parent.getService();
+		int n = parent.getChildCount() * instances.size();
+		int max = maxSimultaneousThreads.get();
+		while ((n > max) && !maxSimultaneousThreads.compareAndSet(max, n)) {
+			max = maxSimultaneousThreads.get();
 		}
-		List<Future<Object>> futures = new ArrayList<Future<Object>>(n);
+		List<Task> tasks = new ArrayList<Task>(n);
+		Deadline deadline = instances.isEmpty() ? null : instances.iterator().next().getDeadline();
 		Object result = null;
 		try {
-			for (Service service : services) {
+			for (int i = 0, c = parent.getChildCount(); i < c; i++) {
+				ExecutionPlan.Node node = parent.getChild(i);
 				for (Instance instance : instances) {
-					futures.add(cs.submit(new Task(parent, parentInstance, service, instance)));
-					threadsCreated++;
+					Task task = new Task(node, instance, done);
+					tasks.add(task);
+					if ((taskPermits == null) || taskPermits.tryAcquire()) {
+						task.permit = (taskPermits != null);
+						executor.execute(task);
+						threadsCreated.increment();
+					} else {
+						// The pool is saturated: run the task on this thread
+						inlineTaskCount.increment();
+						task.run();
+					}
 				}
 			}
 			while ((result == null) && (n-- > 0)) {
-				result = cs.take().get();
+				// Results are combined by this thread only, so that the parent
+				// never sees concurrent calls to childDone
+				Task task = take(done, deadline);
+				if (task == null) {
+					// The deadline is done: the outstanding tasks are cancelled
+					// below and the parent sees an incomplete result
+					break;
+				}
+				result = task.get();
+				if (parentService != null) {
+					result = parent.childDone(parentInstance, task.node.getService(), task.instance, result);
+				}
 			}
 		} finally {
-			for (Future<Object> f : futures) {
-				f.cancel(true);
+			for (Task task : tasks) {
+				task.cancel(true);
 			}
 		}
-		if (parent != null) {
+		if (parentService != null) {
 			result = parent.allChildrenDone(parentInstance, result);
-			if (result == null)
+			if ((result == null) && ((deadline == null) || !deadline.isDone()))
 				LOGGER.fatal("Should never happen! Got AllChildrenDone in PTM with NULL result");
 		}
 		return result;
 	}
 
+	/**
+	 * Waits for the next completed task. Without a deadline this waits
+	 * indefinitely; otherwise it returns {@code null} once the deadline has
+	 * expired or has been cancelled.
+	 */
+	private static Task take(BlockingQueue<Task> done, Deadline deadline) throws InterruptedException {
+		if (deadline == null) {
+			return done.take();
+		}
+		while (!deadline.isDone()) {
+			long wait = Math.min(POLL_MILLIS, Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)));
+			Task task = done.poll(wait, TimeUnit.MILLISECONDS);
+			if (task != null) {
+				return task;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Admits a root request, waiting if necessary and allowed.
+	 *
+	 * @param deadline the deadline of the request, or {@code null}
+	 * @return {@code true} if the request was admitted, or {@code false} if its
+	 * deadline was done before it could be admitted
+	 * @throws RejectedExecutionException if the request is rejected
+	 * @throws InterruptedException       if the caller is interrupted while
+	 *                                    waiting
+	 */
+	private boolean admit(Deadline deadline) throws InterruptedException {
+		if ((requestPermits == null) || requestPermits.tryAcquire()) {
+			return true;
+		}
+		if (rejecting) {
+			rejectedCount.increment();
+			throw new RejectedExecutionException("too many concurrent requests");
+		}
+		int depth = queueDepth.incrementAndGet();
+		try {
+			if ((queueCapacity > 0) && (depth > queueCapacity)) {
+				rejectedCount.increment();
+				throw new RejectedExecutionException("admission queue is full");
+			}
+			int max = maxQueueDepth.get();
+			while ((depth > max) && !maxQueueDepth.compareAndSet(max, depth)) {
+				max = maxQueueDepth.get();
+			}
+			long start = System.nanoTime();
+			boolean admitted = false;
+			if (deadline == null) {
+				requestPermits.acquire();
+				admitted = true;
+			} else {
+				while (!admitted && !deadline.isDone()) {
+					long wait = Math.min(POLL_MILLIS, Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)));
+					admitted = requestPermits.tryAcquire(wait, TimeUnit.MILLISECONDS);
+				}
+			}
+			long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			waitCount.increment();
+			waitTime.add(waited);
+			long maxWait = maxWaitTime.get();
+			while ((waited > maxWait) && !maxWaitTime.compareAndSet(maxWait, waited)) {
+				maxWait = maxWaitTime.get();
+			}
+			return admitted;
+		} finally {
+			queueDepth.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Processes an admitted root request. The caller releases its permit.
+	 */
+	private Object processAdmitted(ExecutionPlan.Node root, Instance instance) throws InterruptedException, ExecutionException {
+		Object result = execute(root, null, Collections.singleton(instance));
+		return Unknown.ifMissing(result, instance.getDeadline());
+	}
+
+	/**
+	 * Returns the permit of an admitted root request.
+	 */
+	private void release() {
+		if (requestPermits != null) {
+			requestPermits.release();
+		}
+	}
+
 	@Override
 	public Object process(final String serviceName, final Instance instance) {
-		processedCount++;
+		processedCount.increment();
 		LOGGER.info("processing serviceName=\"" + serviceName + "\"");
-		final Set<Service> services = solver.getService(serviceName);
+		final ExecutionPlan.Node root = solver.getPlan().getRoot(serviceName);
 		try {
-			return execute(null, null, services, Collections.singleton(instance));
+			if (!admit(instance.getDeadline())) {
+				return Unknown.ifMissing(null, instance.getDeadline());
+			}
+			try {
+				return processAdmitted(root, instance);
+			} finally {
+				release();
+			}
 		} catch (InterruptedException x) {
 			LOGGER.fatal("interrupted", x);
 		} catch (ExecutionException x) {
@@ -78,11 +373,116 @@ public class ParallelTaskManager implements TaskManager {
 		return null;
 	}
 
+	/**
+	 * Processes the instance on a worker thread of this task manager. The
+	 * future is completed by the worker that collects the root result, and
+	 * cancelling the future interrupts that worker, which in turn cancels the
+	 * tasks of all sub-services. Admission takes place on the calling thread,
+	 * so that callers that issue requests faster than they are processed are
+	 * slowed down (or see their futures fail with a
+	 * {@link RejectedExecutionException}).
+	 */
+	@Override
+	public CompletableFuture<Object> processAsync(final String serviceName, final Instance instance) {
+		processedCount.increment();
+		LOGGER.info("processing serviceName=\"" + serviceName + "\" asynchronously");
+		final ExecutionPlan.Node root = solver.getPlan().getRoot(serviceName);
+		final TaskFuture future = new TaskFuture(instance.getDeadline());
+		try {
+			if (!admit(instance.getDeadline())) {
+				future.complete(Unknown.ifMissing(null, instance.getDeadline()));
+				return future;
+			}
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			return future;
+		} catch (RejectedExecutionException x) {
+			future.completeExceptionally(x);
+			return future;
+		}
+		RootTask task = new RootTask(root, instance) {
+			@Override
+			protected void set(Object result) {
+				super.set(result);
+				future.complete(result);
+			}
+
+			@Override
+			protected void setException(Throwable x) {
+				super.setException(x);
+				if (x instanceof InterruptedException) {
+					future.cancel(true);
+				} else if (x instanceof ExecutionException) {
+					LOGGER.fatal("thread execution error", x);
+					future.completeExceptionally(x.getCause());
+				} else {
+					future.completeExceptionally(x);
+				}
+			}
+		};
+		future.attach(task);
+		executor.execute(task);
+		return future;
+	}
+
+	/**
+	 * Processes the instances concurrently, one root task per instance. Each
+	 * instance is admitted separately, so that a large batch does not exceed
+	 * the request limit.
+	 */
+	@Override
+	public List<Object> processAll(final String serviceName, final List<Instance> instances) {
+		processedCount.add(instances.size());
+		LOGGER.info("processing serviceName=\"" + serviceName + "\" for " + instances.size() + " instances");
+		final ExecutionPlan.Node root = solver.getPlan().getRoot(serviceName);
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(instances.size());
+		List<Object> results = new ArrayList<Object>(instances.size());
+		try {
+			for (final Instance instance : instances) {
+				if (!admit(instance.getDeadline())) {
+					futures.add(CompletableFuture.completedFuture(Unknown.ifMissing(null, instance.getDeadline())));
+					continue;
+				}
+				RootTask task = new RootTask(root, instance);
+				futures.add(task);
+				executor.execute(task);
+			}
+			for (Future<Object> f : futures) {
+				results.add(f.get());
+			}
+		} catch (InterruptedException x) {
+			LOGGER.fatal("interrupted", x);
+		} catch (ExecutionException x) {
+			LOGGER.fatal("thread execution error", x);
+		} finally {
+			for (Future<Object> f : futures) {
+				f.cancel(true);
+			}
+		}
+		while (results.size() < instances.size()) {
+			results.add(null);
+		}
+		return results;
+	}
+
+	@Override
+	public Metrics.Group getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "processedCount = " + processedCount);
-		reporter.report(getClass().getSimpleName(), "threadsCreated = " + threadsCreated);
-		reporter.report(getClass().getSimpleName(), "maxSimultaneousThreads = " + maxSimultaneousThreads);
+		reporter.report(getClass().getSimpleName(), "processedCount = " + processedCount.get());
+		reporter.report(getClass().getSimpleName(), "threadsCreated = " + threadsCreated.get());
+		reporter.report(getClass().getSimpleName(), "maxSimultaneousThreads = " + maxSimultaneousThreads.get());
+		reporter.report(getClass().getSimpleName(), "queueDepth = " + queueDepth.get());
+		reporter.report(getClass().getSimpleName(), "maxQueueDepth = " + maxQueueDepth.get());
+		reporter.report(getClass().getSimpleName(), "waitCount = " + waitCount.get());
+		reporter.report(getClass().getSimpleName(), "waitTime = " + waitTime.get());
+		reporter.report(getClass().getSimpleName(), "maxWaitTime = " + maxWaitTime.get());
+		reporter.report(getClass().getSimpleName(), "rejectedCount = " + rejectedCount.get());
+		reporter.report(getClass().getSimpleName(), "inlineTaskCount = " + inlineTaskCount.get());
 	}
 
 	@Override
@@ -90,41 +490,86 @@ public class ParallelTaskManager implements TaskManager {
 		executor.shutdown();
 	}
 
-	private class Task implements Callable<Object> {
+	/**
+	 * An admitted root request. The permit of the request is returned when
+	 * its processing ends, or, if the task is cancelled before it starts,
+	 * when it is cancelled.
+	 */
+	private class RootTask extends FutureTask<Object> {
 
-		private final Service parent;
+		private final AtomicBoolean started;
 
-		private final Instance parentInstance;
+		RootTask(final ExecutionPlan.Node root, final Instance instance) {
+			this(root, instance, new AtomicBoolean());
+		}
 
-		private final Service service;
+		private RootTask(final ExecutionPlan.Node root, final Instance instance, final AtomicBoolean started) {
+			super(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					if (!started.compareAndSet(false, true)) {
+						// Cancelled just before it started; the permit is returned
+						return null;
+					}
+					try {
+						return processAdmitted(root, instance);
+					} finally {
+						release();
+					}
+				}
+			});
+			this.started = started;
+		}
+
+		@Override
+		protected void done() {
+			if (started.compareAndSet(false, true)) {
+				release();
+			}
+		}
+
+	}
+
+	/**
+	 * A (service, instance) pair. When the task completes or is cancelled it
+	 * returns its task permit (if it holds one) and adds itself to the queue
+	 * of completed tasks of its parent.
+	 */
+	private class Task extends FutureTask<Object> {
+
+		private final ExecutionPlan.Node node;
 
 		private final Instance instance;
 
-		public Task(final Service parent, final Instance parentInstance, final Service service, final Instance instance) {
-			this.parent = parent;
-			this.parentInstance = parentInstance;
-			this.service = service;
+		private final BlockingQueue<Task> done;
+
+		private boolean permit = false;
+
+		public Task(final ExecutionPlan.Node node, final Instance instance, final BlockingQueue<Task> done) {
+			super(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					Object result = null;
+					Set<Instance> subinstances = node.processRequest(instance);
+					if ((subinstances != null) && (subinstances.size() > 0) && node.hasChildren()) {
+						result = execute(node, instance, subinstances);
+					} else {
+						result = node.allChildrenDone(instance, result);
+					}
+					return result;
+				}
+			});
+			this.node = node;
 			this.instance = instance;
+			this.done = done;
 		}
 
 		@Override
-		public Object call() throws Exception {
-			Object result = null;
-			Set<Instance> subinstances = service.processRequest(instance);
-			if ((subinstances != null) && (subinstances.size() > 0)) {
-				Set<Service> subservices = solver.getService(service);
-				if ((subservices != null) && (subservices.size() > 0)) {
-					result = execute(service, instance, subservices, subinstances);
-				} else {
-					result = service.allChildrenDone(instance, result);
-				}
-			} else {
-				result = service.allChildrenDone(instance, result);
-			}
-			if (parent != null) {
-				result = parent.childDone(parentInstance, service, instance, result);
+		protected void done() {
+			if (permit) {
+				taskPermits.release();
 			}
-			return result;
+			done.add(this);
 		}
 
 	}
@@ -1,13 +1,20 @@
 package za.ac.sun.cs.green.taskmanager;
 
 import org.apache.logging.log4j.Logger;
+import za.ac.sun.cs.green.Deadline;
+import za.ac.sun.cs.green.ExecutionPlan;
 import za.ac.sun.cs.green.Green;
 import za.ac.sun.cs.green.Instance;
 import za.ac.sun.cs.green.Service;
+import za.ac.sun.cs.green.Unknown;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SerialTaskManager implements TaskManager {
 
@@ -15,43 +22,73 @@ public class SerialTaskManager implements TaskManager {
 
 	private final Logger LOGGER;
 
-	private int processedCount = 0;
+	/**
+	 * The counters of this task manager.
+	 */
+	private final Metrics.Group metrics;
+
+	private final Metrics.Counter processedCount;
+
+	/**
+	 * Single worker thread for asynchronous requests, created on demand.
+	 */
+	private ExecutorService asyncExecutor = null;
 
 	public SerialTaskManager(final Green solver) {
 		this.solver = solver;
 		LOGGER = solver.getLogger();
+		metrics = solver.getMetrics().register(getClass().getSimpleName());
+		processedCount = metrics.counter("processedCount");
 	}
 
-	public Object execute(Service parent, Instance parentInstance, Set<Service> services, Set<Instance> instances) {
+	/**
+	 * Applies the services of the children of the given plan node to the
+	 * instances, one pair at a time, until one of them produces a result.
+	 * No further pairs are processed once the deadline of the request is done
+	 * or the current thread is interrupted (which is how cancelled
+	 * asynchronous requests are stopped).
+	 *
+	 * @param parent         the plan node whose children are applied
+	 * @param parentInstance the instance of the parent, or {@code null} for
+	 *                       the root of a named service
+	 * @param instances      the instances to process
+	 * @return the combined result
+	 */
+	public Object execute(ExecutionPlan.Node parent, Instance parentInstance, Set<Instance> instances) {
 		Object result = null;
-		for (Service service : services) {
+		boolean stopped = false;
+		for (int i = 0, n = parent.getChildCount(); (i < n) && !stopped; i++) {
+			ExecutionPlan.Node node = parent.getChild(i);
 			for (Instance instance : instances) {
-				result = execute0(parent, parentInstance, service, instance);
+				result = execute0(parent, parentInstance, node, instance);
 				if (result != null) {
 					break;
 				}
+				Deadline deadline = instance.getDeadline();
+				if (((deadline != null) && deadline.isDone()) || Thread.currentThread().isInterrupted()) {
+					stopped = true;
+					break;
+				}
 			}
 		}
-		if (parent != null) {
+		Service parentService = parent.getService();
+		if (parentService != null) {
 			result = parent.allChildrenDone(parentInstance, result);
 		}
 		return result;
 	}
 
-	public Object execute0(Service parent, Instance parentInstance, Service service, Instance instance) {
+	public Object execute0(ExecutionPlan.Node parent, Instance parentInstance, ExecutionPlan.Node node, Instance instance) {
 		Object result = null;
-		Set<Instance> subinstances = service.processRequest(instance);
-		if ((subinstances != null) && (subinstances.size() > 0)) {
-			Set<Service> subservices = solver.getService(service);
-			if ((subservices != null) && (subservices.size() > 0)) {
-				result = execute(service, instance, subservices, subinstances);
-			} else {
-				result = service.allChildrenDone(instance, result);
-			}
+		Service service = node.getService();
+		Set<Instance> subinstances = node.processRequest(instance);
+		if ((subinstances != null) && (subinstances.size() > 0) && node.hasChildren()) {
+			result = execute(node, instance, subinstances);
 		} else {
-			result = service.allChildrenDone(instance, result);
+			result = node.allChildrenDone(instance, result);
 		}
-		if (parent != null) {
+		Service parentService = parent.getService();
+		if (parentService != null) {
 			result = parent.childDone(parentInstance, service, instance, result);
 		}
 		return result;
@@ -60,18 +97,56 @@ public class SerialTaskManager implements TaskManager {
 	@Override
 	public Object process(final String serviceName, final Instance instance) {
 //		LOGGER.info("processing serviceName=\"" + serviceName + "\"");
-		processedCount++;
-		final Set<Service> services = solver.getService(serviceName);
-		return execute(null, null, services, Collections.singleton(instance));
+		processedCount.increment();
+		ExecutionPlan.Node root = solver.getPlan().getRoot(serviceName);
+		Object result = execute(root, null, Collections.singleton(instance));
+		return Unknown.ifMissing(result, instance.getDeadline());
+	}
+
+	/**
+	 * Processes the instance on a single background thread. Asynchronous
+	 * requests are therefore still handled one at a time, in the order in
+	 * which they were issued. Cancelling the future interrupts the worker,
+	 * and no further services are applied to the instance.
+	 */
+	@Override
+	public CompletableFuture<Object> processAsync(final String serviceName, final Instance instance) {
+		final TaskFuture future = new TaskFuture(instance.getDeadline());
+		future.attach(getAsyncExecutor().submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(process(serviceName, instance));
+				} catch (RuntimeException x) {
+					future.completeExceptionally(x);
+				}
+			}
+		}));
+		return future;
+	}
+
+	private synchronized ExecutorService getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			asyncExecutor = Executors.newSingleThreadExecutor();
+		}
+		return asyncExecutor;
+	}
+
+	@Override
+	public Metrics.Group getMetrics() {
+		return metrics;
 	}
 
 	@Override
 	public void report(Reporter reporter) {
-		reporter.report(getClass().getSimpleName(), "processedCount = " + processedCount);
+		reporter.report(getClass().getSimpleName(), "processedCount = " + processedCount.get());
 	}
 
 	@Override
-	public void shutdown() {
+	public synchronized void shutdown() {
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdownNow();
+		}
 	}
 
 }
@@ -0,0 +1,51 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import za.ac.sun.cs.green.Deadline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * The future returned by {@link TaskManager#processAsync(String, za.ac.sun.cs.green.Instance)}.
+ * It is completed by the worker that finishes the request, and cancelling it
+ * cancels (and interrupts) the task that computes the result. If the request
+ * has a {@link Deadline}, the deadline is cancelled as well, so that services
+ * can abort solvers that ignore interrupts.
+ */
+class TaskFuture extends CompletableFuture<Object> {
+
+	private final Deadline deadline;
+
+	private volatile Future<?> task = null;
+
+	TaskFuture(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Attaches the task that computes the result. If the future has already
+	 * been cancelled, the task is cancelled immediately.
+	 *
+	 * @param task the task that computes the result
+	 */
+	void attach(Future<?> task) {
+		this.task = task;
+		if (isCancelled()) {
+			task.cancel(true);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled && (deadline != null)) {
+			deadline.cancel();
+		}
+		Future<?> t = task;
+		if (cancelled && (t != null)) {
+			t.cancel(true);
+		}
+		return cancelled;
+	}
+
+}
@@ -1,14 +1,68 @@
 package za.ac.sun.cs.green.taskmanager;
 
 import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.util.Metrics;
 import za.ac.sun.cs.green.util.Reporter;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 public interface TaskManager {
 
 	Object process(String serviceName, Instance instance);
 
+	/**
+	 * Processes a list of instances for the same service and returns their
+	 * results in the same order. By default the instances are processed one
+	 * after the other; task managers that can do so may process them
+	 * concurrently.
+	 *
+	 * @param serviceName the name of the service
+	 * @param instances   the problem instances
+	 * @return the results, in the order of the instances
+	 */
+	default List<Object> processAll(String serviceName, List<Instance> instances) {
+		List<Object> results = new ArrayList<Object>(instances.size());
+		for (Instance instance : instances) {
+			results.add(process(serviceName, instance));
+		}
+		return results;
+	}
+
+	/**
+	 * Processes an instance without blocking the caller. The returned future
+	 * is completed with the result of the request, and cancelling it cancels
+	 * the outstanding tasks of the request. By default the request is
+	 * processed synchronously on the common fork-join pool; task managers
+	 * override this to use their own workers.
+	 *
+	 * @param serviceName the name of the service
+	 * @param instance    the problem instance
+	 * @return a future for the result of the request
+	 */
+	default CompletableFuture<Object> processAsync(final String serviceName, final Instance instance) {
+		return CompletableFuture.supplyAsync(new Supplier<Object>() {
+			@Override
+			public Object get() {
+				return process(serviceName, instance);
+			}
+		});
+	}
+
 	void report(Reporter reporter);
 
+	/**
+	 * Returns the metrics group of this task manager, so that it can be
+	 * removed from the registry when the task manager is replaced.
+	 *
+	 * @return the metrics group, or {@code null} if there is none
+	 */
+	default Metrics.Group getMetrics() {
+		return null;
+	}
+
 	void shutdown();
 
 }
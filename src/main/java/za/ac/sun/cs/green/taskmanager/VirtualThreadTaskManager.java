@@ -0,0 +1,75 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A task manager that starts one virtual thread per (service, instance) task.
+ * It is meant for pipelines where most of the time is spent waiting on
+ * external processes or JNI calls: a blocked virtual thread does not occupy a
+ * carrier thread, so thousands of in-flight solver calls remain cheap.
+ * <p>
+ * The first-result and {@code allChildrenDone} semantics are exactly those of
+ * the {@link ParallelTaskManager}. Virtual threads are only available from
+ * Java 21 onwards, while Green is compiled for Java 8. The executor is
+ * therefore looked up reflectively; on older runtimes the task manager logs a
+ * warning and falls back to the cached thread pool of its superclass.
+ */
+public class VirtualThreadTaskManager extends ParallelTaskManager {
+
+	private final boolean virtual;
+
+	public VirtualThreadTaskManager(final Green solver) {
+		this(solver, new Properties());
+	}
+
+	public VirtualThreadTaskManager(final Green solver, final Properties properties) {
+		this(solver, newVirtualThreadPerTaskExecutor(), properties);
+	}
+
+	private VirtualThreadTaskManager(final Green solver, final ExecutorService executor, final Properties properties) {
+		super(solver, (executor == null) ? Executors.newCachedThreadPool() : executor, properties);
+		virtual = (executor != null);
+		if (!virtual) {
+			solver.getLogger().warn("virtual threads are not supported by this runtime; using platform threads");
+		}
+	}
+
+	/**
+	 * Returns a new virtual-thread-per-task executor, or {@code null} if the
+	 * runtime does not support virtual threads.
+	 *
+	 * @return the executor or {@code null}
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException x) {
+			return null;
+		} catch (UnsupportedOperationException x) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether tasks are run on virtual threads.
+	 *
+	 * @return {@code true} if and only if tasks run on virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	@Override
+	public void report(Reporter reporter) {
+		super.report(reporter);
+		reporter.report(getClass().getSimpleName(), "virtualThreads = " + virtual);
+	}
+
+}
@@ -2,10 +2,14 @@ package za.ac.sun.cs.green.util;
 
 import org.apache.logging.log4j.Logger;
 import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Recorder;
 import za.ac.sun.cs.green.Service;
+import za.ac.sun.cs.green.expr.ExpressionFactory;
 import za.ac.sun.cs.green.store.Store;
 import za.ac.sun.cs.green.taskmanager.TaskManager;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashSet;
@@ -21,6 +25,94 @@ import java.util.Set;
  */
 public class Configuration {
 
+	/**
+	 * Whether {@link #configure()} registers the JMX MBeans of the solver
+	 * (see {@link Green#registerMBeans()}). The default is {@code true}.
+	 */
+	public static final String JMX_PROPERTY = "green.jmx";
+
+	/**
+	 * One in how many requests is traced (see
+	 * {@link Green#setTraceSampling(int)}). The default is 0, which turns
+	 * tracing off.
+	 */
+	public static final String TRACE_SAMPLING_PROPERTY = "green.trace.sampling";
+
+	/**
+	 * The port of the OpenMetrics endpoint of the solver (see
+	 * {@link Green#startMetricsEndpoint(int)}); 0 picks any free port. The
+	 * endpoint is not started if the property is absent.
+	 */
+	public static final String METRICS_PORT_PROPERTY = "green.metrics.port";
+
+	/**
+	 * The directory of the workload log (see {@link Recorder}). Requests are
+	 * only recorded if the property is present.
+	 */
+	public static final String RECORDER_DIRECTORY_PROPERTY = "green.recorder.directory";
+
+	/**
+	 * The prefix of the names of the workload log files. The default is
+	 * {@code green}.
+	 */
+	public static final String RECORDER_PREFIX_PROPERTY = "green.recorder.prefix";
+
+	/**
+	 * The number of records that the ring buffer of the recorder holds. The
+	 * default is 4096.
+	 */
+	public static final String RECORDER_BUFFER_PROPERTY = "green.recorder.buffer";
+
+	/**
+	 * The size in bytes at which a workload log file is rotated. The default
+	 * is 64 MiB.
+	 */
+	public static final String RECORDER_FILE_SIZE_PROPERTY = "green.recorder.file.size";
+
+	/**
+	 * The number of workload log files to keep, or 0 to keep all. The default
+	 * is 8.
+	 */
+	public static final String RECORDER_FILES_PROPERTY = "green.recorder.files";
+
+	/**
+	 * The estimated size, in bytes, above which the in-memory stores evict
+	 * their least recently used entries (see {@link MemoryAccount}). The
+	 * default is 0, which means no limit.
+	 */
+	public static final String STORE_MEMORY_LIMIT_PROPERTY = "green.store.memory.limit";
+
+	/**
+	 * The estimated size, in bytes, above which each repository of the
+	 * Grulia services evicts its oldest entries. The default is 0, which
+	 * means no limit.
+	 */
+	public static final String GRULIA_MEMORY_LIMIT_PROPERTY = "green.grulia.memory.limit";
+
+	/**
+	 * The number of queries whose solver time is tracked (see
+	 * {@link SlowQueries}), or 0 to track none. The default is 32.
+	 */
+	public static final String SLOW_QUERIES_TOP_PROPERTY = "green.slowqueries.top";
+
+	/**
+	 * The time, in milliseconds, from which a solver call is logged as a
+	 * slow query. The default is 0, which logs no queries.
+	 */
+	public static final String SLOW_QUERIES_THRESHOLD_PROPERTY = "green.slowqueries.threshold";
+
+	/**
+	 * The file to which slow queries are appended as SMT-LIB scripts. Slow
+	 * queries are written to the log if the property is absent.
+	 */
+	public static final String SLOW_QUERIES_LOG_PROPERTY = "green.slowqueries.log";
+
+	/**
+	 * Whether the expressions of instances are interned (see
+	 * {@link ExpressionFactory}). The default is {@code false}.
+	 */
+	public static final String EXPRESSION_INTERN_PROPERTY = "green.expression.intern";
+
 	private final Green solver;
 
 	private final Logger LOGGER;
@@ -50,6 +142,12 @@ public class Configuration {
 				solver.setStore(st);
 			}
 		}
+		if (Boolean.parseBoolean(properties.getProperty(EXPRESSION_INTERN_PROPERTY, "false"))) {
+			solver.setExpressionFactory(new ExpressionFactory());
+		}
+		if (properties.getProperty(TRACE_SAMPLING_PROPERTY) != null) {
+			solver.setTraceSampling(getIntegerProperty(properties, TRACE_SAMPLING_PROPERTY, 0));
+		}
 		p = properties.getProperty("green.services");
 		if (p != null) {
 			for (String s : p.split(",")) {
@@ -60,6 +158,32 @@ public class Configuration {
 				}
 			}
 		}
+		// Freeze the service graph for the task managers
+		solver.getPlan();
+		if (Boolean.parseBoolean(properties.getProperty(JMX_PROPERTY, "true"))) {
+			solver.registerMBeans();
+		}
+		p = properties.getProperty(RECORDER_DIRECTORY_PROPERTY);
+		if (p != null) {
+			try {
+				solver.setRecorder(new Recorder(new File(p), properties.getProperty(RECORDER_PREFIX_PROPERTY, "green"),
+						getIntegerProperty(properties, RECORDER_BUFFER_PROPERTY, 4096),
+						getIntegerProperty(properties, RECORDER_FILE_SIZE_PROPERTY, 64 << 20),
+						getIntegerProperty(properties, RECORDER_FILES_PROPERTY, 8)));
+			} catch (IOException x) {
+				LOGGER.fatal("could not create the workload recorder", x);
+			}
+		}
+		SlowQueries slowQueries = solver.getSlowQueries();
+		slowQueries.setCapacity(getIntegerProperty(properties, SLOW_QUERIES_TOP_PROPERTY, SlowQueries.DEFAULT_CAPACITY));
+		slowQueries.setThreshold(getIntegerProperty(properties, SLOW_QUERIES_THRESHOLD_PROPERTY, 0));
+		p = properties.getProperty(SLOW_QUERIES_LOG_PROPERTY);
+		if (p != null) {
+			slowQueries.setLogFile(new File(p));
+		}
+		if (properties.getProperty(METRICS_PORT_PROPERTY) != null) {
+			solver.startMetricsEndpoint(getIntegerProperty(properties, METRICS_PORT_PROPERTY, 0));
+		}
 	}
 
 	private void configure(String serviceName) throws ParseException {
@@ -92,20 +216,30 @@ public class Configuration {
 		return defaultValue;
 	}
 
+	public static long getLongProperty(Properties properties, String key, long defaultValue) {
+		String s = properties.getProperty(key, Long.toString(defaultValue));
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException x) {
+			// Ignore
+		}
+		return defaultValue;
+	}
+
 	private Object createInstance(String objectName) {
 		Class<?> classx = loadClass(objectName);
 		try {
 			Constructor<?> constructor = null;
 			try {
-				constructor = classx.getConstructor(Green.class);
-				return constructor.newInstance(solver);
+				constructor = classx.getConstructor(Green.class,
+						Properties.class);
+				return constructor.newInstance(solver, properties);
 			} catch (NoSuchMethodException x) {
 				// ignore
 			}
 			try {
-				constructor = classx.getConstructor(Green.class,
-						Properties.class);
-				return constructor.newInstance(solver, properties);
+				constructor = classx.getConstructor(Green.class);
+				return constructor.newInstance(solver);
 			} catch (NoSuchMethodException x) {
 				LOGGER.fatal("constructor not found: " + objectName, x);
 			}
@@ -0,0 +1,413 @@
+package za.ac.sun.cs.green.util;
+
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.expr.Visitor;
+import za.ac.sun.cs.green.expr.VisitorException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Java Flight Recorder events for Green. Four event types are defined, all in
+ * the category "Green":
+ * <ul>
+ * <li>{@code za.ac.sun.cs.green.Stage}: one service processing one instance,
+ * emitted by the execution plan for every stage of the pipeline.</li>
+ * <li>{@code za.ac.sun.cs.green.StoreLookup}: a store lookup by a solver
+ * service, with the key and whether it was a hit.</li>
+ * <li>{@code za.ac.sun.cs.green.SolverInvocation}: a call to a decision
+ * procedure, with the solver, the number of variables and conjuncts, and the
+ * verdict.</li>
+ * <li>{@code za.ac.sun.cs.green.ProcessSpawn}: an external solver process,
+ * with its command line.</li>
+ * </ul>
+ * Every event carries the id of its instance and the id of the request (the
+ * source instance) it belongs to, so that the events of one request can be
+ * stitched together in JDK Mission Control. Process spawns do not see their
+ * instance; they carry the instance of the enclosing stage, if stage events
+ * are recorded, and 0 otherwise.
+ * <p>
+ * Green is compiled for Java 8, where the {@code jdk.jfr} API is not part of
+ * the platform. The event types are therefore created at run time with
+ * {@code jdk.jfr.EventFactory} and driven through method handles. On
+ * runtimes without JFR, {@link #isAvailable()} is {@code false} and all events
+ * are dropped. The usage idiom is
+ * <pre>
+ * Object event = Jfr.SOLVER_INVOCATION.begin();
+ * ... the work ...
+ * Jfr.commitSolverInvocation(event, ...);
+ * </pre>
+ * When no recording has enabled the event type, {@link Type#begin()} returns
+ * {@code null} after reading one flag, and the commit methods return at once,
+ * so the cost of the instrumentation is close to zero.
+ */
+public final class Jfr {
+
+	/**
+	 * One dynamically defined event type.
+	 */
+	public static final class Type {
+
+		private final String name;
+
+		/**
+		 * The event factory; it must stay reachable, or the event type is
+		 * unregistered.
+		 */
+		private final Object factory;
+
+		private final MethodHandle newEvent;
+
+		private final MethodHandle enabled;
+
+		private Type(String name, String label, String description, boolean stackTrace, String[] fieldNames,
+				Class<?>[] fieldTypes) {
+			this.name = name;
+			Object f = null;
+			MethodHandle n = null;
+			MethodHandle e = null;
+			if (EVENT_CLASS != null) {
+				try {
+					Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+					Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+					List<Object> annotations = new ArrayList<Object>();
+					annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), name));
+					annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), label));
+					annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Description"), description));
+					annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] { "Green" }));
+					annotations.add(annotation.newInstance(Class.forName("jdk.jfr.StackTrace"), stackTrace));
+					Constructor<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class,
+							String.class);
+					List<Object> fields = new ArrayList<Object>();
+					for (int i = 0; i < fieldNames.length; i++) {
+						fields.add(descriptor.newInstance(fieldTypes[i], fieldNames[i]));
+					}
+					Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+					f = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+					MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+					n = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(EVENT_CLASS)).bindTo(f)
+							.asType(MethodType.methodType(Object.class));
+					Object eventType = factoryClass.getMethod("getEventType").invoke(f);
+					e = lookup.findVirtual(eventType.getClass(), "isEnabled", MethodType.methodType(boolean.class))
+							.bindTo(eventType);
+				} catch (ReflectiveOperationException x) {
+					f = null;
+					n = null;
+					e = null;
+				} catch (LinkageError x) {
+					f = null;
+					n = null;
+					e = null;
+				}
+			}
+			factory = f;
+			newEvent = n;
+			enabled = e;
+		}
+
+		/**
+		 * Returns the name of this event type.
+		 *
+		 * @return the name of the event type
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns whether a recording has enabled this event type.
+		 *
+		 * @return {@code true} if and only if events of this type are recorded
+		 */
+		public boolean isEnabled() {
+			if (enabled == null) {
+				return false;
+			}
+			try {
+				return (boolean) enabled.invokeExact();
+			} catch (Throwable x) {
+				return false;
+			}
+		}
+
+		/**
+		 * Starts an event of this type, if this type is enabled.
+		 *
+		 * @return the started event, or {@code null} if this type is not
+		 * recorded
+		 */
+		public Object begin() {
+			if (!isEnabled()) {
+				return null;
+			}
+			try {
+				Object event = (Object) newEvent.invokeExact();
+				BEGIN.invokeExact(event);
+				return event;
+			} catch (Throwable x) {
+				return null;
+			}
+		}
+
+		/**
+		 * Sets the fields of an event, in the order in which they were
+		 * defined, ends it and commits it.
+		 */
+		private void commit(Object event, Object... values) {
+			try {
+				for (int i = 0; i < values.length; i++) {
+					SET.invokeExact(event, i, values[i]);
+				}
+				END.invokeExact(event);
+				COMMIT.invokeExact(event);
+			} catch (Throwable x) {
+				// A dropped event is not worth failing a request for
+			}
+		}
+
+	}
+
+	private static final Class<?> EVENT_CLASS;
+
+	private static final MethodHandle BEGIN;
+
+	private static final MethodHandle END;
+
+	private static final MethodHandle COMMIT;
+
+	private static final MethodHandle SET;
+
+	static {
+		Class<?> c = null;
+		MethodHandle begin = null;
+		MethodHandle end = null;
+		MethodHandle commit = null;
+		MethodHandle set = null;
+		try {
+			c = Class.forName("jdk.jfr.Event");
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			MethodType action = MethodType.methodType(void.class, Object.class);
+			begin = lookup.findVirtual(c, "begin", MethodType.methodType(void.class)).asType(action);
+			end = lookup.findVirtual(c, "end", MethodType.methodType(void.class)).asType(action);
+			commit = lookup.findVirtual(c, "commit", MethodType.methodType(void.class)).asType(action);
+			set = lookup.findVirtual(c, "set", MethodType.methodType(void.class, int.class, Object.class))
+					.asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+		} catch (ReflectiveOperationException x) {
+			c = null;
+		} catch (LinkageError x) {
+			c = null;
+		}
+		EVENT_CLASS = c;
+		BEGIN = begin;
+		END = end;
+		COMMIT = commit;
+		SET = set;
+	}
+
+	/**
+	 * The instance of the stage that is running on the current thread, if
+	 * stage events are recorded.
+	 */
+	private static final ThreadLocal<Instance> CURRENT = new ThreadLocal<Instance>();
+
+	/**
+	 * Fields: service, instanceId, requestId.
+	 */
+	public static final Type STAGE = new Type("za.ac.sun.cs.green.Stage", "Green Stage",
+			"A service processes an instance", false,
+			new String[] { "service", "instanceId", "requestId" },
+			new Class<?>[] { String.class, long.class, long.class });
+
+	/**
+	 * Fields: service, key, hit, instanceId, requestId.
+	 */
+	public static final Type STORE_LOOKUP = new Type("za.ac.sun.cs.green.StoreLookup", "Green Store Lookup",
+			"A solver service looks up an instance in the store", false,
+			new String[] { "service", "key", "hit", "instanceId", "requestId" },
+			new Class<?>[] { String.class, String.class, boolean.class, long.class, long.class });
+
+	/**
+	 * Fields: solver, variableCount, conjunctCount, verdict, instanceId,
+	 * requestId.
+	 */
+	public static final Type SOLVER_INVOCATION = new Type("za.ac.sun.cs.green.SolverInvocation",
+			"Green Solver Invocation", "A decision procedure is called on an instance", true,
+			new String[] { "solver", "variableCount", "conjunctCount", "verdict", "instanceId", "requestId" },
+			new Class<?>[] { String.class, int.class, int.class, String.class, long.class, long.class });
+
+	/**
+	 * Fields: command, instanceId, requestId.
+	 */
+	public static final Type PROCESS_SPAWN = new Type("za.ac.sun.cs.green.ProcessSpawn", "Green Process Spawn",
+			"An external solver process runs", true,
+			new String[] { "command", "instanceId", "requestId" },
+			new Class<?>[] { String.class, long.class, long.class });
+
+	private Jfr() {
+	}
+
+	/**
+	 * Returns whether the JFR API is available, so that events can be
+	 * recorded at all.
+	 *
+	 * @return {@code true} if and only if the event types could be created
+	 */
+	public static boolean isAvailable() {
+		return STAGE.factory != null;
+	}
+
+	/**
+	 * Marks the start of a stage on the current thread, so that process
+	 * spawns can be attributed to its instance.
+	 *
+	 * @param event    the stage event, as returned by {@link Type#begin()}
+	 * @param instance the instance of the stage
+	 * @return the instance of the enclosing stage, to be passed to
+	 * {@link #commitStage(Object, String, Instance, Instance)}
+	 */
+	public static Instance enterStage(Object event, Instance instance) {
+		if (event == null) {
+			return null;
+		}
+		Instance previous = CURRENT.get();
+		CURRENT.set(instance);
+		return previous;
+	}
+
+	/**
+	 * Commits a stage event and restores the enclosing stage.
+	 *
+	 * @param event    the event, or {@code null}
+	 * @param service  the name of the service
+	 * @param instance the instance
+	 * @param previous the value returned by
+	 *                 {@link #enterStage(Object, Instance)}
+	 */
+	public static void commitStage(Object event, String service, Instance instance, Instance previous) {
+		if (event == null) {
+			return;
+		}
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+		STAGE.commit(event, service, instance.getId(), getRequestId(instance));
+	}
+
+	/**
+	 * Commits a store lookup event.
+	 *
+	 * @param event    the event, or {@code null}
+	 * @param service  the name of the service
+	 * @param instance the instance
+	 * @param key      the store key
+	 * @param hit      whether the store had an entry
+	 */
+	public static void commitStoreLookup(Object event, String service, Instance instance, String key, boolean hit) {
+		if (event == null) {
+			return;
+		}
+		STORE_LOOKUP.commit(event, service, key, hit, instance.getId(), getRequestId(instance));
+	}
+
+	/**
+	 * Commits a solver invocation event. The variables and conjuncts of the
+	 * instance are only counted if the event is recorded.
+	 *
+	 * @param event    the event, or {@code null}
+	 * @param solver   the name of the solver service
+	 * @param instance the instance
+	 * @param verdict  the result of the solver: a {@link Boolean}, a model, a
+	 *                 count or {@code null} if the solver gave up
+	 */
+	public static void commitSolverInvocation(Object event, String solver, Instance instance, Object verdict) {
+		if (event == null) {
+			return;
+		}
+		Expression expression = instance.getFullExpression();
+		SOLVER_INVOCATION.commit(event, solver, countVariables(expression), countConjuncts(expression),
+				describe(verdict), instance.getId(), getRequestId(instance));
+	}
+
+	/**
+	 * Commits a process spawn event for the instance of the current stage.
+	 *
+	 * @param event   the event, or {@code null}
+	 * @param command the command line of the process
+	 */
+	public static void commitProcessSpawn(Object event, String command) {
+		if (event == null) {
+			return;
+		}
+		Instance instance = CURRENT.get();
+		long id = (instance == null) ? 0 : instance.getId();
+		long requestId = (instance == null) ? 0 : getRequestId(instance);
+		PROCESS_SPAWN.commit(event, command, id, requestId);
+	}
+
+	private static long getRequestId(Instance instance) {
+		Instance source = instance.getSource();
+		return (source == null) ? instance.getId() : source.getId();
+	}
+
+	private static String describe(Object verdict) {
+		if (verdict == null) {
+			return "UNKNOWN";
+		} else if (verdict instanceof Boolean) {
+			return ((Boolean) verdict) ? "SAT" : "UNSAT";
+		} else if (verdict instanceof Map) {
+			return ((Map<?, ?>) verdict).isEmpty() ? "UNSAT" : "SAT";
+		} else {
+			return verdict.toString();
+		}
+	}
+
+	private static int countConjuncts(Expression expression) {
+		int count = 0;
+		List<Expression> pending = new ArrayList<Expression>();
+		if (expression != null) {
+			pending.add(expression);
+		}
+		while (!pending.isEmpty()) {
+			Expression e = pending.remove(pending.size() - 1);
+			if ((e instanceof Operation) && (((Operation) e).getOperator() == Operation.Operator.AND)) {
+				for (Expression operand : ((Operation) e).getOperands()) {
+					pending.add(operand);
+				}
+			} else {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static int countVariables(Expression expression) {
+		if (expression == null) {
+			return 0;
+		}
+		final Set<Variable> variables = new HashSet<Variable>();
+		try {
+			expression.accept(new Visitor() {
+				@Override
+				public void postVisit(Variable variable) {
+					variables.add(variable);
+				}
+			});
+		} catch (VisitorException x) {
+			// The visitor does not throw exceptions
+		}
+		return variables.size();
+	}
+
+}
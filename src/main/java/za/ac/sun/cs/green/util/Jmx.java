@@ -0,0 +1,395 @@
+package za.ac.sun.cs.green.util;
+
+import za.ac.sun.cs.green.Green;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exposes a {@link Green} solver and the metrics of its components as JMX
+ * MBeans, so that they can be watched with tools like JConsole or VisualVM.
+ * Two kinds of MBean are registered:
+ * <ul>
+ * <li>{@code za.ac.sun.cs.green:type=Green,solver=...,id=...} for the solver
+ * itself (see {@link SolverMBean}), with operations to reset all counters and
+ * to flush the store.</li>
+ * <li>{@code za.ac.sun.cs.green:type=Metrics,solver=...,id=...,name=...} for
+ * every {@link Metrics.Group}, that is, for the task manager, the store and
+ * every service. Its read-only attributes are the counters and gauges of the
+ * group, the count, p50, p99, p999 and maximum of each histogram, and a hit
+ * ratio for every pair of counters {@code xHitCount} and {@code xMissCount}.
+ * Its {@code resetCounters} operation resets the group.</li>
+ * </ul>
+ * The attributes are read from the registry when the MBean is queried, so
+ * they cost nothing while nobody is looking. The {@code id} key tells apart
+ * solvers with the same name in one JVM.
+ */
+public final class Jmx {
+
+	/**
+	 * The domain of the object names.
+	 */
+	public static final String DOMAIN = "za.ac.sun.cs.green";
+
+	private static final AtomicInteger SOLVER_ID = new AtomicInteger();
+
+	/**
+	 * The management interface of a solver.
+	 */
+	public interface SolverMBean {
+
+		/**
+		 * Returns the name of the solver.
+		 *
+		 * @return the name of the solver
+		 */
+		String getSolverName();
+
+		/**
+		 * Returns the class name of the task manager.
+		 *
+		 * @return the class name of the task manager
+		 */
+		String getTaskManager();
+
+		/**
+		 * Returns the class name of the store.
+		 *
+		 * @return the class name of the store
+		 */
+		String getStore();
+
+		/**
+		 * Returns the names of the registered services.
+		 *
+		 * @return the service names
+		 */
+		String[] getServiceNames();
+
+		/**
+		 * Returns the names of the metrics groups.
+		 *
+		 * @return the group names
+		 */
+		String[] getGroupNames();
+
+		/**
+		 * Sets every counter and histogram of the solver to zero.
+		 */
+		void resetCounters();
+
+		/**
+		 * Flushes the store, as {@link za.ac.sun.cs.green.store.Store#flushAll()}.
+		 */
+		void flushStore();
+
+		/**
+		 * Returns the report of the solver, one line per entry.
+		 *
+		 * @return the report
+		 */
+		String report();
+
+	}
+
+	private static final class Solver implements SolverMBean {
+
+		private final Green solver;
+
+		private Solver(Green solver) {
+			this.solver = solver;
+		}
+
+		@Override
+		public String getSolverName() {
+			return solver.getSolverName();
+		}
+
+		@Override
+		public String getTaskManager() {
+			return solver.getTaskManager().getClass().getName();
+		}
+
+		@Override
+		public String getStore() {
+			return solver.getStore().getClass().getName();
+		}
+
+		@Override
+		public String[] getServiceNames() {
+			return solver.getPlan().getServiceNames().toArray(new String[0]);
+		}
+
+		@Override
+		public String[] getGroupNames() {
+			List<String> names = new ArrayList<String>();
+			for (Metrics.Group group : solver.getMetrics().getGroups()) {
+				names.add(group.getName());
+			}
+			return names.toArray(new String[0]);
+		}
+
+		@Override
+		public void resetCounters() {
+			solver.getMetrics().reset();
+		}
+
+		@Override
+		public void flushStore() {
+			solver.getStore().flushAll();
+		}
+
+		@Override
+		public String report() {
+			final StringBuilder report = new StringBuilder();
+			solver.report(new Reporter() {
+				@Override
+				public void report(String context, String message) {
+					report.append(context).append(" :: ").append(message).append('\n');
+				}
+			});
+			return report.toString();
+		}
+
+	}
+
+	/**
+	 * The MBean of a metrics group. Its attributes are computed from the
+	 * group on every query, so that counters and histograms created after
+	 * registration are included.
+	 */
+	static final class GroupBean implements DynamicMBean {
+
+		private static final String RESET = "resetCounters";
+
+		private final Metrics.Group group;
+
+		GroupBean(Metrics.Group group) {
+			this.group = group;
+		}
+
+		/**
+		 * Returns the current values of all attributes, in a stable order.
+		 */
+		Map<String, Object> values() {
+			Map<String, Object> values = new LinkedHashMap<String, Object>();
+			Map<String, Metrics.Counter> counters = new HashMap<String, Metrics.Counter>();
+			for (Metrics.Counter counter : group.getCounters()) {
+				values.put(counter.getName(), counter.get());
+				counters.put(counter.getName(), counter);
+			}
+			for (Metrics.Gauge gauge : group.getGauges()) {
+				values.put(gauge.getName(), gauge.get());
+			}
+			for (Metrics.Counter counter : group.getCounters()) {
+				String name = counter.getName();
+				if (name.endsWith("HitCount")) {
+					String prefix = name.substring(0, name.length() - "HitCount".length());
+					Metrics.Counter miss = counters.get(prefix + "MissCount");
+					if (miss != null) {
+						long hits = counter.get();
+						long total = hits + miss.get();
+						values.put(prefix + "HitRatio", (total == 0) ? 0.0 : (double) hits / total);
+					}
+				}
+			}
+			for (Metrics.Histogram histogram : group.getHistograms()) {
+				String prefix = histogram.getName() + ".";
+				values.put(prefix + "count", histogram.getCount());
+				values.put(prefix + "p50", histogram.getPercentile(0.50));
+				values.put(prefix + "p99", histogram.getPercentile(0.99));
+				values.put(prefix + "p999", histogram.getPercentile(0.999));
+				values.put(prefix + "max", histogram.getMax());
+			}
+			return values;
+		}
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Object value = values().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Object> values = values();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				Object value = values.get(attribute);
+				if (value != null) {
+					list.add(new Attribute(attribute, value));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			if (RESET.equals(actionName)) {
+				group.reset();
+				return null;
+			}
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Object> values = values();
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+						entry.getKey(), true, false, false);
+			}
+			MBeanOperationInfo[] operations = {
+					new MBeanOperationInfo(RESET, "Sets the counters and histograms of " + group.getName() + " to zero",
+							new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION)
+			};
+			return new MBeanInfo(getClass().getName(), "Metrics of " + group.getName(), attributes, null, operations,
+					null);
+		}
+
+	}
+
+	private final Green solver;
+
+	private final MBeanServer server;
+
+	private final String keys;
+
+	private final Map<Metrics.Group, ObjectName> registered = new HashMap<Metrics.Group, ObjectName>();
+
+	private ObjectName solverObjectName = null;
+
+	/**
+	 * Creates the MBeans of a solver for the platform MBean server. Nothing is
+	 * registered until {@link #register()} is called.
+	 *
+	 * @param solver the solver
+	 */
+	public Jmx(Green solver) {
+		this(solver, ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Creates the MBeans of a solver for the given MBean server.
+	 *
+	 * @param solver the solver
+	 * @param server the MBean server
+	 */
+	public Jmx(Green solver, MBeanServer server) {
+		this.solver = solver;
+		this.server = server;
+		keys = "solver=" + ObjectName.quote(solver.getSolverName()) + ",id=" + SOLVER_ID.incrementAndGet();
+	}
+
+	/**
+	 * Registers the MBean of the solver and of every metrics group that has
+	 * not been registered yet, and unregisters the MBeans of groups that have
+	 * been removed from the registry. It is safe to call this again after new
+	 * services have been registered.
+	 */
+	public synchronized void register() {
+		List<Metrics.Group> groups = solver.getMetrics().getGroups();
+		Iterator<Map.Entry<Metrics.Group, ObjectName>> stale = registered.entrySet().iterator();
+		while (stale.hasNext()) {
+			Map.Entry<Metrics.Group, ObjectName> entry = stale.next();
+			if (!groups.contains(entry.getKey())) {
+				try {
+					server.unregisterMBean(entry.getValue());
+				} catch (JMException x) {
+					solver.getLogger().warn("could not unregister MBean {} ({})", entry.getValue(), x.getMessage());
+				}
+				stale.remove();
+			}
+		}
+		try {
+			if (solverObjectName == null) {
+				ObjectName name = new ObjectName(DOMAIN + ":type=Green," + keys);
+				server.registerMBean(new StandardMBean(new Solver(solver), SolverMBean.class), name);
+				solverObjectName = name;
+			}
+			for (Metrics.Group group : groups) {
+				if (!registered.containsKey(group)) {
+					ObjectName name = new ObjectName(DOMAIN + ":type=Metrics," + keys + ",name="
+							+ ObjectName.quote(group.getName()));
+					server.registerMBean(new GroupBean(group), name);
+					registered.put(group, name);
+				}
+			}
+		} catch (JMException x) {
+			solver.getLogger().warn("could not register MBeans ({})", x.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters all MBeans registered by {@link #register()}.
+	 */
+	public synchronized void unregister() {
+		List<ObjectName> names = new ArrayList<ObjectName>(registered.values());
+		if (solverObjectName != null) {
+			names.add(solverObjectName);
+		}
+		for (ObjectName name : names) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException x) {
+				solver.getLogger().warn("could not unregister MBean {} ({})", name, x.getMessage());
+			}
+		}
+		registered.clear();
+		solverObjectName = null;
+	}
+
+	/**
+	 * Returns the object name of the solver MBean.
+	 *
+	 * @return the object name, or {@code null} if it is not registered
+	 */
+	public synchronized ObjectName getObjectName() {
+		return solverObjectName;
+	}
+
+	/**
+	 * Returns the object name of the MBean of a metrics group.
+	 *
+	 * @param group the metrics group
+	 * @return the object name, or {@code null} if it is not registered
+	 */
+	public synchronized ObjectName getObjectName(Metrics.Group group) {
+		return registered.get(group);
+	}
+
+}
@@ -0,0 +1,373 @@
+package za.ac.sun.cs.green.util;
+
+import org.apfloat.Apfloat;
+import za.ac.sun.cs.green.expr.Constant;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.StringConstant;
+import za.ac.sun.cs.green.expr.Variable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Estimates the heap retained by a component that holds results, such as a
+ * store or a Grulia repository. The owner adds the estimated size of every
+ * key and value it keeps and removes it when the entry is evicted, so that
+ * the account is always up to date without walking the heap.
+ * <p>
+ * Bytes are kept in total and per key prefix: the part of a key up to and
+ * including the first {@code ':'}, such as {@code SAT:}, {@code MODEL:},
+ * {@code COUNT:} or {@code ENTRY:}. The total and every prefix are gauges in
+ * the metrics group of the account ({@code memoryBytes},
+ * {@code satMemoryBytes}, and so on).
+ * <p>
+ * An account may have a soft limit. When the total exceeds it, the eviction
+ * listeners are told by how much; owners that can evict entries register a
+ * listener that does so, and clients can register listeners of their own.
+ * <p>
+ * The sizes are estimates for a 64-bit JVM with compressed references: the
+ * objects of a value are counted, but objects that are shared with the rest
+ * of the program, such as variables and canonical booleans, are not.
+ */
+public final class MemoryAccount {
+
+	/**
+	 * Receives the notification that an account is over its soft limit.
+	 */
+	public interface EvictionListener {
+
+		/**
+		 * Called when the account is over its soft limit. The listener may
+		 * evict entries, which are removed from the account.
+		 *
+		 * @param account the account
+		 * @param excess  the number of bytes by which the limit is exceeded
+		 */
+		void evict(MemoryAccount account, long excess);
+
+	}
+
+	/**
+	 * The prefix of keys that have none.
+	 */
+	public static final String NO_PREFIX = "";
+
+	/**
+	 * The estimated size of an entry of a hash map, apart from its key and
+	 * value: the node and its slot in the table.
+	 */
+	public static final long MAP_ENTRY_SIZE = 48;
+
+	/**
+	 * The estimated size of an entry of a tree set, apart from the element.
+	 */
+	public static final long TREE_ENTRY_SIZE = 40;
+
+	private static final long OBJECT_HEADER = 12;
+
+	private static final long ARRAY_HEADER = 16;
+
+	/**
+	 * The size of a reference, such as a slot of an array list.
+	 */
+	public static final long REFERENCE_SIZE = 4;
+
+	private final Metrics.Group metrics;
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final ConcurrentMap<String, AtomicLong> prefixes = new ConcurrentHashMap<String, AtomicLong>();
+
+	private final List<EvictionListener> listeners = new CopyOnWriteArrayList<EvictionListener>();
+
+	private final Metrics.Counter limitExceededCount;
+
+	private volatile long softLimit = 0;
+
+	/**
+	 * Set while the listeners run, so that evictions do not notify them
+	 * again.
+	 */
+	private final ThreadLocal<Boolean> evicting = new ThreadLocal<Boolean>();
+
+	/**
+	 * Creates an account whose gauges are added to the given metrics group.
+	 *
+	 * @param metrics the metrics group of the owner
+	 */
+	public MemoryAccount(Metrics.Group metrics) {
+		this.metrics = metrics;
+		limitExceededCount = metrics.counter("memoryLimitExceededCount");
+		metrics.gauge("memoryBytes", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return bytes.get();
+			}
+		});
+	}
+
+	/**
+	 * Returns the prefix of a key: the key up to and including its first
+	 * {@code ':'}, if that is a short name.
+	 *
+	 * @param key the key
+	 * @return the prefix, or {@link #NO_PREFIX}
+	 */
+	public static String prefix(String key) {
+		int i = key.indexOf(':');
+		if ((i <= 0) || (i > 16)) {
+			return NO_PREFIX;
+		}
+		for (int j = 0; j < i; j++) {
+			if (!Character.isLetterOrDigit(key.charAt(j))) {
+				return NO_PREFIX;
+			}
+		}
+		return key.substring(0, i + 1);
+	}
+
+	/**
+	 * Adds an entry to the account. If the account is then over its soft
+	 * limit, the eviction listeners are notified.
+	 *
+	 * @param key  the key of the entry, which determines its prefix
+	 * @param size the estimated size of the entry
+	 */
+	public void add(String key, long size) {
+		long total = bytes.addAndGet(size);
+		counter(prefix(key)).addAndGet(size);
+		long limit = softLimit;
+		if ((limit > 0) && (total > limit) && (evicting.get() == null)) {
+			limitExceededCount.increment();
+			evicting.set(Boolean.TRUE);
+			try {
+				for (EvictionListener listener : listeners) {
+					long excess = bytes.get() - limit;
+					if (excess <= 0) {
+						break;
+					}
+					listener.evict(this, excess);
+				}
+			} finally {
+				evicting.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry from the account.
+	 *
+	 * @param key  the key of the entry
+	 * @param size the estimated size that was added for the entry
+	 */
+	public void remove(String key, long size) {
+		bytes.addAndGet(-size);
+		counter(prefix(key)).addAndGet(-size);
+	}
+
+	/**
+	 * Removes all entries from the account.
+	 */
+	public void clear() {
+		bytes.set(0);
+		for (AtomicLong b : prefixes.values()) {
+			b.set(0);
+		}
+	}
+
+	private AtomicLong counter(String prefix) {
+		AtomicLong b = prefixes.get(prefix);
+		if (b == null) {
+			AtomicLong created = new AtomicLong();
+			b = prefixes.putIfAbsent(prefix, created);
+			if (b == null) {
+				b = created;
+				if (!prefix.equals(NO_PREFIX)) {
+					final AtomicLong gauged = created;
+					String name = prefix.substring(0, prefix.length() - 1).toLowerCase();
+					metrics.gauge(name + "MemoryBytes", new LongSupplier() {
+						@Override
+						public long getAsLong() {
+							return gauged.get();
+						}
+					});
+				}
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the estimated size of all entries.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Returns the estimated size of the entries with the given key prefix.
+	 *
+	 * @param prefix the prefix, such as {@code SAT:}
+	 * @return the size in bytes
+	 */
+	public long getBytes(String prefix) {
+		AtomicLong b = prefixes.get(prefix);
+		return (b == null) ? 0 : b.get();
+	}
+
+	/**
+	 * Sets the size above which the eviction listeners are notified.
+	 *
+	 * @param limit the limit in bytes, or 0 for none
+	 */
+	public void setSoftLimit(long limit) {
+		softLimit = Math.max(0, limit);
+	}
+
+	/**
+	 * Returns the soft limit.
+	 *
+	 * @return the limit in bytes, or 0 if there is none
+	 */
+	public long getSoftLimit() {
+		return softLimit;
+	}
+
+	/**
+	 * Adds a listener that is notified when the account is over its soft
+	 * limit. Listeners are notified in the order in which they were added,
+	 * until the account is no longer over the limit.
+	 *
+	 * @param listener the listener
+	 */
+	public void addEvictionListener(EvictionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes an eviction listener.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeEvictionListener(EvictionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Reports the estimated sizes, in total and per key prefix.
+	 *
+	 * @param context  the context of the report lines
+	 * @param reporter the mechanism through which reporting is done
+	 */
+	public void report(String context, Reporter reporter) {
+		reporter.report(context, "memoryBytes = " + bytes.get());
+		for (Map.Entry<String, AtomicLong> entry : prefixes.entrySet()) {
+			String prefix = entry.getKey();
+			if (!prefix.equals(NO_PREFIX)) {
+				String name = prefix.substring(0, prefix.length() - 1).toLowerCase();
+				reporter.report(context, name + "MemoryBytes = " + entry.getValue().get());
+			}
+		}
+		if (softLimit > 0) {
+			reporter.report(context, "memorySoftLimit = " + softLimit);
+			reporter.report(context, "memoryLimitExceededCount = " + limitExceededCount.get());
+		}
+	}
+
+	// ======================================================================
+	//
+	// ESTIMATES
+	//
+	// ======================================================================
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	/**
+	 * Returns the estimated size of a string.
+	 *
+	 * @param s the string
+	 * @return the size in bytes
+	 */
+	public static long sizeOf(String s) {
+		return align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + 2L * s.length());
+	}
+
+	/**
+	 * Returns the estimated size of a stored value. Models (maps), cores
+	 * (collections of expressions), expressions, strings, numbers and
+	 * {@link Apfloat}s are estimated; other objects count as a small object.
+	 * Nested collections and expressions are traversed without recursion.
+	 *
+	 * @param value the value
+	 * @return the size in bytes
+	 */
+	public static long sizeOf(Object value) {
+		long size = 0;
+		List<Object> pending = new ArrayList<Object>();
+		pending.add(value);
+		while (!pending.isEmpty()) {
+			Object o = pending.remove(pending.size() - 1);
+			if ((o == null) || (o instanceof Boolean) || (o instanceof Variable)) {
+				// Shared with the rest of the program
+				continue;
+			} else if (o instanceof String) {
+				size += sizeOf((String) o);
+			} else if ((o instanceof Integer) || (o instanceof Float) || (o instanceof Short)
+					|| (o instanceof Character) || (o instanceof Byte)) {
+				size += 16;
+			} else if ((o instanceof Long) || (o instanceof Double)) {
+				size += 24;
+			} else if (o instanceof Apfloat) {
+				size += 96 + align(ARRAY_HEADER + ((Apfloat) o).size());
+			} else if (o instanceof Map) {
+				Map<?, ?> map = (Map<?, ?>) o;
+				size += 48 + align(ARRAY_HEADER + REFERENCE_SIZE * 2 * map.size()) + MAP_ENTRY_SIZE * map.size();
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					pending.add(entry.getKey());
+					pending.add(entry.getValue());
+				}
+			} else if (o instanceof Collection) {
+				Collection<?> collection = (Collection<?>) o;
+				size += 48 + TREE_ENTRY_SIZE * collection.size();
+				pending.addAll(collection);
+			} else if (o instanceof Operation) {
+				Operation operation = (Operation) o;
+				size += align(OBJECT_HEADER + 16) + align(ARRAY_HEADER + REFERENCE_SIZE * operation.getOperatandCount());
+				for (Expression operand : operation.getOperands()) {
+					pending.add(operand);
+				}
+			} else if (o instanceof StringConstant) {
+				size += 16 + sizeOf(((StringConstant) o).getValue());
+			} else if (o instanceof Constant) {
+				size += 24;
+			} else {
+				size += 16;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the estimated size of an entry of a hash map with a string key.
+	 *
+	 * @param key   the key
+	 * @param value the value
+	 * @return the size in bytes
+	 */
+	public static long sizeOf(String key, Object value) {
+		return MAP_ENTRY_SIZE + sizeOf(key) + sizeOf(value);
+	}
+
+}
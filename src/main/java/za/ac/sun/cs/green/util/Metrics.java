@@ -0,0 +1,529 @@
+package za.ac.sun.cs.green.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics registry of a {@link za.ac.sun.cs.green.Green} solver. Every
+ * component that keeps statistics (services, stores and task managers)
+ * registers a {@link Group} under its name and creates its counters, gauges
+ * and latency histograms in that group.
+ * <p>
+ * Counters are striped {@link LongAdder}s: updates from concurrent worker
+ * threads are not lost and do not contend on a shared field, and reading a
+ * counter is only slightly more expensive than reading an {@code int}. This
+ * makes it cheap enough to leave the counters on all the time. Counters are
+ * read when a report is generated or a snapshot is taken; such reads are not
+ * atomic across counters.
+ */
+public final class Metrics {
+
+	/**
+	 * A named counter.
+	 */
+	public static final class Counter {
+
+		private final String name;
+
+		private final LongAdder adder = new LongAdder();
+
+		private Counter(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name of this counter.
+		 *
+		 * @return the name of the counter
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Adds one to the counter.
+		 */
+		public void increment() {
+			adder.increment();
+		}
+
+		/**
+		 * Adds a value to the counter.
+		 *
+		 * @param value the value to add
+		 */
+		public void add(long value) {
+			adder.add(value);
+		}
+
+		/**
+		 * Returns the current value of the counter.
+		 *
+		 * @return the sum of all updates since the last reset
+		 */
+		public long get() {
+			return adder.sum();
+		}
+
+		/**
+		 * Sets the counter to zero.
+		 */
+		public void reset() {
+			adder.reset();
+		}
+
+		@Override
+		public String toString() {
+			return Long.toString(get());
+		}
+
+	}
+
+	/**
+	 * A named gauge: a value, such as a queue depth, that is owned by the
+	 * component and read when the registry is read. Gauges are not reset.
+	 */
+	public static final class Gauge {
+
+		private final String name;
+
+		private final LongSupplier supplier;
+
+		private Gauge(String name, LongSupplier supplier) {
+			this.name = name;
+			this.supplier = supplier;
+		}
+
+		/**
+		 * Returns the name of this gauge.
+		 *
+		 * @return the name of the gauge
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the current value of the gauge.
+		 *
+		 * @return the value supplied by the component
+		 */
+		public long get() {
+			return supplier.getAsLong();
+		}
+
+		@Override
+		public String toString() {
+			return Long.toString(get());
+		}
+
+	}
+
+	/**
+	 * A latency histogram with logarithmic buckets, in the style of
+	 * HdrHistogram. Values below 64 have a bucket each; above that, every
+	 * power of two is split into 32 buckets, so that a reported percentile is
+	 * within about 3% of the true value. Recording a value does not allocate
+	 * and does not lock: it increments one bucket of an
+	 * {@link AtomicLongArray}. Values are meant to be nanoseconds, as
+	 * returned by differences of {@link System#nanoTime()}.
+	 */
+	public static final class Histogram {
+
+		private static final int SUB_BUCKET_BITS = 5;
+
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+		private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+		private final String name;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder sum = new LongAdder();
+
+		private final AtomicLong max = new AtomicLong();
+
+		private Histogram(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name of this histogram.
+		 *
+		 * @return the name of the histogram
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Records a value. Negative values are recorded as zero.
+		 *
+		 * @param value the value, usually a latency in nanoseconds
+		 */
+		public void record(long value) {
+			long v = Math.max(0, value);
+			buckets.incrementAndGet(indexOf(v));
+			count.increment();
+			sum.add(v);
+			long m = max.get();
+			while ((v > m) && !max.compareAndSet(m, v)) {
+				m = max.get();
+			}
+		}
+
+		static int indexOf(long value) {
+			if (value < LINEAR_LIMIT) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int top = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+			return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+		}
+
+		/**
+		 * Returns the largest value that falls in the given bucket.
+		 */
+		static long highestValueOf(int index) {
+			if (index < LINEAR_LIMIT) {
+				return index;
+			}
+			int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+			long top = SUB_BUCKETS + (index - LINEAR_LIMIT) % SUB_BUCKETS;
+			return ((top + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+		}
+
+		/**
+		 * Returns the number of recorded values.
+		 *
+		 * @return the number of values
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * Returns the sum of the recorded values.
+		 *
+		 * @return the sum of the values
+		 */
+		public long getSum() {
+			return sum.sum();
+		}
+
+		/**
+		 * Returns the largest recorded value.
+		 *
+		 * @return the maximum, or 0 if nothing was recorded
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the value below which the given fraction of the recorded
+		 * values fall. The result is the upper bound of the bucket that
+		 * contains the percentile, but never more than the maximum.
+		 *
+		 * @param fraction the fraction, for example 0.99 for p99
+		 * @return the percentile, or 0 if nothing was recorded
+		 */
+		public long getPercentile(double fraction) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValueOf(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		/**
+		 * Clears the histogram.
+		 */
+		public void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+
+	}
+
+	/**
+	 * The counters and histograms of one component. They are created once,
+	 * usually in field initializers, and looked up by name when the registry
+	 * is read.
+	 */
+	public static final class Group {
+
+		private final String name;
+
+		private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+		private final List<Counter> order = new CopyOnWriteArrayList<Counter>();
+
+		private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+		private final List<Histogram> histogramOrder = new CopyOnWriteArrayList<Histogram>();
+
+		private final List<Gauge> gauges = new CopyOnWriteArrayList<Gauge>();
+
+		private Group(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name of this group. It is unique within the registry.
+		 *
+		 * @return the name of the group
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the counter with the given name, creating it if necessary.
+		 *
+		 * @param counterName the name of the counter
+		 * @return the counter
+		 */
+		public Counter counter(String counterName) {
+			Counter counter = counters.get(counterName);
+			if (counter == null) {
+				Counter fresh = new Counter(counterName);
+				counter = counters.putIfAbsent(counterName, fresh);
+				if (counter == null) {
+					counter = fresh;
+					order.add(fresh);
+				}
+			}
+			return counter;
+		}
+
+		/**
+		 * Returns the histogram with the given name, creating it if
+		 * necessary.
+		 *
+		 * @param histogramName the name of the histogram
+		 * @return the histogram
+		 */
+		public Histogram histogram(String histogramName) {
+			Histogram histogram = histograms.get(histogramName);
+			if (histogram == null) {
+				Histogram fresh = new Histogram(histogramName);
+				histogram = histograms.putIfAbsent(histogramName, fresh);
+				if (histogram == null) {
+					histogram = fresh;
+					histogramOrder.add(fresh);
+				}
+			}
+			return histogram;
+		}
+
+		/**
+		 * Adds a gauge to this group. A gauge that is added twice is reported
+		 * twice, so gauges are usually added once, in the constructor of the
+		 * component.
+		 *
+		 * @param gaugeName the name of the gauge
+		 * @param supplier  the source of the value of the gauge
+		 * @return the gauge
+		 */
+		public Gauge gauge(String gaugeName, LongSupplier supplier) {
+			Gauge gauge = new Gauge(gaugeName, supplier);
+			gauges.add(gauge);
+			return gauge;
+		}
+
+		/**
+		 * Returns the gauges of this group in the order in which they were
+		 * added.
+		 *
+		 * @return the gauges of the group
+		 */
+		public List<Gauge> getGauges() {
+			return Collections.unmodifiableList(gauges);
+		}
+
+		/**
+		 * Returns the histograms of this group in the order in which they were
+		 * created.
+		 *
+		 * @return the histograms of the group
+		 */
+		public List<Histogram> getHistograms() {
+			return Collections.unmodifiableList(histogramOrder);
+		}
+
+		/**
+		 * Returns the counters of this group in the order in which they were
+		 * created.
+		 *
+		 * @return the counters of the group
+		 */
+		public List<Counter> getCounters() {
+			return Collections.unmodifiableList(order);
+		}
+
+		/**
+		 * Sets all counters and histograms of this group to zero. Gauges are
+		 * left alone.
+		 */
+		public void reset() {
+			for (Counter counter : order) {
+				counter.reset();
+			}
+			for (Histogram histogram : histogramOrder) {
+				histogram.reset();
+			}
+		}
+
+	}
+
+	private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<String, Group>();
+
+	private final List<Group> order = new CopyOnWriteArrayList<Group>();
+
+	/**
+	 * Registers a new group. If the name is already taken, for example
+	 * because two services of the same class are configured, a suffix
+	 * {@code #2}, {@code #3}, ... is added.
+	 *
+	 * @param name the name of the component
+	 * @return the new group
+	 */
+	public Group register(String name) {
+		String unique = name;
+		for (int i = 2; ; i++) {
+			Group group = new Group(unique);
+			if (groups.putIfAbsent(unique, group) == null) {
+				order.add(group);
+				return group;
+			}
+			unique = name + "#" + i;
+		}
+	}
+
+	/**
+	 * Removes a group from the registry, for example that of a component that
+	 * has been replaced. Its counters can still be updated, but they are no
+	 * longer read with the registry.
+	 *
+	 * @param group the group
+	 */
+	public void unregister(Group group) {
+		if (groups.remove(group.name, group)) {
+			order.remove(group);
+		}
+	}
+
+	/**
+	 * Returns the group with the given name, or {@code null} if there is
+	 * none.
+	 *
+	 * @param name the name of the group
+	 * @return the group or {@code null}
+	 */
+	public Group getGroup(String name) {
+		return groups.get(name);
+	}
+
+	/**
+	 * Returns all groups in the order in which they were registered.
+	 *
+	 * @return the groups
+	 */
+	public List<Group> getGroups() {
+		return new ArrayList<Group>(order);
+	}
+
+	/**
+	 * Returns the current value of every counter and gauge, keyed by
+	 * {@code group.counter}, and the count, p50, p99, p999 and maximum of
+	 * every histogram, keyed by {@code group.histogram.count} and so on.
+	 *
+	 * @return the values of all counters and histograms
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> values = new LinkedHashMap<String, Long>();
+		for (Group group : order) {
+			for (Counter counter : group.order) {
+				values.put(group.name + "." + counter.name, counter.get());
+			}
+			for (Gauge gauge : group.gauges) {
+				values.put(group.name + "." + gauge.name, gauge.get());
+			}
+			for (Histogram histogram : group.histogramOrder) {
+				String prefix = group.name + "." + histogram.name;
+				values.put(prefix + ".count", histogram.getCount());
+				values.put(prefix + ".p50", histogram.getPercentile(0.50));
+				values.put(prefix + ".p99", histogram.getPercentile(0.99));
+				values.put(prefix + ".p999", histogram.getPercentile(0.999));
+				values.put(prefix + ".max", histogram.getMax());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Reports the count, p50, p99, p999 and maximum, in nanoseconds, of every
+	 * histogram that has recorded values. Counters are reported by the
+	 * components that own them.
+	 *
+	 * @param reporter the mechanism through which reporting is done
+	 */
+	public void reportHistograms(Reporter reporter) {
+		for (Group group : order) {
+			for (Histogram histogram : group.histogramOrder) {
+				if (histogram.getCount() == 0) {
+					continue;
+				}
+				String prefix = histogram.name + ".";
+				reporter.report(group.name, prefix + "count = " + histogram.getCount());
+				reporter.report(group.name, prefix + "p50 = " + histogram.getPercentile(0.50));
+				reporter.report(group.name, prefix + "p99 = " + histogram.getPercentile(0.99));
+				reporter.report(group.name, prefix + "p999 = " + histogram.getPercentile(0.999));
+				reporter.report(group.name, prefix + "max = " + histogram.getMax());
+			}
+		}
+	}
+
+	/**
+	 * Sets every counter to zero.
+	 */
+	public void reset() {
+		for (Group group : order) {
+			group.reset();
+		}
+	}
+
+}
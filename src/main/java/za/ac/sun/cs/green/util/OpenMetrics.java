@@ -0,0 +1,389 @@
+package za.ac.sun.cs.green.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import za.ac.sun.cs.green.Green;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Structured metrics of a {@link Green} solver, and a small HTTP endpoint that
+ * serves them in the OpenMetrics text format (which Prometheus scrapes).
+ * <p>
+ * Every metric is a {@link Sample} with a name, a type, labels and a value.
+ * They are collected from two sources:
+ * <ul>
+ * <li>The {@link Metrics} registry: every counter becomes a
+ * {@code counter} ({@code green_cache_hit_count_total}), every gauge a
+ * {@code gauge}, every pair of {@code xHitCount} and {@code xMissCount}
+ * counters a {@code gauge} {@code green_x_hit_ratio}, and every latency
+ * histogram a {@code summary} in seconds with the 0.5, 0.99 and 0.999
+ * quantiles ({@code green_solve_seconds}). The rate of the {@code _count}
+ * of a summary is the number of calls per second.</li>
+ * <li>The {@code report(Reporter)} routines of the task manager, the store
+ * and the services: every report line of the form {@code name = number}
+ * that is not already covered by the registry becomes a metric of type
+ * {@code unknown} named {@code green_report_name}.</li>
+ * <li>The {@link SlowQueries} tracker: the total solver time and the number
+ * of calls of every tracked query are gauges
+ * ({@code green_top_query_seconds} and {@code green_top_query_calls})
+ * labelled with the service and the hash of the query.</li>
+ * </ul>
+ * Every sample is labelled with the name of the solver and the component
+ * (the metrics group or report context) it belongs to. Names are converted
+ * from camel case to snake case.
+ * <p>
+ * The endpoint only listens on the loopback interface and serves
+ * {@code /metrics}. The metrics are collected when they are requested.
+ */
+public final class OpenMetrics {
+
+	/**
+	 * The content type of the OpenMetrics text format.
+	 */
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	/**
+	 * The prefix of every metric name.
+	 */
+	private static final String PREFIX = "green_";
+
+	private static final Pattern REPORT_LINE =
+			Pattern.compile("^\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*=\\s*(-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?)\\s*$");
+
+	/**
+	 * The types of metric.
+	 */
+	public enum Type {
+		COUNTER, GAUGE, SUMMARY, UNKNOWN;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * One sample of a metric.
+	 */
+	public static final class Sample {
+
+		private final String family;
+
+		private final String suffix;
+
+		private final Type type;
+
+		private final Map<String, String> labels;
+
+		private final double value;
+
+		/**
+		 * Creates a sample.
+		 *
+		 * @param family the name of the metric family
+		 * @param suffix the suffix of the sample name, such as {@code _total},
+		 *               or the empty string
+		 * @param type   the type of the metric
+		 * @param labels the labels of the sample
+		 * @param value  the value of the sample
+		 */
+		public Sample(String family, String suffix, Type type, Map<String, String> labels, double value) {
+			this.family = family;
+			this.suffix = suffix;
+			this.type = type;
+			this.labels = Collections.unmodifiableMap(new LinkedHashMap<String, String>(labels));
+			this.value = value;
+		}
+
+		/**
+		 * Returns the name of the metric family.
+		 *
+		 * @return the family name
+		 */
+		public String getFamily() {
+			return family;
+		}
+
+		/**
+		 * Returns the name of the sample: the family name and the suffix.
+		 *
+		 * @return the sample name
+		 */
+		public String getName() {
+			return family + suffix;
+		}
+
+		/**
+		 * Returns the type of the metric.
+		 *
+		 * @return the type
+		 */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the labels of the sample.
+		 *
+		 * @return the labels, in order
+		 */
+		public Map<String, String> getLabels() {
+			return labels;
+		}
+
+		/**
+		 * Returns the value of the sample.
+		 *
+		 * @return the value
+		 */
+		public double getValue() {
+			return value;
+		}
+
+	}
+
+	private final Green solver;
+
+	private HttpServer server = null;
+
+	/**
+	 * Creates the exporter for a solver. The endpoint is not started until
+	 * {@link #start(int)} is called.
+	 *
+	 * @param solver the solver
+	 */
+	public OpenMetrics(Green solver) {
+		this.solver = solver;
+	}
+
+	/**
+	 * Returns the current metrics of the solver.
+	 *
+	 * @return the samples
+	 */
+	public List<Sample> collect() {
+		return collect(solver);
+	}
+
+	/**
+	 * Returns the current metrics of a solver.
+	 *
+	 * @param solver the solver
+	 * @return the samples
+	 */
+	public static List<Sample> collect(Green solver) {
+		final List<Sample> samples = new ArrayList<Sample>();
+		final Set<String> covered = new HashSet<String>();
+		String solverName = solver.getSolverName();
+		for (Metrics.Group group : solver.getMetrics().getGroups()) {
+			Map<String, String> labels = labels(solverName, group.getName());
+			Map<String, Metrics.Counter> counters = new LinkedHashMap<String, Metrics.Counter>();
+			for (Metrics.Counter counter : group.getCounters()) {
+				counters.put(counter.getName(), counter);
+				covered.add(group.getName() + "." + counter.getName());
+				samples.add(new Sample(PREFIX + snake(counter.getName()), "_total", Type.COUNTER, labels, counter.get()));
+			}
+			for (Metrics.Gauge gauge : group.getGauges()) {
+				covered.add(group.getName() + "." + gauge.getName());
+				samples.add(new Sample(PREFIX + snake(gauge.getName()), "", Type.GAUGE, labels, gauge.get()));
+			}
+			for (Metrics.Counter counter : counters.values()) {
+				String name = counter.getName();
+				if (name.endsWith("HitCount")) {
+					String prefix = name.substring(0, name.length() - "HitCount".length());
+					Metrics.Counter miss = counters.get(prefix + "MissCount");
+					if (miss != null) {
+						long hits = counter.get();
+						long total = hits + miss.get();
+						samples.add(new Sample(PREFIX + snake(prefix) + "_hit_ratio", "", Type.GAUGE, labels,
+								(total == 0) ? 0.0 : (double) hits / total));
+					}
+				}
+			}
+			for (Metrics.Histogram histogram : group.getHistograms()) {
+				String family = PREFIX + snake(histogram.getName()) + "_seconds";
+				double[] quantiles = { 0.5, 0.99, 0.999 };
+				for (double quantile : quantiles) {
+					Map<String, String> q = new LinkedHashMap<String, String>(labels);
+					q.put("quantile", Double.toString(quantile));
+					samples.add(new Sample(family, "", Type.SUMMARY, q, histogram.getPercentile(quantile) / 1e9));
+				}
+				samples.add(new Sample(family, "_count", Type.SUMMARY, labels, histogram.getCount()));
+				samples.add(new Sample(family, "_sum", Type.SUMMARY, labels, histogram.getSum() / 1e9));
+			}
+		}
+		for (SlowQueries.Entry entry : solver.getSlowQueries().getTop()) {
+			Map<String, String> labels = labels(solverName, SlowQueries.class.getSimpleName());
+			labels.put("service", entry.getServiceName());
+			labels.put("query", SlowQueries.toHex(entry.getHash()));
+			samples.add(new Sample(PREFIX + "top_query_seconds", "", Type.GAUGE, labels, entry.getTime() / 1e9));
+			samples.add(new Sample(PREFIX + "top_query_calls", "", Type.GAUGE, labels, entry.getCount()));
+		}
+		solver.report(new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				Matcher matcher = REPORT_LINE.matcher(message);
+				if (matcher.matches() && covered.add(context + "." + matcher.group(1))) {
+					samples.add(new Sample(PREFIX + "report_" + snake(matcher.group(1)), "", Type.UNKNOWN,
+							labels(solver.getSolverName(), context), Double.parseDouble(matcher.group(2))));
+				}
+			}
+		});
+		return samples;
+	}
+
+	private static Map<String, String> labels(String solverName, String component) {
+		Map<String, String> labels = new LinkedHashMap<String, String>();
+		labels.put("solver", solverName);
+		labels.put("component", component);
+		return labels;
+	}
+
+	/**
+	 * Converts a camel case name to a valid snake case metric name.
+	 */
+	static String snake(String name) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				if ((i > 0) && (s.charAt(s.length() - 1) != '_')) {
+					s.append('_');
+				}
+				s.append(Character.toLowerCase(c));
+			} else if (((c >= 'a') && (c <= 'z')) || ((c >= '0') && (c <= '9'))) {
+				s.append(c);
+			} else if ((s.length() > 0) && (s.charAt(s.length() - 1) != '_')) {
+				s.append('_');
+			}
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Formats samples in the OpenMetrics text format. Samples of the same
+	 * family are grouped under one {@code TYPE} line, in the order in which
+	 * the families first appear.
+	 *
+	 * @param samples the samples
+	 * @return the exposition text, ending with {@code # EOF}
+	 */
+	public static String format(List<Sample> samples) {
+		Map<String, List<Sample>> families = new LinkedHashMap<String, List<Sample>>();
+		for (Sample sample : samples) {
+			List<Sample> family = families.get(sample.family);
+			if (family == null) {
+				family = new ArrayList<Sample>();
+				families.put(sample.family, family);
+			}
+			family.add(sample);
+		}
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, List<Sample>> entry : families.entrySet()) {
+			text.append("# TYPE ").append(entry.getKey()).append(' ').append(entry.getValue().get(0).type).append('\n');
+			for (Sample sample : entry.getValue()) {
+				text.append(sample.getName());
+				if (!sample.labels.isEmpty()) {
+					text.append('{');
+					String separator = "";
+					for (Map.Entry<String, String> label : sample.labels.entrySet()) {
+						text.append(separator).append(label.getKey()).append("=\"");
+						escape(label.getValue(), text);
+						text.append('"');
+						separator = ",";
+					}
+					text.append('}');
+				}
+				text.append(' ').append(formatValue(sample.value)).append('\n');
+			}
+		}
+		return text.append("# EOF\n").toString();
+	}
+
+	private static String formatValue(double value) {
+		if ((value == Math.rint(value)) && (Math.abs(value) < 1e15)) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	private static void escape(String value, StringBuilder text) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\\': text.append("\\\\"); break;
+				case '"': text.append("\\\""); break;
+				case '\n': text.append("\\n"); break;
+				default: text.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Starts serving {@code /metrics} on the loopback interface.
+	 *
+	 * @param port the port, or 0 for any free port
+	 * @throws IOException if the server cannot be started
+	 */
+	public synchronized void start(int port) throws IOException {
+		if (server != null) {
+			return;
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!"GET".equals(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+					byte[] body = format(collect()).getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+					out.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Returns the port on which the endpoint listens.
+	 *
+	 * @return the port, or -1 if the endpoint is not running
+	 */
+	public synchronized int getPort() {
+		return (server == null) ? -1 : server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the endpoint.
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+
+}
@@ -0,0 +1,567 @@
+package za.ac.sun.cs.green.util;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.Recorder;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.parser.klee.Parser;
+import za.ac.sun.cs.green.parser.klee.Scanner;
+import za.ac.sun.cs.green.parser.sexpr.LIAParser;
+import za.ac.sun.cs.green.parser.smtlib2.QueryParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a stream of queries against a configured {@link Green} solver, to
+ * reproduce the performance of a workload offline and to compare pipeline
+ * configurations, stores and task managers. Queries come from a workload log
+ * written by {@link Recorder}, from {@link LIAParser} files (one query per
+ * line), from KLEE query files or from SMT-LIB scripts (see
+ * {@link QueryParser}).
+ * <p>
+ * The queries are issued by a fixed number of threads, optionally at a fixed
+ * overall rate. With a rate, every query has an intended start time and its
+ * latency is measured from that time, so that a pipeline that falls behind
+ * is charged for the queueing delay as well. The result reports the
+ * throughput, the latency percentiles, the number of failed requests, the
+ * cache hit ratio and number of solver calls of every service (from the
+ * change in the solver's {@link Metrics} over the run) and, for recorded
+ * queries, how many results differ from the recorded ones.
+ * <p>
+ * {@link #main(String[])} runs a replay from the command line; by default
+ * the solver uses a {@link za.ac.sun.cs.green.store.memstore.MemStore}, so no
+ * external store is needed.
+ */
+public class Replay {
+
+	/**
+	 * The formats of query files.
+	 */
+	public enum Format {
+		LOG, LIA, KLEE, SMTLIB
+	}
+
+	/**
+	 * One query to replay.
+	 */
+	public static final class Query {
+
+		private final String serviceName;
+
+		private final Expression expression;
+
+		private final Object expected;
+
+		/**
+		 * Creates a query.
+		 *
+		 * @param serviceName the name of the service to request
+		 * @param expression  the expression of the instance
+		 * @param expected    the recorded result, or {@code null} if it is not
+		 *                    known
+		 */
+		public Query(String serviceName, Expression expression, Object expected) {
+			this.serviceName = serviceName;
+			this.expression = expression;
+			this.expected = expected;
+		}
+
+		/**
+		 * Returns the name of the service to request.
+		 *
+		 * @return the service name
+		 */
+		public String getServiceName() {
+			return serviceName;
+		}
+
+		/**
+		 * Returns the expression of the instance.
+		 *
+		 * @return the expression
+		 */
+		public Expression getExpression() {
+			return expression;
+		}
+
+		/**
+		 * Returns the recorded result of the query.
+		 *
+		 * @return the result, or {@code null} if it is not known
+		 */
+		public Object getExpected() {
+			return expected;
+		}
+
+	}
+
+	// ======================================================================
+	//
+	// READING QUERIES
+	//
+	// ======================================================================
+
+	/**
+	 * Reads the queries of a file. For {@link Format#LOG}, the file may also be
+	 * a directory, in which case all of its log files are read in order.
+	 *
+	 * @param format      the format of the file
+	 * @param file        the file
+	 * @param serviceName the service to request, or {@code null} to request
+	 *                    the recorded service of each query in a log (for the
+	 *                    other formats a name is required)
+	 * @return the queries, in order
+	 * @throws IOException if the file cannot be read or parsed
+	 */
+	public static List<Query> read(Format format, File file, String serviceName) throws IOException {
+		if ((serviceName == null) && (format != Format.LOG)) {
+			throw new IllegalArgumentException("a service name is required for " + format);
+		}
+		List<Query> queries = new ArrayList<Query>();
+		switch (format) {
+			case LOG:
+				List<File> files = file.isDirectory() ? logFiles(file) : Collections.singletonList(file);
+				for (File f : files) {
+					Recorder.Reader reader = new Recorder.Reader(f);
+					try {
+						for (Recorder.Record r = reader.next(); r != null; r = reader.next()) {
+							String name = (serviceName == null) ? r.getServiceName() : serviceName;
+							queries.add(new Query(name, r.getExpression(), r.getResult()));
+						}
+					} finally {
+						reader.close();
+					}
+				}
+				break;
+			case LIA:
+				BufferedReader in = new BufferedReader(open(file));
+				try {
+					LIAParser parser = new LIAParser();
+					int lineNumber = 0;
+					for (String line = in.readLine(); line != null; line = in.readLine()) {
+						lineNumber++;
+						if (line.trim().isEmpty()) {
+							continue;
+						}
+						try {
+							queries.add(new Query(serviceName, parser.parse(line.trim()), null));
+						} catch (Exception x) {
+							throw new IOException(file + ":" + lineNumber + ": " + x.getMessage(), x);
+						}
+					}
+				} finally {
+					in.close();
+				}
+				break;
+			case KLEE:
+				Reader kin = open(file);
+				try {
+					Parser parser = new Parser(new Scanner(kin));
+					parser.parse();
+					Expression e = parser.getExpression();
+					if (e != null) {
+						queries.add(new Query(serviceName, e, null));
+					}
+				} catch (za.ac.sun.cs.green.parser.klee.ParseException x) {
+					throw new IOException(file + ": " + x.getMessage(), x);
+				} finally {
+					kin.close();
+				}
+				break;
+			case SMTLIB:
+				Reader sin = open(file);
+				try {
+					for (Expression e : new QueryParser(sin).parse()) {
+						queries.add(new Query(serviceName, e, null));
+					}
+				} catch (za.ac.sun.cs.green.parser.smtlib2.ParseException x) {
+					throw new IOException(file + ": " + x.getMessage(), x);
+				} finally {
+					sin.close();
+				}
+				break;
+			default:
+				break;
+		}
+		return queries;
+	}
+
+	/**
+	 * Returns the workload log files in a directory, whatever their prefix,
+	 * ordered by name.
+	 */
+	private static List<File> logFiles(File directory) {
+		List<File> files = new ArrayList<File>();
+		File[] found = directory.listFiles();
+		if (found != null) {
+			for (File f : found) {
+				if (f.getName().endsWith(Recorder.EXTENSION)) {
+					files.add(f);
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static Reader open(File file) throws IOException {
+		return new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+	}
+
+	// ======================================================================
+	//
+	// REPLAYING
+	//
+	// ======================================================================
+
+	private final Green solver;
+
+	private int concurrency = 1;
+
+	private double rate = 0;
+
+	/**
+	 * Creates a replay against a configured solver.
+	 *
+	 * @param solver the solver
+	 */
+	public Replay(Green solver) {
+		this.solver = solver;
+	}
+
+	/**
+	 * Sets the number of threads that issue queries. The default is 1.
+	 *
+	 * @param concurrency the number of threads
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	/**
+	 * Sets the overall rate at which queries are issued. The default is 0:
+	 * every thread issues its next query as soon as the previous one is done.
+	 *
+	 * @param rate the number of queries per second, or 0 for no limit
+	 */
+	public void setRate(double rate) {
+		this.rate = Math.max(0, rate);
+	}
+
+	/**
+	 * Replays the queries and waits for all of them to complete.
+	 *
+	 * @param queries the queries
+	 * @return the result of the run
+	 */
+	public Result run(final List<Query> queries) {
+		final Metrics.Histogram latency = new Metrics().register("Replay").histogram("latency");
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong mismatches = new AtomicLong();
+		final long interval = (rate > 0) ? (long) (1e9 / rate) : 0;
+		Map<String, Long> before = solver.getMetrics().snapshot();
+		final long origin = System.nanoTime();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < concurrency; t++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = next.getAndIncrement(); i < queries.size(); i = next.getAndIncrement()) {
+						long start = System.nanoTime();
+						if (interval > 0) {
+							long intended = origin + i * interval;
+							while (start < intended) {
+								LockSupport.parkNanos(intended - start);
+								start = System.nanoTime();
+							}
+							start = intended;
+						}
+						Query query = queries.get(i);
+						try {
+							Object result = new Instance(solver, null, query.getExpression()).request(query.getServiceName());
+							Object expected = query.getExpected();
+							if ((expected instanceof Boolean) && !expected.equals(result)) {
+								mismatches.incrementAndGet();
+							}
+						} catch (RuntimeException x) {
+							failures.incrementAndGet();
+						}
+						latency.record(System.nanoTime() - start);
+					}
+				}
+			}, "green-replay-" + t);
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		long elapsed = System.nanoTime() - origin;
+		Map<String, Long> after = solver.getMetrics().snapshot();
+		return new Result(queries.size(), failures.get(), mismatches.get(), elapsed, latency, before, after);
+	}
+
+	/**
+	 * The measurements of one replay.
+	 */
+	public static final class Result {
+
+		private final long count;
+
+		private final long failures;
+
+		private final long mismatches;
+
+		private final long elapsed;
+
+		private final Metrics.Histogram latency;
+
+		private final Map<String, Long> cacheHits = new LinkedHashMap<String, Long>();
+
+		private final Map<String, Long> cacheMisses = new LinkedHashMap<String, Long>();
+
+		private final Map<String, Long> solverCalls = new LinkedHashMap<String, Long>();
+
+		private Result(long count, long failures, long mismatches, long elapsed, Metrics.Histogram latency,
+				Map<String, Long> before, Map<String, Long> after) {
+			this.count = count;
+			this.failures = failures;
+			this.mismatches = mismatches;
+			this.elapsed = elapsed;
+			this.latency = latency;
+			for (Map.Entry<String, Long> entry : after.entrySet()) {
+				String key = entry.getKey();
+				Long previous = before.get(key);
+				long delta = entry.getValue() - ((previous == null) ? 0 : previous);
+				if (key.endsWith(".cacheHitCount")) {
+					cacheHits.put(key.substring(0, key.length() - ".cacheHitCount".length()), delta);
+				} else if (key.endsWith(".cacheMissCount")) {
+					cacheMisses.put(key.substring(0, key.length() - ".cacheMissCount".length()), delta);
+				} else if (key.endsWith(".solve.count")) {
+					solverCalls.put(key.substring(0, key.length() - ".solve.count".length()), delta);
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of queries replayed.
+		 *
+		 * @return the number of queries
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the number of requests that threw an exception.
+		 *
+		 * @return the number of failed requests
+		 */
+		public long getFailureCount() {
+			return failures;
+		}
+
+		/**
+		 * Returns the number of requests whose verdict differs from the
+		 * recorded one.
+		 *
+		 * @return the number of mismatched verdicts
+		 */
+		public long getMismatchCount() {
+			return mismatches;
+		}
+
+		/**
+		 * Returns the duration of the run.
+		 *
+		 * @return the elapsed time in nanoseconds
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * Returns the number of queries completed per second.
+		 *
+		 * @return the throughput
+		 */
+		public double getThroughput() {
+			return (elapsed == 0) ? 0 : count * 1e9 / elapsed;
+		}
+
+		/**
+		 * Returns a percentile of the latency of the requests.
+		 *
+		 * @param fraction the percentile as a fraction, such as 0.99
+		 * @return the latency in nanoseconds
+		 */
+		public long getLatencyPercentile(double fraction) {
+			return latency.getPercentile(fraction);
+		}
+
+		/**
+		 * Returns the cache hit ratio of a service during the run.
+		 *
+		 * @param group the name of the metrics group of the service
+		 * @return the ratio of hits to lookups, or 0 if there were no lookups
+		 */
+		public double getCacheHitRatio(String group) {
+			Long hits = cacheHits.get(group);
+			Long misses = cacheMisses.get(group);
+			long h = (hits == null) ? 0 : hits;
+			long total = h + ((misses == null) ? 0 : misses);
+			return (total == 0) ? 0 : (double) h / total;
+		}
+
+		/**
+		 * Returns the number of solver calls of each service during the run.
+		 *
+		 * @return the number of calls for each metrics group that calls a
+		 * solver
+		 */
+		public Map<String, Long> getSolverCalls() {
+			return Collections.unmodifiableMap(solverCalls);
+		}
+
+		/**
+		 * Reports the measurements of the run.
+		 *
+		 * @param reporter the reporter
+		 */
+		public void report(Reporter reporter) {
+			String context = Replay.class.getSimpleName();
+			reporter.report(context, "queryCount = " + count);
+			reporter.report(context, "failureCount = " + failures);
+			reporter.report(context, "mismatchCount = " + mismatches);
+			reporter.report(context, "elapsedTime = " + elapsed);
+			reporter.report(context, String.format("throughput = %.1f", getThroughput()));
+			reporter.report(context, "latency.p50 = " + latency.getPercentile(0.50));
+			reporter.report(context, "latency.p90 = " + latency.getPercentile(0.90));
+			reporter.report(context, "latency.p99 = " + latency.getPercentile(0.99));
+			reporter.report(context, "latency.p999 = " + latency.getPercentile(0.999));
+			reporter.report(context, "latency.max = " + latency.getMax());
+			for (String group : cacheHits.keySet()) {
+				if (cacheHits.get(group) + cacheMisses.getOrDefault(group, 0L) > 0) {
+					reporter.report(group, String.format("cacheHitRatio = %.4f", getCacheHitRatio(group)));
+				}
+			}
+			for (Map.Entry<String, Long> entry : solverCalls.entrySet()) {
+				if (entry.getValue() > 0) {
+					reporter.report(entry.getKey(), "solverCalls = " + entry.getValue());
+				}
+			}
+		}
+
+	}
+
+	// ======================================================================
+	//
+	// COMMAND LINE
+	//
+	// ======================================================================
+
+	private static void usage() {
+		System.err.println("usage: Replay [options] file...");
+		System.err.println("  -config <file>        Green properties of the pipeline to replay against");
+		System.err.println("  -set <key>=<value>    override one property");
+		System.err.println("  -format log|lia|klee|smtlib   format of the files (default log)");
+		System.err.println("  -service <name>       service to request (default: the recorded one)");
+		System.err.println("  -concurrency <n>      number of threads (default 1)");
+		System.err.println("  -rate <qps>           overall rate of queries (default: no limit)");
+		System.exit(1);
+	}
+
+	/**
+	 * Replays query files from the command line and reports the results on
+	 * standard output. Run without arguments for the options.
+	 *
+	 * @param args the command-line arguments
+	 * @throws IOException if a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("green.store", "za.ac.sun.cs.green.store.memstore.MemStore");
+		properties.setProperty(Configuration.JMX_PROPERTY, "false");
+		Format format = Format.LOG;
+		String serviceName = null;
+		int concurrency = 1;
+		double rate = 0;
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.startsWith("-") && (i + 1 == args.length)) {
+				usage();
+			} else if (arg.equals("-config")) {
+				InputStreamReader in = new InputStreamReader(new FileInputStream(args[++i]), StandardCharsets.UTF_8);
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+			} else if (arg.equals("-set")) {
+				String[] kv = args[++i].split("=", 2);
+				if (kv.length != 2) {
+					usage();
+				}
+				properties.setProperty(kv[0], kv[1]);
+			} else if (arg.equals("-format")) {
+				format = Format.valueOf(args[++i].toUpperCase());
+			} else if (arg.equals("-service")) {
+				serviceName = args[++i];
+			} else if (arg.equals("-concurrency")) {
+				concurrency = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-rate")) {
+				rate = Double.parseDouble(args[++i]);
+			} else if (arg.startsWith("-")) {
+				usage();
+			} else {
+				files.add(new File(arg));
+			}
+		}
+		if (files.isEmpty()) {
+			usage();
+		}
+		// Recording the replay itself is never wanted
+		properties.remove(Configuration.RECORDER_DIRECTORY_PROPERTY);
+		Green solver = new Green("Replay");
+		new Configuration(solver, properties).configure();
+		List<Query> queries = new ArrayList<Query>();
+		for (File file : files) {
+			queries.addAll(read(format, file, serviceName));
+		}
+		Replay replay = new Replay(solver);
+		replay.setConcurrency(concurrency);
+		replay.setRate(rate);
+		Result result = replay.run(queries);
+		Reporter reporter = new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				System.out.println(context + " :: " + message);
+			}
+		};
+		result.report(reporter);
+		solver.shutdown();
+	}
+
+}
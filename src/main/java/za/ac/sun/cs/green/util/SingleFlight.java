@@ -0,0 +1,144 @@
+package za.ac.sun.cs.green.util;
+
+import za.ac.sun.cs.green.Deadline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same key. The first thread to ask
+ * for a key runs the computation; threads that ask for the same key while the
+ * computation is in flight wait for its result instead of repeating it.
+ * <p>
+ * Once the computation finishes the key is forgotten: later requests are
+ * expected to find the result in the store. A request that misses in the store
+ * just before the result is stored may therefore still compute it again, which
+ * is harmless.
+ *
+ * @param <V> the type of the results
+ */
+public class SingleFlight<V> {
+
+	/**
+	 * Interval at which waiting threads check their deadline.
+	 */
+	private static final long POLL_MILLIS = 50;
+
+	private final ConcurrentMap<String, CompletableFuture<V>> pending = new ConcurrentHashMap<String, CompletableFuture<V>>();
+
+	private final AtomicInteger coalescedCount = new AtomicInteger();
+
+	/**
+	 * Returns the result of the computation for the given key, either by
+	 * running it or by waiting for a concurrent run of it. A {@code null}
+	 * result is not shared: the computation may have been interrupted because
+	 * the request that ran it was cancelled, so waiting threads run the
+	 * computation again. If a waiting thread is interrupted, or if the
+	 * computation failed with a checked exception, {@code null} is returned,
+	 * which services treat as "not solved".
+	 *
+	 * @param key         the key of the computation
+	 * @param computation the computation
+	 * @return the result of the computation
+	 */
+	public V execute(String key, Supplier<V> computation) {
+		return execute(key, computation, null);
+	}
+
+	/**
+	 * Returns the result of the computation for the given key, as
+	 * {@link #execute(String, Supplier)} does, except that a thread waits for
+	 * a concurrent run only until its own deadline is done, in which case
+	 * {@code null} is returned.
+	 *
+	 * @param key         the key of the computation
+	 * @param computation the computation
+	 * @param deadline    the deadline of the calling request, or {@code null}
+	 * @return the result of the computation
+	 */
+	public V execute(String key, Supplier<V> computation, Deadline deadline) {
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> running;
+		while ((running = pending.putIfAbsent(key, future)) != null) {
+			try {
+				V result = await(running, deadline);
+				if (result != null) {
+					coalescedCount.incrementAndGet();
+					return result;
+				} else if ((deadline != null) && deadline.isDone()) {
+					return null;
+				}
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException x) {
+				if (x.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) x.getCause();
+				}
+				return null;
+			}
+		}
+		// The key is released before the future is completed, so that threads
+		// that retry after a null result do not find the same future again
+		try {
+			V result = computation.get();
+			pending.remove(key, future);
+			future.complete(result);
+			return result;
+		} catch (RuntimeException x) {
+			pending.remove(key, future);
+			future.completeExceptionally(x);
+			throw x;
+		} catch (Error x) {
+			pending.remove(key, future);
+			future.completeExceptionally(x);
+			throw x;
+		}
+	}
+
+	/**
+	 * Waits for a running computation, but no longer than the deadline
+	 * allows. A cancelled deadline is noticed within {@link #POLL_MILLIS}
+	 * milliseconds.
+	 */
+	private V await(CompletableFuture<V> running, Deadline deadline) throws InterruptedException, ExecutionException {
+		if (deadline == null) {
+			return running.get();
+		}
+		while (!deadline.isDone()) {
+			long wait = Math.min(POLL_MILLIS, Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)));
+			try {
+				return running.get(wait, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException x) {
+				// check the deadline again
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of requests that waited for a concurrent computation
+	 * instead of running their own.
+	 *
+	 * @return the number of coalesced requests
+	 */
+	public int getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * Returns the number of computations currently in flight.
+	 *
+	 * @return the number of pending computations
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+}
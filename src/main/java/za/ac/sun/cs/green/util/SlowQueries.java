@@ -0,0 +1,462 @@
+package za.ac.sun.cs.green.util;
+
+import org.apache.logging.log4j.Logger;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.parser.smtlib2.QueryPrinter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the queries that use up solver time. Every call to a decision
+ * procedure is recorded with the service that made it, the query, the time
+ * it took and its verdict.
+ * <p>
+ * The queries that took the most time in total are tracked in a
+ * space-saving sketch of a fixed capacity, keyed by a 64-bit hash of the
+ * canonical form of the query and the name of the service. When a query
+ * that is not tracked arrives at a full sketch, the tracked query with the
+ * least time is replaced, and the new query inherits that time as its
+ * error. The time of a tracked query therefore overestimates its true time
+ * by at most its error, and every query whose true time exceeds the total
+ * time divided by the capacity is tracked. Calls to tracked queries only
+ * update atomic counters; only replacements take a lock.
+ * <p>
+ * A call that takes longer than the threshold is a slow query: it is
+ * counted, and the query is written as an SMT-LIB script (see
+ * {@link QueryPrinter}), either to the log or, if one is set, appended to a
+ * slow-query file that the SMT-LIB format of {@link Replay} can read back.
+ */
+public final class SlowQueries {
+
+	/**
+	 * The default number of queries that are tracked.
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
+
+	/**
+	 * The length to which expressions are shortened in reports.
+	 */
+	private static final int REPORT_LENGTH = 80;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * The key of a tracked query.
+	 */
+	private static final class Key {
+
+		private final String serviceName;
+
+		private final long hash;
+
+		Key(String serviceName, long hash) {
+			this.serviceName = serviceName;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			return (hash == key.hash) && serviceName.equals(key.serviceName);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ (hash >>> 32)) ^ serviceName.hashCode();
+		}
+
+	}
+
+	/**
+	 * A tracked query.
+	 */
+	public static final class Entry {
+
+		private final String serviceName;
+
+		private final long hash;
+
+		private final Expression expression;
+
+		private final long error;
+
+		private final AtomicLong time;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong maxTime = new AtomicLong();
+
+		private volatile String verdict = null;
+
+		Entry(String serviceName, long hash, Expression expression, long error) {
+			this.serviceName = serviceName;
+			this.hash = hash;
+			this.expression = expression;
+			this.error = error;
+			time = new AtomicLong(error);
+		}
+
+		void add(long nanos, String verdict) {
+			time.addAndGet(nanos);
+			count.incrementAndGet();
+			long max = maxTime.get();
+			while ((nanos > max) && !maxTime.compareAndSet(max, nanos)) {
+				max = maxTime.get();
+			}
+			this.verdict = verdict;
+		}
+
+		/**
+		 * Returns the name of the service that called the decision procedure.
+		 *
+		 * @return the service name
+		 */
+		public String getServiceName() {
+			return serviceName;
+		}
+
+		/**
+		 * Returns the hash of the canonical form of the query.
+		 *
+		 * @return the hash
+		 */
+		public long getHash() {
+			return hash;
+		}
+
+		/**
+		 * Returns the query, as it was first recorded.
+		 *
+		 * @return the query
+		 */
+		public Expression getExpression() {
+			return expression;
+		}
+
+		/**
+		 * Returns the total solver time of the query, in nanoseconds,
+		 * including the error.
+		 *
+		 * @return the total time
+		 */
+		public long getTime() {
+			return time.get();
+		}
+
+		/**
+		 * Returns the most by which {@link #getTime()} overestimates the true
+		 * time: the time of the query that this one replaced.
+		 *
+		 * @return the error, in nanoseconds
+		 */
+		public long getError() {
+			return error;
+		}
+
+		/**
+		 * Returns the number of calls since the query is tracked.
+		 *
+		 * @return the number of calls
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Returns the longest call, in nanoseconds.
+		 *
+		 * @return the longest call
+		 */
+		public long getMaxTime() {
+			return maxTime.get();
+		}
+
+		/**
+		 * Returns the verdict of the last call: {@code sat}, {@code unsat},
+		 * {@code unknown}, or the result for services that do not decide
+		 * satisfiability.
+		 *
+		 * @return the verdict
+		 */
+		public String getVerdict() {
+			return verdict;
+		}
+
+	}
+
+	private final Logger log;
+
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+	private final Metrics.Counter slowQueryCount;
+
+	private volatile int capacity = DEFAULT_CAPACITY;
+
+	private volatile long threshold = 0;
+
+	private File logFile = null;
+
+	/**
+	 * Serialises the appends to the slow query file.
+	 */
+	private final Object fileLock = new Object();
+
+	/**
+	 * Creates a tracker that reports slow queries to the given log and
+	 * counts them in the given metrics group.
+	 *
+	 * @param log     the log
+	 * @param metrics the metrics group of the tracker
+	 */
+	public SlowQueries(Logger log, Metrics.Group metrics) {
+		this.log = log;
+		slowQueryCount = metrics.counter("slowQueryCount");
+		metrics.gauge("trackedQueryCount", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return entries.size();
+			}
+		});
+	}
+
+	/**
+	 * Sets the number of queries that are tracked. If the capacity shrinks,
+	 * the queries with the least time are forgotten as new queries arrive.
+	 *
+	 * @param capacity the number of queries, or 0 to track none
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(0, capacity);
+		if (capacity <= 0) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of queries that are tracked.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the time from which a call is a slow query.
+	 *
+	 * @param millis the threshold in milliseconds, or 0 to log no queries
+	 */
+	public void setThreshold(long millis) {
+		threshold = Math.max(0, millis) * 1000000L;
+	}
+
+	/**
+	 * Returns the time from which a call is a slow query.
+	 *
+	 * @return the threshold in milliseconds, or 0 if no queries are logged
+	 */
+	public long getThreshold() {
+		return threshold / 1000000L;
+	}
+
+	/**
+	 * Appends slow queries to a file instead of writing them to the log.
+	 *
+	 * @param file the file, or {@code null} to write slow queries to the log
+	 */
+	public void setLogFile(File file) {
+		synchronized (fileLock) {
+			logFile = file;
+		}
+	}
+
+	/**
+	 * Returns the number of slow queries so far.
+	 *
+	 * @return the number of slow queries
+	 */
+	public long getSlowQueryCount() {
+		return slowQueryCount.get();
+	}
+
+	/**
+	 * Records a call to a decision procedure.
+	 *
+	 * @param serviceName the name of the service that made the call
+	 * @param expression  the canonical query
+	 * @param nanos       the time of the call, in nanoseconds
+	 * @param result      the result of the call
+	 */
+	public void record(String serviceName, Expression expression, long nanos, Object result) {
+		int n = capacity;
+		long t = threshold;
+		if ((n == 0) && (t == 0)) {
+			return;
+		}
+		String verdict = verdict(result);
+		long hash = hash(expression.getCachedString());
+		if (n > 0) {
+			Key key = new Key(serviceName, hash);
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = insert(key, expression, n);
+			}
+			entry.add(nanos, verdict);
+		}
+		if ((t > 0) && (nanos >= t)) {
+			slowQueryCount.increment();
+			logSlowQuery(serviceName, hash, expression, nanos, verdict);
+		}
+	}
+
+	private synchronized Entry insert(Key key, Expression expression, int n) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		long error = 0;
+		while (entries.size() >= n) {
+			Entry min = null;
+			for (Entry e : entries.values()) {
+				if ((min == null) || (e.getTime() < min.getTime())) {
+					min = e;
+				}
+			}
+			entries.remove(new Key(min.serviceName, min.hash));
+			error = min.getTime();
+		}
+		entry = new Entry(key.serviceName, key.hash, expression, error);
+		entries.put(key, entry);
+		return entry;
+	}
+
+	private void logSlowQuery(String serviceName, long hash, Expression expression, long nanos, String verdict) {
+		String header = "slow query " + toHex(hash) + " in " + serviceName + ": " + (nanos / 1000000L) + " ms, " + verdict;
+		String script = QueryPrinter.print(expression);
+		synchronized (fileLock) {
+			if (logFile != null) {
+				try {
+					Writer writer = new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8);
+					try {
+						writer.write("; " + header + "\n(reset)\n" + script);
+					} finally {
+						writer.close();
+					}
+					log.warn(header);
+					return;
+				} catch (IOException x) {
+					log.warn("could not write to the slow query file " + logFile, x);
+				}
+			}
+		}
+		log.warn(header + "\n" + script);
+	}
+
+	/**
+	 * Returns the tracked queries, the one with the most time first.
+	 *
+	 * @return the tracked queries
+	 */
+	public List<Entry> getTop() {
+		List<Entry> top = new ArrayList<Entry>(entries.values());
+		Collections.sort(top, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return Long.compare(e2.getTime(), e1.getTime());
+			}
+		});
+		return top;
+	}
+
+	/**
+	 * Forgets the tracked queries.
+	 */
+	public void reset() {
+		entries.clear();
+	}
+
+	/**
+	 * Reports the number of slow queries and the tracked queries, the one
+	 * with the most time first.
+	 *
+	 * @param reporter the mechanism through which reporting is done
+	 */
+	public void report(Reporter reporter) {
+		String context = getClass().getSimpleName();
+		reporter.report(context, "slowQueryCount = " + slowQueryCount.get());
+		int rank = 1;
+		for (Entry entry : getTop()) {
+			String e = entry.getExpression().getCachedString();
+			if (e.length() > REPORT_LENGTH) {
+				e = e.substring(0, REPORT_LENGTH) + "...";
+			}
+			reporter.report(context, "top" + rank + " = " + toHex(entry.getHash()) + " " + entry.getServiceName()
+					+ " time=" + (entry.getTime() / 1000000L) + "ms error=" + (entry.getError() / 1000000L)
+					+ "ms calls=" + entry.getCount() + " max=" + (entry.getMaxTime() / 1000000L)
+					+ "ms verdict=" + entry.getVerdict() + " " + e);
+			rank++;
+		}
+	}
+
+	/**
+	 * Returns the verdict of a result.
+	 */
+	private static String verdict(Object result) {
+		if (result == null) {
+			return "unknown";
+		} else if (result instanceof Boolean) {
+			return ((Boolean) result) ? "sat" : "unsat";
+		} else if (result instanceof Map) {
+			return "sat";
+		}
+		String s = result.toString();
+		return (s.length() > 32) ? s.substring(0, 32) + "..." : s;
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of the canonical form of a query.
+	 *
+	 * @param query the canonical string of the query
+	 * @return the hash
+	 */
+	public static long hash(String query) {
+		long h = FNV_OFFSET;
+		for (int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			h = (h ^ (c & 0xff)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a hash as 16 hexadecimal digits.
+	 *
+	 * @param hash the hash
+	 * @return the digits
+	 */
+	public static String toHex(long hash) {
+		String s = Long.toHexString(hash);
+		return "0000000000000000".substring(s.length()) + s;
+	}
+
+}
@@ -0,0 +1,232 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.PassThroughService;
+import za.ac.sun.cs.green.store.BasicStore;
+import za.ac.sun.cs.green.taskmanager.ParallelTaskManager;
+import za.ac.sun.cs.green.taskmanager.SerialTaskManager;
+import za.ac.sun.cs.green.taskmanager.TaskManager;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchTest {
+
+	/**
+	 * A store that counts how it is accessed.
+	 */
+	private static class CountingStore extends BasicStore {
+
+		private final Map<String, Object> db = new HashMap<String, Object>();
+
+		private int getCount = 0;
+
+		private int getAllCount = 0;
+
+		private int putCount = 0;
+
+		CountingStore(Green solver) {
+			super(solver);
+		}
+
+		@Override
+		public void report(Reporter reporter) {
+		}
+
+		@Override
+		public synchronized Object get(String key) {
+			getCount++;
+			return db.get(key);
+		}
+
+		@Override
+		public synchronized Map<String, Object> getAll(Collection<String> keys) {
+			getAllCount++;
+			Map<String, Object> values = new HashMap<String, Object>();
+			for (String key : keys) {
+				if (db.containsKey(key)) {
+					values.put(key, db.get(key));
+				}
+			}
+			return values;
+		}
+
+		@Override
+		public synchronized void put(String key, Serializable value) {
+			putCount++;
+			db.put(key, value);
+		}
+
+		@Override
+		public void flushAll() {
+		}
+
+		@Override
+		public synchronized void clear() {
+			db.clear();
+		}
+
+		@Override
+		public boolean isSet() {
+			return true;
+		}
+
+		@Override
+		public synchronized Set<String> keySet(String pattern) {
+			return db.keySet();
+		}
+
+	}
+
+	private static Green createSolver(Class<? extends TaskManager> taskManager, CountingStore[] store) {
+		return createSolver(taskManager, store, "(factor (canonize enumerate))");
+	}
+
+	private static Green createSolver(Class<? extends TaskManager> taskManager, CountingStore[] store, String plan) {
+		Green solver = new Green();
+		store[0] = new CountingStore(solver);
+		solver.setStore(store[0]);
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", taskManager.getCanonicalName());
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", plan);
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.enumerate",
+				"za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		props.setProperty("green.service.sat.pass",
+				"za.ac.sun.cs.green.service.sink.PassThroughService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	/**
+	 * Builds the conjunction of {@code n} independent factors
+	 * {@code x_i >= i}. If {@code bad} is non-negative, factor {@code bad} is
+	 * made unsatisfiable. Factors with the same index have the same canonical
+	 * form, whatever the prefix.
+	 */
+	private static Expression factors(String prefix, int n, int bad) {
+		Expression e = null;
+		for (int i = 0; i < n; i++) {
+			IntVariable v = new IntVariable(prefix + i, 0, 9);
+			int bound = (i == bad) ? 10 : i;
+			Expression f = new Operation(Operation.Operator.GE, v, new IntConstant(bound));
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	private static List<Instance> createInstances(Green solver, int count) {
+		List<Instance> instances = new ArrayList<Instance>();
+		for (int i = 0; i < count; i++) {
+			instances.add(new Instance(solver, null, factors("b" + i + "_", 4, (i % 3 == 0) ? i % 4 : -1)));
+		}
+		return instances;
+	}
+
+	private static void check(Class<? extends TaskManager> taskManager) {
+		CountingStore[] store = new CountingStore[1];
+		Green solver = createSolver(taskManager, store);
+		try {
+			List<Object> results = solver.handleRequests("sat", createInstances(solver, 12));
+			assertEquals(12, results.size());
+			for (int i = 0; i < 12; i++) {
+				assertEquals(i % 3 != 0, results.get(i));
+			}
+			// One bulk lookup, no individual lookups, and every distinct
+			// canonical factor (four satisfiable, four unsatisfiable) at most
+			// solved once
+			assertEquals(1, store[0].getAllCount);
+			assertEquals(0, store[0].getCount);
+			int puts = store[0].putCount;
+			assertEquals(true, puts <= 8);
+
+			// A second batch is answered from the store
+			results = solver.handleRequests("sat", createInstances(solver, 12));
+			for (int i = 0; i < 12; i++) {
+				assertEquals(i % 3 != 0, results.get(i));
+			}
+			assertEquals(2, store[0].getAllCount);
+			assertEquals(0, store[0].getCount);
+			assertEquals(puts, store[0].putCount);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test01() {
+		check(SerialTaskManager.class);
+	}
+
+	@Test
+	public void test02() {
+		check(ParallelTaskManager.class);
+	}
+
+	@Test
+	public void test03() {
+		CountingStore[] store = new CountingStore[1];
+		Green solver = createSolver(SerialTaskManager.class, store);
+		try {
+			Expression e = factors("c", 3, -1);
+			Object single = new Instance(solver, null, e).request("sat");
+			List<Instance> instances = new ArrayList<Instance>();
+			instances.add(new Instance(solver, null, e));
+			instances.add(new Instance(solver, null, e));
+			List<Object> results = solver.handleRequests("sat", instances);
+			assertEquals(single, results.get(0));
+			assertEquals(single, results.get(1));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	/**
+	 * Checks that an intermediate service that does not cache its
+	 * sub-instances processes every factor of the batch once.
+	 */
+	private static void checkSingleProcessing(Class<? extends TaskManager> taskManager) {
+		CountingStore[] store = new CountingStore[1];
+		Green solver = createSolver(taskManager, store, "(factor (pass (canonize enumerate)))");
+		try {
+			PassThroughService.count.set(0);
+			List<Object> results = solver.handleRequests("sat", createInstances(solver, 12));
+			for (int i = 0; i < 12; i++) {
+				assertEquals(i % 3 != 0, results.get(i));
+			}
+			assertEquals(48, PassThroughService.count.get());
+			assertEquals(true, store[0].putCount <= 8);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test04() {
+		checkSingleProcessing(SerialTaskManager.class);
+	}
+
+	@Test
+	public void test05() {
+		checkSingleProcessing(ParallelTaskManager.class);
+	}
+
+}
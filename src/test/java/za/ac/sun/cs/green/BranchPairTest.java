@@ -0,0 +1,164 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.service.sink.EnumerateModelService;
+import za.ac.sun.cs.green.service.sink.RecordingSATService;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BranchPairTest {
+
+	private static final IntVariable X = new IntVariable("x", 0, 9);
+
+	private static final IntVariable Y = new IntVariable("y", 0, 9);
+
+	private static Green createSolver(String service, String sink) {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.services", service);
+		props.setProperty("green.service." + service, "(sink)");
+		props.setProperty("green.service." + service + ".sink", sink);
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static Expression op(Operation.Operator op, Expression l, int r) {
+		return new Operation(op, l, new IntConstant(r));
+	}
+
+	@Test
+	public void testBothFeasible() {
+		Green solver = createSolver("model", "za.ac.sun.cs.green.service.sink.EnumerateModelService");
+		EnumerateModelService.reset();
+		Instance prefix = new Instance(solver, null, op(Operation.Operator.GT, X, 2));
+		BranchPair pair = prefix.requestBranches("model", op(Operation.Operator.LT, X, 5));
+		assertEquals(Boolean.TRUE, pair.isSatisfiable(true));
+		assertEquals(Boolean.TRUE, pair.isSatisfiable(false));
+		assertEquals(2, pair.getSolverRequestCount());
+		assertEquals(2, EnumerateModelService.reset());
+		assertTrue(BranchPair.evaluate(pair.getInstance(true).getFullExpression(), pair.getModel(true)));
+		assertTrue(BranchPair.evaluate(pair.getInstance(false).getFullExpression(), pair.getModel(false)));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testModelReused() {
+		Green solver = createSolver("model", "za.ac.sun.cs.green.service.sink.EnumerateModelService");
+		Instance prefix = new Instance(solver, null, op(Operation.Operator.GT, X, 2));
+		BranchPair first = prefix.requestBranches("model", op(Operation.Operator.LT, X, 5));
+		Instance taken = first.getInstance(true);
+		Map<Variable, Object> model = first.getModel(true);
+		EnumerateModelService.reset();
+		// The model of the taken branch decides the next condition, so only
+		// the other branch is solved
+		int x = ((IntConstant) model.get(X)).getValue();
+		BranchPair second = taken.requestBranches("model", op(Operation.Operator.EQ, X, x));
+		assertTrue(second.isModelReused());
+		assertEquals(1, second.getSolverRequestCount());
+		assertEquals(1, EnumerateModelService.reset());
+		assertEquals(model, second.getModel(true));
+		assertEquals(Boolean.TRUE, second.isSatisfiable(true));
+		assertEquals(Boolean.TRUE, second.isSatisfiable(false));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testInfeasibleBranch() {
+		Green solver = createSolver("sat", "za.ac.sun.cs.green.service.sink.RecordingSATService");
+		Instance prefix = new Instance(solver, null, op(Operation.Operator.GT, X, 2));
+		BranchPair pair = prefix.requestBranches("sat", op(Operation.Operator.GT, X, 1));
+		assertEquals(Boolean.TRUE, pair.isSatisfiable(true));
+		assertEquals(Boolean.FALSE, pair.isSatisfiable(false));
+		assertNull(pair.getModel(false));
+		// Both branches below an infeasible prefix are infeasible
+		RecordingSATService.reset();
+		BranchPair below = pair.getInstance(false).requestBranches("sat", op(Operation.Operator.GT, Y, 1));
+		assertEquals(0, below.getSolverRequestCount());
+		assertEquals(0, RecordingSATService.reset().size());
+		assertEquals(Boolean.FALSE, below.isSatisfiable(true));
+		assertEquals(Boolean.FALSE, below.isSatisfiable(false));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testNullResponse() {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.services", "sat,model");
+		props.setProperty("green.service.sat", "(sink)");
+		props.setProperty("green.service.sat.sink", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		props.setProperty("green.service.model", "(sink)");
+		props.setProperty("green.service.model.sink", "za.ac.sun.cs.green.service.sink.EnumerateModelService");
+		new Configuration(solver, props).configure();
+		// The taken branch is known to be satisfiable, without a model
+		Instance prefix = new Instance(solver, null, op(Operation.Operator.GT, X, 2));
+		Instance taken = prefix.requestBranches("sat", op(Operation.Operator.LT, X, 5)).getInstance(true);
+		// The model service answers null for the infeasible branch, which is
+		// no answer: the other branch is solved rather than assumed feasible
+		EnumerateModelService.reset();
+		BranchPair next = taken.requestBranches("model", op(Operation.Operator.GT, X, 7));
+		assertNull(next.getResponse(true));
+		assertNull(next.isSatisfiable(true));
+		assertEquals(Boolean.TRUE, next.isSatisfiable(false));
+		assertNotNull(next.getModel(false));
+		assertEquals(2, next.getSolverRequestCount());
+		assertEquals(2, EnumerateModelService.reset());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testSatService() {
+		Green solver = createSolver("sat", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		Instance prefix = new Instance(solver, null, op(Operation.Operator.GT, X, 2));
+		BranchPair pair = prefix.requestBranches("sat", op(Operation.Operator.LT, Y, 5));
+		assertEquals(Boolean.TRUE, pair.isSatisfiable(true));
+		assertEquals(Boolean.TRUE, pair.isSatisfiable(false));
+		assertNull(pair.getModel(true));
+		// The prefix is known to be satisfiable: once one branch is found to
+		// be infeasible, the other is not solved
+		BranchPair next = pair.getInstance(true).requestBranches("sat", op(Operation.Operator.GT, Y, 7));
+		assertEquals(Boolean.FALSE, next.isSatisfiable(true));
+		assertEquals(Boolean.TRUE, next.isSatisfiable(false));
+		assertEquals(1, next.getSolverRequestCount());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testEvaluate() {
+		Map<Variable, Object> model = new HashMap<Variable, Object>();
+		model.put(X, new IntConstant(3));
+		Expression e = new Operation(Operation.Operator.AND, op(Operation.Operator.GT, X, 2),
+				new Operation(Operation.Operator.NOT, op(Operation.Operator.EQ, X, 4)));
+		assertEquals(Boolean.TRUE, BranchPair.evaluate(e, model));
+		assertEquals(Boolean.FALSE, BranchPair.evaluate(op(Operation.Operator.LT, X, 3), model));
+		assertNull(BranchPair.evaluate(op(Operation.Operator.LT, Y, 3), model));
+		assertNotNull(BranchPair.evaluate(op(Operation.Operator.LE, new Operation(Operation.Operator.ADD, X, X), 6), model));
+		assertFalse(BranchPair.evaluate(op(Operation.Operator.NE, X, 3), model));
+	}
+
+	@Test
+	public void testNegate() {
+		assertEquals(op(Operation.Operator.GE, X, 3), BranchPair.negate(op(Operation.Operator.LT, X, 3)));
+		assertEquals(op(Operation.Operator.EQ, X, 3), BranchPair.negate(op(Operation.Operator.NE, X, 3)));
+		Expression or = new Operation(Operation.Operator.OR, op(Operation.Operator.LT, X, 3), op(Operation.Operator.GT, Y, 3));
+		Expression not = BranchPair.negate(or);
+		assertEquals(new Operation(Operation.Operator.NOT, or), not);
+		assertEquals(or, BranchPair.negate(not));
+		assertEquals("!(x<3||y>3)", not.getCachedString());
+	}
+
+}
@@ -0,0 +1,157 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.BlockingSATService;
+import za.ac.sun.cs.green.taskmanager.ForkJoinTaskManager;
+import za.ac.sun.cs.green.taskmanager.ParallelTaskManager;
+import za.ac.sun.cs.green.taskmanager.SerialTaskManager;
+import za.ac.sun.cs.green.taskmanager.TaskManager;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlineTest {
+
+	private static Green createSolver(Class<? extends TaskManager> taskManager, String sink) {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", taskManager.getCanonicalName());
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize sink))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.sink", sink);
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static Expression createExpression(String prefix) {
+		IntVariable v = new IntVariable(prefix + "0", 0, 9);
+		IntVariable w = new IntVariable(prefix + "1", 0, 9);
+		Expression e0 = new Operation(Operation.Operator.GE, v, new IntConstant(3));
+		Expression e1 = new Operation(Operation.Operator.LE, w, new IntConstant(5));
+		return new Operation(Operation.Operator.AND, e0, e1);
+	}
+
+	private static void checkTimeout(Class<? extends TaskManager> taskManager) {
+		BlockingSATService.reset();
+		Green solver = createSolver(taskManager, "za.ac.sun.cs.green.service.sink.BlockingSATService");
+		try {
+			long start = System.currentTimeMillis();
+			Object result = new Instance(solver, null, createExpression("a")).request("sat", 200, TimeUnit.MILLISECONDS);
+			assertEquals(Unknown.TIMEOUT, result);
+			assertTrue(System.currentTimeMillis() - start < 5000);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test01() {
+		Deadline deadline = Deadline.after(1, TimeUnit.HOURS);
+		assertTrue(deadline.isBounded());
+		assertFalse(deadline.isDone());
+		assertTrue(deadline.remaining(TimeUnit.MINUTES) > 50);
+		final AtomicInteger runs = new AtomicInteger();
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		};
+		deadline.addListener(listener);
+		deadline.cancel();
+		deadline.cancel();
+		assertEquals(1, runs.get());
+		assertTrue(deadline.isCancelled());
+		assertTrue(deadline.isDone());
+		assertFalse(deadline.isExpired());
+		// Listeners added after cancellation run immediately
+		deadline.addListener(listener);
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void test02() throws Exception {
+		Deadline deadline = Deadline.after(10, TimeUnit.MILLISECONDS);
+		Thread.sleep(20);
+		assertTrue(deadline.isExpired());
+		assertEquals(0, deadline.remaining(TimeUnit.NANOSECONDS));
+		Deadline none = Deadline.none();
+		assertFalse(none.isBounded());
+		assertFalse(none.isDone());
+		assertEquals(Long.MAX_VALUE, none.remaining(TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void test03() {
+		checkTimeout(SerialTaskManager.class);
+	}
+
+	@Test
+	public void test04() {
+		checkTimeout(ParallelTaskManager.class);
+	}
+
+	@Test
+	public void test05() {
+		checkTimeout(ForkJoinTaskManager.class);
+	}
+
+	@Test
+	public void test06() throws Exception {
+		BlockingSATService.reset();
+		Green solver = createSolver(SerialTaskManager.class, "za.ac.sun.cs.green.service.sink.BlockingSATService");
+		try {
+			Instance instance = new Instance(solver, null, createExpression("b"));
+			Deadline deadline = Deadline.none();
+			instance.setDeadline(deadline);
+			CompletableFuture<Object> future = instance.requestAsync("sat");
+			assertTrue(BlockingSATService.started.await(10, TimeUnit.SECONDS));
+			assertTrue(future.cancel(true));
+			assertTrue(deadline.isCancelled());
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test07() {
+		Green solver = createSolver(ParallelTaskManager.class, "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		try {
+			Object result = new Instance(solver, null, createExpression("c")).request("sat", 10, TimeUnit.SECONDS);
+			assertEquals(true, result);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test08() {
+		Green solver = createSolver(SerialTaskManager.class, "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		try {
+			Instance instance = new Instance(solver, null, createExpression("d"));
+			instance.request("sat", 0, TimeUnit.NANOSECONDS);
+			// The expired deadline of the timed request does not carry over
+			assertNull(instance.getDeadline());
+			assertEquals(true, instance.request("sat"));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+}
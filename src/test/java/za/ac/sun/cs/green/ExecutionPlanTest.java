@@ -0,0 +1,87 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.service.canonizer.SATCanonizerService;
+import za.ac.sun.cs.green.service.factorizer.SATFactorizerService;
+import za.ac.sun.cs.green.service.sink.EnumerateSATService;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionPlanTest {
+
+	private static Green createSolver() {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize enumerate))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.enumerate",
+				"za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	@Test
+	public void testStructure() {
+		Green solver = createSolver();
+		ExecutionPlan.Node root = solver.getPlan().getRoot("sat");
+		assertNull(root.getService());
+		assertEquals(1, root.getChildCount());
+		ExecutionPlan.Node factor = root.getChild(0);
+		assertTrue(factor.getService() instanceof SATFactorizerService);
+		assertEquals(1, factor.getChildCount());
+		ExecutionPlan.Node canonize = factor.getChild(0);
+		assertTrue(canonize.getService() instanceof SATCanonizerService);
+		assertEquals(1, canonize.getChildCount());
+		ExecutionPlan.Node enumerate = canonize.getChild(0);
+		assertTrue(enumerate.getService() instanceof EnumerateSATService);
+		assertFalse(enumerate.hasChildren());
+		assertTrue(solver.getPlan().getServiceNames().contains("sat"));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testUnknownName() {
+		Green solver = createSolver();
+		ExecutionPlan.Node root = solver.getPlan().getRoot("nonexistent");
+		assertNull(root.getService());
+		assertFalse(root.hasChildren());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testRegisterInvalidates() {
+		Green solver = createSolver();
+		ExecutionPlan plan = solver.getPlan();
+		assertSame(plan, solver.getPlan());
+		solver.registerService("sat2", new EnumerateSATService(solver));
+		ExecutionPlan newPlan = solver.getPlan();
+		assertNotSame(plan, newPlan);
+		assertFalse(plan.getServiceNames().contains("sat2"));
+		assertEquals(1, newPlan.getRoot("sat2").getChildCount());
+		solver.shutdown();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCycle() {
+		Green solver = new Green();
+		Service a = new EnumerateSATService(solver);
+		Service b = new EnumerateSATService(solver);
+		solver.registerService("cycle", a);
+		solver.registerService(a, b);
+		solver.registerService(b, a);
+		solver.getPlan();
+	}
+
+}
@@ -0,0 +1,112 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class InstanceTest {
+
+	private static Instance createInstance() {
+		IntVariable v = new IntVariable("v", 0, 9);
+		return new Instance(new Green(), null, new Operation(Operation.Operator.EQ, v, new IntConstant(1)));
+	}
+
+	@Test
+	public void testSlotIds() {
+		int s0 = Instance.registerSlot(InstanceTest.class);
+		int s1 = Instance.registerSlot("InstanceTest.key");
+		assertEquals(s0, Instance.registerSlot(InstanceTest.class));
+		assertEquals(s1, Instance.registerSlot("InstanceTest.key"));
+		assertEquals(true, s0 != s1);
+	}
+
+	@Test
+	public void testSlotAndKeyAgree() {
+		Instance instance = createInstance();
+		int slot = Instance.registerSlot(InstanceTest.class);
+		instance.setSlotData(slot, "a");
+		assertEquals("a", instance.getData(InstanceTest.class));
+		instance.setData(InstanceTest.class, "b");
+		assertEquals("b", instance.getSlotData(slot));
+		instance.setSlotData(slot, null);
+		assertNull(instance.getData(InstanceTest.class));
+	}
+
+	@Test
+	public void testUnregisteredKeys() {
+		Instance instance = createInstance();
+		assertNull(instance.getData("InstanceTest.unregistered"));
+		instance.setData("InstanceTest.unregistered", 1);
+		assertEquals(1, instance.getData("InstanceTest.unregistered"));
+		instance.setData("InstanceTest.unregistered", null);
+		assertNull(instance.getData("InstanceTest.unregistered"));
+	}
+
+	@Test
+	public void testKeyRegisteredLater() {
+		Instance instance = createInstance();
+		instance.setData("InstanceTest.later", 1);
+		int slot = Instance.registerSlot("InstanceTest.later");
+		assertEquals(1, instance.getSlotData(slot));
+		assertEquals(1, instance.getData("InstanceTest.later"));
+		instance.setSlotData(slot, 2);
+		assertEquals(2, instance.getData("InstanceTest.later"));
+		instance.setSlotData(slot, null);
+		assertNull(instance.getSlotData(slot));
+		assertNull(instance.getData("InstanceTest.later"));
+	}
+
+	@Test
+	public void testSlotRegisteredAfterFirstUse() {
+		Instance instance = createInstance();
+		int first = Instance.registerSlot("InstanceTest.first");
+		instance.setSlotData(first, 1);
+		// The slots of the instance were created before this one was registered
+		int second = Instance.registerSlot("InstanceTest.second");
+		assertNull(instance.getSlotData(second));
+		instance.setSlotData(second, 2);
+		assertEquals(2, instance.getSlotData(second));
+		assertEquals(2, instance.getData("InstanceTest.second"));
+		assertEquals(1, instance.getSlotData(first));
+		instance.setData("InstanceTest.second", null);
+		assertNull(instance.getSlotData(second));
+	}
+
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+		final Instance instance = createInstance();
+		final int[] slots = new int[8];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = Instance.registerSlot("InstanceTest.concurrent" + i);
+		}
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < slots.length; i++) {
+			final int index = i;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						instance.setSlotData(slots[index], j);
+					}
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		for (int slot : slots) {
+			assertEquals(999, instance.getSlotData(slot));
+		}
+	}
+
+}
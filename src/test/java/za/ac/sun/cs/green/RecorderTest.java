@@ -0,0 +1,206 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.IntegerConstant;
+import za.ac.sun.cs.green.expr.IntegerVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.RealConstant;
+import za.ac.sun.cs.green.expr.RealVariable;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecorderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Green createSolver(File directory, String sink, int fileSize, int files) {
+		Green solver = new Green("RecorderTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		props.setProperty("green.recorder.directory", directory.getPath());
+		props.setProperty("green.recorder.prefix", "test");
+		props.setProperty("green.recorder.file.size", Integer.toString(fileSize));
+		props.setProperty("green.recorder.files", Integer.toString(files));
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(sink)");
+		props.setProperty("green.service.sat.sink", "za.ac.sun.cs.green.service.sink." + sink);
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static List<Recorder.Record> readAll(File directory) throws Exception {
+		List<Recorder.Record> records = new ArrayList<Recorder.Record>();
+		for (File file : Recorder.listFiles(directory, "test")) {
+			Recorder.Reader reader = new Recorder.Reader(file);
+			try {
+				for (Recorder.Record record = reader.next(); record != null; record = reader.next()) {
+					records.add(record);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return records;
+	}
+
+	@Test
+	public void testRecord() throws Exception {
+		File directory = folder.newFolder();
+		Green solver = createSolver(directory, "EnumerateSATService", 1 << 20, 0);
+		Recorder recorder = solver.getRecorder();
+		assertNotNull(recorder);
+		IntVariable x = new IntVariable("x", 0, 99);
+		Instance prefix = new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(3)));
+		Instance instance = prefix.extend(new Operation(Operation.Operator.LT, x, new IntConstant(2)));
+		assertEquals(Boolean.FALSE, instance.request("sat"));
+		assertEquals(Boolean.TRUE, prefix.request("sat"));
+		recorder.flush();
+		assertEquals(2, recorder.getRecordCount());
+		solver.shutdown();
+		List<Recorder.Record> records = readAll(directory);
+		assertEquals(2, records.size());
+		Recorder.Record record = records.get(0);
+		assertEquals("sat", record.getServiceName());
+		assertEquals(instance.getFullExpression().toString(), record.getExpression().toString());
+		assertEquals(Boolean.FALSE, record.getResult());
+		assertTrue(record.getLatency() > 0);
+		assertTrue(record.getTimestamp() > 0);
+		assertTrue(record.getStages().get("EnumerateSATService") > 0);
+		// Both occurrences of x decode to the same variable
+		Operation and = (Operation) record.getExpression();
+		Expression x0 = ((Operation) and.getOperand(0)).getOperand(0);
+		Expression x1 = ((Operation) and.getOperand(1)).getOperand(0);
+		assertSame(x0, x1);
+		assertEquals(Boolean.TRUE, records.get(1).getResult());
+		assertNull(instance.getStages());
+	}
+
+	@Test
+	public void testModelAndConstants() throws Exception {
+		File directory = folder.newFolder();
+		Green solver = createSolver(directory, "EnumerateModelService", 1 << 20, 0);
+		IntVariable x = new IntVariable("x", 0, 9);
+		IntegerVariable y = new IntegerVariable("y", -5L, null, 32);
+		RealVariable z = new RealVariable("z", null, 2.5);
+		Expression e = new Operation(Operation.Operator.AND,
+				new Operation(Operation.Operator.EQ, x, new IntConstant(7)),
+				new Operation(Operation.Operator.AND,
+						new Operation(Operation.Operator.GE, y, new IntegerConstant(-3, 32)),
+						new Operation(Operation.Operator.LE, z, new RealConstant(-1.25))));
+		Instance instance = new Instance(solver, null, new Operation(Operation.Operator.EQ, x, new IntConstant(7)));
+		Object model = instance.request("sat");
+		solver.getRecorder().flush();
+		solver.shutdown();
+		List<Recorder.Record> records = readAll(directory);
+		assertEquals(1, records.size());
+		Object result = records.get(0).getResult();
+		assertEquals(model.toString(), result.toString());
+		@SuppressWarnings("unchecked")
+		Map<Variable, Object> decoded = (Map<Variable, Object>) result;
+		Variable key = decoded.keySet().iterator().next();
+		// The variable of the model is the variable of the expression
+		assertSame(((Operation) records.get(0).getExpression()).getOperand(0), key);
+		// Round trip of the other kinds of expression through a sink
+		solver = createSolver(folder.newFolder("sink"), "SinkService", 1 << 20, 0);
+		new Instance(solver, null, e).request("sat");
+		solver.getRecorder().flush();
+		solver.shutdown();
+		records = readAll(new File(folder.getRoot(), "sink"));
+		Expression decodedExpression = records.get(0).getExpression();
+		assertEquals(e.toString(), decodedExpression.toString());
+		Operation inner = (Operation) ((Operation) decodedExpression).getOperand(1);
+		IntegerVariable y1 = (IntegerVariable) ((Operation) inner.getOperand(0)).getOperand(0);
+		assertEquals(Long.valueOf(-5), y1.getLowerBound());
+		assertNull(y1.getUpperBound());
+		assertEquals(Integer.valueOf(32), y1.getSize());
+		RealVariable z1 = (RealVariable) ((Operation) inner.getOperand(1)).getOperand(0);
+		assertNull(z1.getLowerBound());
+		assertEquals(2.5, z1.getUpperBound(), 0.0);
+	}
+
+	@Test
+	public void testDeepExpression() throws Exception {
+		File directory = folder.newFolder();
+		Green solver = createSolver(directory, "SinkService", 1 << 20, 0);
+		IntVariable x = new IntVariable("x", 0, 99);
+		Instance instance = new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(0)));
+		for (int i = 1; i < 20000; i++) {
+			instance = instance.extend(new Operation(Operation.Operator.GT, x, new IntConstant(i)));
+		}
+		instance.request("sat");
+		solver.getRecorder().flush();
+		solver.shutdown();
+		List<Recorder.Record> records = readAll(directory);
+		assertEquals(1, records.size());
+		Expression e = records.get(0).getExpression();
+		int depth = 0;
+		while (e instanceof Operation && (((Operation) e).getOperator() == Operation.Operator.AND)) {
+			e = ((Operation) e).getOperand(1);
+			depth++;
+		}
+		assertEquals(19999, depth);
+	}
+
+	@Test
+	public void testRotation() throws Exception {
+		File directory = folder.newFolder();
+		Green solver = createSolver(directory, "EnumerateSATService", 1024, 2);
+		Recorder recorder = solver.getRecorder();
+		IntVariable x = new IntVariable("x", 0, 99);
+		Expression last = null;
+		for (int i = 0; i < 100; i++) {
+			last = new Operation(Operation.Operator.GT, x, new IntConstant(i));
+			new Instance(solver, null, last).request("sat");
+		}
+		recorder.flush();
+		assertEquals(100, recorder.getRecordCount());
+		solver.shutdown();
+		List<File> files = Recorder.listFiles(directory, "test");
+		assertEquals(2, files.size());
+		assertEquals(files, recorder.getFiles());
+		assertTrue(files.get(0).getName().compareTo("test-00002.grec") > 0);
+		for (File file : files) {
+			assertTrue(file.length() <= 1024);
+		}
+		List<Recorder.Record> records = readAll(directory);
+		assertTrue(records.size() > 0);
+		// The newest records are kept
+		assertEquals(last.toString(), records.get(records.size() - 1).getExpression().toString());
+	}
+
+	@Test
+	public void testOversizedRecord() throws Exception {
+		File directory = folder.newFolder();
+		Green solver = createSolver(directory, "SinkService", 1024, 0);
+		IntVariable x = new IntVariable("x", 0, 99);
+		Instance instance = new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(0)));
+		for (int i = 1; i < 500; i++) {
+			instance = instance.extend(new Operation(Operation.Operator.GT, x, new IntConstant(i)));
+		}
+		instance.request("sat");
+		Recorder recorder = solver.getRecorder();
+		recorder.flush();
+		assertEquals(0, recorder.getRecordCount());
+		assertEquals(1, recorder.getDroppedCount());
+		solver.shutdown();
+	}
+
+}
@@ -0,0 +1,160 @@
+package za.ac.sun.cs.green;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TraceTest {
+
+	private static Green createSolver(String taskManager, int sampling) {
+		Green solver = new Green("TraceTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		if (taskManager != null) {
+			props.setProperty("green.taskmanager", taskManager);
+		}
+		props.setProperty("green.trace.sampling", Integer.toString(sampling));
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize enumerate))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.enumerate",
+				"za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static Instance createInstance(Green solver, int bound) {
+		IntVariable x = new IntVariable("x", 0, 99);
+		IntVariable y = new IntVariable("y", 0, 99);
+		Operation ox = new Operation(Operation.Operator.GT, x, new IntConstant(bound));
+		Operation oy = new Operation(Operation.Operator.LT, y, new IntConstant(bound));
+		return new Instance(solver, null, new Operation(Operation.Operator.AND, ox, oy));
+	}
+
+	private static List<Trace.Span> find(Trace.Span span, String service, String phase, List<Trace.Span> found) {
+		if (span.getService().equals(service) && span.getPhase().equals(phase)) {
+			found.add(span);
+		}
+		for (Trace.Span child : span.getChildren()) {
+			find(child, service, phase, found);
+		}
+		return found;
+	}
+
+	private static void checkTree(Trace trace, Instance instance) {
+		assertTrue(trace.isFinished());
+		Trace.Span root = trace.getRoot();
+		assertEquals("sat", root.getService());
+		assertEquals("request", root.getPhase());
+		assertEquals(instance.getId(), root.getInstanceId());
+		assertTrue(root.getDuration() >= 0);
+		List<Trace.Span> factor = find(root, "SATFactorizerService", "processRequest", new ArrayList<Trace.Span>());
+		assertEquals(1, factor.size());
+		assertSame(root, factor.get(0).getParent());
+		// Two independent factors, each canonized and solved; the factorizer
+		// also canonizes them while it collects their store keys
+		List<Trace.Span> canonize = find(root, "SATCanonizerService", "processRequest", new ArrayList<Trace.Span>());
+		assertEquals(4, canonize.size());
+		for (Trace.Span span : canonize) {
+			assertSame(factor.get(0), span.getParent());
+		}
+		List<Trace.Span> enumerate = find(root, "EnumerateSATService", "processRequest", new ArrayList<Trace.Span>());
+		assertEquals(2, enumerate.size());
+		for (Trace.Span span : enumerate) {
+			assertTrue(canonize.contains(span.getParent()));
+			assertTrue(span.getDuration() >= 0);
+		}
+		List<Trace.Span> childDone = find(root, "SATCanonizerService", "childDone", new ArrayList<Trace.Span>());
+		assertEquals(2, childDone.size());
+		for (Trace.Span span : childDone) {
+			assertTrue(canonize.contains(span.getParent()));
+			assertTrue(span.getSubInstanceId() != 0);
+		}
+	}
+
+	@Test
+	public void testSerialTree() {
+		Green solver = createSolver(null, 1);
+		Instance instance = createInstance(solver, 5);
+		assertEquals(Boolean.TRUE, instance.request("sat"));
+		Trace trace = instance.getTrace();
+		assertNotNull(trace);
+		checkTree(trace, instance);
+		solver.shutdown();
+	}
+
+	@Test
+	public void testParallelTree() {
+		Green solver = createSolver("za.ac.sun.cs.green.taskmanager.ParallelTaskManager", 1);
+		Instance instance = createInstance(solver, 5);
+		assertEquals(Boolean.TRUE, instance.request("sat"));
+		checkTree(instance.getTrace(), instance);
+		solver.shutdown();
+	}
+
+	@Test
+	public void testSampling() {
+		Green solver = createSolver(null, 2);
+		int traced = 0;
+		for (int i = 1; i <= 6; i++) {
+			Instance instance = createInstance(solver, i);
+			instance.request("sat");
+			if (instance.getTrace() != null) {
+				traced++;
+			}
+		}
+		assertEquals(3, traced);
+		solver.setTraceSampling(0);
+		Instance instance = createInstance(solver, 7);
+		instance.request("sat");
+		assertNull(instance.getTrace());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testExplicitTrace() {
+		Green solver = createSolver(null, 0);
+		Instance instance = createInstance(solver, 5);
+		Trace trace = new Trace("sat", instance);
+		instance.setTrace(trace);
+		instance.request("sat");
+		assertSame(trace, instance.getTrace());
+		assertTrue(trace.isFinished());
+		assertFalse(trace.getRoot().getChildren().isEmpty());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testExport() {
+		Green solver = createSolver(null, 1);
+		Instance instance = createInstance(solver, 5);
+		instance.request("sat");
+		Trace trace = instance.getTrace();
+		String json = trace.toJson();
+		assertTrue(json.startsWith("{\"service\":\"sat\",\"phase\":\"request\",\"instance\":" + instance.getId()));
+		assertTrue(json.contains("\"service\":\"SATCanonizerService\",\"phase\":\"childDone\""));
+		assertTrue(json.contains("\"subInstance\":"));
+		String chrome = trace.toChromeTrace();
+		assertTrue(chrome.startsWith("{\"traceEvents\":[{\"name\":\"sat.request\",\"cat\":\"green\",\"ph\":\"X\""));
+		assertTrue(chrome.contains("\"name\":\"EnumerateSATService.processRequest\""));
+		assertTrue(chrome.endsWith("]}"));
+		solver.shutdown();
+	}
+
+}
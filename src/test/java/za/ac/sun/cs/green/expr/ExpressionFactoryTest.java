@@ -0,0 +1,85 @@
+package za.ac.sun.cs.green.expr;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ExpressionFactoryTest {
+
+	private static Expression build(int n) {
+		IntVariable x = new IntVariable("x", 0, 99);
+		IntVariable y = new IntVariable("y", 0, 99);
+		Expression e = new Operation(Operation.Operator.LT, x, y);
+		for (int i = 0; i < n; i++) {
+			Expression c = new Operation(Operation.Operator.GT, new Operation(Operation.Operator.ADD, x, new IntConstant(i)), y);
+			e = new Operation(Operation.Operator.AND, e, c);
+		}
+		return e;
+	}
+
+	@Test
+	public void testIntern() {
+		ExpressionFactory factory = new ExpressionFactory();
+		Expression e1 = factory.intern(build(3));
+		Expression e2 = factory.intern(build(3));
+		assertSame(e1, e2);
+		assertEquals(build(3), e1);
+		assertEquals(build(3).toString(), e1.toString());
+		// Interning an interned expression does not look at it again
+		long hits = factory.getHitCount();
+		assertSame(e1, factory.intern(e1));
+		assertEquals(hits, factory.getHitCount());
+		// Equal subexpressions are shared
+		Operation o = (Operation) e1;
+		assertSame(factory.operation(Operation.Operator.LT, factory.variable("x", 0, 99), factory.variable("y", 0, 99)),
+				((Operation) ((Operation) ((Operation) o.getOperand(0)).getOperand(0)).getOperand(0)));
+		assertSame(factory.constant(2), factory.intern(new IntConstant(2)));
+		// x, y, 3 constants, 3 sums, 3 comparisons, x<y and 3 conjunctions
+		assertEquals(15, factory.size());
+	}
+
+	@Test
+	public void testLeaves() {
+		ExpressionFactory factory = new ExpressionFactory();
+		// Variables with different bounds are not merged
+		assertNotSame(factory.variable("x", 0, 9), factory.variable("x", 0, 99));
+		// Variables with an original object are kept as they are
+		IntVariable v = new IntVariable("v", new Object(), 0, 9);
+		assertSame(v, factory.intern(v));
+		Operation o = factory.operation(Operation.Operator.EQ, v, factory.constant(1));
+		assertSame(o, factory.operation(Operation.Operator.EQ, v, new IntConstant(1)));
+		assertSame(factory.intern(new RealConstant(0.0)), factory.intern(new RealConstant(-0.0)));
+		RealConstant nan = new RealConstant(Double.NaN);
+		assertSame(nan, factory.intern(nan));
+	}
+
+	@Test
+	public void testInterningIsOptIn() {
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		Green solver = new Green("ExpressionFactoryTest");
+		new Configuration(solver, props).configure();
+		assertEquals(null, solver.getExpressionFactory());
+		Instance i1 = new Instance(solver, null, build(2));
+		Instance i2 = new Instance(solver, null, build(2));
+		assertNotSame(i1.getExpression(), i2.getExpression());
+		solver.shutdown();
+		props.setProperty(Configuration.EXPRESSION_INTERN_PROPERTY, "true");
+		solver = new Green("ExpressionFactoryTest");
+		new Configuration(solver, props).configure();
+		i1 = new Instance(solver, null, build(2));
+		i2 = new Instance(solver, null, build(2));
+		assertSame(i1.getExpression(), i2.getExpression());
+		Expression c = new Operation(Operation.Operator.NE, new IntVariable("x", 0, 99), new IntConstant(7));
+		assertSame(i1.extend(c).getFullExpression(), i2.extend(c).getFullExpression());
+		solver.shutdown();
+	}
+
+}
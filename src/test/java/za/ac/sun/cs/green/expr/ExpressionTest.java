@@ -0,0 +1,176 @@
+package za.ac.sun.cs.green.expr;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionTest {
+
+	private static final Operation.Operator[] OPERATORS = {
+			Operation.Operator.ADD, Operation.Operator.SUB, Operation.Operator.MUL,
+			Operation.Operator.LT, Operation.Operator.EQ, Operation.Operator.AND, Operation.Operator.NEG
+	};
+
+	/**
+	 * The expression {@code ((x+1)<y)&&(r!=0.5)}, serialized with the
+	 * original expression classes.
+	 */
+	private static final String SERIALIZED =
+			"rO0ABXNyACF6YS5hYy5zdW4uY3MuZ3JlZW4uZXhwci5PcGVyYXRpb26tKa9z7YBcyAIABEkACGhhc2hD" +
+			"b2RlWwAIb3BlcmFuZHN0ACVbTHphL2FjL3N1bi9jcy9ncmVlbi9leHByL0V4cHJlc3Npb247TAAIb3Bl" +
+			"cmF0b3J0ACxMemEvYWMvc3VuL2NzL2dyZWVuL2V4cHIvT3BlcmF0aW9uJE9wZXJhdG9yO0wACXN0cmlu" +
+			"Z1JlcHQAEkxqYXZhL2xhbmcvU3RyaW5nO3hyACJ6YS5hYy5zdW4uY3MuZ3JlZW4uZXhwci5FeHByZXNz" +
+			"aW9u0y/8F+Ci7aICAAJEAAhzYXREZWx0YUwACXN0cmluZ1JlcHEAfgADeHAAAAAAAAAAAHD/////dXIA" +
+			"JVtMemEuYWMuc3VuLmNzLmdyZWVuLmV4cHIuRXhwcmVzc2lvbjvOwj9RXxXhlwIAAHhwAAAAAnNxAH4A" +
+			"AAAAAAAAAAAAcP////91cQB+AAYAAAACc3EAfgAAAAAAAAAAAABw/////3VxAH4ABgAAAAJzcgAjemEu" +
+			"YWMuc3VuLmNzLmdyZWVuLmV4cHIuSW50VmFyaWFibGV8Gifwq2kzYAIAAkwACmxvd2VyQm91bmR0ABNM" +
+			"amF2YS9sYW5nL0ludGVnZXI7TAAKdXBwZXJCb3VuZHEAfgANeHIAIHphLmFjLnN1bi5jcy5ncmVlbi5l" +
+			"eHByLlZhcmlhYmxl6DxW8zLMfrICAAJMAARuYW1lcQB+AANMAAhvcmlnaW5hbHQAEkxqYXZhL2xhbmcv" +
+			"T2JqZWN0O3hxAH4ABAAAAAAAAAAAcHQAAXhwc3IAEWphdmEubGFuZy5JbnRlZ2VyEuKgpPeBhzgCAAFJ" +
+			"AAV2YWx1ZXhyABBqYXZhLmxhbmcuTnVtYmVyhqyVHQuU4IsCAAB4cAAAAABzcQB+ABIAAAAJc3IAI3ph" +
+			"LmFjLnN1bi5jcy5ncmVlbi5leHByLkludENvbnN0YW50EOeHKn9FfJ4CAAFJAAV2YWx1ZXhyACB6YS5h" +
+			"Yy5zdW4uY3MuZ3JlZW4uZXhwci5Db25zdGFudLwMFOr2GxDpAgAAeHEAfgAEAAAAAAAAAABwAAAAAX5y" +
+			"ACp6YS5hYy5zdW4uY3MuZ3JlZW4uZXhwci5PcGVyYXRpb24kT3BlcmF0b3IAAAAAAAAAABIAAHhyAA5q" +
+			"YXZhLmxhbmcuRW51bQAAAAAAAAAAEgAAeHB0AANBRERwc3EAfgAMAAAAAAAAAABwdAABeXBxAH4AFHEA" +
+			"fgAVfnEAfgAZdAACTFRwc3EAfgAAAAAAAAAAAABw/////3VxAH4ABgAAAAJzcgAkemEuYWMuc3VuLmNz" +
+			"LmdyZWVuLmV4cHIuUmVhbFZhcmlhYmxlhaf5PVTi5ykCAAJMAApsb3dlckJvdW5kdAASTGphdmEvbGFu" +
+			"Zy9Eb3VibGU7TAAKdXBwZXJCb3VuZHEAfgAkeHEAfgAOAAAAAAAAAABwdAABcnBzcgAQamF2YS5sYW5n" +
+			"LkRvdWJsZYCzwkopa/sEAgABRAAFdmFsdWV4cQB+ABMAAAAAAAAAAHNxAH4AJz/wAAAAAAAAc3IAJHph" +
+			"LmFjLnN1bi5jcy5ncmVlbi5leHByLlJlYWxDb25zdGFudEolnnsQuS1xAgABRAAFdmFsdWV4cQB+ABcA" +
+			"AAAAAAAAAHA/4AAAAAAAAH5xAH4AGXQAAk5FcH5xAH4AGXQAA0FORHA=";
+
+	private static Expression random(Random random, int depth) {
+		if ((depth == 0) || (random.nextInt(4) == 0)) {
+			if (random.nextBoolean()) {
+				return new IntVariable("v" + random.nextInt(12), 0, 99);
+			} else {
+				return new IntConstant(random.nextInt(30) - 10);
+			}
+		}
+		Operation.Operator operator = OPERATORS[random.nextInt(OPERATORS.length)];
+		if (operator.getArity() == 1) {
+			return new Operation(operator, random(random, depth - 1));
+		}
+		return new Operation(operator, random(random, depth - 1), random(random, depth - 1));
+	}
+
+	@Test
+	public void testStructuralHash() {
+		IntVariable x = new IntVariable("x", 0, 9);
+		IntVariable y = new IntVariable("y", 0, 9);
+		Expression xy = new Operation(Operation.Operator.LT, x, y);
+		Expression yx = new Operation(Operation.Operator.LT, y, x);
+		assertNotEquals(xy.getStructuralHash(), yx.getStructuralHash());
+		Expression xx = new Operation(Operation.Operator.ADD, x, x);
+		Expression yy = new Operation(Operation.Operator.ADD, y, y);
+		assertNotEquals(xx.getStructuralHash(), yy.getStructuralHash());
+		// Equal expressions have equal hashes, whatever the bounds of their variables
+		Expression xy2 = new Operation(Operation.Operator.LT, new IntVariable("x", 0, 99), new IntVariable("y", null, null));
+		assertEquals(xy, xy2);
+		assertEquals(xy.getStructuralHash(), xy2.getStructuralHash());
+		assertEquals(xy.hashCode(), xy2.hashCode());
+		assertEquals(new RealConstant(0.0).hashCode(), new RealConstant(-0.0).hashCode());
+		assertEquals(new IntegerConstant(5, 32).hashCode(), new IntegerConstant(5, 64).hashCode());
+	}
+
+	@Test
+	public void testCompareToMatchesCachedString() {
+		Random random = new Random(2024);
+		List<Expression> expressions = new ArrayList<Expression>();
+		for (int i = 0; i < 200; i++) {
+			expressions.add(random(random, 5));
+		}
+		for (Expression e1 : expressions) {
+			for (Expression e2 : expressions) {
+				// Build the strings of fresh copies, so that the comparison
+				// does not use cached strings
+				int expected = Integer.signum(copy(e1).getCachedString().compareTo(copy(e2).getCachedString()));
+				assertEquals(expected, Integer.signum(e1.compareTo(e2)));
+			}
+		}
+		// Cached and uncached strings are compared alike
+		Expression e = expressions.get(0);
+		e.getCachedString();
+		assertEquals(0, e.compareTo(copy(e)));
+		// "-(1)" comes before "1"
+		assertTrue(new Operation(Operation.Operator.NEG, new IntConstant(1)).compareTo(new IntConstant(1)) < 0);
+	}
+
+	@Test
+	public void testCompareToBuildsNoStrings() throws Exception {
+		Field stringRep = Operation.class.getDeclaredField("stringRep");
+		stringRep.setAccessible(true);
+		IntVariable x = new IntVariable("x", 0, 9);
+		Operation sum = new Operation(Operation.Operator.ADD, x, new IntConstant(1));
+		Operation e1 = new Operation(Operation.Operator.LT, sum, new IntConstant(3));
+		Operation e2 = new Operation(Operation.Operator.LT, new Operation(Operation.Operator.ADD, x, new IntConstant(2)),
+				new IntConstant(3));
+		Operation e3 = new Operation(Operation.Operator.NOT, e1);
+		assertTrue(e1.compareTo(e2) < 0);
+		assertTrue(e3.compareTo(e1) < 0);
+		for (Operation o : new Operation[] { sum, e1, e2, e3, (Operation) e2.getOperand(0) }) {
+			assertNull(stringRep.get(o));
+		}
+	}
+
+	@Test
+	public void testSerialForm() throws Exception {
+		IntVariable x = new IntVariable("x", 0, 9);
+		Expression expected = new Operation(Operation.Operator.AND,
+				new Operation(Operation.Operator.LT, new Operation(Operation.Operator.ADD, x, new IntConstant(1)),
+						new IntVariable("y", 0, 9)),
+				new Operation(Operation.Operator.NE, new RealVariable("r", 0.0, 1.0), new RealConstant(0.5)));
+		// Expressions stored by earlier versions can still be read
+		Expression old = read(Base64.getDecoder().decode(SERIALIZED));
+		assertEquals(expected, old);
+		assertEquals(expected.getStructuralHash(), old.getStructuralHash());
+		assertEquals(expected.toString(), old.toString());
+		// The structural hash is recomputed rather than stored
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(expected);
+		out.close();
+		Expression copy = read(bytes.toByteArray());
+		assertEquals(expected, copy);
+		assertEquals(expected.getStructuralHash(), copy.getStructuralHash());
+		assertEquals(expected.hashCode(), copy.hashCode());
+	}
+
+	private static Expression read(byte[] bytes) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (Expression) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Expression copy(Expression expression) {
+		if (expression instanceof Operation) {
+			Operation o = (Operation) expression;
+			Expression[] operands = new Expression[o.getOperatandCount()];
+			for (int i = 0; i < operands.length; i++) {
+				operands[i] = copy(o.getOperand(i));
+			}
+			return new Operation(o.getOperator(), operands);
+		} else if (expression instanceof IntVariable) {
+			IntVariable v = (IntVariable) expression;
+			return new IntVariable(v.getName(), v.getLowerBound(), v.getUpperBound());
+		}
+		return new IntConstant(((IntConstant) expression).getValue());
+	}
+
+}
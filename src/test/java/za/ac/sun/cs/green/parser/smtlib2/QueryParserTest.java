@@ -0,0 +1,71 @@
+package za.ac.sun.cs.green.parser.smtlib2;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryParserTest {
+
+	private static List<Expression> parse(String script) throws Exception {
+		return new QueryParser(new StringReader(script)).parse();
+	}
+
+	@Test
+	public void testSingleQuery() throws Exception {
+		List<Expression> queries = parse("(set-logic QF_LIA) ; a comment\n"
+				+ "(declare-fun x () Int)(declare-const y Int)\n"
+				+ "(assert (and (>= x 0) (<= x 9)))\n"
+				+ "(assert (< (+ x y 1) (- 3)))\n"
+				+ "(check-sat)(exit)");
+		assertEquals(1, queries.size());
+		assertEquals("((x>=0)&&(x<=9))&&(((x+y)+1)<-3)", queries.get(0).toString());
+		Operation and = (Operation) queries.get(0);
+		Expression x0 = ((Operation) ((Operation) and.getOperand(0)).getOperand(0)).getOperand(0);
+		assertTrue(x0 instanceof IntVariable);
+		Expression x1 = ((Operation) ((Operation) ((Operation) and.getOperand(1)).getOperand(0)).getOperand(0)).getOperand(0);
+		assertSame(x0, x1);
+	}
+
+	@Test
+	public void testScopes() throws Exception {
+		List<Expression> queries = parse("(declare-fun x () Int)\n"
+				+ "(assert (> x 1))\n"
+				+ "(push 1)(assert (distinct x 5 6))(check-sat)(pop 1)\n"
+				+ "(push)(assert (not (= x 2)))(check-sat)(pop)\n"
+				+ "(check-sat)(reset-assertions)(check-sat)");
+		assertEquals(4, queries.size());
+		assertEquals("(x>1)&&(((x!=5)&&(x!=6))&&(5!=6))", queries.get(0).toString());
+		assertEquals("(x>1)&&(!(x==2))", queries.get(1).toString());
+		assertEquals("x>1", queries.get(2).toString());
+		assertEquals(Operation.TRUE.toString(), queries.get(3).toString());
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		String[] scripts = {
+				"(assert (> z 1))",
+				"(declare-fun x () Bool)",
+				"(declare-fun x () Int)(assert (ite (> x 1) true false))",
+				"(declare-fun x () Int)(assert (> x 1)",
+				"(pop 1)"
+		};
+		for (String script : scripts) {
+			try {
+				parse(script);
+				fail("parsed " + script);
+			} catch (ParseException x) {
+				// expected
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package za.ac.sun.cs.green.parser.smtlib2;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.RealConstant;
+import za.ac.sun.cs.green.expr.RealVariable;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryPrinterTest {
+
+	private static Expression parse(String script) throws Exception {
+		List<Expression> queries = new QueryParser(new StringReader(script)).parse();
+		assertEquals(1, queries.size());
+		return queries.get(0);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		IntVariable x = new IntVariable("x", 0, 9);
+		RealVariable y = new RealVariable("y", -1.5, 2.5);
+		Expression e = new Operation(Operation.Operator.AND,
+				new Operation(Operation.Operator.NE, x, new IntConstant(-3)),
+				new Operation(Operation.Operator.LT,
+						new Operation(Operation.Operator.ADD, x, y), new RealConstant(-0.25)));
+		String script = QueryPrinter.print(e);
+		assertEquals("(declare-fun x () Int)\n"
+				+ "(assert (>= x 0))\n"
+				+ "(assert (<= x 9))\n"
+				+ "(declare-fun y () Real)\n"
+				+ "(assert (>= y (- 1.5)))\n"
+				+ "(assert (<= y 2.5))\n"
+				+ "(assert (and (distinct x (- 3)) (< (+ (to_real x) y) (- 0.25))))\n"
+				+ "(check-sat)\n", script);
+		// The bounds come first, then the expression
+		Operation parsed = (Operation) parse(script);
+		assertEquals(e.toString(), parsed.getOperand(1).toString());
+		assertEquals("(((x>=0)&&(x<=9))&&(y>=-1.5))&&(y<=2.5)", parsed.getOperand(0).toString());
+	}
+
+	@Test
+	public void testUnsupportedOperator() throws Exception {
+		IntVariable x = new IntVariable("x 1", 0, 9);
+		Expression e = new Operation(Operation.Operator.EQ,
+				new Operation(Operation.Operator.BIT_AND, x, new IntConstant(6)), new IntConstant(2));
+		String script = QueryPrinter.print(e);
+		assertTrue(script.contains("(declare-fun |x 1| () Int)"));
+		assertTrue(script.contains("(assert (= (|BIT_AND| |x 1| 6) 2))"));
+	}
+
+	@Test
+	public void testDeepExpression() throws Exception {
+		IntVariable x = new IntVariable("x", 0, 99);
+		Expression e = new Operation(Operation.Operator.GT, x, new IntConstant(0));
+		for (int i = 1; i < 20000; i++) {
+			e = new Operation(Operation.Operator.AND, new Operation(Operation.Operator.GT, x, new IntConstant(i)), e);
+		}
+		String script = QueryPrinter.print(e);
+		assertTrue(script.endsWith("(> x 0)" + new String(new char[20000]).replace("\0", ")") + "\n(check-sat)\n"));
+	}
+
+}
@@ -363,4 +363,34 @@ public class SATCanonizerServiceTest {
 		check(solver2, o2a, "!(x5!=x5)", "0==1");
 	}
 
+	private static Integer upperBound(Expression expression) {
+		if (expression instanceof IntVariable) {
+			return ((IntVariable) expression).getUpperBound();
+		} else if (expression instanceof Operation) {
+			for (Expression operand : ((Operation) expression).getOperands()) {
+				Integer bound = upperBound(operand);
+				if (bound != null) {
+					return bound;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testReuseRespectsBounds() {
+		// Equal expressions whose variable differs only in its bounds
+		IntVariable narrow = new IntVariable("aa", 0, 9);
+		IntVariable wide = new IntVariable("aa", 0, 99);
+		Expression e1 = new Operation(Operation.Operator.MUL, new IntConstant(2), narrow);
+		Expression e2 = new Operation(Operation.Operator.MUL, new IntConstant(2), wide);
+		Expression c1 = new Operation(Operation.Operator.EQ, new Operation(Operation.Operator.ADD, e1, new IntConstant(3)), new IntConstant(11));
+		Expression c2 = new Operation(Operation.Operator.EQ, new Operation(Operation.Operator.ADD, e2, new IntConstant(3)), new IntConstant(11));
+		assertEquals(c1, c2);
+		Instance j1 = (Instance) new Instance(solver1, null, c1).request("sat");
+		Instance j2 = (Instance) new Instance(solver1, null, c2).request("sat");
+		assertEquals(Integer.valueOf(9), upperBound(j1.getExpression()));
+		assertEquals(Integer.valueOf(99), upperBound(j2.getExpression()));
+	}
+
 }
@@ -0,0 +1,129 @@
+package za.ac.sun.cs.green.service.factorizer;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.RecordingSATService;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Metrics;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FactorSchedulingTest {
+
+	private static Green createSolver(String pipeline) {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.store", "za.ac.sun.cs.green.store.memstore.MemStore");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", pipeline);
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.record",
+				"za.ac.sun.cs.green.service.sink.RecordingSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	/**
+	 * Returns a factor over {@code size} variables, which is unsatisfiable if
+	 * {@code sat} is false.
+	 */
+	private static Expression factor(String prefix, int size, boolean sat) {
+		Expression e = null;
+		for (int i = 0; i < size; i++) {
+			IntVariable v = new IntVariable(prefix + i, 0, 9);
+			Expression f = (i == 0) ? new Operation(Operation.Operator.GE, v, new IntConstant(sat ? 1 : 10))
+					: new Operation(Operation.Operator.LT, new IntVariable(prefix + (i - 1), 0, 9), v);
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	private static Expression and(Expression... es) {
+		Expression e = null;
+		for (Expression f : es) {
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	@Test
+	public void testSmallestFirst() {
+		Green solver = createSolver("(factor record)");
+		try {
+			RecordingSATService.reset();
+			Expression e = and(factor("a", 3, true), factor("b", 1, true), factor("c", 2, true));
+			assertEquals(true, new Instance(solver, null, e).request("sat"));
+			List<String> solved = RecordingSATService.reset();
+			assertEquals(3, solved.size());
+			assertTrue(solved.get(0).length() <= solved.get(1).length());
+			assertTrue(solved.get(1).length() <= solved.get(2).length());
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnsatStopsEarly() {
+		Green solver = createSolver("(factor record)");
+		try {
+			RecordingSATService.reset();
+			Expression e = and(factor("d", 3, true), factor("e", 1, false), factor("f", 2, true));
+			assertEquals(false, new Instance(solver, null, e).request("sat"));
+			assertEquals(1, RecordingSATService.reset().size());
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void testMissesLookedUpOnce() {
+		Green solver = createSolver("(factor (canonize record))");
+		try {
+			RecordingSATService.reset();
+			Metrics.Histogram gets = solver.getMetrics().getGroup("MemStore").histogram("get");
+			long before = gets.getCount();
+			assertEquals(true, new Instance(solver, null, and(factor("q", 2, true), factor("r", 3, true))).request("sat"));
+			assertEquals(2, RecordingSATService.reset().size());
+			// The bulk lookup of the factorizer is the only one
+			assertEquals(before, gets.getCount());
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void testStoreSettlesFactors() {
+		Green solver = createSolver("(factor (canonize record))");
+		try {
+			RecordingSATService.reset();
+			assertEquals(true, new Instance(solver, null, and(factor("g", 2, true), factor("h", 3, true))).request("sat"));
+			assertEquals(2, RecordingSATService.reset().size());
+			// Both factors are known to be satisfiable after renaming
+			assertEquals(true, new Instance(solver, null, and(factor("i", 3, true), factor("j", 2, true))).request("sat"));
+			assertEquals(0, RecordingSATService.reset().size());
+			// Only the new factor is solved
+			assertEquals(true, new Instance(solver, null, and(factor("k", 3, true), factor("l", 4, true))).request("sat"));
+			assertEquals(1, RecordingSATService.reset().size());
+			// An unsatisfiable factor in the store settles the instance
+			assertEquals(false, new Instance(solver, null, and(factor("m", 1, false), factor("n", 5, true))).request("sat"));
+			RecordingSATService.reset();
+			assertEquals(false, new Instance(solver, null, and(factor("o", 1, false), factor("p", 6, true))).request("sat"));
+			assertEquals(0, RecordingSATService.reset().size());
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+}
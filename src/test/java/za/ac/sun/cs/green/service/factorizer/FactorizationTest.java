@@ -0,0 +1,152 @@
+package za.ac.sun.cs.green.service.factorizer;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.slicer.Slicer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FactorizationTest {
+
+	private static final IntVariable[] V = new IntVariable[8];
+
+	static {
+		for (int i = 0; i < V.length; i++) {
+			V[i] = new IntVariable("v" + i, 0, 99);
+		}
+	}
+
+	private static Expression lt(int i, int j) {
+		return new Operation(Operation.Operator.LT, V[i], V[j]);
+	}
+
+	private static Expression ge(int i, int c) {
+		return new Operation(Operation.Operator.GE, V[i], new IntConstant(c));
+	}
+
+	private static Expression and(Expression... es) {
+		Expression e = null;
+		for (Expression f : es) {
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	/**
+	 * Returns each factor as the sorted set of its conjuncts, so that factors
+	 * can be compared regardless of how their conjunctions are nested.
+	 */
+	private static Set<Set<String>> normalize(Set<Expression> factors) {
+		Set<Set<String>> result = new HashSet<Set<String>>();
+		for (Expression factor : factors) {
+			result.add(conjuncts(factor));
+		}
+		return result;
+	}
+
+	private static Set<String> conjuncts(Expression e) {
+		return new TreeSet<String>(Arrays.asList(e.toString().replaceAll("[()]", "").split("&&")));
+	}
+
+	@Test
+	public void testSameAsFactorExpression() {
+		Expression e = and(lt(0, 1), ge(2, 3), lt(1, 4), ge(5, 1), lt(2, 6), ge(7, 0), lt(4, 0));
+		assertEquals(normalize(new FactorExpression().factorize(e)), normalize(Factorization.of(e).getFactors()));
+		assertEquals(4, Factorization.of(e).getFactors().size());
+	}
+
+	@Test
+	public void testExtendMerges() {
+		Factorization f = Factorization.of(and(lt(0, 1), lt(2, 3)));
+		assertEquals(2, f.getFactors().size());
+		Factorization g = f.extend(lt(1, 2));
+		assertEquals(1, g.getFactors().size());
+		Factorization h = f.extend(ge(4, 2));
+		assertEquals(3, h.getFactors().size());
+		// Extending does not change the original
+		assertEquals(2, f.getFactors().size());
+		assertEquals(2, f.getPropositionCount());
+		assertEquals(3, g.getPropositionCount());
+		assertEquals(4, g.getVariableCount());
+		assertEquals(5, h.getVariableCount());
+	}
+
+	@Test
+	public void testDuplicatesIgnored() {
+		Factorization f = Factorization.of(and(lt(0, 1), ge(0, 3)));
+		Factorization g = f.extend(lt(0, 1));
+		assertEquals(2, g.getPropositionCount());
+		assertEquals(normalize(f.getFactors()), normalize(g.getFactors()));
+	}
+
+	@Test
+	public void testLongPath() {
+		Green solver = new Green();
+		Instance instance = new Instance(solver, null, ge(0, 0));
+		Expression expected = ge(0, 0);
+		for (int i = 1; i < 3000; i++) {
+			Expression c = (i % 2 == 0) ? lt(i % 8, (i + 3) % 8) : ge(i % 8, i % 50);
+			instance = instance.extend(c);
+			expected = new Operation(Operation.Operator.AND, c, expected);
+			if (i % 500 == 0) {
+				// Factorize along the way, as a symbolic executor would
+				Factorization.get(instance);
+			}
+		}
+		assertEquals(expected, instance.getFullExpression());
+		Factorization f = Factorization.get(instance);
+		assertSame(f, Factorization.get(instance));
+		assertEquals(normalize(new FactorExpression().factorize(expected)), normalize(f.getFactors()));
+	}
+
+	@Test
+	public void testBranches() {
+		// Branches extend a shared prefix, across merges of its levels
+		Factorization prefix = Factorization.EMPTY;
+		Expression expected = null;
+		for (int i = 0; i < 100; i++) {
+			Expression c = (i % 3 == 0) ? lt(i % 8, (i + 5) % 8) : ge(i % 8, i);
+			prefix = prefix.extend(c);
+			expected = (expected == null) ? c : new Operation(Operation.Operator.AND, expected, c);
+		}
+		Factorization left = prefix;
+		Factorization right = prefix;
+		Expression leftExpected = expected;
+		Expression rightExpected = expected;
+		for (int i = 0; i < 50; i++) {
+			Expression l = ge(i % 8, 200 + i);
+			Expression r = (i % 2 == 0) ? lt(i % 8, (i + 1) % 8) : ge(i % 8, 300 + i);
+			left = left.extend(l);
+			right = right.extend(r);
+			leftExpected = new Operation(Operation.Operator.AND, leftExpected, l);
+			rightExpected = new Operation(Operation.Operator.AND, rightExpected, r);
+		}
+		assertEquals(normalize(new FactorExpression().factorize(expected)), normalize(prefix.getFactors()));
+		assertEquals(normalize(new FactorExpression().factorize(leftExpected)), normalize(left.getFactors()));
+		assertEquals(normalize(new FactorExpression().factorize(rightExpected)), normalize(right.getFactors()));
+		assertEquals(8, right.getVariableCount());
+	}
+
+	@Test
+	public void testSlice() {
+		Expression rest = and(lt(0, 1), ge(2, 3), lt(1, 4), ge(5, 1));
+		Expression fresh = lt(4, 6);
+		Expression full = new Operation(Operation.Operator.AND, fresh, rest);
+		Expression expected = new Slicer(null).slice(fresh, rest);
+		assertEquals(conjuncts(expected), conjuncts(Factorization.of(full).slice(fresh)));
+		Expression constant = new Operation(Operation.Operator.EQ, new IntConstant(1), new IntConstant(1));
+		assertSame(constant, Factorization.of(new Operation(Operation.Operator.AND, constant, rest)).slice(constant));
+	}
+
+}
@@ -0,0 +1,132 @@
+package za.ac.sun.cs.green.service.portfolio;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.Service;
+import za.ac.sun.cs.green.Unknown;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.BlockingSATService;
+import za.ac.sun.cs.green.service.sink.EnumerateSATService;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PortfolioSATServiceTest {
+
+	private static Green createSolver(String racers, Properties props) {
+		Green solver = new Green();
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(portfolio " + racers + ")");
+		props.setProperty("green.service.sat.portfolio",
+				"za.ac.sun.cs.green.service.portfolio.PortfolioSATService");
+		props.setProperty("green.service.sat.block",
+				"za.ac.sun.cs.green.service.sink.BlockingSATService");
+		props.setProperty("green.service.sat.enumerate",
+				"za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static PortfolioSATService getPortfolio(Green solver) {
+		return (PortfolioSATService) solver.getService("sat").iterator().next();
+	}
+
+	private static Service getRacer(Green solver, Class<?> type) {
+		for (Service service : solver.getService(getPortfolio(solver))) {
+			if (type.isInstance(service)) {
+				return service;
+			}
+		}
+		return null;
+	}
+
+	private static Expression createExpression(String prefix, int bound) {
+		IntVariable v = new IntVariable(prefix + "0", 0, 9);
+		IntVariable w = new IntVariable(prefix + "1", 0, 9);
+		Expression e0 = new Operation(Operation.Operator.GE, v, new IntConstant(bound));
+		Expression e1 = new Operation(Operation.Operator.LE, w, new IntConstant(5));
+		return new Operation(Operation.Operator.AND, e0, e1);
+	}
+
+	private static void awaitIdle(PortfolioSATService portfolio) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while ((portfolio.getActiveCount() > 0) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, portfolio.getActiveCount());
+	}
+
+	@Test
+	public void testLoserIsAborted() throws InterruptedException {
+		BlockingSATService.reset();
+		Properties props = new Properties();
+		props.setProperty(PortfolioSATService.HEADSTART_PROPERTY, "0");
+		Green solver = createSolver("block enumerate", props);
+		try {
+			PortfolioSATService portfolio = getPortfolio(solver);
+			assertEquals(true, new Instance(solver, null, createExpression("a", 3)).request("sat"));
+			assertEquals(false, new Instance(solver, null, createExpression("b", 10)).request("sat"));
+			awaitIdle(portfolio);
+			assertEquals(2, portfolio.getWinCount(getRacer(solver, EnumerateSATService.class)));
+			assertEquals(0, portfolio.getWinCount(getRacer(solver, BlockingSATService.class)));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void testDeadline() throws InterruptedException {
+		BlockingSATService.reset();
+		Green solver = createSolver("block", new Properties());
+		try {
+			long start = System.currentTimeMillis();
+			Object result = new Instance(solver, null, createExpression("c", 3)).request("sat", 200, TimeUnit.MILLISECONDS);
+			assertEquals(Unknown.TIMEOUT, result);
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			awaitIdle(getPortfolio(solver));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void testFavouriteGetsHeadStart() throws InterruptedException {
+		Properties props = new Properties();
+		props.setProperty(PortfolioSATService.HEADSTART_PROPERTY, "5000");
+		props.setProperty(PortfolioSATService.MIN_RACES_PROPERTY, "3");
+		props.setProperty(PortfolioSATService.THRESHOLD_PROPERTY, "90");
+		Green solver = createSolver("block enumerate", props);
+		try {
+			PortfolioSATService portfolio = getPortfolio(solver);
+			for (int i = 0; i < 3; i++) {
+				BlockingSATService.reset();
+				assertEquals(true, new Instance(solver, null, createExpression("d" + i, 3)).request("sat"));
+			}
+			awaitIdle(portfolio);
+			// Enumeration has won every race of this shape, so it now runs alone
+			BlockingSATService.reset();
+			assertEquals(true, new Instance(solver, null, createExpression("e", 4)).request("sat"));
+			assertEquals(1, BlockingSATService.started.getCount());
+			assertEquals(4, portfolio.getWinCount(getRacer(solver, EnumerateSATService.class)));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void testShape() {
+		assertEquals(PortfolioSATService.getShape(createExpression("f", 1)),
+				PortfolioSATService.getShape(createExpression("g", 7)));
+		Expression e = new Operation(Operation.Operator.OR, createExpression("h", 1), createExpression("i", 1));
+		assertTrue(!PortfolioSATService.getShape(e).equals(PortfolioSATService.getShape(createExpression("h", 1))));
+	}
+
+}
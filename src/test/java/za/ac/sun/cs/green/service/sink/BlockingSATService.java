@@ -0,0 +1,48 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Deadline;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.service.SATService;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A decision procedure that never answers: it blocks until it is interrupted
+ * or until the deadline of its request is done. Tests use the latches to
+ * observe that a request has reached the solver and that cancelling the
+ * request interrupted it.
+ */
+public class BlockingSATService extends SATService {
+
+	public static volatile CountDownLatch started = new CountDownLatch(1);
+
+	public static volatile CountDownLatch interrupted = new CountDownLatch(1);
+
+	public BlockingSATService(Green solver) {
+		super(solver);
+	}
+
+	/**
+	 * Resets the latches before a test.
+	 */
+	public static void reset() {
+		started = new CountDownLatch(1);
+		interrupted = new CountDownLatch(1);
+	}
+
+	@Override
+	protected Boolean solve(Instance instance) {
+		started.countDown();
+		Deadline deadline = instance.getDeadline();
+		try {
+			while ((deadline == null) || !deadline.isDone()) {
+				Thread.sleep(5);
+			}
+		} catch (InterruptedException x) {
+			interrupted.countDown();
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,83 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.expr.Visitor;
+import za.ac.sun.cs.green.expr.VisitorException;
+import za.ac.sun.cs.green.service.ModelService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A model service for tests: it enumerates all assignments to the (bounded)
+ * integer variables of an instance and returns the first one that satisfies
+ * it, or {@code null} if there is none. It counts how often it is called.
+ */
+public class EnumerateModelService extends ModelService {
+
+	private static final AtomicInteger calls = new AtomicInteger();
+
+	public EnumerateModelService(Green solver) {
+		super(solver);
+	}
+
+	/**
+	 * Returns the number of calls since the last reset and resets it.
+	 *
+	 * @return the number of calls
+	 */
+	public static int reset() {
+		return calls.getAndSet(0);
+	}
+
+	@Override
+	protected Map<Variable, Object> model(Instance instance) {
+		calls.incrementAndGet();
+		final Expression expression = instance.getFullExpression();
+		final Set<IntVariable> variables = new LinkedHashSet<IntVariable>();
+		try {
+			expression.accept(new Visitor() {
+				@Override
+				public void postVisit(IntVariable variable) {
+					variables.add(variable);
+				}
+			});
+		} catch (VisitorException x) {
+			return null;
+		}
+		Map<IntVariable, Integer> assignment = new HashMap<IntVariable, Integer>();
+		if (!enumerate(expression, new ArrayList<IntVariable>(variables), 0, assignment)) {
+			return null;
+		}
+		HashMap<Variable, Object> model = new HashMap<Variable, Object>();
+		for (Map.Entry<IntVariable, Integer> entry : assignment.entrySet()) {
+			model.put(entry.getKey(), new IntConstant(entry.getValue()));
+		}
+		return model;
+	}
+
+	private boolean enumerate(Expression expression, List<IntVariable> variables, int index, Map<IntVariable, Integer> assignment) {
+		if (index == variables.size()) {
+			return EnumerateSATService.evaluate(expression, assignment) != 0;
+		}
+		IntVariable v = variables.get(index);
+		for (int x = v.getLowerBound(); x <= v.getUpperBound(); x++) {
+			assignment.put(v, x);
+			if (enumerate(expression, variables, index + 1, assignment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,105 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Visitor;
+import za.ac.sun.cs.green.expr.VisitorException;
+import za.ac.sun.cs.green.service.SATService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/**
+ * A decision procedure for tests: it simply enumerates all assignments to the
+ * (bounded) integer variables of an instance. Only suitable for small domains.
+ */
+public class EnumerateSATService extends SATService {
+
+	public EnumerateSATService(Green solver) {
+		super(solver);
+	}
+
+	@Override
+	protected Boolean solve(Instance instance) {
+		final Expression expression = instance.getFullExpression();
+		final Set<IntVariable> variables = new LinkedHashSet<IntVariable>();
+		try {
+			expression.accept(new Visitor() {
+				@Override
+				public void postVisit(IntVariable variable) {
+					variables.add(variable);
+				}
+			});
+		} catch (VisitorException x) {
+			return null;
+		}
+		return enumerate(expression, new ArrayList<IntVariable>(variables), 0, new HashMap<IntVariable, Integer>());
+	}
+
+	private boolean enumerate(Expression expression, List<IntVariable> variables, int index, Map<IntVariable, Integer> assignment) {
+		if (index == variables.size()) {
+			return evaluate(expression, assignment) != 0;
+		}
+		IntVariable v = variables.get(index);
+		for (int x = v.getLowerBound(); x <= v.getUpperBound(); x++) {
+			assignment.put(v, x);
+			if (enumerate(expression, variables, index + 1, assignment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static int evaluate(Expression expression, final Map<IntVariable, Integer> assignment) {
+		final Stack<Integer> stack = new Stack<Integer>();
+		try {
+			expression.accept(new Visitor() {
+				@Override
+				public void postVisit(IntConstant constant) {
+					stack.push(constant.getValue());
+				}
+
+				@Override
+				public void postVisit(IntVariable variable) {
+					stack.push(assignment.get(variable));
+				}
+
+				@Override
+				public void postVisit(Operation operation) throws VisitorException {
+					int r = (operation.getOperator().getArity() == 2) ? stack.pop() : 0;
+					int l = stack.pop();
+					switch (operation.getOperator()) {
+						case EQ: stack.push(l == r ? 1 : 0); break;
+						case NE: stack.push(l != r ? 1 : 0); break;
+						case LT: stack.push(l < r ? 1 : 0); break;
+						case LE: stack.push(l <= r ? 1 : 0); break;
+						case GT: stack.push(l > r ? 1 : 0); break;
+						case GE: stack.push(l >= r ? 1 : 0); break;
+						case AND: stack.push((l != 0) && (r != 0) ? 1 : 0); break;
+						case OR: stack.push((l != 0) || (r != 0) ? 1 : 0); break;
+						case NOT: stack.push(l == 0 ? 1 : 0); break;
+						case ADD: stack.push(l + r); break;
+						case SUB: stack.push(l - r); break;
+						case MUL: stack.push(l * r); break;
+						case NEG: stack.push(-l); break;
+						default:
+							throw new VisitorException("unsupported operator " + operation.getOperator());
+					}
+				}
+			});
+		} catch (VisitorException x) {
+			throw new IllegalArgumentException(x);
+		}
+		return stack.pop();
+	}
+
+}
@@ -0,0 +1,52 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.service.BasicService;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An intermediate service that counts its calls and holds every call until
+ * the gate is opened, ignoring the deadline of the request. It then passes a
+ * copy of the instance on to its sub-services. Tests use it to observe which
+ * instances are still processed after a request is cancelled.
+ */
+public class GatedService extends BasicService {
+
+	public static volatile CountDownLatch started = new CountDownLatch(1);
+
+	public static volatile CountDownLatch gate = new CountDownLatch(1);
+
+	public static final AtomicInteger count = new AtomicInteger();
+
+	public GatedService(Green solver) {
+		super(solver);
+	}
+
+	/**
+	 * Closes the gate and resets the latches and the counter before a test.
+	 */
+	public static void reset() {
+		started = new CountDownLatch(1);
+		gate = new CountDownLatch(1);
+		count.set(0);
+	}
+
+	@Override
+	public Set<Instance> processRequest(Instance instance) {
+		count.incrementAndGet();
+		started.countDown();
+		try {
+			gate.await();
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return Collections.singleton(new Instance(getSolver(), instance.getSource(), null, instance.getFullExpression()));
+	}
+
+}
@@ -0,0 +1,30 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.service.BasicService;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An intermediate service that passes a copy of each instance on to its
+ * sub-services. It does not cache its sub-instances, and counts how often it
+ * processes an instance.
+ */
+public class PassThroughService extends BasicService {
+
+	public static final AtomicInteger count = new AtomicInteger();
+
+	public PassThroughService(Green solver) {
+		super(solver);
+	}
+
+	@Override
+	public Set<Instance> processRequest(Instance instance) {
+		count.incrementAndGet();
+		return Collections.singleton(new Instance(getSolver(), instance.getSource(), null, instance.getFullExpression()));
+	}
+
+}
@@ -0,0 +1,40 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A decision procedure for tests that records, in order, the instances it is
+ * asked to solve.
+ */
+public class RecordingSATService extends EnumerateSATService {
+
+	private static final List<String> solved = new ArrayList<String>();
+
+	public RecordingSATService(Green solver) {
+		super(solver);
+	}
+
+	/**
+	 * Returns the instances solved since the last reset and clears the list.
+	 *
+	 * @return the solved instances, in order
+	 */
+	public static synchronized List<String> reset() {
+		List<String> result = new ArrayList<String>(solved);
+		solved.clear();
+		return result;
+	}
+
+	@Override
+	protected Boolean solve(Instance instance) {
+		synchronized (RecordingSATService.class) {
+			solved.add(instance.getFullExpression().toString());
+		}
+		return super.solve(instance);
+	}
+
+}
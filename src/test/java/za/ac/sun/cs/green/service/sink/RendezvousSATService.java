@@ -0,0 +1,53 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A decision procedure that answers only once a number of calls are in
+ * progress at the same time: each call blocks (for at most ten seconds)
+ * until the others have started before it enumerates the answer, and gives
+ * up otherwise.
+ */
+public class RendezvousSATService extends EnumerateSATService {
+
+	public static volatile CountDownLatch arrived = new CountDownLatch(2);
+
+	public RendezvousSATService(Green solver) {
+		super(solver);
+	}
+
+	/**
+	 * Sets the number of calls that must meet before a test.
+	 *
+	 * @param calls the number of calls
+	 */
+	public static void reset(int calls) {
+		arrived = new CountDownLatch(calls);
+	}
+
+	@Override
+	protected Boolean solve(Instance instance) {
+		CountDownLatch a = arrived;
+		a.countDown();
+		// Poll instead of awaiting the latch, so that the worker really
+		// blocks, like one that waits for an external solver
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		try {
+			while (a.getCount() > 0) {
+				if (System.nanoTime() > end) {
+					return null;
+				}
+				Thread.sleep(5);
+			}
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return super.solve(instance);
+	}
+
+}
@@ -0,0 +1,29 @@
+package za.ac.sun.cs.green.service.sink;
+
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+
+/**
+ * A decision procedure for benchmarks that mimics an external solver: it
+ * blocks for a fixed time before it enumerates the answer.
+ */
+public class SleepSATService extends EnumerateSATService {
+
+	public static final long DELAY = 10;
+
+	public SleepSATService(Green solver) {
+		super(solver);
+	}
+
+	@Override
+	protected Boolean solve(Instance instance) {
+		try {
+			Thread.sleep(DELAY);
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return super.solve(instance);
+	}
+
+}
@@ -0,0 +1,292 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.Unknown;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.BlockingSATService;
+import za.ac.sun.cs.green.util.Configuration;
+import za.ac.sun.cs.green.util.Reporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControlTest {
+
+	private static final String BLOCKING = "za.ac.sun.cs.green.service.sink.BlockingSATService";
+
+	private static final String ENUMERATE = "za.ac.sun.cs.green.service.sink.EnumerateSATService";
+
+	/**
+	 * A parallel task manager whose root tasks wait until the gate opens, so
+	 * that requests can be cancelled before they start.
+	 */
+	public static class GatedTaskManager extends ParallelTaskManager {
+
+		private static final List<Runnable> pending = new ArrayList<Runnable>();
+
+		private static boolean open = true;
+
+		public GatedTaskManager(Green solver, Properties properties) {
+			super(solver, new AbstractExecutorService() {
+				private final ExecutorService executor = Executors.newCachedThreadPool();
+
+				@Override
+				public void execute(Runnable command) {
+					synchronized (pending) {
+						if (!open) {
+							pending.add(command);
+							return;
+						}
+					}
+					executor.execute(command);
+				}
+
+				@Override
+				public void shutdown() {
+					executor.shutdown();
+				}
+
+				@Override
+				public List<Runnable> shutdownNow() {
+					return executor.shutdownNow();
+				}
+
+				@Override
+				public boolean isShutdown() {
+					return executor.isShutdown();
+				}
+
+				@Override
+				public boolean isTerminated() {
+					return executor.isTerminated();
+				}
+
+				@Override
+				public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+					return executor.awaitTermination(timeout, unit);
+				}
+			}, properties);
+		}
+
+		static void setOpen(boolean open) {
+			List<Runnable> runnables;
+			synchronized (pending) {
+				GatedTaskManager.open = open;
+				runnables = new ArrayList<Runnable>(pending);
+				if (open) {
+					pending.clear();
+				}
+			}
+			if (open) {
+				for (Runnable r : runnables) {
+					r.run();
+				}
+			}
+		}
+
+	}
+
+	private static Green createSolver(String sink, String... limits) {
+		return createSolver(ParallelTaskManager.class, sink, limits);
+	}
+
+	private static Green createSolver(Class<?> taskManager, String sink, String... limits) {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", taskManager.getName());
+		for (int i = 0; i < limits.length; i += 2) {
+			props.setProperty(limits[i], limits[i + 1]);
+		}
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize sink))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.sink", sink);
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static Expression createExpression(String prefix, int n) {
+		Expression e = null;
+		for (int i = 0; i < n; i++) {
+			IntVariable v = new IntVariable(prefix + i, 0, 9);
+			Expression f = new Operation(Operation.Operator.GE, v, new IntConstant(i));
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	private static Map<String, Integer> report(Green solver) {
+		final Map<String, Integer> report = new HashMap<String, Integer>();
+		solver.getTaskManager().report(new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				String[] parts = message.split(" = ");
+				report.put(parts[0], Integer.parseInt(parts[1]));
+			}
+		});
+		return report;
+	}
+
+	private static void waitForQueueDepth(Green solver, int depth) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((report(solver).get("queueDepth") < depth) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(5);
+		}
+		assertEquals(depth, (int) report(solver).get("queueDepth"));
+	}
+
+	@Test
+	public void test01() throws Exception {
+		BlockingSATService.reset();
+		Green solver = createSolver(BLOCKING,
+				ParallelTaskManager.MAX_REQUESTS_PROPERTY, "1",
+				ParallelTaskManager.POLICY_PROPERTY, "reject");
+		try {
+			CompletableFuture<Object> first = new Instance(solver, null, createExpression("a", 1)).requestAsync("sat");
+			assertTrue(BlockingSATService.started.await(10, TimeUnit.SECONDS));
+			try {
+				new Instance(solver, null, createExpression("b", 1)).request("sat");
+				fail("request should have been rejected");
+			} catch (RejectedExecutionException x) {
+				// expected
+			}
+			CompletableFuture<Object> third = new Instance(solver, null, createExpression("c", 1)).requestAsync("sat");
+			try {
+				third.get(10, TimeUnit.SECONDS);
+				fail("request should have been rejected");
+			} catch (ExecutionException x) {
+				assertTrue(x.getCause() instanceof RejectedExecutionException);
+			}
+			assertEquals(2, (int) report(solver).get("rejectedCount"));
+			first.cancel(true);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test02() throws Exception {
+		BlockingSATService.reset();
+		final Green solver = createSolver(BLOCKING,
+				ParallelTaskManager.MAX_REQUESTS_PROPERTY, "1",
+				ParallelTaskManager.QUEUE_PROPERTY, "1");
+		try {
+			CompletableFuture<Object> first = new Instance(solver, null, createExpression("a", 1)).requestAsync("sat");
+			assertTrue(BlockingSATService.started.await(10, TimeUnit.SECONDS));
+			// The second request waits for admission until its deadline
+			final Object[] second = new Object[1];
+			Thread waiter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					second[0] = new Instance(solver, null, createExpression("b", 1)).request("sat", 500, TimeUnit.MILLISECONDS);
+				}
+			});
+			waiter.start();
+			waitForQueueDepth(solver, 1);
+			// The queue is full, so a third request is rejected
+			try {
+				new Instance(solver, null, createExpression("c", 1)).request("sat");
+				fail("request should have been rejected");
+			} catch (RejectedExecutionException x) {
+				// expected
+			}
+			waiter.join(10000);
+			assertEquals(Unknown.TIMEOUT, second[0]);
+			Map<String, Integer> report = report(solver);
+			assertEquals(1, (int) report.get("rejectedCount"));
+			assertEquals(1, (int) report.get("maxQueueDepth"));
+			assertEquals(1, (int) report.get("waitCount"));
+			assertTrue(report.get("waitTime") >= 400);
+			first.cancel(true);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test03() throws Exception {
+		BlockingSATService.reset();
+		final Green solver = createSolver(BLOCKING,
+				ParallelTaskManager.MAX_REQUESTS_PROPERTY, "1");
+		try {
+			CompletableFuture<Object> first = new Instance(solver, null, createExpression("a", 1)).requestAsync("sat");
+			assertTrue(BlockingSATService.started.await(10, TimeUnit.SECONDS));
+			BlockingSATService.reset();
+			final Object[] second = new Object[1];
+			Thread waiter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					second[0] = new Instance(solver, null, createExpression("b", 1)).request("sat", 1, TimeUnit.SECONDS);
+				}
+			});
+			waiter.start();
+			waitForQueueDepth(solver, 1);
+			// Once the first request is cancelled, the second is admitted
+			first.cancel(true);
+			assertTrue(BlockingSATService.started.await(10, TimeUnit.SECONDS));
+			waiter.join(20000);
+			assertEquals(Unknown.TIMEOUT, second[0]);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test04() {
+		Green solver = createSolver(ENUMERATE,
+				ParallelTaskManager.MAX_TASKS_PROPERTY, "2");
+		try {
+			for (int i = 0; i < 8; i++) {
+				assertEquals(true, new Instance(solver, null, createExpression("d" + i + "_", 6)).request("sat"));
+			}
+			assertTrue(report(solver).get("inlineTaskCount") > 0);
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test05() throws Exception {
+		Green solver = createSolver(GatedTaskManager.class, ENUMERATE,
+				ParallelTaskManager.MAX_REQUESTS_PROPERTY, "1",
+				ParallelTaskManager.POLICY_PROPERTY, "reject");
+		try {
+			// The root tasks do not start, so each request is cancelled before
+			// it runs; each cancellation must return the request permit
+			GatedTaskManager.setOpen(false);
+			for (int i = 0; i < 20; i++) {
+				CompletableFuture<Object> future = new Instance(solver, null, createExpression("e" + i + "_", 1)).requestAsync("sat");
+				assertTrue(future.cancel(true));
+			}
+			GatedTaskManager.setOpen(true);
+			assertEquals(true, new Instance(solver, null, createExpression("f", 2)).request("sat"));
+			assertEquals(0, (int) report(solver).get("rejectedCount"));
+		} finally {
+			GatedTaskManager.setOpen(true);
+			solver.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.BlockingSATService;
+import za.ac.sun.cs.green.service.sink.GatedService;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncRequestTest {
+
+	private static Green createSolver(Class<? extends TaskManager> taskManager, String sink) {
+		return createSolver(taskManager, "(factor (canonize sink))", sink);
+	}
+
+	private static Green createSolver(Class<? extends TaskManager> taskManager, String plan, String sink) {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", taskManager.getCanonicalName());
+		props.setProperty(ForkJoinTaskManager.PARALLELISM_PROPERTY, "1");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", plan);
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.split",
+				"za.ac.sun.cs.green.service.factorizer.SATOldFactorizerService");
+		props.setProperty("green.service.sat.gate", "za.ac.sun.cs.green.service.sink.GatedService");
+		props.setProperty("green.service.sat.sink", sink);
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static Expression createExpression(String prefix, int n, int bad) {
+		Expression e = null;
+		for (int i = 0; i < n; i++) {
+			IntVariable v = new IntVariable(prefix + i, 0, 9);
+			int bound = (i == bad) ? 10 : i;
+			Expression f = new Operation(Operation.Operator.GE, v, new IntConstant(bound));
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	private static void checkResults(Class<? extends TaskManager> taskManager) throws Exception {
+		Green solver = createSolver(taskManager, "za.ac.sun.cs.green.service.sink.SleepSATService");
+		try {
+			List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+			for (int i = 0; i < 16; i++) {
+				Expression e = createExpression("a" + i + "_", 4, (i % 4 == 0) ? i % 3 : -1);
+				futures.add(new Instance(solver, null, e).requestAsync("sat"));
+			}
+			for (int i = 0; i < 16; i++) {
+				assertEquals(i % 4 != 0, futures.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	private static void checkCancel(Class<? extends TaskManager> taskManager) throws Exception {
+		BlockingSATService.reset();
+		Green solver = createSolver(taskManager, "za.ac.sun.cs.green.service.sink.BlockingSATService");
+		try {
+			CompletableFuture<Object> future = new Instance(solver, null, createExpression("b", 2, -1)).requestAsync("sat");
+			assertTrue(BlockingSATService.started.await(10, TimeUnit.SECONDS));
+			assertTrue(future.cancel(true));
+			assertTrue(future.isCancelled());
+			assertTrue(BlockingSATService.interrupted.await(10, TimeUnit.SECONDS));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	/**
+	 * Cancels a request of four factors while the first factor is being
+	 * processed, and checks that the other factors are not processed. The
+	 * factorizer does not look ahead at the sub-services of the factors, and
+	 * the gate is not a leaf, so the fork/join pool does not add a worker
+	 * while it blocks.
+	 */
+	private static void checkCancelStopsChildren(Class<? extends TaskManager> taskManager) throws Exception {
+		GatedService.reset();
+		Green solver = createSolver(taskManager, "(split (gate (canonize sink)))",
+				"za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		try {
+			CompletableFuture<Object> future = new Instance(solver, null, createExpression("c", 4, -1)).requestAsync("sat");
+			assertTrue(GatedService.started.await(10, TimeUnit.SECONDS));
+			assertTrue(future.cancel(true));
+			GatedService.gate.countDown();
+			// The single worker takes the next request once the first has stopped
+			Object result = new Instance(solver, null, createExpression("d", 1, -1)).requestAsync("sat").get(10, TimeUnit.SECONDS);
+			assertEquals(true, result);
+			assertEquals(2, GatedService.count.get());
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Test
+	public void test01() throws Exception {
+		checkResults(SerialTaskManager.class);
+	}
+
+	@Test
+	public void test02() throws Exception {
+		checkResults(ParallelTaskManager.class);
+	}
+
+	@Test
+	public void test03() throws Exception {
+		checkResults(ForkJoinTaskManager.class);
+	}
+
+	@Test
+	public void test04() throws Exception {
+		checkCancel(SerialTaskManager.class);
+	}
+
+	@Test
+	public void test05() throws Exception {
+		checkCancel(ParallelTaskManager.class);
+	}
+
+	@Test
+	public void test06() throws Exception {
+		checkCancelStopsChildren(SerialTaskManager.class);
+	}
+
+	@Test
+	public void test07() throws Exception {
+		checkCancelStopsChildren(ForkJoinTaskManager.class);
+	}
+
+}
@@ -0,0 +1,153 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.RendezvousSATService;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ForkJoinTaskManagerTest {
+
+	public static Green solver = null;
+
+	@BeforeClass
+	public static void initialize() {
+		solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", ForkJoinTaskManager.class.getCanonicalName());
+		props.setProperty(ForkJoinTaskManager.PARALLELISM_PROPERTY, "4");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize enumerate))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.enumerate",
+				"za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		Configuration config = new Configuration(solver, props);
+		config.configure();
+	}
+
+	@AfterClass
+	public static void report() {
+		if (solver != null) {
+			solver.report();
+			solver.shutdown();
+		}
+	}
+
+	/**
+	 * Builds the conjunction of {@code n} independent factors of the form
+	 * {@code (x_i >= 1) && (x_i <= k)}, where factor {@code bad} (if
+	 * non-negative) is made unsatisfiable.
+	 */
+	private static Expression factors(String prefix, int n, int bad) {
+		Expression e = null;
+		for (int i = 0; i < n; i++) {
+			IntVariable v = new IntVariable(prefix + i, 0, 9);
+			Expression lo = new Operation(Operation.Operator.GE, v, new IntConstant(i % 5));
+			Expression hi = new Operation(Operation.Operator.LE, v, new IntConstant((i == bad) ? (i % 5) - 1 : 9));
+			Expression f = new Operation(Operation.Operator.AND, lo, hi);
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	private static Object check(Expression expression) {
+		return new Instance(solver, null, expression).request("sat");
+	}
+
+	@Test
+	public void test01() {
+		IntVariable v = new IntVariable("aa", 0, 99);
+		assertEquals(true, check(new Operation(Operation.Operator.EQ, v, new IntConstant(0))));
+	}
+
+	@Test
+	public void test02() {
+		IntVariable v = new IntVariable("aa", 0, 99);
+		assertEquals(false, check(new Operation(Operation.Operator.EQ, v, new IntConstant(100))));
+	}
+
+	@Test
+	public void test03() {
+		assertEquals(true, check(factors("a", 12, -1)));
+	}
+
+	@Test
+	public void test04() {
+		assertEquals(false, check(factors("b", 12, 0)));
+		assertEquals(false, check(factors("c", 12, 7)));
+		assertEquals(false, check(factors("d", 12, 11)));
+	}
+
+	@Test
+	public void test05() throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 64; i++) {
+				final int bad = (i % 3 == 0) ? i % 10 : -1;
+				final String prefix = "v" + i + "_";
+				results.add(clients.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						return check(factors(prefix, 10, bad));
+					}
+				}));
+			}
+			for (int i = 0; i < 64; i++) {
+				assertEquals(i % 3 != 0, results.get(i).get());
+			}
+		} finally {
+			clients.shutdown();
+		}
+	}
+
+	/**
+	 * With a single worker, the second of two blocking leaf calls can only
+	 * start if the pool adds a worker while the first one blocks.
+	 */
+	@Test
+	public void test06() throws Exception {
+		RendezvousSATService.reset(2);
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", ForkJoinTaskManager.class.getCanonicalName());
+		props.setProperty(ForkJoinTaskManager.PARALLELISM_PROPERTY, "1");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize meet))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.meet",
+				"za.ac.sun.cs.green.service.sink.RendezvousSATService");
+		new Configuration(solver, props).configure();
+		try {
+			// The request is asynchronous, so that only the workers run its
+			// tasks, and it must finish before the first call gives up
+			assertEquals(true, new Instance(solver, null, factors("m", 2, -1)).requestAsync("sat").get(5, TimeUnit.SECONDS));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+}
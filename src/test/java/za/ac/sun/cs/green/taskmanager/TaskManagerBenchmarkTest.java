@@ -0,0 +1,132 @@
+package za.ac.sun.cs.green.taskmanager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.service.sink.SleepSATService;
+import za.ac.sun.cs.green.util.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the task managers on a pipeline whose decision procedure blocks
+ * like an external solver ({@link SleepSATService}). Each request has several
+ * independent factors, and requests are issued by a number of concurrent
+ * clients. The benchmark only asserts that the answers are correct; the
+ * timings are printed. It is skipped unless the system property
+ * "{@code green.benchmark}" is {@code true}.
+ */
+public class TaskManagerBenchmarkTest {
+
+	/**
+	 * The system property that enables the benchmark.
+	 */
+	public static final String BENCHMARK_PROPERTY = "green.benchmark";
+
+	private static final int CLIENTS = 8;
+
+	private static final int REQUESTS = 48;
+
+	private static final int FACTORS = 6;
+
+	private static Green createSolver(Class<? extends TaskManager> taskManager) {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", taskManager.getCanonicalName());
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(factor (canonize sleep))");
+		props.setProperty("green.service.sat.factor",
+				"za.ac.sun.cs.green.service.factorizer.SATFactorizerService");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.sleep",
+				"za.ac.sun.cs.green.service.sink.SleepSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static Expression createExpression(int request) {
+		Expression e = null;
+		for (int i = 0; i < FACTORS; i++) {
+			IntVariable v = new IntVariable("r" + request + "x" + i, 0, 9);
+			int bound = ((request % 4 == 0) && (i == request % FACTORS)) ? 10 : i;
+			Expression f = new Operation(Operation.Operator.GE, v, new IntConstant(bound));
+			e = (e == null) ? f : new Operation(Operation.Operator.AND, e, f);
+		}
+		return e;
+	}
+
+	private static long run(final Green solver) throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		try {
+			long start = System.nanoTime();
+			List<Future<Object>> results = new ArrayList<Future<Object>>(REQUESTS);
+			for (int r = 0; r < REQUESTS; r++) {
+				final Expression expression = createExpression(r);
+				results.add(clients.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						return new Instance(solver, null, expression).request("sat");
+					}
+				}));
+			}
+			for (int r = 0; r < REQUESTS; r++) {
+				assertEquals(r % 4 != 0, results.get(r).get());
+			}
+			return System.nanoTime() - start;
+		} finally {
+			clients.shutdown();
+		}
+	}
+
+	private static void benchmark(Class<? extends TaskManager> taskManager) throws Exception {
+		Green solver = createSolver(taskManager);
+		try {
+			long time = run(solver);
+			System.out.println(String.format("%s: %d requests in %.1f ms (%.1f requests/s)",
+					taskManager.getSimpleName(), REQUESTS, time / 1e6, REQUESTS * 1e9 / time));
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	@Before
+	public void enabled() {
+		Assume.assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+	}
+
+	@Test
+	public void benchmarkSerial() throws Exception {
+		benchmark(SerialTaskManager.class);
+	}
+
+	@Test
+	public void benchmarkParallel() throws Exception {
+		benchmark(ParallelTaskManager.class);
+	}
+
+	@Test
+	public void benchmarkForkJoin() throws Exception {
+		benchmark(ForkJoinTaskManager.class);
+	}
+
+	@Test
+	public void benchmarkVirtualThread() throws Exception {
+		benchmark(VirtualThreadTaskManager.class);
+	}
+
+}
@@ -0,0 +1,109 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JfrTest {
+
+	private static Green createSolver() {
+		Green solver = new Green("JfrTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	@Test
+	public void testDisabled() {
+		assertFalse(Jfr.STAGE.isEnabled());
+		assertNull(Jfr.STAGE.begin());
+		assertNull(Jfr.SOLVER_INVOCATION.begin());
+		// Committing a dropped event does nothing
+		Jfr.commitProcessSpawn(null, "z3");
+	}
+
+	@Test
+	public void testInstanceIds() {
+		Green solver = createSolver();
+		IntVariable x = new IntVariable("x", 0, 99);
+		Instance a = new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(1)));
+		Instance b = a.extend(new Operation(Operation.Operator.LT, x, new IntConstant(9)));
+		assertTrue(b.getId() > a.getId());
+		solver.shutdown();
+	}
+
+	/**
+	 * Records a request with the JFR API, which is driven reflectively since
+	 * the tests are compiled for Java 8.
+	 */
+	@Test
+	public void testRecording() throws Exception {
+		Assume.assumeTrue(Jfr.isAvailable());
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.getConstructor().newInstance();
+		Method enable = recordingClass.getMethod("enable", String.class);
+		enable.invoke(recording, Jfr.STAGE.getName());
+		enable.invoke(recording, Jfr.STORE_LOOKUP.getName());
+		enable.invoke(recording, Jfr.SOLVER_INVOCATION.getName());
+		recordingClass.getMethod("start").invoke(recording);
+		Green solver = createSolver();
+		Instance instance;
+		try {
+			assertTrue(Jfr.STAGE.isEnabled());
+			IntVariable x = new IntVariable("x", 0, 99);
+			Instance prefix = new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(1)));
+			instance = prefix.extend(new Operation(Operation.Operator.LT, x, new IntConstant(9)));
+			assertEquals(Boolean.TRUE, instance.request("sat"));
+		} finally {
+			recordingClass.getMethod("stop").invoke(recording);
+			solver.shutdown();
+		}
+		File file = File.createTempFile("green", ".jfr");
+		file.deleteOnExit();
+		recordingClass.getMethod("dump", Path.class).invoke(recording, file.toPath());
+		recordingClass.getMethod("close").invoke(recording);
+		Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+		List<?> events = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, file.toPath());
+		List<String> names = new ArrayList<String>();
+		Object invocation = null;
+		for (Object event : events) {
+			Object type = event.getClass().getMethod("getEventType").invoke(event);
+			String name = (String) type.getClass().getMethod("getName").invoke(type);
+			names.add(name);
+			if (name.equals(Jfr.SOLVER_INVOCATION.getName())) {
+				invocation = event;
+			}
+		}
+		assertTrue(names.contains(Jfr.STAGE.getName()));
+		assertTrue(names.contains(Jfr.STORE_LOOKUP.getName()));
+		assertTrue(invocation != null);
+		Method getValue = invocation.getClass().getMethod("getValue", String.class);
+		assertEquals("EnumerateSATService", getValue.invoke(invocation, "solver"));
+		assertEquals("SAT", getValue.invoke(invocation, "verdict"));
+		assertEquals(1, getValue.invoke(invocation, "variableCount"));
+		assertEquals(2, getValue.invoke(invocation, "conjunctCount"));
+		assertEquals(instance.getId(), getValue.invoke(invocation, "instanceId"));
+		assertEquals(instance.getId(), getValue.invoke(invocation, "requestId"));
+	}
+
+}
@@ -0,0 +1,149 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.taskmanager.ForkJoinTaskManager;
+import za.ac.sun.cs.green.taskmanager.SerialTaskManager;
+import za.ac.sun.cs.green.taskmanager.TaskManager;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JmxTest {
+
+	private static Green createSolver(boolean jmx) {
+		return createSolver(jmx, new Properties());
+	}
+
+	private static Green createSolver(boolean jmx, Properties props) {
+		Green solver = new Green("JmxTest");
+		props.setProperty("green.jmx", Boolean.toString(jmx));
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static void request(Green solver, int bound) {
+		IntVariable x = new IntVariable("x", 0, 99);
+		new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(bound))).request("sat");
+	}
+
+	@Test
+	public void testGroupAttributes() throws Exception {
+		Green solver = createSolver(false);
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		Jmx jmx = new Jmx(solver, server);
+		jmx.register();
+		request(solver, 3);
+		request(solver, 4);
+		Metrics.Group group = solver.getMetrics().getGroup("EnumerateSATService");
+		ObjectName name = jmx.getObjectName(group);
+		assertNotNull(name);
+		assertEquals(Jmx.DOMAIN, name.getDomain());
+		assertEquals("Metrics", name.getKeyProperty("type"));
+		assertEquals(2L, server.getAttribute(name, "invocationCount"));
+		assertEquals(2L, server.getAttribute(name, "cacheMissCount"));
+		assertEquals(0.0, (Double) server.getAttribute(name, "cacheHitRatio"), 0.0);
+		assertEquals(2L, server.getAttribute(name, "solve.count"));
+		assertTrue((Long) server.getAttribute(name, "solve.p99") > 0);
+		server.invoke(name, "resetCounters", new Object[0], new String[0]);
+		assertEquals(0L, server.getAttribute(name, "invocationCount"));
+		assertEquals(0L, server.getAttribute(name, "solve.count"));
+		jmx.unregister();
+		assertFalse(server.isRegistered(name));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testHitRatioAndGauges() throws Exception {
+		Metrics metrics = new Metrics();
+		Metrics.Group group = metrics.register("Test");
+		group.counter("cacheHitCount").add(3);
+		group.counter("cacheMissCount").add(1);
+		group.gauge("queueDepth", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return 7;
+			}
+		});
+		Map<String, Object> values = new Jmx.GroupBean(group).values();
+		assertEquals(0.75, (Double) values.get("cacheHitRatio"), 1e-9);
+		assertEquals(7L, values.get("queueDepth"));
+		assertEquals(Long.valueOf(7), metrics.snapshot().get("Test.queueDepth"));
+		group.reset();
+		assertEquals(7L, new Jmx.GroupBean(group).values().get("queueDepth"));
+	}
+
+	@Test
+	public void testSolverOperations() throws Exception {
+		Green solver = createSolver(false);
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		Jmx jmx = new Jmx(solver, server);
+		jmx.register();
+		request(solver, 3);
+		ObjectName name = jmx.getObjectName();
+		assertEquals("Green", name.getKeyProperty("type"));
+		assertEquals("JmxTest", server.getAttribute(name, "SolverName"));
+		assertTrue(Arrays.asList((String[]) server.getAttribute(name, "ServiceNames")).contains("sat"));
+		String report = (String) server.invoke(name, "report", new Object[0], new String[0]);
+		assertTrue(report.contains("EnumerateSATService :: invocationCount = 1"));
+		server.invoke(name, "flushStore", new Object[0], new String[0]);
+		server.invoke(name, "resetCounters", new Object[0], new String[0]);
+		ObjectName group = jmx.getObjectName(solver.getMetrics().getGroup("EnumerateSATService"));
+		assertEquals(0L, server.getAttribute(group, "invocationCount"));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testConfigurationRegisters() throws Exception {
+		Green solver = createSolver(true);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName pattern = new ObjectName(Jmx.DOMAIN + ":type=Green,solver=\"JmxTest\",*");
+		assertEquals(1, server.queryNames(pattern, null).size());
+		ObjectName tm = new ObjectName(Jmx.DOMAIN + ":type=Metrics,name=\"SerialTaskManager\",*");
+		assertFalse(server.queryNames(tm, null).isEmpty());
+		solver.shutdown();
+		assertTrue(server.queryNames(pattern, null).isEmpty());
+	}
+
+	@Test
+	public void testReplacedTaskManager() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", ForkJoinTaskManager.class.getCanonicalName());
+		Green solver = createSolver(true, props);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName serial = new ObjectName(Jmx.DOMAIN + ":type=Metrics,solver=\"JmxTest\",name=\"SerialTaskManager\",*");
+		ObjectName forkJoin = new ObjectName(Jmx.DOMAIN + ":type=Metrics,solver=\"JmxTest\",name=\"ForkJoinTaskManager\",*");
+		// The default task manager was replaced before it was exported
+		assertNull(solver.getMetrics().getGroup("SerialTaskManager"));
+		assertTrue(server.queryNames(serial, null).isEmpty());
+		assertEquals(1, server.queryNames(forkJoin, null).size());
+		// A task manager replaced later is unexported
+		TaskManager forkJoinTaskManager = solver.getTaskManager();
+		solver.setTaskManager(new SerialTaskManager(solver));
+		forkJoinTaskManager.shutdown();
+		assertNull(solver.getMetrics().getGroup("ForkJoinTaskManager"));
+		assertTrue(server.queryNames(forkJoin, null).isEmpty());
+		assertEquals(1, server.queryNames(serial, null).size());
+		solver.shutdown();
+	}
+
+}
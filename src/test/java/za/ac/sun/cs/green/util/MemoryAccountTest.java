@@ -0,0 +1,210 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.service.grulia.gruliastore.BinaryTreeStore;
+import za.ac.sun.cs.green.service.grulia.gruliastore.LinearListStore;
+import za.ac.sun.cs.green.service.grulia.gruliastore.SatEntry;
+import za.ac.sun.cs.green.store.memstore.MemStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryAccountTest {
+
+	@Test
+	public void testAccount() {
+		Metrics metrics = new Metrics();
+		MemoryAccount account = new MemoryAccount(metrics.register("Test"));
+		assertEquals("SAT:", MemoryAccount.prefix("SAT:x>3"));
+		assertEquals("ENTRY:", MemoryAccount.prefix("ENTRY:12"));
+		assertEquals(MemoryAccount.NO_PREFIX, MemoryAccount.prefix("(x:1)"));
+		account.add("SAT:a", 100);
+		account.add("MODEL:a", 50);
+		account.add("SAT:b", 10);
+		account.remove("SAT:a", 100);
+		assertEquals(60, account.getBytes());
+		assertEquals(10, account.getBytes("SAT:"));
+		assertEquals(50, account.getBytes("MODEL:"));
+		Map<String, Long> snapshot = metrics.snapshot();
+		assertEquals(Long.valueOf(60), snapshot.get("Test.memoryBytes"));
+		assertEquals(Long.valueOf(50), snapshot.get("Test.modelMemoryBytes"));
+		// Listeners are told the excess, and only until it is gone
+		final List<Long> excesses = new ArrayList<Long>();
+		account.addEvictionListener(new MemoryAccount.EvictionListener() {
+			@Override
+			public void evict(MemoryAccount a, long excess) {
+				excesses.add(excess);
+				a.remove("MODEL:a", 50);
+			}
+		});
+		account.addEvictionListener(new MemoryAccount.EvictionListener() {
+			@Override
+			public void evict(MemoryAccount a, long excess) {
+				excesses.add(-excess);
+			}
+		});
+		account.setSoftLimit(100);
+		account.add("COUNT:a", 30);
+		assertTrue(excesses.isEmpty());
+		account.add("COUNT:b", 20);
+		assertEquals(1, excesses.size());
+		assertEquals(Long.valueOf(10), excesses.get(0));
+		assertEquals(60, account.getBytes());
+	}
+
+	@Test
+	public void testEstimates() {
+		assertEquals(40, MemoryAccount.sizeOf(""));
+		assertTrue(MemoryAccount.sizeOf("abcdefgh") > MemoryAccount.sizeOf(""));
+		assertEquals(0, MemoryAccount.sizeOf(Boolean.TRUE));
+		IntVariable x = new IntVariable("x", 0, 9);
+		Map<Variable, Object> model = new HashMap<Variable, Object>();
+		model.put(x, 3);
+		long one = MemoryAccount.sizeOf(model);
+		model.put(new IntVariable("y", 0, 9), 4);
+		assertTrue(MemoryAccount.sizeOf(model) > one);
+		// Operands are counted, variables are not
+		Operation e = new Operation(Operation.Operator.LT, x, new IntConstant(3));
+		assertTrue(MemoryAccount.sizeOf(new Operation(Operation.Operator.AND, e, e)) > MemoryAccount.sizeOf(e));
+	}
+
+	@Test
+	public void testMemStoreEviction() {
+		Green solver = new Green("MemoryAccountTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		props.setProperty("green.store", "za.ac.sun.cs.green.store.memstore.MemStore");
+		props.setProperty("green.store.memory.limit", "4000");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		IntVariable x = new IntVariable("x", 0, 99);
+		for (int i = 0; i < 100; i++) {
+			new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(i))).request("sat");
+		}
+		MemStore store = (MemStore) solver.getStore();
+		MemoryAccount memory = store.getMemory();
+		assertTrue(memory.getBytes() > 0);
+		assertTrue(memory.getBytes() <= 4000);
+		assertEquals(memory.getBytes(), memory.getBytes("SAT:"));
+		// The most recent results are kept
+		String key = "SAT:" + new Operation(Operation.Operator.GT, x, new IntConstant(99)).getCachedString();
+		assertEquals(Boolean.FALSE, store.get(key));
+		assertEquals(null, store.get("SAT:" + new Operation(Operation.Operator.GT, x, new IntConstant(0)).getCachedString()));
+		final List<String> lines = new ArrayList<String>();
+		solver.report(new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				lines.add(context + " :: " + message);
+			}
+		});
+		assertTrue(lines.contains("MemStore :: satMemoryBytes = " + memory.getBytes()));
+		assertTrue(lines.contains("MemStore :: memorySoftLimit = 4000"));
+		assertTrue(solver.getMetrics().snapshot().get("MemStore.evictionCount") > 0);
+		store.clear();
+		assertEquals(0, memory.getBytes());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testMemStoreKeySetWhileReading() throws Exception {
+		Green solver = new Green("MemoryAccountTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		props.setProperty("green.store", "za.ac.sun.cs.green.store.memstore.MemStore");
+		new Configuration(solver, props).configure();
+		final MemStore store = (MemStore) solver.getStore();
+		for (int i = 0; i < 1000; i++) {
+			store.put("SAT:" + i, Boolean.TRUE);
+		}
+		// Lookups reorder the entries while the keys are listed
+		final AtomicBoolean stop = new AtomicBoolean();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; !stop.get(); i = (i + 7) % 1000) {
+					store.get("SAT:" + i);
+				}
+			}
+		};
+		reader.start();
+		try {
+			for (int i = 0; i < 500; i++) {
+				assertEquals(1000, store.keySet("SAT:*").size());
+				store.flushAll();
+			}
+		} finally {
+			stop.set(true);
+			reader.join();
+		}
+		solver.shutdown();
+	}
+
+	@Test
+	public void testRepositoryEviction() {
+		Green solver = new Green("MemoryAccountTest");
+		BinaryTreeStore<SatEntry> repository = new BinaryTreeStore<SatEntry>(solver, true, "TestRepository");
+		IntVariable x = new IntVariable("x", 0, 99);
+		for (int i = 0; i < 10; i++) {
+			Map<Variable, Object> model = new HashMap<Variable, Object>();
+			model.put(x, i);
+			repository.add(new SatEntry(10 - i, model));
+		}
+		MemoryAccount memory = repository.getMemory();
+		long size = memory.getBytes();
+		assertEquals(size, memory.getBytes("ENTRY:"));
+		memory.setSoftLimit(size / 2);
+		Map<Variable, Object> model = new HashMap<Variable, Object>();
+		model.put(x, 10);
+		repository.add(new SatEntry(0, model));
+		assertTrue(memory.getBytes() <= size / 2);
+		assertTrue(repository.size() < 10);
+		// The oldest entries, with the highest SATDelta, are gone
+		List<SatEntry> entries = repository.getEntries();
+		assertEquals(0.0, entries.get(0).getSatDelta(), 0.0);
+		assertTrue(entries.get(entries.size() - 1).getSatDelta() < 6);
+		repository.clear();
+		assertEquals(0, memory.getBytes());
+	}
+
+	@Test
+	public void testLinearRepositoryEviction() {
+		Green solver = new Green("MemoryAccountTest");
+		LinearListStore<SatEntry> repository = new LinearListStore<SatEntry>(solver, true);
+		IntVariable x = new IntVariable("x", 0, 99);
+		for (int i = 0; i < 10; i++) {
+			Map<Variable, Object> model = new HashMap<Variable, Object>();
+			model.put(x, i);
+			repository.add(new SatEntry(i, model));
+		}
+		MemoryAccount memory = repository.getMemory();
+		long size = memory.getBytes();
+		memory.setSoftLimit(size / 2);
+		Map<Variable, Object> model = new HashMap<Variable, Object>();
+		model.put(x, 10);
+		repository.add(new SatEntry(10, model));
+		assertTrue(memory.getBytes() <= size / 2);
+		assertTrue(repository.size() < 10);
+		// The oldest entries are gone, and the others are kept in order
+		List<SatEntry> entries = repository.getEntries();
+		assertEquals(11 - entries.size(), entries.get(0).getSatDelta(), 0.0);
+		assertEquals(10.0, entries.get(entries.size() - 1).getSatDelta(), 0.0);
+		repository.clear();
+		assertEquals(0, memory.getBytes());
+	}
+
+}
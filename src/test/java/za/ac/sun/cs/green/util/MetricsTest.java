@@ -0,0 +1,205 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.expr.Variable;
+import za.ac.sun.cs.green.service.grulia.gruliastore.BinaryTreeStore;
+import za.ac.sun.cs.green.service.grulia.gruliastore.SatEntry;
+import za.ac.sun.cs.green.taskmanager.ParallelTaskManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		Metrics metrics = new Metrics();
+		final Metrics.Counter counter = metrics.register("test").counter("count");
+		final int threads = 8;
+		final int updates = 100000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException x) {
+						return;
+					}
+					for (int j = 0; j < updates; j++) {
+						counter.increment();
+					}
+				}
+			});
+			workers[i].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals((long) threads * updates, counter.get());
+	}
+
+	@Test
+	public void testGroups() {
+		Metrics metrics = new Metrics();
+		Metrics.Group a = metrics.register("Service");
+		Metrics.Group b = metrics.register("Service");
+		assertEquals("Service", a.getName());
+		assertEquals("Service#2", b.getName());
+		assertSame(a.counter("x"), a.counter("x"));
+		a.counter("x").add(3);
+		b.counter("x").increment();
+		Map<String, Long> snapshot = metrics.snapshot();
+		assertEquals(Long.valueOf(3), snapshot.get("Service.x"));
+		assertEquals(Long.valueOf(1), snapshot.get("Service#2.x"));
+		assertNull(metrics.getGroup("Other"));
+		metrics.reset();
+		assertEquals(0, a.counter("x").get());
+	}
+
+	@Test
+	public void testServiceCounters() {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		IntVariable x = new IntVariable("x", 0, 9);
+		for (int i = 0; i < 3; i++) {
+			new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(i))).request("sat");
+		}
+		Map<String, Long> snapshot = solver.getMetrics().snapshot();
+		assertEquals(Long.valueOf(3), snapshot.get("EnumerateSATService.invocationCount"));
+		assertEquals(Long.valueOf(3), snapshot.get("EnumerateSATService.satCount"));
+		assertEquals(Long.valueOf(3), snapshot.get("SerialTaskManager.processedCount"));
+		assertEquals(Long.valueOf(3), snapshot.get("NullStore.putCount"));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testConcurrentRequestCounters() throws InterruptedException {
+		final Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", ParallelTaskManager.class.getCanonicalName());
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		final int threads = 8;
+		final int requests = 50;
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int offset = i * requests;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					IntVariable x = new IntVariable("x", 0, 999);
+					for (int j = 0; j < requests; j++) {
+						new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(offset + j))).request("sat");
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		Map<String, Long> snapshot = solver.getMetrics().snapshot();
+		assertEquals(Long.valueOf(threads * requests), snapshot.get("ParallelTaskManager.threadsCreated"));
+		assertEquals(Long.valueOf(1), snapshot.get("ParallelTaskManager.maxSimultaneousThreads"));
+		// The statistics of repositories are in the registry too
+		BinaryTreeStore<SatEntry> repository = new BinaryTreeStore<SatEntry>(solver, true, "TestRepository");
+		Map<Variable, Object> model = new HashMap<Variable, Object>();
+		model.put(new IntVariable("x", 0, 999), 1);
+		repository.add(new SatEntry(1, model));
+		repository.extract(new SatEntry(0, model), 1);
+		snapshot = solver.getMetrics().snapshot();
+		assertEquals(Long.valueOf(1), snapshot.get("TestRepository.putCount"));
+		assertEquals(Long.valueOf(1), snapshot.get("TestRepository.getCount"));
+		solver.shutdown();
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		int previous = -1;
+		for (long v = 0; v < 1000000; v += 1 + v / 50) {
+			int index = Metrics.Histogram.indexOf(v);
+			assertTrue(index >= previous);
+			assertTrue(Metrics.Histogram.highestValueOf(index) >= v);
+			assertTrue(Metrics.Histogram.highestValueOf(index) <= v + v / 32 + 1);
+			previous = index;
+		}
+		int last = Metrics.Histogram.indexOf(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, Metrics.Histogram.highestValueOf(last));
+	}
+
+	@Test
+	public void testPercentiles() {
+		Metrics.Histogram histogram = new Metrics().register("test").histogram("latency");
+		assertEquals(0, histogram.getPercentile(0.5));
+		for (long v = 1; v <= 100000; v++) {
+			histogram.record(v * 1000);
+		}
+		assertEquals(100000, histogram.getCount());
+		assertEquals(100000000L, histogram.getMax());
+		assertWithin(50000000L, histogram.getPercentile(0.50));
+		assertWithin(99000000L, histogram.getPercentile(0.99));
+		assertWithin(99900000L, histogram.getPercentile(0.999));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				(actual >= expected) && (actual <= expected + expected / 32));
+	}
+
+	@Test
+	public void testLatencyReport() {
+		Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		IntVariable x = new IntVariable("x", 0, 9);
+		new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(3))).request("sat");
+		Map<String, Long> snapshot = solver.getMetrics().snapshot();
+		assertEquals(Long.valueOf(1), snapshot.get("EnumerateSATService.processRequest.count"));
+		assertEquals(Long.valueOf(1), snapshot.get("EnumerateSATService.solve.count"));
+		assertEquals(Long.valueOf(1), snapshot.get("NullStore.get.count"));
+		assertEquals(Long.valueOf(1), snapshot.get("NullStore.put.count"));
+		final List<String> lines = new ArrayList<String>();
+		solver.report(new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				lines.add(context + " :: " + message);
+			}
+		});
+		boolean found = false;
+		for (String line : lines) {
+			found |= line.startsWith("EnumerateSATService :: solve.p99 = ");
+		}
+		assertTrue(found);
+		solver.shutdown();
+	}
+
+}
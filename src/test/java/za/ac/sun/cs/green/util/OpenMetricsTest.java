@@ -0,0 +1,156 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpenMetricsTest {
+
+	private static Green createSolver(String port) {
+		Green solver = new Green("OpenMetricsTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		if (port != null) {
+			props.setProperty("green.metrics.port", port);
+		}
+		props.setProperty("green.store", "za.ac.sun.cs.green.store.memstore.MemStore");
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static void request(Green solver, int bound) {
+		IntVariable x = new IntVariable("x", 0, 99);
+		new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(bound))).request("sat");
+	}
+
+	private static OpenMetrics.Sample find(List<OpenMetrics.Sample> samples, String name, String component) {
+		for (OpenMetrics.Sample sample : samples) {
+			if (sample.getName().equals(name) && component.equals(sample.getLabels().get("component"))
+					&& !sample.getLabels().containsKey("quantile")) {
+				return sample;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testSnakeCase() {
+		assertEquals("cache_hit_count", OpenMetrics.snake("cacheHitCount"));
+		assertEquals("solve", OpenMetrics.snake("solve"));
+		assertEquals("time_consumption", OpenMetrics.snake("timeConsumption"));
+		assertEquals("a_b", OpenMetrics.snake("a.b"));
+	}
+
+	@Test
+	public void testFormat() {
+		Map<String, String> labels = new LinkedHashMap<String, String>();
+		labels.put("solver", "s\"1");
+		labels.put("component", "a\\b");
+		List<OpenMetrics.Sample> samples = new ArrayList<OpenMetrics.Sample>();
+		samples.add(new OpenMetrics.Sample("green_x", "_total", OpenMetrics.Type.COUNTER, labels, 3));
+		samples.add(new OpenMetrics.Sample("green_y", "", OpenMetrics.Type.GAUGE,
+				Collections.<String, String>emptyMap(), 0.25));
+		samples.add(new OpenMetrics.Sample("green_x", "_total", OpenMetrics.Type.COUNTER,
+				Collections.<String, String>emptyMap(), 4));
+		String text = OpenMetrics.format(samples);
+		assertEquals("# TYPE green_x counter\n"
+				+ "green_x_total{solver=\"s\\\"1\",component=\"a\\\\b\"} 3\n"
+				+ "green_x_total 4\n"
+				+ "# TYPE green_y gauge\n"
+				+ "green_y 0.25\n"
+				+ "# EOF\n", text);
+	}
+
+	@Test
+	public void testCollect() {
+		Green solver = createSolver(null);
+		request(solver, 3);
+		request(solver, 4);
+		request(solver, 3);
+		List<OpenMetrics.Sample> samples = OpenMetrics.collect(solver);
+		OpenMetrics.Sample invocations = find(samples, "green_invocation_count_total", "EnumerateSATService");
+		assertNotNull(invocations);
+		assertEquals(OpenMetrics.Type.COUNTER, invocations.getType());
+		assertEquals("OpenMetricsTest", invocations.getLabels().get("solver"));
+		assertEquals(3.0, invocations.getValue(), 0.0);
+		OpenMetrics.Sample ratio = find(samples, "green_cache_hit_ratio", "EnumerateSATService");
+		assertNotNull(ratio);
+		assertEquals(OpenMetrics.Type.GAUGE, ratio.getType());
+		assertEquals(1.0 / 3, ratio.getValue(), 1e-9);
+		OpenMetrics.Sample count = find(samples, "green_solve_seconds_count", "EnumerateSATService");
+		assertNotNull(count);
+		assertEquals(OpenMetrics.Type.SUMMARY, count.getType());
+		assertEquals(2.0, count.getValue(), 0.0);
+		boolean quantile = false;
+		for (OpenMetrics.Sample sample : samples) {
+			if (sample.getName().equals("green_solve_seconds") && "0.99".equals(sample.getLabels().get("quantile"))) {
+				quantile = sample.getValue() > 0;
+			}
+		}
+		assertTrue(quantile);
+		// Lines of report() that are not in the registry are exported too
+		boolean reported = false;
+		for (OpenMetrics.Sample sample : samples) {
+			if (sample.getName().startsWith("green_report_")) {
+				assertEquals(OpenMetrics.Type.UNKNOWN, sample.getType());
+				reported = true;
+			}
+		}
+		assertTrue(reported);
+		solver.shutdown();
+	}
+
+	@Test
+	public void testEndpoint() throws Exception {
+		Green solver = createSolver("0");
+		OpenMetrics endpoint = solver.startMetricsEndpoint(0);
+		assertNotNull(endpoint);
+		int port = endpoint.getPort();
+		assertTrue(port > 0);
+		request(solver, 3);
+		URL url = new URL("http://127.0.0.1:" + port + "/metrics");
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		assertEquals(200, connection.getResponseCode());
+		assertEquals(OpenMetrics.CONTENT_TYPE, connection.getContentType());
+		InputStream in = connection.getInputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(text.contains("# TYPE green_invocation_count counter\n"));
+		assertTrue(text.contains(
+				"green_invocation_count_total{solver=\"OpenMetricsTest\",component=\"EnumerateSATService\"} 1\n"));
+		assertTrue(text.endsWith("# EOF\n"));
+		connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		assertEquals(405, connection.getResponseCode());
+		solver.shutdown();
+		assertEquals(-1, endpoint.getPort());
+	}
+
+}
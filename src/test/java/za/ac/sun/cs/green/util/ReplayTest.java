@@ -0,0 +1,131 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Green createSolver(File recording, String taskManager) {
+		Green solver = new Green("ReplayTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		props.setProperty("green.store", "za.ac.sun.cs.green.store.memstore.MemStore");
+		if (recording != null) {
+			props.setProperty("green.recorder.directory", recording.getPath());
+		}
+		if (taskManager != null) {
+			props.setProperty("green.taskmanager", taskManager);
+		}
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(enumerate)");
+		props.setProperty("green.service.sat.enumerate", "za.ac.sun.cs.green.service.sink.EnumerateSATService");
+		new Configuration(solver, props).configure();
+		return solver;
+	}
+
+	private static File write(File file, String text) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testReplayLog() throws Exception {
+		File recording = folder.newFolder();
+		Green solver = createSolver(recording, null);
+		IntVariable x = new IntVariable("x", 0, 99);
+		for (int i = 0; i < 10; i++) {
+			// Some of the instances are unsatisfiable
+			Instance instance = new Instance(solver, null, new Operation(Operation.Operator.GT, x, new IntConstant(i)));
+			instance.extend(new Operation(Operation.Operator.LT, x, new IntConstant(2 * i % 10))).request("sat");
+		}
+		solver.shutdown();
+		List<Replay.Query> queries = Replay.read(Replay.Format.LOG, recording, null);
+		assertEquals(10, queries.size());
+		assertEquals("sat", queries.get(0).getServiceName());
+		// Replay twice against a fresh pipeline: the second pass hits the store
+		List<Replay.Query> twice = new ArrayList<Replay.Query>(queries);
+		twice.addAll(queries);
+		Green target = createSolver(null, "za.ac.sun.cs.green.taskmanager.ParallelTaskManager");
+		Replay replay = new Replay(target);
+		replay.setConcurrency(4);
+		Replay.Result result = replay.run(twice);
+		assertEquals(20, result.getCount());
+		assertEquals(0, result.getFailureCount());
+		assertEquals(0, result.getMismatchCount());
+		assertTrue(result.getThroughput() > 0);
+		assertTrue(result.getLatencyPercentile(0.99) >= result.getLatencyPercentile(0.5));
+		assertTrue(result.getLatencyPercentile(0.5) > 0);
+		long calls = result.getSolverCalls().get("EnumerateSATService");
+		assertTrue((calls >= 10) && (calls < 20));
+		assertTrue(result.getCacheHitRatio("EnumerateSATService") > 0);
+		final List<String> lines = new ArrayList<String>();
+		result.report(new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				lines.add(context + " :: " + message);
+			}
+		});
+		assertTrue(lines.contains("Replay :: queryCount = 20"));
+		assertTrue(lines.contains("EnumerateSATService :: solverCalls = " + calls));
+		target.shutdown();
+	}
+
+	@Test
+	public void testRate() throws Exception {
+		List<Replay.Query> queries = new ArrayList<Replay.Query>();
+		IntVariable x = new IntVariable("x", 0, 99);
+		for (int i = 0; i < 11; i++) {
+			queries.add(new Replay.Query("sat", new Operation(Operation.Operator.GT, x, new IntConstant(i)), Boolean.TRUE));
+		}
+		Green solver = createSolver(null, null);
+		Replay replay = new Replay(solver);
+		replay.setConcurrency(2);
+		replay.setRate(100);
+		Replay.Result result = replay.run(queries);
+		assertEquals(11, result.getCount());
+		// The last query is due 100ms after the first
+		assertTrue(result.getElapsed() >= 100000000L);
+		assertEquals(0, result.getMismatchCount());
+		solver.shutdown();
+	}
+
+	@Test
+	public void testReadParsedFormats() throws Exception {
+		File lia = write(folder.newFile("queries.lia"), "1 1 lt v 0 c 5\n\n1 1 gt v 1 c 7\n");
+		List<Replay.Query> queries = Replay.read(Replay.Format.LIA, lia, "sat");
+		assertEquals(2, queries.size());
+		assertEquals("x0<5", queries.get(0).getExpression().toString());
+		assertEquals("x1>7", queries.get(1).getExpression().toString());
+		File smt = write(folder.newFile("queries.smt2"), "(declare-fun x () Int)(assert (>= x 0))(assert (<= x 9))"
+				+ "(push 1)(assert (> x 3))(check-sat)(pop 1)(assert (> x 11))(check-sat)");
+		queries = Replay.read(Replay.Format.SMTLIB, smt, "sat");
+		assertEquals(2, queries.size());
+		assertEquals("((x>=0)&&(x<=9))&&(x>3)", queries.get(0).getExpression().toString());
+		assertEquals("((x>=0)&&(x<=9))&&(x>11)", queries.get(1).getExpression().toString());
+	}
+
+}
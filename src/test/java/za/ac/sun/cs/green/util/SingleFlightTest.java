@@ -0,0 +1,143 @@
+package za.ac.sun.cs.green.util;
+
+import org.junit.Test;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.taskmanager.ParallelTaskManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+
+	private static final int CLIENTS = 8;
+
+	@Test
+	public void test01() throws Exception {
+		final SingleFlight<String> flight = new SingleFlight<String>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < CLIENTS; i++) {
+				results.add(clients.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return flight.execute("k", new Supplier<String>() {
+							@Override
+							public String get() {
+								runs.incrementAndGet();
+								try {
+									release.await();
+								} catch (InterruptedException x) {
+									return null;
+								}
+								return "v";
+							}
+						});
+					}
+				}));
+			}
+			// Wait until every client is either running or waiting
+			long deadline = System.currentTimeMillis() + 10000;
+			while ((runs.get() + flight.getCoalescedCount() < CLIENTS) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			for (Future<String> result : results) {
+				assertEquals("v", result.get(10, TimeUnit.SECONDS));
+			}
+			assertEquals(1, runs.get());
+			assertEquals(CLIENTS - 1, flight.getCoalescedCount());
+			assertEquals(0, flight.getPendingCount());
+		} finally {
+			clients.shutdown();
+		}
+	}
+
+	@Test
+	public void test02() {
+		SingleFlight<String> flight = new SingleFlight<String>();
+		final AtomicInteger runs = new AtomicInteger();
+		Supplier<String> computation = new Supplier<String>() {
+			@Override
+			public String get() {
+				return "v" + runs.incrementAndGet();
+			}
+		};
+		assertEquals("v1", flight.execute("k", computation));
+		assertEquals("v2", flight.execute("k", computation));
+		assertEquals(0, flight.getCoalescedCount());
+	}
+
+	@Test
+	public void test03() throws Exception {
+		final Green solver = new Green();
+		Properties props = new Properties();
+		props.setProperty("green.taskmanager", ParallelTaskManager.class.getCanonicalName());
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(canonize sleep)");
+		props.setProperty("green.service.sat.canonize",
+				"za.ac.sun.cs.green.service.canonizer.SATCanonizerService");
+		props.setProperty("green.service.sat.sleep",
+				"za.ac.sun.cs.green.service.sink.SleepSATService");
+		new Configuration(solver, props).configure();
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i = 0; i < CLIENTS; i++) {
+				final IntVariable v = new IntVariable("x" + i, 0, 9);
+				results.add(clients.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						Expression e = new Operation(Operation.Operator.GE, v, new IntConstant(3));
+						start.await();
+						return new Instance(solver, null, e).request("sat");
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Object> result : results) {
+				assertEquals(true, result.get(10, TimeUnit.SECONDS));
+			}
+			final Map<String, String> report = new HashMap<String, String>();
+			solver.report(new Reporter() {
+				@Override
+				public void report(String context, String message) {
+					if (context.equals("SleepSATService")) {
+						String[] parts = message.split(" = ");
+						report.put(parts[0], parts[1]);
+					}
+				}
+			});
+			int misses = Integer.parseInt(report.get("cacheMissCount"));
+			int coalesced = Integer.parseInt(report.get("coalescedCount"));
+			assertEquals(CLIENTS, misses + coalesced);
+			assertTrue(coalesced > 0);
+		} finally {
+			clients.shutdown();
+			solver.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package za.ac.sun.cs.green.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import za.ac.sun.cs.green.Green;
+import za.ac.sun.cs.green.Instance;
+import za.ac.sun.cs.green.expr.Expression;
+import za.ac.sun.cs.green.expr.IntConstant;
+import za.ac.sun.cs.green.expr.IntVariable;
+import za.ac.sun.cs.green.expr.Operation;
+import za.ac.sun.cs.green.parser.smtlib2.QueryParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlowQueriesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static SlowQueries createTracker(int capacity) {
+		SlowQueries tracker = new SlowQueries(LogManager.getLogger("SlowQueriesTest"), new Metrics().register("SlowQueries"));
+		tracker.setCapacity(capacity);
+		return tracker;
+	}
+
+	private static Expression query(int i) {
+		return new Operation(Operation.Operator.GT, new IntVariable("x", 0, 99), new IntConstant(i));
+	}
+
+	@Test
+	public void testSketch() {
+		SlowQueries tracker = createTracker(2);
+		for (int i = 0; i < 3; i++) {
+			tracker.record("S", query(1), 100, Boolean.TRUE);
+		}
+		tracker.record("S", query(2), 50, Boolean.FALSE);
+		// Replaces the query with the least time, and inherits its time
+		tracker.record("S", query(3), 10, null);
+		// The same query of another service is tracked separately
+		tracker.record("T", query(1), 1000, Boolean.TRUE);
+		List<SlowQueries.Entry> top = tracker.getTop();
+		assertEquals(2, top.size());
+		assertEquals("T", top.get(0).getServiceName());
+		assertEquals(1060, top.get(0).getTime());
+		assertEquals(60, top.get(0).getError());
+		SlowQueries.Entry entry = top.get(1);
+		assertEquals("S", entry.getServiceName());
+		assertEquals(300, entry.getTime());
+		assertEquals(0, entry.getError());
+		assertEquals(3, entry.getCount());
+		assertEquals(100, entry.getMaxTime());
+		assertEquals("sat", entry.getVerdict());
+		assertEquals(SlowQueries.hash(query(1).getCachedString()), entry.getHash());
+		assertEquals(0, tracker.getSlowQueryCount());
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws Exception {
+		final SlowQueries tracker = createTracker(8);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 4000; i++) {
+						tracker.record("S", query(i % 4), 1, Boolean.TRUE);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		List<SlowQueries.Entry> top = tracker.getTop();
+		assertEquals(4, top.size());
+		for (SlowQueries.Entry entry : top) {
+			assertEquals(4000, entry.getCount());
+			assertEquals(4000, entry.getTime());
+		}
+	}
+
+	@Test
+	public void testSlowQueryLog() throws Exception {
+		File log = folder.newFile("slow.smt2");
+		Green solver = new Green("SlowQueriesTest");
+		Properties props = new Properties();
+		props.setProperty("green.jmx", "false");
+		props.setProperty("green.slowqueries.threshold", "1");
+		props.setProperty("green.slowqueries.log", log.getPath());
+		props.setProperty("green.services", "sat");
+		props.setProperty("green.service.sat", "(sleep)");
+		props.setProperty("green.service.sat.sleep", "za.ac.sun.cs.green.service.sink.SleepSATService");
+		new Configuration(solver, props).configure();
+		Instance instance = new Instance(solver, null, query(3));
+		assertEquals(Boolean.TRUE, instance.request("sat"));
+		SlowQueries tracker = solver.getSlowQueries();
+		assertEquals(1, tracker.getSlowQueryCount());
+		// The slow query file can be read back
+		Reader reader = new InputStreamReader(new FileInputStream(log), StandardCharsets.UTF_8);
+		List<Expression> queries;
+		try {
+			queries = new QueryParser(reader).parse();
+		} finally {
+			reader.close();
+		}
+		assertEquals(1, queries.size());
+		assertEquals(instance.getFullExpression().toString(), ((Operation) queries.get(0)).getOperand(1).toString());
+		SlowQueries.Entry entry = tracker.getTop().get(0);
+		assertEquals("SleepSATService", entry.getServiceName());
+		assertTrue(entry.getTime() >= 10000000L);
+		final List<String> lines = new ArrayList<String>();
+		solver.report(new Reporter() {
+			@Override
+			public void report(String context, String message) {
+				lines.add(context + " :: " + message);
+			}
+		});
+		assertTrue(lines.contains("SlowQueries :: slowQueryCount = 1"));
+		String hex = SlowQueries.toHex(entry.getHash());
+		boolean found = false;
+		for (String line : lines) {
+			found |= line.startsWith("SlowQueries :: top1 = " + hex + " SleepSATService ");
+		}
+		assertTrue(found);
+		found = false;
+		for (OpenMetrics.Sample sample : OpenMetrics.collect(solver)) {
+			if (sample.getName().equals("green_top_query_calls")) {
+				assertEquals("SleepSATService", sample.getLabels().get("service"));
+				assertEquals(hex, sample.getLabels().get("query"));
+				assertEquals(1.0, sample.getValue(), 0.0);
+				found = true;
+			}
+		}
+		assertTrue(found);
+		solver.shutdown();
+	}
+
+}